@@ -0,0 +1,495 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.scheduler;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Scheduler} based on a hierarchical hashed timing wheel.
+ *
+ * Scheduling a runnable does not take any lock: the runnable is appended to
+ * a lock-free inbox which is drained by the worker thread once per tick.
+ * The worker files every runnable into the wheel level matching its
+ * deadline and cascades the slots of the upper levels down as time passes,
+ * so both scheduling and expiring a runnable are O(1) regardless of the
+ * number of runnables scheduled.
+ *
+ * Runnables which are due but not {@link ReadyRunnable#isReady() ready} are
+ * re-filed with a fixed delay instead of being polled over and over again.
+ *
+ * Runnables scheduled with {@link #scheduleWithJitter(ReadyRunnable)} are
+ * delayed by a random start jitter to spread the load of a large number of
+ * runnables scheduled at the same time (i.e. on daemon startup).
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    /**
+     * The default duration of a single tick in milliseconds.
+     */
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    /**
+     * The delay in milliseconds after which a runnable which was not ready is
+     * checked again.
+     */
+    public static final long NOT_READY_DELAY = 1000;
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * The maximum distance in ticks a runnable can be scheduled ahead.
+     */
+    private static final long MAX_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    /**
+     * A runnable filed into the wheel. Slots are singly-linked lists of
+     * these.
+     */
+    private static final class Timeout {
+        private final ReadyRunnable m_runnable;
+        private long m_deadline;
+        private Timeout m_next;
+
+        private Timeout(final ReadyRunnable runnable, final long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+        }
+    }
+
+    /**
+     * Runnables scheduled since the last tick. This is the only structure
+     * shared between the scheduling threads and the worker.
+     */
+    private final Queue<Timeout> m_inbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The wheels. Only accessed by the worker thread.
+     */
+    private final Timeout[][] m_wheels = new Timeout[LEVELS][WHEEL_SIZE];
+
+    /**
+     * The next tick to be processed by the worker thread.
+     */
+    private long m_nextTick;
+
+    /**
+     * The duration of a single tick in milliseconds.
+     */
+    private final long m_tickDuration;
+
+    /**
+     * The maximum jitter in milliseconds added to runnables scheduled by
+     * {@link #scheduleWithJitter(ReadyRunnable)}.
+     */
+    private final long m_maxStartJitter;
+
+    /**
+     * The total number of elements currently scheduled.
+     */
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    /**
+     * The pool of threads that are used to executed the runnable instances
+     * scheduled by the class' instance.
+     */
+    private final ExecutorService m_runner;
+
+    /**
+     * The status for this fiber.
+     */
+    private volatile int m_status;
+
+    /**
+     * The worker thread that executes this instance.
+     */
+    private volatile Thread m_worker;
+
+    /**
+     * Used to keep track of the number of tasks that have been executed.
+     */
+    private final AtomicLong m_numTasksExecuted = new AtomicLong();
+
+    /**
+     * Constructs a new instance of the scheduler using the default tick
+     * duration and no start jitter.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_DURATION, 0);
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickDuration
+     *            The resolution of the scheduler in milliseconds.
+     * @param maxStartJitter
+     *            The maximum random delay in milliseconds added to runnables
+     *            scheduled by {@link #scheduleWithJitter(ReadyRunnable)}.
+     *            Zero disables the jitter.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickDuration, final long maxStartJitter) {
+        Assert.isTrue(tickDuration > 0, "The tick duration must be positive");
+        Assert.isTrue(maxStartJitter >= 0, "The start jitter must not be negative");
+
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_tickDuration = tickDuration;
+        m_maxStartJitter = maxStartJitter;
+        m_nextTick = tick(now());
+        m_worker = null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+
+        m_inbox.add(new Timeout(runnable, tick(now() + Math.max(0, interval))));
+        m_scheduled.incrementAndGet();
+    }
+
+    /**
+     * Schedules the runnable for its initial run, delayed by a random jitter
+     * of up to the configured maximum start jitter.
+     *
+     * Only the first run of a runnable should be scheduled this way -
+     * rescheduling must use {@link #schedule(long, ReadyRunnable)} to keep
+     * the interval of the runnable.
+     *
+     * @param runnable
+     *            The element to run.
+     */
+    public void scheduleWithJitter(final ReadyRunnable runnable) {
+        schedule(m_maxStartJitter > 0 ? ThreadLocalRandom.current().nextLong(m_maxStartJitter) : 0, runnable);
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * The monotonic clock driving the wheel in milliseconds.
+     */
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Returns the first tick starting at or after the given time.
+     */
+    private long tick(final long time) {
+        return Math.floorDiv(time + m_tickDuration - 1, m_tickDuration);
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_runner.toString();
+    }
+
+    /**
+     * Returns total number of elements currently scheduled.
+     *
+     * @return the number of runnables waiting to be executed
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+
+    /**
+     * The main method of the scheduler. Once per tick, this drains the
+     * runnables scheduled in the meantime into the wheel and hands all
+     * runnables which became due to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        LOG.debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                // if resume pending then change to running
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+
+                    m_status = RUNNING;
+                }
+            }
+
+            try {
+                advance(tick(now() + 1) - 1);
+            } catch (RejectedExecutionException e) {
+                throw new UndeclaredThrowableException(e);
+            }
+
+            // Sleep until the start of the next tick
+            final long delay = m_nextTick * m_tickDuration - now();
+            if (delay > 0) {
+                synchronized (this) {
+                    try {
+                        wait(delay);
+                    } catch (InterruptedException ex) {
+                        break; // exit for loop
+                    }
+                }
+            }
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /**
+     * Processes all ticks up to and including the given one.
+     */
+    private void advance(final long lastTick) {
+        Timeout timeout;
+        while ((timeout = m_inbox.poll()) != null) {
+            file(timeout);
+        }
+
+        while (m_nextTick <= lastTick) {
+            final long tick = m_nextTick;
+
+            // Move the runnables of the upper levels down whenever the lower
+            // level completed a full round
+            for (int level = 1; level < LEVELS; level++) {
+                if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+
+                final int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                Timeout cascaded = m_wheels[level][index];
+                m_wheels[level][index] = null;
+                while (cascaded != null) {
+                    final Timeout next = cascaded.m_next;
+                    file(cascaded);
+                    cascaded = next;
+                }
+            }
+
+            final int index = (int) (tick & WHEEL_MASK);
+            Timeout expired = m_wheels[0][index];
+            m_wheels[0][index] = null;
+
+            m_nextTick = tick + 1;
+
+            while (expired != null) {
+                final Timeout next = expired.m_next;
+                expire(expired);
+                expired = next;
+            }
+        }
+    }
+
+    private void expire(final Timeout timeout) {
+        if (!timeout.m_runnable.isReady()) {
+            LOG.debug("run: runnable {} is not ready, checking again in {}ms", timeout.m_runnable, NOT_READY_DELAY);
+            timeout.m_deadline = m_nextTick + tick(NOT_READY_DELAY);
+            file(timeout);
+            return;
+        }
+
+        LOG.debug("run: found ready runnable {}", timeout.m_runnable);
+
+        m_scheduled.decrementAndGet();
+        m_runner.execute(timeout.m_runnable);
+        m_numTasksExecuted.incrementAndGet();
+    }
+
+    /**
+     * Files the runnable into the slot of the lowest level covering its
+     * deadline.
+     */
+    private void file(final Timeout timeout) {
+        long delta = timeout.m_deadline - m_nextTick;
+        if (delta < 0) {
+            // Overdue - run with the next tick
+            timeout.m_deadline = m_nextTick;
+            delta = 0;
+        } else if (delta > MAX_TICKS) {
+            timeout.m_deadline = m_nextTick + MAX_TICKS;
+            delta = MAX_TICKS;
+        }
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+
+        final int index = (int) ((timeout.m_deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        timeout.m_next = m_wheels[level][index];
+        m_wheels[level][index] = timeout;
+    }
+}
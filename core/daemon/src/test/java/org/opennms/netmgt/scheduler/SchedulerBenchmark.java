@@ -0,0 +1,135 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to compare the {@link LegacyScheduler} with the
+ * {@link TimingWheelScheduler}.
+ * <p>
+ * Each scheduler is loaded with one million runnables which are due in the far future, spread over a range of
+ * intervals as Collectd would do. The benchmarks then measure the cost of scheduling additional runnables from
+ * multiple threads and the latency of getting a batch of due runnables executed while the schedulers carry this load.
+ */
+public class SchedulerBenchmark {
+
+    // the number of runnables scheduled before measuring
+    private static final int BACKLOG = 1_000_000;
+
+    // the number of due runnables which are executed in a single benchmark method call
+    private static final int BATCH_SIZE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    private static final ReadyRunnable NOOP = new ReadyRunnable() {
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+        }
+    };
+
+    @State(Scope.Benchmark)
+    public static class BState {
+
+        @Param({"legacy", "timing-wheel"})
+        public String scheduler;
+
+        private Scheduler instance;
+
+        @Setup(Level.Trial)
+        public void setup() throws InterruptedException {
+            if ("legacy".equals(scheduler)) {
+                instance = new LegacyScheduler("SchedulerBenchmark", 8);
+            } else {
+                instance = new TimingWheelScheduler("SchedulerBenchmark", 8);
+            }
+            instance.start();
+
+            // Spread the backlog over 300 distinct intervals between 1 and 5 hours
+            for (int i = 0; i < BACKLOG; i++) {
+                instance.schedule(TimeUnit.HOURS.toMillis(1) + (i % 300) * TimeUnit.MINUTES.toMillis(1), NOOP);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            instance.stop();
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgs = {"-Xmx4g"})
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    @Threads(4)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void schedule(BState state) {
+        state.instance.schedule(TimeUnit.HOURS.toMillis(10), NOOP);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgs = {"-Xmx4g"})
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void dispatch(BState state) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(BATCH_SIZE);
+        final ReadyRunnable runnable = new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            state.instance.schedule(0, runnable);
+        }
+
+        latch.await();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.fiber.PausableFiber;
+
+public class TimingWheelSchedulerTest {
+
+    private TimingWheelScheduler m_scheduler;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 2, 1, 0);
+        m_scheduler.start();
+
+        while (m_scheduler.getStatus() != PausableFiber.RUNNING) {
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.stop();
+    }
+
+    private static ReadyRunnable runnable(final Runnable runnable) {
+        return new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                runnable.run();
+            }
+        };
+    }
+
+    @Test
+    public void testRunsInDeadlineOrder() throws InterruptedException {
+        final List<Long> executed = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(4);
+
+        // The long delays are beyond the first level of the wheel and must be cascaded
+        for (final long delay : new long[] { 600, 50, 300, 0 }) {
+            m_scheduler.schedule(delay, runnable(() -> {
+                executed.add(delay);
+                latch.countDown();
+            }));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(0L, 50L, 300L, 600L), executed);
+        assertEquals(4, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void testDoesNotRunEarly() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final long start = System.nanoTime();
+        m_scheduler.schedule(500, runnable(latch::countDown));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 500);
+    }
+
+    @Test
+    public void testRetriesRunnablesWhichAreNotReady() throws InterruptedException {
+        final AtomicBoolean ready = new AtomicBoolean(false);
+        final AtomicInteger checks = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                checks.incrementAndGet();
+                return ready.get();
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        // Not ready runnables are only re-checked after a delay instead of on every tick
+        Thread.sleep(TimingWheelScheduler.NOT_READY_DELAY / 2);
+        assertEquals(1, checks.get());
+        assertEquals(1, m_scheduler.getScheduled());
+
+        ready.set(true);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, checks.get());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void testPauseAndResume() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        m_scheduler.pause();
+        Thread.sleep(100);
+        assertEquals(PausableFiber.PAUSED, m_scheduler.getStatus());
+
+        m_scheduler.schedule(0, runnable(latch::countDown));
+        assertTrue(!latch.await(200, TimeUnit.MILLISECONDS));
+
+        m_scheduler.resume();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(PausableFiber.RUNNING, m_scheduler.getStatus());
+    }
+
+    @Test
+    public void testStartJitter() throws InterruptedException {
+        final TimingWheelScheduler scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 2, 10, 1000);
+        scheduler.start();
+        try {
+            final List<Long> delays = new CopyOnWriteArrayList<>();
+            final CountDownLatch latch = new CountDownLatch(200);
+            final long start = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                scheduler.scheduleWithJitter(runnable(() -> {
+                    delays.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    latch.countDown();
+                }));
+            }
+
+            // All runnables must be run within the jitter window
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            // The runs must be spread across the window instead of clustering at its start
+            final Set<Long> buckets = delays.stream().map(delay -> Math.min(delay / 100, 9)).collect(Collectors.toSet());
+            assertTrue("Runs not spread across the jitter window: " + delays, buckets.size() >= 8);
+            assertTrue("No run in the first half of the jitter window: " + delays, delays.stream().anyMatch(delay -> delay < 500));
+            assertTrue("No run in the second half of the jitter window: " + delays, delays.stream().anyMatch(delay -> delay >= 500));
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testScheduleIgnoresStartJitter() throws InterruptedException {
+        final TimingWheelScheduler scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 2, 10, 30000);
+        scheduler.start();
+        try {
+            // Rescheduling without delay (i.e. an overrunning strict interval) must not be jittered
+            final CountDownLatch latch = new CountDownLatch(100);
+            for (int i = 0; i < 100; i++) {
+                scheduler.schedule(0, runnable(latch::countDown));
+            }
+
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+        } finally {
+            scheduler.stop();
+        }
+    }
+}
@@ -41,8 +41,9 @@ import static org.opennms.core.tracing.api.TracerConstants.TAG_SYSTEM_ID;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
@@ -68,6 +69,7 @@ import org.opennms.core.ipc.sink.api.MessageConsumerManager;
 import org.opennms.core.ipc.sink.api.SinkModule;
 import org.opennms.core.ipc.sink.common.AbstractMessageDispatcherFactory;
 import org.opennms.core.logging.Logging;
+import org.opennms.core.rpc.api.RpcCodecs;
 import org.opennms.core.rpc.api.RpcModule;
 import org.opennms.core.rpc.api.RpcRequest;
 import org.opennms.core.rpc.api.RpcResponse;
@@ -306,30 +308,59 @@ public class MinionGrpcClient extends AbstractMessageDispatcherFactory<String> {
     public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, String metadata, T message) {
 
         try (Logging.MDCCloseable mdc = Logging.withPrefixCloseable(MessageConsumerManager.LOG_PREFIX)) {
-            byte[] sinkMessageContent = module.marshal(message);
-            String messageId = UUID.randomUUID().toString();
-            SinkMessage.Builder sinkMessageBuilder = SinkMessage.newBuilder()
-                    .setMessageId(messageId)
-                    .setLocation(minionIdentity.getLocation())
-                    .setModuleId(module.getId())
-                    .setContent(ByteString.copyFrom(sinkMessageContent));
-
-            if (module.getId().equals(HEARTBEAT_MODULE_ID)) {
-                if (rpcStream == null || sinkStream == null || hasChangedToReadyState()) {
-                    initializeSinkStub();
-                    initializeRpcStub();
-                }
-            }
-            setTagsForSink(sinkMessageBuilder);
+            SinkMessage sinkMessage = buildSinkMessage(module, message);
             // If module has asyncpolicy, keep attempting to send message.
             if (module.getAsyncPolicy() != null) {
-                sendBlockingSinkMessage(sinkMessageBuilder.build());
+                sendBlockingSinkMessage(sinkMessage);
             } else {
-                sendSinkMessage(sinkMessageBuilder.build());
+                sendSinkMessage(sinkMessage);
+            }
+        }
+    }
+
+    /**
+     * Writes all of the messages to the sink stream while holding the lock once, instead of
+     * contending for it on every message. Messages that could not be written are retried one at
+     * a time, in order.
+     */
+    @Override
+    public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, String metadata, List<T> messages) {
+
+        try (Logging.MDCCloseable mdc = Logging.withPrefixCloseable(MessageConsumerManager.LOG_PREFIX)) {
+            List<SinkMessage> sinkMessages = new ArrayList<>(messages.size());
+            for (T message : messages) {
+                sinkMessages.add(buildSinkMessage(module, message));
+            }
+            int sent = sendSinkMessages(sinkMessages);
+            for (SinkMessage sinkMessage : sinkMessages.subList(sent, sinkMessages.size())) {
+                if (module.getAsyncPolicy() != null) {
+                    sendBlockingSinkMessage(sinkMessage);
+                } else {
+                    sendSinkMessage(sinkMessage);
+                }
             }
         }
     }
 
+    private <S extends Message, T extends Message> SinkMessage buildSinkMessage(SinkModule<S, T> module, T message) {
+        byte[] sinkMessageContent = module.marshal(message);
+        String messageId = UUID.randomUUID().toString();
+        SinkMessage.Builder sinkMessageBuilder = SinkMessage.newBuilder()
+                .setMessageId(messageId)
+                .setLocation(minionIdentity.getLocation())
+                .setModuleId(module.getId())
+                .setContent(ByteString.copyFrom(sinkMessageContent));
+
+        if (module.getId().equals(HEARTBEAT_MODULE_ID)) {
+            if (rpcStream == null || sinkStream == null || hasChangedToReadyState()) {
+                initializeSinkStub();
+                initializeRpcStub();
+            }
+        }
+        setTagsForSink(sinkMessageBuilder);
+        return sinkMessageBuilder.build();
+    }
+
     private void sendBlockingSinkMessage(SinkMessage sinkMessage) {
         boolean succeeded = sendSinkMessage(sinkMessage);
         if (succeeded) {
@@ -355,6 +386,28 @@ public class MinionGrpcClient extends AbstractMessageDispatcherFactory<String> {
     }
 
 
+    /**
+     * @return the number of leading messages that were written to the sink stream
+     */
+    private synchronized int sendSinkMessages(List<SinkMessage> sinkMessages) {
+        int sent = 0;
+        if (getChannelState().equals(ConnectivityState.READY)) {
+            if (sinkStream != null) {
+                try {
+                    for (SinkMessage sinkMessage : sinkMessages) {
+                        sinkStream.onNext(sinkMessage);
+                        sent++;
+                    }
+                } catch (Throwable e) {
+                    LOG.error("Exception while sending sinkMessage to gRPC IPC server", e);
+                }
+            }
+        } else {
+            LOG.info("gRPC IPC server is not in ready state");
+        }
+        return sent;
+    }
+
     private synchronized boolean sendSinkMessage(SinkMessage sinkMessage) {
         if (getChannelState().equals(ConnectivityState.READY)) {
             if (sinkStream != null) {
@@ -419,14 +472,18 @@ public class MinionGrpcClient extends AbstractMessageDispatcherFactory<String> {
             }
             minionSpan.finish();
             // Construct response using the same rpcId;
-            String responseAsString = rpcModule.marshalResponse(rpcResponse);
-            RpcResponseProto responseProto = RpcResponseProto.newBuilder()
+            final RpcCodecs.EncodedResponse encodedResponse = RpcCodecs.encodeResponse(rpcModule, rpcResponse,
+                    requestProto.getTracingInfoOrDefault(RpcCodecs.ACCEPT_CODEC, null));
+            RpcResponseProto.Builder responseBuilder = RpcResponseProto.newBuilder()
                     .setRpcId(requestProto.getRpcId())
                     .setSystemId(minionIdentity.getId())
                     .setLocation(requestProto.getLocation())
                     .setModuleId(requestProto.getModuleId())
-                    .setRpcContent(ByteString.copyFrom(responseAsString, StandardCharsets.UTF_8))
-                    .build();
+                    .setRpcContent(ByteString.copyFrom(encodedResponse.getContent()));
+            if (encodedResponse.getCodec() != null) {
+                responseBuilder.putTracingInfo(RpcCodecs.CODEC, encodedResponse.getCodec());
+            }
+            RpcResponseProto responseProto = responseBuilder.build();
             if (getChannelState().equals(ConnectivityState.READY)) {
                 try {
                     sendRpcResponse(responseProto);
@@ -62,6 +62,7 @@ import org.opennms.core.rpc.api.RemoteExecutionException;
 import org.opennms.core.rpc.api.RequestTimedOutException;
 import org.opennms.core.rpc.api.RpcClient;
 import org.opennms.core.rpc.api.RpcClientFactory;
+import org.opennms.core.rpc.api.RpcCodecs;
 import org.opennms.core.rpc.api.RpcModule;
 import org.opennms.core.rpc.api.RpcRequest;
 import org.opennms.core.rpc.api.RpcResponse;
@@ -241,6 +242,11 @@ public class OpennmsGrpcServer extends AbstractMessageConsumerManager implements
                     builder.setSystemId(request.getSystemId());
                 }
                 addTracingInfo(request, span, builder);
+                // Let the minion know which binary codec we accept for the response.
+                final String acceptedCodec = RpcCodecs.getAcceptedCodec(module);
+                if (acceptedCodec != null) {
+                    builder.putTracingInfo(RpcCodecs.ACCEPT_CODEC, acceptedCodec);
+                }
                 RpcRequestProto requestProto = builder.build();
 
                 boolean succeeded = sendRequest(requestProto);
@@ -285,7 +291,7 @@ public class OpennmsGrpcServer extends AbstractMessageConsumerManager implements
                 if (!responseHandler.isProcessed()) {
                     LOG.warn("RPC request from module: {} with RpcId:{} timedout ", responseHandler.getRpcModule().getId(),
                             responseHandler.getRpcId());
-                    responseHandlerExecutor.execute(() -> responseHandler.sendResponse(null));
+                    responseHandlerExecutor.execute(() -> responseHandler.sendResponse(null, null));
                 }
             } catch (InterruptedException e) {
                 LOG.info("interrupted while waiting for an element from rpcTimeoutQueue", e);
@@ -306,7 +312,8 @@ public class OpennmsGrpcServer extends AbstractMessageConsumerManager implements
         // Handle response from the Minion.
         RpcResponseHandler responseHandler = rpcResponseMap.get(responseProto.getRpcId());
         if (responseHandler != null && responseProto.getRpcContent() != null) {
-            responseHandler.sendResponse(responseProto.getRpcContent().toStringUtf8());
+            responseHandler.sendResponse(responseProto.getRpcContent().toByteArray(),
+                    responseProto.getTracingInfoOrDefault(RpcCodecs.CODEC, null));
         } else {
             LOG.debug("Received a response for request for module: {} with RpcId:{}, but no outstanding request was found with this id." +
                     "The request may have timed out", responseProto.getModuleId(), responseProto.getRpcId());
@@ -596,11 +603,11 @@ public class OpennmsGrpcServer extends AbstractMessageConsumerManager implements
         }
 
         @Override
-        public void sendResponse(String message) {
+        public void sendResponse(byte[] message, String codec) {
 
             try (Logging.MDCCloseable mdc = Logging.withContextMapCloseable(loggingContext)) {
                 if (message != null) {
-                    T response = rpcModule.unmarshalResponse(message);
+                    T response = RpcCodecs.decodeResponse(rpcModule, message, codec);
                     if (response.getErrorMessage() != null) {
                         span.log(response.getErrorMessage());
                         RpcClientFactory.markFailed(getRpcMetrics(), this.location, rpcModule.getId());
@@ -609,7 +616,7 @@ public class OpennmsGrpcServer extends AbstractMessageConsumerManager implements
                         responseFuture.complete(response);
                     }
                     isProcessed = true;
-                    RpcClientFactory.updateResponseSize(getRpcMetrics(), this.location, rpcModule.getId(), message.getBytes().length);
+                    RpcClientFactory.updateResponseSize(getRpcMetrics(), this.location, rpcModule.getId(), message.length);
                 } else {
                     span.setTag(TAG_TIMEOUT, "true");
                     RpcClientFactory.markFailed(getRpcMetrics(), this.location, rpcModule.getId());
@@ -619,7 +626,7 @@ public class OpennmsGrpcServer extends AbstractMessageConsumerManager implements
                 rpcResponseMap.remove(rpcId);
                 span.finish();
             } catch (Throwable e) {
-                LOG.error("Error while processing RPC response {}", message, e);
+                LOG.error("Error while processing RPC response for RpcId:{} with codec {}", rpcId, codec, e);
             }
             if (isProcessed) {
                 LOG.debug("RPC Response from module: {} handled successfully for RpcId:{}.", rpcId, rpcModule.getId());
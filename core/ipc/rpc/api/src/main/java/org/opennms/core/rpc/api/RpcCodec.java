@@ -0,0 +1,45 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.core.rpc.api;
+
+/**
+ * Binary encoding of the responses of a {@link RpcModule}, used in place of the
+ * string-based marshaling of the module when both ends of the transport support it.
+ *
+ * Requests are always marshaled by the module since they are sent before the capabilities
+ * of the receiving side are known. See {@link RpcCodecs} for how codecs are negotiated.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface RpcCodec<T extends RpcResponse> {
+
+    /**
+     * The name used to negotiate the codec.
+     *
+     * The name must change whenever the encoding changes in an incompatible way.
+     */
+    String getName();
+
+    byte[] encodeResponse(T response);
+
+    T decodeResponse(byte[] response);
+}
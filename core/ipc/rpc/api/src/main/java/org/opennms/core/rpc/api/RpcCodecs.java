@@ -0,0 +1,131 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.core.rpc.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Negotiates the encoding of RPC responses between the sender of a request and the module executing it.
+ *
+ * The sender adds the name of the codec of the module to the properties of the request as {@link #ACCEPT_CODEC}.
+ * If the receiving side provides a codec with the same name for the module, the response is encoded with that codec
+ * and the name is added to the properties of the response as {@link #CODEC}. Otherwise, i.e. for receivers which do
+ * not know about codecs, the response is marshaled by the module, and the missing {@link #CODEC} property tells the
+ * sender to unmarshal it the same way.
+ */
+public final class RpcCodecs {
+
+    /**
+     * Request property naming the codec accepted for the response.
+     */
+    public static final String ACCEPT_CODEC = "rpc-accept-codec";
+
+    /**
+     * Response property naming the codec used to encode the response.
+     */
+    public static final String CODEC = "rpc-codec";
+
+    /**
+     * Set this system property to {@code true} to always use the string-based marshaling of the modules.
+     */
+    public static final String DISABLE_CODECS_PROPERTY = "org.opennms.core.rpc.codecs.disabled";
+
+    private RpcCodecs() {
+    }
+
+    /**
+     * Returns the name of the codec to accept for responses of the given module.
+     *
+     * @return the name of the codec or {@code null} if the module has no codec
+     */
+    public static String getAcceptedCodec(final RpcModule<?, ?> module) {
+        if (Boolean.getBoolean(DISABLE_CODECS_PROPERTY)) {
+            return null;
+        }
+        final RpcCodec<?> codec = module.getCodec();
+        return codec != null ? codec.getName() : null;
+    }
+
+    /**
+     * Encodes a response with the codec of the module if the sender accepts it, otherwise marshals it using the module.
+     *
+     * @param acceptedCodec the value of the {@link #ACCEPT_CODEC} request property, may be {@code null}
+     */
+    public static <T extends RpcResponse> EncodedResponse encodeResponse(final RpcModule<?, T> module, final T response, final String acceptedCodec) {
+        final RpcCodec<T> codec = module.getCodec();
+        if (codec != null && acceptedCodec != null && acceptedCodec.equals(codec.getName()) && !Boolean.getBoolean(DISABLE_CODECS_PROPERTY)) {
+            final byte[] content = codec.encodeResponse(response);
+            return new EncodedResponse(content, codec.getName(), "[" + codec.getName() + ": " + content.length + " bytes]");
+        }
+        final String marshaledResponse = module.marshalResponse(response);
+        return new EncodedResponse(marshaledResponse.getBytes(StandardCharsets.UTF_8), null, marshaledResponse);
+    }
+
+    /**
+     * Decodes a response encoded by {@link #encodeResponse(RpcModule, RpcResponse, String)}.
+     *
+     * @param codec the value of the {@link #CODEC} response property, may be {@code null}
+     * @throws IllegalArgumentException if the response was encoded with an unknown codec
+     */
+    public static <T extends RpcResponse> T decodeResponse(final RpcModule<?, T> module, final byte[] response, final String codec) {
+        if (codec == null || codec.isEmpty()) {
+            return module.unmarshalResponse(new String(response, StandardCharsets.UTF_8));
+        }
+        final RpcCodec<T> moduleCodec = module.getCodec();
+        if (moduleCodec == null || !codec.equals(moduleCodec.getName())) {
+            throw new IllegalArgumentException("Unsupported codec for module " + module.getId() + ": " + codec);
+        }
+        return moduleCodec.decodeResponse(response);
+    }
+
+    public static final class EncodedResponse {
+        private final byte[] content;
+        private final String codec;
+        private final String description;
+
+        private EncodedResponse(final byte[] content, final String codec, final String description) {
+            this.content = Objects.requireNonNull(content);
+            this.codec = codec;
+            this.description = description;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * The name of the codec used to encode the response or {@code null} if the response was marshaled by the module.
+         */
+        public String getCodec() {
+            return codec;
+        }
+
+        /**
+         * Returns the marshaled response, or a short description of the encoded response, for logging.
+         */
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
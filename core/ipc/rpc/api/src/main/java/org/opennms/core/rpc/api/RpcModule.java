@@ -58,6 +58,17 @@ public interface RpcModule<S extends RpcRequest, T extends RpcResponse> extends
      */
     T unmarshalResponse(String response);
 
+    /**
+     * Returns the binary codec for the responses of this module, if any.
+     *
+     * Responses are only encoded with the codec if the sender accepts it, see {@link RpcCodecs}.
+     *
+     * @return the codec or {@code null} if responses are always marshaled to strings
+     */
+    default RpcCodec<T> getCodec() {
+        return null;
+    }
+
     /**
      * Called when the {@link RpcModule} throws an exception while executing a request.
      *
@@ -25,7 +25,13 @@ import java.util.concurrent.Delayed;
 
 public interface RpcResponseHandler extends Delayed {
 
-    void sendResponse(String response);
+    /**
+     * Handles the response, or the timeout of the request if the response is {@code null}.
+     *
+     * @param response the encoded response
+     * @param codec the codec used to encode the response, see {@link RpcCodecs#decodeResponse}
+     */
+    void sendResponse(byte[] response, String codec);
 
     boolean isProcessed();
 
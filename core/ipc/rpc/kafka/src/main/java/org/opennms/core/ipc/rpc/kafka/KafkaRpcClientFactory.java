@@ -75,6 +75,7 @@ import org.opennms.core.rpc.api.RemoteExecutionException;
 import org.opennms.core.rpc.api.RequestTimedOutException;
 import org.opennms.core.rpc.api.RpcClient;
 import org.opennms.core.rpc.api.RpcClientFactory;
+import org.opennms.core.rpc.api.RpcCodecs;
 import org.opennms.core.rpc.api.RpcModule;
 import org.opennms.core.rpc.api.RpcRequest;
 import org.opennms.core.rpc.api.RpcResponse;
@@ -186,6 +187,7 @@ public class KafkaRpcClientFactory implements RpcClientFactory {
                 byte[] messageInBytes = marshalRequest.getBytes();
                 int totalChunks = IntMath.divide(messageInBytes.length, maxBufferSize, RoundingMode.UP);
 
+                final String acceptedCodec = RpcCodecs.getAcceptedCodec(module);
                 RpcMessageProto.Builder builder = RpcMessageProto.newBuilder()
                         .setRpcId(rpcId)
                         .setModuleId(module.getId())
@@ -199,6 +201,10 @@ public class KafkaRpcClientFactory implements RpcClientFactory {
                     int chunkNum = chunk;
                     // Add tracing info to message builder.
                     addTracingInfo(request, span, builder);
+                    // Let the minion know which binary codec we accept for the response.
+                    if (acceptedCodec != null) {
+                        builder.putTracingInfo(RpcCodecs.ACCEPT_CODEC, acceptedCodec);
+                    }
                     // Build message.
                     RpcMessageProto rpcMessage = builder.setRpcContent(byteString)
                             .setCurrentChunkNumber(chunk)
@@ -345,7 +351,7 @@ public class KafkaRpcClientFactory implements RpcClientFactory {
                         ResponseCallback responseCb = delayQueue.take();
                         if (!responseCb.isProcessed()) {
                             LOG.warn("RPC request with id {} timedout ", responseCb.getRpcId());
-                            responseHandlerExecutor.execute(() -> responseCb.sendResponse(null));
+                            responseHandlerExecutor.execute(() -> responseCb.sendResponse(null, null));
                         }
                     } catch (InterruptedException e) {
                         LOG.info("interrupted while waiting for an element from delayQueue", e);
@@ -399,12 +405,12 @@ public class KafkaRpcClientFactory implements RpcClientFactory {
         }
 
         @Override
-        public void sendResponse(String message) {
+        public void sendResponse(byte[] message, String codec) {
             // restore Logging context on callback.
             try (MDCCloseable mdc = Logging.withContextMapCloseable(loggingContext)) {
                 // When message is not null, it's called from kafka consumer otherwise it is from timeout tracker.
                 if (message != null) {
-                    T response = rpcModule.unmarshalResponse(message);
+                    T response = RpcCodecs.decodeResponse(rpcModule, message, codec);
                     if (response.getErrorMessage() != null) {
                         responseFuture.completeExceptionally(new RemoteExecutionException(response.getErrorMessage()));
                         span.log(response.getErrorMessage());
@@ -413,7 +419,7 @@ public class KafkaRpcClientFactory implements RpcClientFactory {
                         responseFuture.complete(response);
                     }
                     isProcessed = true;
-                    responseSize.update(message.getBytes().length);
+                    responseSize.update(message.length);
                 } else {
                     responseFuture.completeExceptionally(new RequestTimedOutException(new TimeoutException()));
                     span.setTag(TAG_TIMEOUT, "true");
@@ -425,7 +431,7 @@ public class KafkaRpcClientFactory implements RpcClientFactory {
                 rpcDuration.update(System.currentTimeMillis() - requestCreationTime);
                 span.finish();
             } catch (Throwable e) {
-                LOG.warn("Error while handling response for RPC module: {}. Response string: {}", rpcModule.getId(), message, e);
+                LOG.warn("Error while handling response for RPC module: {}. Response codec: {}", rpcModule.getId(), codec, e);
             }
         }
 
@@ -504,9 +510,11 @@ public class KafkaRpcClientFactory implements RpcClientFactory {
                             if (LOG.isTraceEnabled()) {
                                 LOG.trace("Received RPC response for id {}", rpcMessage.getRpcId());
                             }
-                            final String rpcMessageContent = rpcContent.toStringUtf8();
+                            final byte[] rpcMessageContent = rpcContent.toByteArray();
+                            // The codec is set on every chunk, use the one from the last chunk.
+                            final String codec = rpcMessage.getTracingInfoOrDefault(RpcCodecs.CODEC, null);
                             responseHandlerExecutor.execute(() ->
-                                    responseCb.sendResponse(rpcMessageContent));
+                                    responseCb.sendResponse(rpcMessageContent, codec));
                             // Remove rpcId from the maps so that duplicate response will not be handled.
                             rpcResponseMap.remove(rpcId);
                             messageCache.remove(rpcId);
@@ -66,6 +66,7 @@ import org.opennms.core.ipc.common.kafka.KafkaRpcConstants;
 import org.opennms.core.ipc.common.kafka.KafkaTopicProvider;
 import org.opennms.core.ipc.common.kafka.Utils;
 import org.opennms.core.ipc.rpc.kafka.model.RpcMessageProto;
+import org.opennms.core.rpc.api.RpcCodecs;
 import org.opennms.core.rpc.api.RpcModule;
 import org.opennms.core.rpc.api.RpcRequest;
 import org.opennms.core.rpc.api.RpcResponse;
@@ -382,23 +383,28 @@ public class KafkaRpcServerManager {
                 // Finish minion Span
                 minionSpan.finish();
                 uncheckBulkhead();
-                sendResponse(rpcRequestProto.getRpcId(), response, module);
+                sendResponse(rpcRequestProto.getRpcId(), response, module,
+                        rpcRequestProto.getTracingInfoOrDefault(RpcCodecs.ACCEPT_CODEC, null));
             });
         }
 
 
         @SuppressWarnings("unchecked")
-        private void sendResponse(String rpcId, RpcResponse response, RpcModule module) {
+        private void sendResponse(String rpcId, RpcResponse response, RpcModule module, String acceptedCodec) {
             try {
                 String responseTopic = kafkaRpcTopicProvider.getResponseTopic(module.getId());
-                final String responseAsString = module.marshalResponse(response);
-                final byte[] messageInBytes = responseAsString.getBytes();
+                final RpcCodecs.EncodedResponse encodedResponse = RpcCodecs.encodeResponse(module, response, acceptedCodec);
+                final String responseAsString = encodedResponse.toString();
+                final byte[] messageInBytes = encodedResponse.getContent();
                 int totalChunks = IntMath.divide(messageInBytes.length, maxBufferSize, RoundingMode.UP);
 
                 // Divide the message in chunks and send each chunk as a different message with the same key.
                 RpcMessageProto.Builder builder = RpcMessageProto.newBuilder()
                         .setRpcId(rpcId);
                 builder.setTotalChunks(totalChunks);
+                if (encodedResponse.getCodec() != null) {
+                    builder.putTracingInfo(RpcCodecs.CODEC, encodedResponse.getCodec());
+                }
 
                 for (int chunk = 0; chunk < totalChunks; chunk++) {
                     // Calculate remaining bufferSize for each chunk.
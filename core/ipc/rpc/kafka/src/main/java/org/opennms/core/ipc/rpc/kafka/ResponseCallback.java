@@ -25,7 +25,7 @@ import java.util.concurrent.Delayed;
 
 public interface ResponseCallback extends Delayed {
 
-    public void sendResponse(String response);
+    public void sendResponse(byte[] response, String codec);
 
     public boolean isProcessed();
 
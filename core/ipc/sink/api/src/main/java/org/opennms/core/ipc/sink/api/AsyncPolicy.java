@@ -28,6 +28,10 @@ package org.opennms.core.ipc.sink.api;
  */
 public interface AsyncPolicy {
 
+    String BATCH_SIZE_PROPERTY = "org.opennms.core.ipc.sink.async.batchSize";
+
+    String BATCH_TIMEOUT_PROPERTY = "org.opennms.core.ipc.sink.async.batchTimeout";
+
     /**
      * Maximum number of messages that can be queued awaiting
      * for dispatch.
@@ -59,4 +63,30 @@ public interface AsyncPolicy {
      * should block when the queue is full
      */
     boolean isBlockWhenFull();
+
+    /**
+     * Maximum number of messages a background thread takes from the
+     * queue and hands to the synchronous dispatcher at once.
+     *
+     * Defaults to the value of the <code>org.opennms.core.ipc.sink.async.batchSize</code>
+     * system property, or 1 which dispatches messages one at a time.
+     *
+     * @return maximum number of messages per batch
+     */
+    default int getBatchSize() {
+        return Integer.getInteger(BATCH_SIZE_PROPERTY, 1);
+    }
+
+    /**
+     * Maximum amount of time, in milliseconds, a background thread waits
+     * for a batch to fill up once it has taken the first message from the queue.
+     *
+     * Defaults to the value of the <code>org.opennms.core.ipc.sink.async.batchTimeout</code>
+     * system property, or 0 which only batches messages that are already queued.
+     *
+     * @return batch timeout in milliseconds
+     */
+    default long getBatchTimeoutMs() {
+        return Long.getLong(BATCH_TIMEOUT_PROPERTY, 0L);
+    }
 }
@@ -21,7 +21,10 @@
  */
 package org.opennms.core.ipc.sink.api;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public interface DispatchQueue<T> {
 
@@ -37,6 +40,48 @@ public interface DispatchQueue<T> {
      */
     Map.Entry<String, T> dequeue() throws InterruptedException;
 
+    /**
+     * Retrieves and removes up to <code>maxEntries</code> entries from the head of this queue and adds them to the
+     * given list, in order.
+     * <p>
+     * Waits if necessary until at least one element becomes available, then keeps collecting entries until either
+     * <code>maxEntries</code> have been collected or the given timeout has elapsed since the first one was taken.
+     * With a timeout of zero only the entries that are immediately available are collected.
+     * <p>
+     * The default implementation only ever retrieves a single entry, implementations should override this when they
+     * can hand out several entries at a lower cost than repeated calls to {@link #dequeue()}.
+     *
+     * @return the number of entries that were added to the list, usually at least one but zero if the queue failed to
+     *         read the first entry
+     * @throws InterruptedException if interrupted while waiting for the first element
+     */
+    default int dequeueBatch(List<Map.Entry<String, T>> entries, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+        entries.add(dequeue());
+        return 1;
+    }
+
+    /**
+     * Implements {@link #dequeueBatch(List, int, long, TimeUnit)} on top of a {@link BlockingQueue}, for
+     * implementations that hand out entries from one.
+     */
+    static <E> int drain(BlockingQueue<E> queue, List<? super E> entries, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+        entries.add(queue.take());
+        int count = 1 + queue.drainTo(entries, maxEntries - 1);
+        if (count >= maxEntries || timeout <= 0) {
+            return count;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (count < maxEntries) {
+            final E entry = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (entry == null) {
+                break;
+            }
+            entries.add(entry);
+            count += 1 + queue.drainTo(entries, maxEntries - count - 1);
+        }
+        return count;
+    }
+
     /**
      * @return true if the queue has no more capacity, false otherwise
      */
@@ -21,6 +21,8 @@
  */
 package org.opennms.core.ipc.sink.api;
 
+import java.util.List;
+
 /**
  * Used to synchronously dispatch messages.
  *
@@ -29,4 +31,18 @@ package org.opennms.core.ipc.sink.api;
  * @author jwhite
  */
 public interface SyncDispatcher<S extends Message> extends MessageDispatcher<S> {
+
+    /**
+     * Sends all of the given messages, returning once all of them were dispatched.
+     *
+     * Implementations that can ship several messages in a single round trip to the
+     * broker should override this, the default sends the messages one at a time.
+     *
+     * @param messages messages to send, in order
+     */
+    default void send(List<S> messages) {
+        for (S message : messages) {
+            send(message);
+        }
+    }
 }
@@ -23,13 +23,20 @@ package org.opennms.core.ipc.sink.camel.client;
 
 import static org.opennms.core.ipc.sink.api.Message.SINK_METRIC_PRODUCER_DOMAIN;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.camel.Endpoint;
 import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
 import org.apache.camel.ProducerTemplate;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.util.ObjectHelper;
 import org.opennms.core.camel.JmsQueueNameFactory;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.SinkModule;
@@ -81,10 +88,45 @@ public class CamelRemoteMessageDispatcherFactory extends AbstractMessageDispatch
 
     @Override
     public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, Map<String, Object> headers, T message) {
+        byte[] sinkMessageBytes = module.marshal(message);
+        template.sendBodyAndHeaders(endpoint, sinkMessageBytes, getMessageHeaders(module, headers, message, sinkMessageBytes));
+    }
+
+    /**
+     * Hands all of the messages to the producer template before waiting on any of them, so that
+     * the JMS sends are pipelined instead of being performed one round trip at a time.
+     */
+    @Override
+    public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, Map<String, Object> headers, List<T> messages) {
+        final List<Future<Exchange>> futures = new ArrayList<>(messages.size());
+        for (T message : messages) {
+            final byte[] sinkMessageBytes = module.marshal(message);
+            final Map<String, Object> messageHeaders = getMessageHeaders(module, headers, message, sinkMessageBytes);
+            futures.add(template.asyncSend(endpoint, exchange -> {
+                exchange.getIn().setBody(sinkMessageBytes);
+                exchange.getIn().setHeaders(messageHeaders);
+            }));
+        }
+        for (Future<Exchange> future : futures) {
+            final Exchange exchange;
+            try {
+                exchange = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeCamelException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeCamelException(e.getCause());
+            }
+            if (exchange.getException() != null) {
+                throw ObjectHelper.wrapCamelExecutionException(exchange, exchange.getException());
+            }
+        }
+    }
+
+    private <S extends Message, T extends Message> Map<String, Object> getMessageHeaders(SinkModule<S, T> module, Map<String, Object> headers, T message, byte[] sinkMessageBytes) {
         final Map<String, Object> messageHeaders = new HashMap<>(headers);
         module.getRoutingKey(message).ifPresent(id -> messageHeaders.put(CamelSinkConstants.JMS_XGROUP_ID, id));
 
-        byte[] sinkMessageBytes = module.marshal(message);
         // Add tracing info to jms headers
         final Tracer tracer = tracerRegistry.getTracer();
         if (tracer.activeSpan() != null) {
@@ -101,7 +143,7 @@ public class CamelRemoteMessageDispatcherFactory extends AbstractMessageDispatch
                 messageHeaders.put(CamelSinkConstants.JMS_SINK_TRACING_INFO, tracingInfo);
             }
         }
-        template.sendBodyAndHeaders(endpoint, sinkMessageBytes, messageHeaders);
+        return messageHeaders;
     }
 
     @Override
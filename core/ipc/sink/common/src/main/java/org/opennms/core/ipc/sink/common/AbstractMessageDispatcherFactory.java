@@ -23,6 +23,7 @@ package org.opennms.core.ipc.sink.common;
 
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Objects;
 
 import org.opennms.core.ipc.sink.aggregation.AggregatingSinkMessageProducer;
@@ -62,6 +63,18 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
 
     public abstract <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, W metadata, T message);
 
+    /**
+     * Dispatches all of the given messages, returning once all of them were sent.
+     *
+     * Implementations that can pipeline several messages to the broker should override
+     * this, the default dispatches the messages one at a time.
+     */
+    public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, W metadata, List<T> messages) {
+        for (T message : messages) {
+            dispatch(module, metadata, message);
+        }
+    }
+
     public abstract String getMetricDomain();
 
     public abstract BundleContext getBundleContext();
@@ -80,6 +93,20 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
         }
     }
 
+    /**
+     * Invokes the batch dispatch within a timer context.
+     */
+    private <S extends Message, T extends Message> void timedDispatch(DispatcherState<W, S,T> state, List<T> messages) {
+        if (messages.size() == 1) {
+            timedDispatch(state, messages.get(0));
+            return;
+        }
+        try (Context ctx = state.getDispatchTimer().time();
+             Scope scope = getTracer().buildSpan(state.getModule().getId()).startActive(true)) {
+            dispatch(state.getModule(), state.getMetaData(), messages);
+        }
+    }
+
     /**
      * Optionally build meta-data or state information for the module which will
      * be passed on all the calls to {@link #dispatch}.
@@ -147,6 +174,12 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
             AbstractMessageDispatcherFactory.this.timedDispatch(state, (T) message);
         }
 
+        @SuppressWarnings("unchecked")
+        @Override
+        public void send(List<S> messages) {
+            AbstractMessageDispatcherFactory.this.timedDispatch(state, (List<T>) messages);
+        }
+
         @Override
         public void close() throws Exception {
             state.close();
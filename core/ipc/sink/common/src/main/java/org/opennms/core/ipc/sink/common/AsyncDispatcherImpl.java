@@ -23,6 +23,8 @@ package org.opennms.core.ipc.sink.common;
 
 import java.time.Duration;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -34,6 +36,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
@@ -116,36 +119,56 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
     }
 
     private void dispatchFromQueue() {
+        final int batchSize = Math.max(1, asyncPolicy.getBatchSize());
+        final long batchTimeoutMs = Math.max(0L, asyncPolicy.getBatchTimeoutMs());
+        final List<Map.Entry<String, S>> messageEntries = new ArrayList<>(batchSize);
+        final List<S> messages = new ArrayList<>(batchSize);
         while (true) {
             try {
-                LOG.trace("Asking dispatch queue for the next entry...");
-                Map.Entry<String, S> messageEntry = atomicResultQueue.dequeue();
-                LOG.trace("Received message entry from dispatch queue {}", messageEntry);
-                activeDispatchers.incrementAndGet();
-                LOG.trace("Sending message {} via sync dispatcher", messageEntry);
-                syncDispatcher.send(messageEntry.getValue());
-                LOG.trace("Successfully sent message {}", messageEntry);
-
-                if (messageEntry.getKey() != null) {
-                    LOG.trace("Attempting to complete future for message {}", messageEntry);
-                    CompletableFuture<DispatchStatus> messageFuture = futureMap.remove(messageEntry.getKey());
-
-                    if (messageFuture != null) {
-                        messageFuture.complete(DispatchStatus.DISPATCHED);
-                        LOG.trace("Completed future for message {}", messageEntry);
-                    } else {
-                        RATE_LIMITED_LOGGER.warn("No future found for message {}", messageEntry);
-                        missedFutures.incrementAndGet();
-                    }
+                LOG.trace("Asking dispatch queue for the next entries...");
+                atomicResultQueue.dequeueBatch(messageEntries, batchSize, batchTimeoutMs);
+                LOG.trace("Received {} message entries from dispatch queue", messageEntries.size());
+                if (messageEntries.isEmpty()) {
+                    // The queue may return an empty batch if reading the first entry failed
+                    continue;
+                }
+                activeDispatchers.addAndGet(messageEntries.size());
+                for (Map.Entry<String, S> messageEntry : messageEntries) {
+                    messages.add(messageEntry.getValue());
+                }
+                LOG.trace("Sending {} messages via sync dispatcher", messages.size());
+                if (messages.size() == 1) {
+                    syncDispatcher.send(messages.get(0));
                 } else {
-                    LOG.trace("Dequeued an entry with a null key");
+                    syncDispatcher.send(messages);
                 }
+                LOG.trace("Successfully sent {} messages", messages.size());
 
-                activeDispatchers.decrementAndGet();
+                completeFutures(messageEntries);
             } catch (InterruptedException e) {
                 break;
             } catch (Exception e) {
                 RATE_LIMITED_LOGGER.warn("Encountered exception while taking from dispatch queue", e);
+            } finally {
+                activeDispatchers.addAndGet(-messageEntries.size());
+                messageEntries.clear();
+                messages.clear();
+            }
+        }
+    }
+
+    private void completeFutures(List<Map.Entry<String, S>> messageEntries) {
+        for (Map.Entry<String, S> messageEntry : messageEntries) {
+            if (messageEntry.getKey() == null) {
+                LOG.trace("Dequeued an entry with a null key");
+                continue;
+            }
+            CompletableFuture<DispatchStatus> messageFuture = futureMap.remove(messageEntry.getKey());
+            if (messageFuture != null) {
+                messageFuture.complete(DispatchStatus.DISPATCHED);
+            } else {
+                RATE_LIMITED_LOGGER.warn("No future found for message {}", messageEntry);
+                missedFutures.incrementAndGet();
             }
         }
     }
@@ -215,19 +238,19 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
             resultRecorded.countDown();
         }
 
-        Map.Entry<String, T> dequeue() throws InterruptedException {
-            Map.Entry<String, T> messageEntry = dispatchQueue.dequeue();
+        void dequeueBatch(List<Map.Entry<String, T>> messageEntries, int maxEntries, long timeoutMs) throws InterruptedException {
+            dispatchQueue.dequeueBatch(messageEntries, maxEntries, timeoutMs, TimeUnit.MILLISECONDS);
 
-            // If the key is null, we weren't tracking it so we don't need to synchronize
-            if (messageEntry.getKey() == null) {
-                return messageEntry;
-            }
-            CountDownLatch resultRecorded = resultRecordedMap.remove(messageEntry.getKey());
-            if(resultRecorded != null) {
-                resultRecorded.await();
+            for (Map.Entry<String, T> messageEntry : messageEntries) {
+                // If the key is null, we weren't tracking it so we don't need to synchronize
+                if (messageEntry.getKey() == null) {
+                    continue;
+                }
+                CountDownLatch resultRecorded = resultRecordedMap.remove(messageEntry.getKey());
+                if (resultRecorded != null) {
+                    resultRecorded.await();
+                }
             }
-
-            return messageEntry;
         }
 
         boolean isFull() {
@@ -277,6 +300,11 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
             return queue.take();
         }
 
+        @Override
+        public int dequeueBatch(List<Map.Entry<String, T>> entries, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+            return DispatchQueue.drain(queue, entries, maxEntries, timeout, unit);
+        }
+
         @Override
         public boolean isFull() {
             return queue.remainingCapacity() <= 0;
@@ -0,0 +1,293 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.core.ipc.sink.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.core.ipc.sink.api.AggregationPolicy;
+import org.opennms.core.ipc.sink.api.AsyncDispatcher;
+import org.opennms.core.ipc.sink.api.AsyncPolicy;
+import org.opennms.core.ipc.sink.api.DispatchQueue;
+import org.opennms.core.ipc.sink.api.DispatchQueueFactory;
+import org.opennms.core.ipc.sink.api.Message;
+import org.opennms.core.ipc.sink.api.QueueCreateFailedException;
+import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.api.SyncDispatcher;
+import org.opennms.core.ipc.sink.offheap.DataBlocksOffHeapQueue;
+import org.opennms.core.ipc.sink.offheap.DispatchQueueServiceLoader;
+import org.opennms.core.ipc.sink.offheap.QueueFileOffHeapDispatchQueueFactory;
+import org.osgi.framework.BundleContext;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to measure the number of messages per second
+ * the {@link AsyncDispatcherImpl} can push through the different dispatch queues, with and
+ * without batching.
+ * <p>
+ * Every call to the synchronous dispatcher simulates a round trip to the broker by parking
+ * for {@link #roundTripMicros}, regardless of the number of messages it carries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class AsyncDispatcherBenchmark {
+
+    // the number of messages sent per benchmark invocation
+    private static final int NUM_MESSAGES = 1000;
+
+    private static final int QUEUE_SIZE = 10000;
+
+    private static final int NUM_THREADS = 4;
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @Param({"memory", "queuefile", "datablocks"})
+    public String queue;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    @Param({"100"})
+    public int roundTripMicros;
+
+    private Path queueDirectory;
+
+    private AsyncDispatcher<BenchmarkMessage> asyncDispatcher;
+
+    private final BenchmarkMessage[] messages = new BenchmarkMessage[NUM_MESSAGES];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        queueDirectory = Files.createTempDirectory("dispatch-queue");
+        switch (queue) {
+            case "memory":
+                DispatchQueueServiceLoader.setDispatchQueue(null);
+                break;
+            case "queuefile":
+                DispatchQueueServiceLoader.setDispatchQueue(new QueueFileOffHeapDispatchQueueFactory(QUEUE_SIZE, 100,
+                        "100MB", queueDirectory.toString()));
+                break;
+            case "datablocks":
+                DispatchQueueServiceLoader.setDispatchQueue(new DataBlocksDispatchQueueFactory(queueDirectory));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown queue: " + queue);
+        }
+        for (int i = 0; i < NUM_MESSAGES; i++) {
+            messages[i] = new BenchmarkMessage("message" + i);
+        }
+        asyncDispatcher = new RoundTripDispatcherFactory(roundTripMicros).createAsyncDispatcher(new BenchmarkSinkModule(batchSize));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        asyncDispatcher.close();
+        DispatchQueueServiceLoader.setDispatchQueue(null);
+    }
+
+    @Benchmark
+    public void sendAndWait() {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[NUM_MESSAGES];
+        for (int i = 0; i < NUM_MESSAGES; i++) {
+            futures[i] = asyncDispatcher.send(messages[i]);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private static class BenchmarkMessage implements Message {
+        private final String value;
+
+        private BenchmarkMessage(String value) {
+            this.value = value;
+        }
+    }
+
+    private static class BenchmarkSinkModule implements SinkModule<BenchmarkMessage, BenchmarkMessage> {
+        private final int batchSize;
+
+        private BenchmarkSinkModule(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public String getId() {
+            return "benchmark";
+        }
+
+        @Override
+        public int getNumConsumerThreads() {
+            return 1;
+        }
+
+        @Override
+        public byte[] marshal(BenchmarkMessage message) {
+            return marshalSingleMessage(message);
+        }
+
+        @Override
+        public BenchmarkMessage unmarshal(byte[] message) {
+            return unmarshalSingleMessage(message);
+        }
+
+        @Override
+        public byte[] marshalSingleMessage(BenchmarkMessage message) {
+            return message.value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public BenchmarkMessage unmarshalSingleMessage(byte[] message) {
+            return new BenchmarkMessage(new String(message, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public AggregationPolicy<BenchmarkMessage, BenchmarkMessage, ?> getAggregationPolicy() {
+            return null;
+        }
+
+        @Override
+        public AsyncPolicy getAsyncPolicy() {
+            return new AsyncPolicy() {
+                @Override
+                public int getQueueSize() {
+                    return QUEUE_SIZE;
+                }
+
+                @Override
+                public int getNumThreads() {
+                    return NUM_THREADS;
+                }
+
+                @Override
+                public boolean isBlockWhenFull() {
+                    return true;
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batchSize;
+                }
+            };
+        }
+    }
+
+    private static class DataBlocksDispatchQueueFactory implements DispatchQueueFactory {
+        private final Path path;
+
+        private DataBlocksDispatchQueueFactory(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public <T> DispatchQueue<T> getQueue(AsyncPolicy asyncPolicy, String moduleName, Function<T, byte[]> serializer,
+                                             Function<byte[], T> deserializer) {
+            try {
+                return new DataBlocksOffHeapQueue<>(serializer, deserializer, moduleName, path, QUEUE_SIZE, 100,
+                        100L * 1024L * 1024L);
+            } catch (QueueCreateFailedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class RoundTripDispatcherFactory extends AbstractMessageDispatcherFactory<Void> {
+        private final long roundTripNanos;
+
+        private RoundTripDispatcherFactory(int roundTripMicros) {
+            roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+        }
+
+        @Override
+        protected <S extends Message, T extends Message> SyncDispatcher<S> createSyncDispatcher(DispatcherState<Void, S, T> state) {
+            return new SyncDispatcher<S>() {
+                @Override
+                public void send(S message) {
+                    LockSupport.parkNanos(roundTripNanos);
+                }
+
+                @Override
+                public void send(List<S> messages) {
+                    LockSupport.parkNanos(roundTripNanos);
+                }
+
+                @Override
+                public void close() {
+                    // pass
+                }
+            };
+        }
+
+        @Override
+        public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, Void metadata, T message) {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public String getMetricDomain() {
+            return RoundTripDispatcherFactory.class.getPackage().getName();
+        }
+
+        @Override
+        public BundleContext getBundleContext() {
+            return null;
+        }
+
+        @Override
+        public Tracer getTracer() {
+            return GlobalTracer.get();
+        }
+
+        @Override
+        public MetricRegistry getMetrics() {
+            return new MetricRegistry();
+        }
+    }
+}
@@ -25,6 +25,7 @@ import static org.awaitility.Awaitility.await;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
@@ -35,13 +36,18 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 
 import org.junit.Before;
@@ -54,6 +60,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
 import org.opennms.core.ipc.sink.api.AsyncPolicy;
+import org.opennms.core.ipc.sink.api.DispatchQueue;
 import org.opennms.core.ipc.sink.api.DispatchQueueFactory;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.SinkModule;
@@ -335,6 +342,147 @@ public class AsyncDispatcherTest {
         asyncDispatcher.close();
     }
 
+    @Test(timeout=3*60*1000)
+    public void testDispatchesInBatches() throws Exception {
+        // Set up the dispatch queue
+        DispatchQueueFactory dispatchQueueFactory = new QueueFileOffHeapDispatchQueueFactory(QUEUE_SIZE, 10, null,
+                folder.newFolder().toPath().toString());
+        DispatchQueueServiceLoader.setDispatchQueue(dispatchQueueFactory);
+
+        when(module.getAsyncPolicy()).thenReturn(new AsyncPolicy() {
+            @Override
+            public int getQueueSize() {
+                return QUEUE_SIZE;
+            }
+
+            @Override
+            public int getNumThreads() {
+                return 1;
+            }
+
+            @Override
+            public boolean isBlockWhenFull() {
+                return true;
+            }
+
+            @Override
+            public int getBatchSize() {
+                return 10;
+            }
+        });
+
+        final AsyncDispatcher<MyMessage> asyncDispatcher = blockableDispatcherFactory.createAsyncDispatcher(module);
+        BlockableSyncDispatcher<MyMessage> blockableSyncDispatcher =
+                blockableDispatcherFactory.getBlockableSyncDispatcher();
+        final List<CompletableFuture<AsyncDispatcher.DispatchStatus>> futures = new ArrayList<>();
+
+        // Park the dispatch thread on the first message so that the others pile up in the queue
+        blockableSyncDispatcher.block();
+        futures.add(asyncDispatcher.send(new MyMessage("0")));
+        await().atMost(1, MINUTES).until(blockableSyncDispatcher::getBlockedThreadCount, equalTo(1));
+        for (int i = 1; i < 26; i++) {
+            futures.add(asyncDispatcher.send(new MyMessage(Integer.toString(i))));
+        }
+        assertEquals(25, asyncDispatcher.getQueueSize());
+
+        // Release the thread!
+        blockableSyncDispatcher.unblock();
+
+        // The queued messages should be sent in batches, in order
+        await().atMost(1, MINUTES).until(blockableSyncDispatcher::getNumMessageDispatched, equalTo(26));
+        assertThat(blockableSyncDispatcher.getBatchSizes(), contains(1, 10, 10, 5));
+        for (int i = 0; i < 26; i++) {
+            assertThat(blockableSyncDispatcher.getDispatchedMessages().get(i), equalTo(new MyMessage(Integer.toString(i))));
+        }
+
+        // All of the futures should be completed
+        for (CompletableFuture<AsyncDispatcher.DispatchStatus> future : futures) {
+            assertThat(future.get(1, MINUTES), equalTo(AsyncDispatcher.DispatchStatus.DISPATCHED));
+        }
+
+        asyncDispatcher.close();
+    }
+
+    @Test(timeout=3*60*1000)
+    public void testDoesNotDispatchEmptyBatches() throws Exception {
+        // Set up a dispatch queue which fails to read the first entry once, handing out an empty batch
+        final LinkedBlockingQueue<Map.Entry<String, MyMessage>> queue = new LinkedBlockingQueue<>();
+        final CountDownLatch failedRead = new CountDownLatch(1);
+        DispatchQueueServiceLoader.setDispatchQueue(new DispatchQueueFactory() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public <T> DispatchQueue<T> getQueue(AsyncPolicy asyncPolicy, String moduleName, Function<T, byte[]> serializer,
+                                                 Function<byte[], T> deserializer) {
+                return (DispatchQueue<T>) new DispatchQueue<MyMessage>() {
+                    @Override
+                    public EnqueueResult enqueue(MyMessage message, String key) {
+                        queue.add(new AbstractMap.SimpleImmutableEntry<>(key, message));
+                        return EnqueueResult.IMMEDIATE;
+                    }
+
+                    @Override
+                    public Map.Entry<String, MyMessage> dequeue() throws InterruptedException {
+                        return queue.take();
+                    }
+
+                    @Override
+                    public int dequeueBatch(List<Map.Entry<String, MyMessage>> entries, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+                        if (failedRead.getCount() > 0) {
+                            failedRead.countDown();
+                            return 0;
+                        }
+                        return DispatchQueue.drain(queue, entries, maxEntries, timeout, unit);
+                    }
+
+                    @Override
+                    public boolean isFull() {
+                        return false;
+                    }
+
+                    @Override
+                    public int getSize() {
+                        return queue.size();
+                    }
+                };
+            }
+        });
+
+        when(module.getAsyncPolicy()).thenReturn(new AsyncPolicy() {
+            @Override
+            public int getQueueSize() {
+                return QUEUE_SIZE;
+            }
+
+            @Override
+            public int getNumThreads() {
+                return 1;
+            }
+
+            @Override
+            public boolean isBlockWhenFull() {
+                return true;
+            }
+
+            @Override
+            public int getBatchSize() {
+                return 10;
+            }
+        });
+
+        final AsyncDispatcher<MyMessage> asyncDispatcher = blockableDispatcherFactory.createAsyncDispatcher(module);
+        BlockableSyncDispatcher<MyMessage> blockableSyncDispatcher =
+                blockableDispatcherFactory.getBlockableSyncDispatcher();
+
+        failedRead.await();
+        final CompletableFuture<AsyncDispatcher.DispatchStatus> future = asyncDispatcher.send(new MyMessage("0"));
+        assertThat(future.get(1, MINUTES), equalTo(AsyncDispatcher.DispatchStatus.DISPATCHED));
+
+        // Only the message should have been sent, without an empty batch ahead of it
+        assertThat(blockableSyncDispatcher.getBatchSizes(), contains(1));
+
+        asyncDispatcher.close();
+    }
+
     @Test
     public void doesNotRaceOnResultCompletingFuture() throws Exception {
         int inMemorySize = 20000;
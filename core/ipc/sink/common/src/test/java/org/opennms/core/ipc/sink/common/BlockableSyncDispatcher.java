@@ -35,6 +35,7 @@ public class BlockableSyncDispatcher<S extends Message> implements SyncDispatche
     private final AtomicInteger blockedThreads = new AtomicInteger(0);
     private final AtomicInteger numDispatched = new AtomicInteger(0);
     private final List<S> dispatchedMessages = new CopyOnWriteArrayList<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
 
     @Override
     public void send(S message) {
@@ -42,6 +43,17 @@ public class BlockableSyncDispatcher<S extends Message> implements SyncDispatche
         dispatchThreadLatch.await();
         numDispatched.incrementAndGet();
         dispatchedMessages.add(message);
+        batchSizes.add(1);
+        blockedThreads.decrementAndGet();
+    }
+
+    @Override
+    public void send(List<S> messages) {
+        blockedThreads.incrementAndGet();
+        dispatchThreadLatch.await();
+        numDispatched.addAndGet(messages.size());
+        dispatchedMessages.addAll(messages);
+        batchSizes.add(messages.size());
         blockedThreads.decrementAndGet();
     }
 
@@ -70,6 +82,10 @@ public class BlockableSyncDispatcher<S extends Message> implements SyncDispatche
         return Collections.unmodifiableList(dispatchedMessages);
     }
 
+    public List<Integer> getBatchSizes() {
+        return Collections.unmodifiableList(batchSizes);
+    }
+
     private static class DispatchThreadLatch {
         private boolean blocked = false;
 
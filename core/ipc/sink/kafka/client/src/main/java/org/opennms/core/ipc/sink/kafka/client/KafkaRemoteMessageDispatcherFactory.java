@@ -28,6 +28,8 @@ import static org.opennms.core.ipc.sink.api.Message.SINK_METRIC_PRODUCER_DOMAIN;
 
 import java.io.IOException;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
@@ -111,6 +113,47 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
         }
     }
 
+    /**
+     * Hands the records for all of the messages to the producer before waiting on any of them, so that they
+     * can be shipped in as few requests as possible. Messages that need to be split into several chunks are
+     * sent one at a time, since all of their chunks must end up on the same partition.
+     */
+    @Override
+    public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, String topic, List<T> messages) {
+        try (MDCCloseable mdc = Logging.withPrefixCloseable(MessageConsumerManager.LOG_PREFIX)) {
+            LOG.trace("dispatch({}): sending {} messages", topic, messages.size());
+            final List<ProducerRecord<String, byte[]>> records = new ArrayList<>(messages.size());
+            final List<Future<RecordMetadata>> futures = new ArrayList<>(messages.size());
+            int totalSize = 0;
+            for (T message : messages) {
+                byte[] sinkMessageContent = module.marshal(message);
+                String messageId = UUID.randomUUID().toString();
+                final String messageKey = module.getRoutingKey(message).orElse(messageId);
+                if (sinkMessageContent.length == 0 || sinkMessageContent.length > maxBufferSize) {
+                    boolean partitionChanged = false;
+                    do {
+                        partitionChanged = sendMessage(topic, messageId, messageKey, sinkMessageContent);
+                    } while (partitionChanged);
+                    continue;
+                }
+                final ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, messageKey,
+                        wrapMessageToProto(messageId, 0, 1, sinkMessageContent));
+                records.add(record);
+                futures.add(producer.send(record));
+                totalSize += sinkMessageContent.length;
+            }
+            Span activeSpan = getTracer().activeSpan();
+            if (activeSpan != null) {
+                activeSpan.setTag(TracerConstants.TAG_TOPIC, topic);
+                activeSpan.setTag(TracerConstants.TAG_MESSAGE_SIZE, totalSize);
+                activeSpan.setTag(TracerConstants.TAG_THREAD, Thread.currentThread().getName());
+            }
+            for (int i = 0; i < futures.size() && !Thread.currentThread().isInterrupted(); i++) {
+                awaitMessageChunk(topic, records.get(i), futures.get(i));
+            }
+        }
+    }
+
     /**
      * This method will divide message into chunks and send each chunk to kafka.
      * This will return false by default. If this is large buffer (total chunks > 1) and if different chunks have
@@ -154,11 +197,21 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
      * @return  partition number
      */
     private int sendMessageChunkToKafka(String topic, ProducerRecord<String, byte[]> record) {
+        // From KafkaProducer's JavaDoc: The producer is thread safe and should generally be shared among all threads for best performance.
+        return awaitMessageChunk(topic, record, producer.send(record));
+    }
+
+    /**
+     * Waits for a chunk that was handed to the producer to be sent, sending it again on timeouts.
+     * @param topic   The kafka topic message needs to be sent
+     * @param record message
+     * @param future the result of the initial send
+     * @return  partition number
+     */
+    private int awaitMessageChunk(String topic, ProducerRecord<String, byte[]> record, Future<RecordMetadata> future) {
 
         while (true) {
             try {
-                // From KafkaProducer's JavaDoc: The producer is thread safe and should generally be shared among all threads for best performance.
-                final Future<RecordMetadata> future = producer.send(record);
                 // The call to dispatch() is synchronous, so we block until the message was sent
                 RecordMetadata recordMetadata = future.get();
                 return recordMetadata.partition();
@@ -171,6 +224,7 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
                 // For this case keep sending the message until it delivers, will cause sink messages to buffer.
                 if (e.getCause() != null && e.getCause() instanceof TimeoutException) {
                     LOG.warn("Timeout occured while sending message to topic {}, it will be attempted again.", topic);
+                    future = producer.send(record);
                 } else {
                     LOG.error("Exception occured while sending message to topic {} ", e);
                     break;
@@ -42,6 +42,7 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
@@ -49,6 +50,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
@@ -67,6 +69,8 @@ public class DataBlocksOffHeapQueue<T> implements DispatchQueue<T> {
             .every(Duration.ofSeconds(30))
             .build();
 
+    private static final long BATCH_POLL_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
     private final Lock headLock = new ReentrantLock(true);
     private final Lock tailLock = new ReentrantLock(true);
 
@@ -277,6 +281,43 @@ public class DataBlocksOffHeapQueue<T> implements DispatchQueue<T> {
         return data;
     }
 
+    /**
+     * Reads the entries under a single acquisition of the head lock. Once the first entry was read we keep reading
+     * until the batch is full, or until the queue runs empty and the timeout has elapsed.
+     */
+    @Override
+    public int dequeueBatch(List<Map.Entry<String, T>> entries, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+        headLock.lock();
+
+        int count = 0;
+        try {
+            Map.Entry<String, T> data = null;
+            while (data == null) {
+                data = readData();
+            }
+            entries.add(data);
+            count++;
+
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (count < maxEntries) {
+                data = readData();
+                if (data != null) {
+                    entries.add(data);
+                    count++;
+                } else if (deadline - System.nanoTime() > 0) {
+                    LockSupport.parkNanos(BATCH_POLL_INTERVAL_NANOS);
+                } else {
+                    break;
+                }
+            }
+        } catch (ReadFailedException e) {
+            LOG.error("Fail to dequeue. {}", e.getMessage());
+        } finally {
+            headLock.unlock();
+        }
+        return count;
+    }
+
     private Map.Entry<String, T> readData() throws ReadFailedException, InterruptedException {
         Map.Entry<String, T> data = null;
         boolean headTailEqual = false;
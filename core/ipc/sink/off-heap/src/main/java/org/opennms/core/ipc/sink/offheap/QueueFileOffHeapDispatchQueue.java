@@ -43,6 +43,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
@@ -309,6 +310,29 @@ public class QueueFileOffHeapDispatchQueue<T> implements DispatchQueue<T> {
     public Map.Entry<String, T> dequeue() throws InterruptedException {
         LOG.debug("Dequeueing an entry from queue with current size {}", getSize());
 
+        moveToInMemoryQueue();
+
+        LOG.trace("Waiting for an entry from in-memory queue...");
+
+        return inMemoryQueue.take();
+    }
+
+    /**
+     * Same as {@link #dequeue()}, except that the entries are then drained from the in-memory queue up to the given
+     * maximum.
+     */
+    @Override
+    public int dequeueBatch(List<Map.Entry<String, T>> entries, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+        LOG.debug("Dequeueing up to {} entries from queue with current size {}", maxEntries, getSize());
+
+        moveToInMemoryQueue();
+
+        LOG.trace("Waiting for entries from in-memory queue...");
+
+        return DispatchQueue.drain(inMemoryQueue, entries, maxEntries, timeout, unit);
+    }
+
+    private void moveToInMemoryQueue() throws InterruptedException {
         // If off-heap queueing is enabled we need to first check if there is anything to read off-heap
         if (offHeapQueue != null) {
             offHeapLock.lock();
@@ -355,10 +379,6 @@ public class QueueFileOffHeapDispatchQueue<T> implements DispatchQueue<T> {
                 offHeapLock.unlock();
             }
         }
-
-        LOG.trace("Waiting for an entry from in-memory queue...");
-
-        return inMemoryQueue.take();
     }
 
     @Override
@@ -36,6 +36,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -88,6 +89,26 @@ public class DataBlocksOffHeapQueueTest {
         assertThat(payload3, equalTo(queue.dequeue().getValue()));
     }
 
+    @Test
+    public void canDequeueBatch() throws IOException, WriteFailedException, InterruptedException, QueueCreateFailedException {
+        DataBlocksOffHeapQueue<String> queue = new DataBlocksOffHeapQueue<>(String::getBytes, String::new,
+                "canDequeueBatch", Paths.get(folder.newFolder().toURI()), 2, 2, 1000_000_000L);
+
+        // Spread the entries over memory and off-heap blocks
+        for (int i = 0; i < 7; i++) {
+            queue.enqueue("msg" + i, "key" + i);
+        }
+
+        List<Map.Entry<String, String>> entries = new ArrayList<>();
+        assertThat(queue.dequeueBatch(entries, 5, 0, TimeUnit.MILLISECONDS), equalTo(5));
+        // Only two entries are left, so the second batch should stop once the timeout elapses
+        assertThat(queue.dequeueBatch(entries, 5, 10, TimeUnit.MILLISECONDS), equalTo(2));
+
+        assertThat(entries.stream().map(Map.Entry::getValue).collect(Collectors.toList()),
+                equalTo(IntStream.range(0, 7).mapToObj(i -> "msg" + i).collect(Collectors.toList())));
+        assertThat(0, equalTo(queue.getSize()));
+    }
+
     @Test
     public synchronized void canRestoreOffHeapBlock() throws IOException, WriteFailedException, InterruptedException, QueueCreateFailedException, ReadFailedException {
         Path offHeapPath = Paths.get(folder.newFolder().toURI());
@@ -23,6 +23,7 @@ package org.opennms.netmgt.snmp.snmp4j;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Arrays;
 
 import org.apache.commons.lang.StringUtils;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
@@ -346,14 +347,23 @@ public class Snmp4JAgentConfig {
 
     public Snmp createSnmpSession() throws IOException {
         final TransportMapping<?> transport = new DefaultUdpTransportMapping();
+        return new Snmp(createMessageDispatcher(), transport);
+    }
+
+    /**
+     * Creates a message dispatcher with only the message processing models
+     * needed for the specific agent.
+     */
+    MessageDispatcher createMessageDispatcher() {
         final MessageDispatcher disp = new MessageDispatcherImpl();
-        final Snmp session;
-        // Here we create the SNMP session, while only adding the message processing
-        // models we need for the specific agent
+        addMessageProcessingModels(disp);
+        return disp;
+    }
+
+    void addMessageProcessingModels(final MessageDispatcher disp) {
         if (!isSnmpV3()) {
             disp.addMessageProcessingModel(new MPv1());
             disp.addMessageProcessingModel(new MPv2c());
-            session = new Snmp(disp, transport);
         } else {
             // Make a new USM
             final USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
@@ -369,9 +379,19 @@ public class Snmp4JAgentConfig {
                 )
             );
             disp.addMessageProcessingModel(new MPv3(usm));
-            session = new Snmp(disp, transport);
         }
-        return session;
+    }
+
+    /**
+     * Returns a key that is equal for all of the agents whose requests can be sent
+     * through the same session: all SNMPv1 and SNMPv2c agents, and the SNMPv3 agents
+     * sharing the same user.
+     */
+    Object getSessionKey() {
+        if (!isSnmpV3()) {
+            return "community";
+        }
+        return Arrays.asList(getSecurityName(), getAuthProtocol(), getAuthPassPhrase(), getPrivProtocol(), getPrivPassPhrase());
     }
 
 
@@ -0,0 +1,257 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.smi.Address;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.ThreadPool;
+
+/**
+ * Sends SNMP requests through a small, fixed set of long-lived UDP transports
+ * instead of opening a new session, socket and listener thread for every request.
+ * <p>
+ * Agents that can share a session (see {@link Snmp4JAgentConfig#getSessionKey()}) are served by
+ * the same {@link Snmp} instance, which demultiplexes the responses by request ID. Every agent is
+ * always sent its requests from the same transport. Responses are processed by a fixed pool of
+ * worker threads, shared by all of the sessions.
+ * <p>
+ * The number of requests in flight to a single agent is limited. Additional requests are queued
+ * and sent as soon as one of the outstanding requests completes or times out.
+ * <p>
+ * The pool is used when the {@code org.opennms.snmp.snmp4j.pooled} system property is set to true.
+ */
+public class Snmp4JSessionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    private static final boolean ENABLED = Boolean.getBoolean("org.opennms.snmp.snmp4j.pooled");
+    private static final int NUM_TRANSPORTS = Integer.getInteger("org.opennms.snmp.snmp4j.pool.transports", 4);
+    private static final int NUM_THREADS = Integer.getInteger("org.opennms.snmp.snmp4j.pool.threads", 2 * Runtime.getRuntime().availableProcessors());
+    private static final int MAX_IN_FLIGHT_PER_AGENT = Integer.getInteger("org.opennms.snmp.snmp4j.pool.maxInFlightPerAgent", 2);
+
+    private static Snmp4JSessionPool s_instance;
+
+    private final int m_numTransports;
+    private final int m_maxInFlightPerAgent;
+    private final ThreadPool m_threadPool;
+    private final Map<Object, SharedSession> m_sessions = new ConcurrentHashMap<>();
+    // guarded by itself
+    private final Map<Address, AgentRequests> m_agents = new HashMap<>();
+
+    private static class SharedSession {
+        private final Snmp m_snmp;
+        private final TransportMapping<?>[] m_transports;
+
+        private SharedSession(Snmp snmp, TransportMapping<?>[] transports) {
+            m_snmp = snmp;
+            m_transports = transports;
+        }
+
+        private TransportMapping<?> getTransport(Address address) {
+            return m_transports[Math.floorMod(address.hashCode(), m_transports.length)];
+        }
+    }
+
+    private static class AgentRequests {
+        private int m_inFlight = 0;
+        private final Queue<PooledRequest> m_pending = new ArrayDeque<>();
+    }
+
+    /**
+     * Tracks a single request, and releases its slot once the response or the timeout is received.
+     */
+    private class PooledRequest implements ResponseListener {
+        private final SharedSession m_session;
+        private final PDU m_pdu;
+        private final Target m_target;
+        private final ResponseListener m_listener;
+        private final AtomicBoolean m_done = new AtomicBoolean(false);
+
+        private PooledRequest(SharedSession session, PDU pdu, Target target, ResponseListener listener) {
+            m_session = session;
+            m_pdu = pdu;
+            m_target = target;
+            m_listener = listener;
+        }
+
+        private void send() throws IOException {
+            m_session.m_snmp.send(m_pdu, m_target, m_session.getTransport(m_target.getAddress()), null, this);
+        }
+
+        @Override
+        public void onResponse(ResponseEvent responseEvent) {
+            // SNMP4J keeps track of the request until it is cancelled
+            m_session.m_snmp.cancel(responseEvent.getRequest(), this);
+            complete();
+            m_listener.onResponse(responseEvent);
+        }
+
+        private void fail(IOException e) {
+            complete();
+            m_listener.onResponse(new ResponseEvent(m_session.m_snmp, m_target.getAddress(), m_pdu, null, null, e));
+        }
+
+        private void complete() {
+            if (m_done.compareAndSet(false, true)) {
+                release(m_target.getAddress());
+            }
+        }
+    }
+
+    /**
+     * @return the shared pool, or null if pooling is disabled
+     */
+    public static synchronized Snmp4JSessionPool getInstance() {
+        if (!ENABLED) {
+            return null;
+        }
+        if (s_instance == null) {
+            s_instance = new Snmp4JSessionPool(NUM_TRANSPORTS, NUM_THREADS, MAX_IN_FLIGHT_PER_AGENT);
+        }
+        return s_instance;
+    }
+
+    public Snmp4JSessionPool(int numTransports, int numThreads, int maxInFlightPerAgent) {
+        if (numTransports < 1 || numThreads < 1 || maxInFlightPerAgent < 1) {
+            throw new IllegalArgumentException("The number of transports, threads and requests in flight must be positive.");
+        }
+        m_numTransports = numTransports;
+        m_maxInFlightPerAgent = maxInFlightPerAgent;
+        m_threadPool = ThreadPool.create("SNMP4J-Pool", numThreads);
+    }
+
+    /**
+     * Sends the given request to the agent and notifies the listener of the response.
+     * The request may be queued if too many requests to the agent are already in flight,
+     * in which case failures to send it are reported to the listener.
+     *
+     * @throws IOException if the request could not be sent right away
+     */
+    public void send(Snmp4JAgentConfig agentConfig, PDU pdu, Target target, ResponseListener listener) throws IOException {
+        final PooledRequest request = new PooledRequest(getSession(agentConfig), pdu, target, listener);
+        synchronized (m_agents) {
+            final AgentRequests agent = m_agents.computeIfAbsent(target.getAddress(), a -> new AgentRequests());
+            if (agent.m_inFlight >= m_maxInFlightPerAgent) {
+                agent.m_pending.add(request);
+                return;
+            }
+            agent.m_inFlight++;
+        }
+        try {
+            request.send();
+        } catch (final IOException e) {
+            request.complete();
+            throw e;
+        }
+    }
+
+    private void release(Address address) {
+        final PooledRequest next;
+        synchronized (m_agents) {
+            final AgentRequests agent = m_agents.get(address);
+            next = agent.m_pending.poll();
+            if (next == null) {
+                agent.m_inFlight--;
+                if (agent.m_inFlight == 0) {
+                    m_agents.remove(address);
+                }
+                return;
+            }
+            // the slot is handed over to the next request
+        }
+        try {
+            next.send();
+        } catch (final IOException e) {
+            LOG.warn("Failed to send queued request to {}", address, e);
+            next.fail(e);
+        }
+    }
+
+    private SharedSession getSession(Snmp4JAgentConfig agentConfig) throws IOException {
+        try {
+            return m_sessions.computeIfAbsent(agentConfig.getSessionKey(), key -> {
+                try {
+                    return createSession(agentConfig);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private SharedSession createSession(Snmp4JAgentConfig agentConfig) throws IOException {
+        final Snmp snmp = new Snmp(new MultiThreadedMessageDispatcher(m_threadPool, agentConfig.createMessageDispatcher()));
+        final TransportMapping<?>[] transports = new TransportMapping<?>[m_numTransports];
+        try {
+            for (int i = 0; i < transports.length; i++) {
+                transports[i] = new DefaultUdpTransportMapping();
+                snmp.addTransportMapping(transports[i]);
+            }
+            snmp.listen();
+        } catch (final IOException e) {
+            snmp.close();
+            throw e;
+        }
+        LOG.info("Created a shared SNMP session with {} transports for {}", transports.length, agentConfig.isSnmpV3() ? "SNMPv3 user " + agentConfig.getSecurityName() : "SNMPv1/v2c");
+        return new SharedSession(snmp, transports);
+    }
+
+    /**
+     * @return the number of requests waiting to be sent
+     */
+    public int getPendingRequestCount() {
+        synchronized (m_agents) {
+            return m_agents.values().stream().mapToInt(a -> a.m_pending.size()).sum();
+        }
+    }
+
+    public void close() {
+        for (SharedSession session : m_sessions.values()) {
+            try {
+                session.m_snmp.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close shared SNMP session", e);
+            }
+        }
+        m_sessions.clear();
+        m_threadPool.stop();
+    }
+}
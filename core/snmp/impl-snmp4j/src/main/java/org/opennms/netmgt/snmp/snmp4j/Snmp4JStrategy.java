@@ -334,6 +334,12 @@ public class Snmp4JStrategy implements SnmpStrategy {
     }
 
     private void send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse, CompletableFuture<SnmpValue[]> future) {
+        final Snmp4JSessionPool pool = Snmp4JSessionPool.getInstance();
+        if (pool != null && expectResponse) {
+            sendPooled(pool, agentConfig, pdu, future);
+            return;
+        }
+
         Snmp session;
 
         try {
@@ -398,6 +404,24 @@ public class Snmp4JStrategy implements SnmpStrategy {
         }
     }
 
+    private static void sendPooled(Snmp4JSessionPool pool, Snmp4JAgentConfig agentConfig, PDU pdu, CompletableFuture<SnmpValue[]> future) {
+        try {
+            pool.send(agentConfig, pdu, agentConfig.getTarget(pdu.getType() == PDU.SET), new ResponseListener() {
+                @Override
+                public void onResponse(final ResponseEvent responseEvent) {
+                    try {
+                        future.complete(processResponse(agentConfig, responseEvent, pdu));
+                    } catch (final Exception e) {
+                        future.completeExceptionally(new SnmpException(e));
+                    }
+                }
+            });
+        } catch (final Exception e) {
+            LOG.error("send: error during SNMP operation", e);
+            future.completeExceptionally(e);
+        }
+    }
+
     protected static PDU buildPdu(Snmp4JAgentConfig agentConfig, int pduType, SnmpObjId[] oids, SnmpValue[] values) {
         PDU pdu = agentConfig.createPdu(pduType);
         
@@ -0,0 +1,158 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+public class Snmp4JSessionPoolTest {
+
+    private static final OID SYS_NAME = new OID("1.3.6.1.2.1.1.5.0");
+
+    private Snmp4JSessionPool m_pool;
+    private final List<Snmp> m_agents = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        m_pool = new Snmp4JSessionPool(2, 2, 2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        m_pool.close();
+        for (Snmp agent : m_agents) {
+            agent.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void canSendRequestsToManyAgentsThroughSharedTransports() throws Exception {
+        final List<Snmp4JAgentConfig> agentConfigs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            agentConfigs.add(createAgentConfig(startAgent("agent" + i), 1000));
+        }
+
+        final List<CompletableFuture<ResponseEvent>> responses = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            responses.add(get(agentConfigs.get(i % agentConfigs.size())));
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            final ResponseEvent responseEvent = responses.get(i).get(10, TimeUnit.SECONDS);
+            assertNotNull(responseEvent.getResponse());
+            assertEquals(new OctetString("agent" + (i % agentConfigs.size())), responseEvent.getResponse().get(0).getVariable());
+        }
+        assertEquals(0, m_pool.getPendingRequestCount());
+    }
+
+    @Test(timeout = 30000)
+    public void canLimitRequestsInFlightPerAgent() throws Exception {
+        // Nobody is listening on this port, so all of the requests time out
+        final Snmp4JAgentConfig agentConfig = createAgentConfig(getFreePort(), 500);
+
+        final List<CompletableFuture<ResponseEvent>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            responses.add(get(agentConfig));
+        }
+        assertEquals(3, m_pool.getPendingRequestCount());
+
+        for (CompletableFuture<ResponseEvent> response : responses) {
+            assertNull(response.get(10, TimeUnit.SECONDS).getResponse());
+        }
+        assertEquals(0, m_pool.getPendingRequestCount());
+    }
+
+    private CompletableFuture<ResponseEvent> get(Snmp4JAgentConfig agentConfig) throws IOException {
+        final CompletableFuture<ResponseEvent> future = new CompletableFuture<>();
+        final PDU pdu = agentConfig.createPdu(PDU.GET);
+        pdu.add(new VariableBinding(SYS_NAME));
+        m_pool.send(agentConfig, pdu, agentConfig.getTarget(), future::complete);
+        return future;
+    }
+
+    private static Snmp4JAgentConfig createAgentConfig(int port, int timeout) {
+        final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getLoopbackAddress());
+        config.setPort(port);
+        config.setVersion(SnmpAgentConfig.VERSION2C);
+        config.setReadCommunity("public");
+        config.setTimeout(timeout);
+        config.setRetries(0);
+        return new Snmp4JAgentConfig(config);
+    }
+
+    /**
+     * Starts an agent that answers every request with the given name.
+     */
+    private int startAgent(String name) throws IOException {
+        final int port = getFreePort();
+        final Snmp agent = new Snmp(new DefaultUdpTransportMapping(new UdpAddress(InetAddress.getLoopbackAddress(), port)));
+        agent.addCommandResponder(event -> respond(event, name));
+        agent.listen();
+        m_agents.add(agent);
+        return port;
+    }
+
+    private static void respond(CommandResponderEvent event, String name) {
+        final PDU response = event.getPDU();
+        response.setType(PDU.RESPONSE);
+        response.setErrorStatus(SnmpConstants.SNMP_ERROR_SUCCESS);
+        response.get(0).setVariable(new OctetString(name));
+        try {
+            event.getMessageDispatcher().returnResponsePdu(event.getMessageProcessingModel(), event.getSecurityModel(),
+                    event.getSecurityName(), event.getSecurityLevel(), response, event.getMaxSizeResponsePDU(),
+                    event.getStateReference(), new StatusInformation());
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        event.setProcessed(true);
+    }
+
+    private static int getFreePort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
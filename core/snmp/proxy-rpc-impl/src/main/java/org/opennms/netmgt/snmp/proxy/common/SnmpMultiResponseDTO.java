@@ -58,6 +58,10 @@ public class SnmpMultiResponseDTO implements RpcResponse {
         return responses;
     }
 
+    void setError(String error) {
+        this.error = error;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(responses, error);
@@ -32,6 +32,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 
+import org.opennms.core.rpc.api.RpcCodec;
 import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
 import org.opennms.core.utils.LocationUtils;
 import org.opennms.features.scv.api.SecureCredentialsVault;
@@ -76,6 +77,11 @@ public class SnmpProxyRpcModule extends AbstractXmlRpcModule<SnmpRequestDTO, Snm
         super(SnmpRequestDTO.class, SnmpMultiResponseDTO.class);
     }
 
+    @Override
+    public RpcCodec<SnmpMultiResponseDTO> getCodec() {
+        return SnmpResponseCodec.INSTANCE;
+    }
+
     @Override
     public CompletableFuture<SnmpMultiResponseDTO> execute(SnmpRequestDTO request) {
         if (request.getAgent() != null &&
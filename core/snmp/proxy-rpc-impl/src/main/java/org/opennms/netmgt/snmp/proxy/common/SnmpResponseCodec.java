@@ -0,0 +1,356 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.snmp.proxy.common;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opennms.core.rpc.api.RpcCodec;
+import org.opennms.netmgt.snmp.SnmpInstId;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpValueFactory;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Encodes {@link SnmpMultiResponseDTO}s using the protobuf wire format described in {@code snmp-rpc.proto}.
+ *
+ * Walks of large tables return thousands of varbinds, for which the XML representation spells out every
+ * OID as a dotted string and every value as base64. Here, OIDs are packed varints and values are raw bytes,
+ * and both are mapped directly from and to the DTOs without an intermediate object model.
+ */
+public class SnmpResponseCodec implements RpcCodec<SnmpMultiResponseDTO> {
+
+    public static final String NAME = "snmp-proto-v1";
+
+    public static final SnmpResponseCodec INSTANCE = new SnmpResponseCodec();
+
+    private static final int MULTI_RESPONSE_ERROR = 1;
+    private static final int MULTI_RESPONSE_RESPONSES = 2;
+
+    private static final int RESPONSE_CORRELATION_ID = 1;
+    private static final int RESPONSE_RESULTS = 2;
+
+    private static final int RESULT_BASE = 1;
+    private static final int RESULT_INSTANCE = 2;
+    private static final int RESULT_VALUE = 3;
+
+    private static final int OID_IDS = 1;
+
+    private static final int VALUE_TYPE = 1;
+    private static final int VALUE_BYTES = 2;
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encodeResponse(final SnmpMultiResponseDTO response) {
+        // Sizes of nested messages must be known before they are written, so the results are flattened
+        // and sized in a first pass and written to an exactly sized buffer in a second one
+        final List<SnmpResponseDTO> responses = response.getResponses();
+        final EncodedResponse[] encodedResponses = new EncodedResponse[responses.size()];
+        int size = 0;
+        if (response.getErrorMessage() != null) {
+            size += CodedOutputStream.computeStringSize(MULTI_RESPONSE_ERROR, response.getErrorMessage());
+        }
+        for (int i = 0; i < encodedResponses.length; i++) {
+            encodedResponses[i] = new EncodedResponse(responses.get(i));
+            size += computeMessageSize(MULTI_RESPONSE_RESPONSES, encodedResponses[i].size);
+        }
+
+        final byte[] buffer = new byte[size];
+        final CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+        try {
+            if (response.getErrorMessage() != null) {
+                out.writeString(MULTI_RESPONSE_ERROR, response.getErrorMessage());
+            }
+            for (final EncodedResponse encodedResponse : encodedResponses) {
+                writeMessageHeader(out, MULTI_RESPONSE_RESPONSES, encodedResponse.size);
+                encodedResponse.writeTo(out);
+            }
+            out.checkNoSpaceLeft();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to encode SNMP response", e);
+        }
+        return buffer;
+    }
+
+    @Override
+    public SnmpMultiResponseDTO decodeResponse(final byte[] response) {
+        final SnmpMultiResponseDTO multiResponse = new SnmpMultiResponseDTO();
+        final Decoder decoder = new Decoder();
+        final CodedInputStream in = CodedInputStream.newInstance(response);
+        try {
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (tag) {
+                    case (MULTI_RESPONSE_ERROR << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        multiResponse.setError(in.readStringRequireUtf8());
+                        break;
+                    case (MULTI_RESPONSE_RESPONSES << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        final int limit = in.pushLimit(in.readRawVarint32());
+                        multiResponse.getResponses().add(decoder.readResponse(in));
+                        in.popLimit(limit);
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Failed to decode SNMP response", e);
+        }
+        return multiResponse;
+    }
+
+    private static int computeMessageSize(final int field, final int size) {
+        return CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+
+    private static void writeMessageHeader(final CodedOutputStream out, final int field, final int size) throws IOException {
+        out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(size);
+    }
+
+    private static int computePackedSize(final int[] ids) {
+        int size = 0;
+        for (final int id : ids) {
+            size += CodedOutputStream.computeUInt32SizeNoTag(id);
+        }
+        return size;
+    }
+
+    private static int computeOidSize(final int[] ids, final int packedSize) {
+        return ids.length == 0 ? 0 : computeMessageSize(OID_IDS, packedSize);
+    }
+
+    private static void writeOid(final CodedOutputStream out, final int field, final int[] ids) throws IOException {
+        final int packedSize = computePackedSize(ids);
+        writeMessageHeader(out, field, computeOidSize(ids, packedSize));
+        if (ids.length > 0) {
+            writeMessageHeader(out, OID_IDS, packedSize);
+            for (final int id : ids) {
+                out.writeUInt32NoTag(id);
+            }
+        }
+    }
+
+    private static final class EncodedResponse {
+        private final String correlationId;
+        private final EncodedResult[] results;
+        private final int size;
+
+        private EncodedResponse(final SnmpResponseDTO response) {
+            correlationId = response.getCorrelationId();
+            final List<SnmpResult> snmpResults = response.getResults();
+            results = new EncodedResult[snmpResults.size()];
+            int size = 0;
+            if (correlationId != null) {
+                size += CodedOutputStream.computeStringSize(RESPONSE_CORRELATION_ID, correlationId);
+            }
+            for (int i = 0; i < results.length; i++) {
+                results[i] = new EncodedResult(snmpResults.get(i));
+                size += computeMessageSize(RESPONSE_RESULTS, results[i].size);
+            }
+            this.size = size;
+        }
+
+        private void writeTo(final CodedOutputStream out) throws IOException {
+            if (correlationId != null) {
+                out.writeString(RESPONSE_CORRELATION_ID, correlationId);
+            }
+            for (final EncodedResult result : results) {
+                writeMessageHeader(out, RESPONSE_RESULTS, result.size);
+                result.writeTo(out);
+            }
+        }
+    }
+
+    private static final class EncodedResult {
+        private final int[] base;
+        private final int[] instance;
+        private final SnmpValue value;
+        private final byte[] valueBytes;
+        private final int valueSize;
+        private final int size;
+
+        private EncodedResult(final SnmpResult result) {
+            base = result.getBase() != null ? result.getBase().getIds() : null;
+            instance = result.getInstance() != null ? result.getInstance().getIds() : null;
+            value = result.getValue();
+
+            int size = 0;
+            if (base != null) {
+                size += computeMessageSize(RESULT_BASE, computeOidSize(base, computePackedSize(base)));
+            }
+            if (instance != null) {
+                size += computeMessageSize(RESULT_INSTANCE, computeOidSize(instance, computePackedSize(instance)));
+            }
+            if (value != null) {
+                final byte[] bytes = value.getBytes();
+                valueBytes = bytes != null ? bytes : EMPTY_BYTES;
+                valueSize = CodedOutputStream.computeUInt32Size(VALUE_TYPE, value.getType())
+                        + CodedOutputStream.computeByteArraySize(VALUE_BYTES, valueBytes);
+                size += computeMessageSize(RESULT_VALUE, valueSize);
+            } else {
+                valueBytes = null;
+                valueSize = 0;
+            }
+            this.size = size;
+        }
+
+        private void writeTo(final CodedOutputStream out) throws IOException {
+            if (base != null) {
+                writeOid(out, RESULT_BASE, base);
+            }
+            if (instance != null) {
+                writeOid(out, RESULT_INSTANCE, instance);
+            }
+            if (value != null) {
+                writeMessageHeader(out, RESULT_VALUE, valueSize);
+                out.writeUInt32(VALUE_TYPE, value.getType());
+                out.writeByteArray(VALUE_BYTES, valueBytes);
+            }
+        }
+    }
+
+    /**
+     * Holds the state shared by all results of a single response.
+     */
+    private static final class Decoder {
+        private int[] ids = new int[32];
+        private SnmpValueFactory valueFactory;
+
+        private SnmpResponseDTO readResponse(final CodedInputStream in) throws IOException {
+            final SnmpResponseDTO response = new SnmpResponseDTO();
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (tag) {
+                    case (RESPONSE_CORRELATION_ID << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        response.setCorrelationId(in.readStringRequireUtf8());
+                        break;
+                    case (RESPONSE_RESULTS << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        final int limit = in.pushLimit(in.readRawVarint32());
+                        response.getResults().add(readResult(in));
+                        in.popLimit(limit);
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            return response;
+        }
+
+        private SnmpResult readResult(final CodedInputStream in) throws IOException {
+            SnmpObjId base = null;
+            SnmpInstId instance = null;
+            SnmpValue value = null;
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                final int limit;
+                switch (tag) {
+                    case (RESULT_BASE << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        limit = in.pushLimit(in.readRawVarint32());
+                        base = new SnmpObjId(readOid(in), false);
+                        in.popLimit(limit);
+                        break;
+                    case (RESULT_INSTANCE << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        limit = in.pushLimit(in.readRawVarint32());
+                        instance = new SnmpInstId(readOid(in));
+                        in.popLimit(limit);
+                        break;
+                    case (RESULT_VALUE << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        limit = in.pushLimit(in.readRawVarint32());
+                        value = readValue(in);
+                        in.popLimit(limit);
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            return new SnmpResult(base, instance, value);
+        }
+
+        private int[] readOid(final CodedInputStream in) throws IOException {
+            int length = 0;
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (tag) {
+                    case (OID_IDS << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        final int limit = in.pushLimit(in.readRawVarint32());
+                        while (in.getBytesUntilLimit() > 0) {
+                            length = add(length, in.readUInt32());
+                        }
+                        in.popLimit(limit);
+                        break;
+                    case (OID_IDS << 3) | WireFormat.WIRETYPE_VARINT:
+                        // Unpacked encoding, which parsers must accept for repeated scalars
+                        length = add(length, in.readUInt32());
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            return Arrays.copyOf(ids, length);
+        }
+
+        private int add(final int length, final int id) {
+            if (length == ids.length) {
+                ids = Arrays.copyOf(ids, length * 2);
+            }
+            ids[length] = id;
+            return length + 1;
+        }
+
+        private SnmpValue readValue(final CodedInputStream in) throws IOException {
+            int type = 0;
+            byte[] bytes = EMPTY_BYTES;
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (tag) {
+                    case (VALUE_TYPE << 3) | WireFormat.WIRETYPE_VARINT:
+                        type = in.readUInt32();
+                        break;
+                    case (VALUE_BYTES << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                        bytes = in.readByteArray();
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            if (valueFactory == null) {
+                valueFactory = SnmpUtils.getValueFactory();
+            }
+            return valueFactory.getValue(type, bytes);
+        }
+    }
+}
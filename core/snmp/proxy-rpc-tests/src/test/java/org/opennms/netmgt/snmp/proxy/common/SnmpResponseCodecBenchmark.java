@@ -0,0 +1,87 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.snmp.proxy.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the XML marshaling of SNMP walk responses with {@link SnmpResponseCodec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class SnmpResponseCodecBenchmark {
+
+    @Param({"10", "1000"})
+    public int numRows;
+
+    private SnmpProxyRpcModule module;
+
+    private SnmpMultiResponseDTO response;
+
+    private String xml;
+
+    private byte[] proto;
+
+    @Setup
+    public void setUp() {
+        module = new SnmpProxyRpcModule();
+        response = SnmpResponseCodecTest.getWalkResponse(4, numRows);
+        xml = module.marshalResponse(response);
+        proto = SnmpResponseCodec.INSTANCE.encodeResponse(response);
+    }
+
+    @Benchmark
+    public String marshalXml() {
+        return module.marshalResponse(response);
+    }
+
+    @Benchmark
+    public SnmpMultiResponseDTO unmarshalXml() {
+        return module.unmarshalResponse(xml);
+    }
+
+    @Benchmark
+    public byte[] encodeProto() {
+        return SnmpResponseCodec.INSTANCE.encodeResponse(response);
+    }
+
+    @Benchmark
+    public SnmpMultiResponseDTO decodeProto() {
+        return SnmpResponseCodec.INSTANCE.decodeResponse(proto);
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.snmp.proxy.common;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.opennms.core.rpc.api.RpcCodecs;
+import org.opennms.netmgt.snmp.SnmpInstId;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpValueFactory;
+import org.opennms.netmgt.snmp.snmp4j.Snmp4JValueFactory;
+
+public class SnmpResponseCodecTest {
+
+    private final SnmpProxyRpcModule module = new SnmpProxyRpcModule();
+
+    @Test
+    public void canRoundTripResponses() {
+        final SnmpMultiResponseDTO response = getWalkResponse(2, 50);
+        final RpcCodecs.EncodedResponse encoded = RpcCodecs.encodeResponse(module, response, SnmpResponseCodec.NAME);
+        assertThat(encoded.getCodec(), equalTo(SnmpResponseCodec.NAME));
+
+        final SnmpMultiResponseDTO decoded = RpcCodecs.decodeResponse(module, encoded.getContent(), encoded.getCodec());
+        assertThat(decoded, equalTo(response));
+        // Must be equivalent to the XML representation
+        assertThat(decoded, equalTo(module.unmarshalResponse(module.marshalResponse(response))));
+    }
+
+    @Test
+    public void canRoundTripErrorsAndEmptyValues() {
+        final SnmpMultiResponseDTO error = new SnmpMultiResponseDTO(new IllegalStateException("boom"));
+        assertThat(SnmpResponseCodec.INSTANCE.decodeResponse(SnmpResponseCodec.INSTANCE.encodeResponse(error)), equalTo(error));
+
+        final SnmpValueFactory valueFactory = new Snmp4JValueFactory();
+        final SnmpResponseDTO response = new SnmpResponseDTO();
+        response.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.1.5"), SnmpInstId.INST_ZERO, valueFactory.getNull()));
+        response.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.1.6"), new SnmpInstId(new int[0]), valueFactory.getOctetString(new byte[0])));
+        final SnmpMultiResponseDTO multiResponse = new SnmpMultiResponseDTO();
+        multiResponse.getResponses().add(response);
+
+        final SnmpMultiResponseDTO decoded = SnmpResponseCodec.INSTANCE.decodeResponse(SnmpResponseCodec.INSTANCE.encodeResponse(multiResponse));
+        assertThat(decoded, equalTo(multiResponse));
+        assertThat(decoded.getResponses().get(0).getCorrelationId(), nullValue());
+    }
+
+    @Test
+    public void fallsBackToXmlWhenCodecIsNotAccepted() {
+        final SnmpMultiResponseDTO response = getWalkResponse(1, 10);
+
+        // Senders which don't know about codecs don't set the accepted codec
+        final RpcCodecs.EncodedResponse encoded = RpcCodecs.encodeResponse(module, response, null);
+        assertThat(encoded.getCodec(), nullValue());
+        assertThat(module.unmarshalResponse(new String(encoded.getContent(), StandardCharsets.UTF_8)), equalTo(response));
+
+        // Receivers which don't know about codecs don't set the codec
+        assertThat(RpcCodecs.decodeResponse(module, encoded.getContent(), null), equalTo(response));
+    }
+
+    @Test
+    public void isSmallerThanXml() {
+        final SnmpMultiResponseDTO response = getWalkResponse(4, 1000);
+        final int xmlSize = module.marshalResponse(response).getBytes(StandardCharsets.UTF_8).length;
+        final int protoSize = SnmpResponseCodec.INSTANCE.encodeResponse(response).length;
+        assertThat(protoSize * 4, lessThan(xmlSize));
+    }
+
+    /**
+     * Builds a response resembling the walk of an interface table.
+     */
+    protected static SnmpMultiResponseDTO getWalkResponse(int numColumns, int numRows) {
+        final SnmpValueFactory valueFactory = new Snmp4JValueFactory();
+        final SnmpMultiResponseDTO multiResponse = new SnmpMultiResponseDTO();
+        for (int column = 0; column < numColumns; column++) {
+            final SnmpResponseDTO response = new SnmpResponseDTO();
+            response.setCorrelationId(Integer.toString(column));
+            final SnmpObjId base = SnmpObjId.get(".1.3.6.1.2.1.31.1.1.1." + (column + 1));
+            for (int row = 0; row < numRows; row++) {
+                final SnmpInstId instance = new SnmpInstId(row + 1);
+                switch (column % 4) {
+                    case 0:
+                        response.getResults().add(new SnmpResult(base, instance, valueFactory.getOctetString(("ge-0/0/" + row).getBytes(StandardCharsets.UTF_8))));
+                        break;
+                    case 1:
+                        response.getResults().add(new SnmpResult(base, instance, valueFactory.getCounter64(BigInteger.valueOf(row).shiftLeft(40))));
+                        break;
+                    case 2:
+                        response.getResults().add(new SnmpResult(base, instance, valueFactory.getGauge32(row * 1000L)));
+                        break;
+                    default:
+                        response.getResults().add(new SnmpResult(base, instance, valueFactory.getIpAddress(getAddress(row))));
+                }
+            }
+            multiResponse.getResponses().add(response);
+        }
+        return multiResponse;
+    }
+
+    private static InetAddress getAddress(int row) {
+        try {
+            return InetAddress.getByAddress(new byte[] { 10, 0, (byte) (row >> 8), (byte) row });
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
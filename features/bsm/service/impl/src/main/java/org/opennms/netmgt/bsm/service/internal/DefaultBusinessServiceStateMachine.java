@@ -30,14 +30,17 @@ import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
@@ -84,7 +87,23 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
 
     private final List<BusinessServiceStateChangeHandler> m_handlers = Lists.newArrayList();
     private final ReadWriteLock m_rwLock = new ReentrantReadWriteLock();
-    private BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
+    private volatile BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
+
+    /**
+     * Immutable copy of the vertex statuses of the current graph, which allows the
+     * operational status to be read without waiting for alarms to be applied.
+     */
+    private volatile StatusSnapshot m_snapshot = new StatusSnapshot(m_g);
+
+    /**
+     * Alarm statuses waiting to be applied, keyed by reduction key. The thread holding the
+     * write lock applies all of the pending updates at once, so repeated updates for the same
+     * reduction key and updates queued by other threads in the meantime are coalesced.
+     */
+    private final Object m_pendingAlarmsLock = new Object();
+    private Map<String, Status> m_pendingAlarms = new LinkedHashMap<>();
+    private long m_lastQueuedUpdate = 0;
+    private long m_lastAppliedUpdate = 0;
 
     private boolean m_recordAndDeferStatusUpdates = false;
     private final Map<GraphVertex, StatusUpdate> m_statusUpdatesByVertex = new LinkedHashMap<>();
@@ -99,13 +118,17 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             // Create a new graph
             BusinessServiceGraph g = new BusinessServiceGraphImpl(businessServices);
 
+            // Apply any pending alarms to the previous graph first
+            applyAlarms(m_g, drainPendingAlarms());
+
             // Prime the graph with the state from the previous graph and
             // keep track of the new reductions keys
+            final Map<GraphVertex, Status> vertexUpdates = new LinkedHashMap<>();
             Set<String> reductionsKeysToLookup = Sets.newHashSet();
             for (String reductionKey : g.getReductionKeys()) {
                 GraphVertex reductionKeyVertex = m_g.getVertexByReductionKey(reductionKey);
                 if (reductionKeyVertex != null) {
-                    updateAndPropagateVertex(g, g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
+                    vertexUpdates.put(g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
                 } else {
                     reductionsKeysToLookup.add(reductionKey);
                 }
@@ -120,11 +143,13 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                     // graph without having to wait for calls to handleNewOrUpdatedAlarm()
                     final Map<String, AlarmWrapper> lookup = m_alarmProvider.lookup(reductionsKeysToLookup);
                     for (Entry<String, AlarmWrapper> eachEntry : lookup.entrySet()) {
-                        updateAndPropagateVertex(g, g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
+                        vertexUpdates.put(g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
                     }
                 }
             }
+            updateAndPropagateVertices(g, vertexUpdates);
             m_g = g;
+            m_snapshot = new StatusSnapshot(g);
 
             // Stop recording, and release the status updates
             m_recordAndDeferStatusUpdates = false;
@@ -142,10 +167,19 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
 
     @Override
     public void handleNewOrUpdatedAlarm(AlarmWrapper alarm) {
+        final long update;
+        synchronized (m_pendingAlarmsLock) {
+            m_pendingAlarms.put(alarm.getReductionKey(), alarm.getStatus());
+            update = ++m_lastQueuedUpdate;
+        }
+
         m_rwLock.writeLock().lock();
         try {
-            // Recursively propagate the status
-            updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+            if (m_lastAppliedUpdate >= update) {
+                // Another thread already applied our update along with its own
+                return;
+            }
+            applyAlarms(m_g, drainPendingAlarms());
         } finally {
             m_rwLock.writeLock().unlock();
         }
@@ -153,27 +187,83 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
 
     @Override
     public void handleAllAlarms(List<AlarmWrapper> alarms) {
-        final Set<String> reductionKeysFromGivenAlarms = new HashSet<>(alarms.size());
         m_rwLock.writeLock().lock();
         try {
-            for (AlarmWrapper alarm : alarms) {
-                // Recursively propagate the status for all of the given alarms
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
-                // Keep track of the reduction keys that have been processed
-                reductionKeysFromGivenAlarms.add(alarm.getReductionKey());
+            // The given alarms take precedence over the ones still pending
+            final Map<String, Status> statusByReductionKey = drainPendingAlarms();
+            for (String reductionKey : m_g.getReductionKeys()) {
+                // Unless given, there is no alarm with this reduction key
+                statusByReductionKey.put(reductionKey, Status.INDETERMINATE);
             }
-
-            for (String missingReductionKey : Sets.difference(m_g.getReductionKeys(), reductionKeysFromGivenAlarms)) {
-                // There is a vertex on the graph that corresponds to this reduction key
-                // but no alarm with this reduction key exists
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
+            for (AlarmWrapper alarm : alarms) {
+                statusByReductionKey.put(alarm.getReductionKey(), alarm.getStatus());
             }
+            applyAlarms(m_g, statusByReductionKey);
         } finally {
             m_rwLock.writeLock().unlock();
         }
     }
 
-    private void updateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus) {
+    /**
+     * Takes the pending alarm statuses off the queue. Must be called while holding the write lock.
+     */
+    private Map<String, Status> drainPendingAlarms() {
+        synchronized (m_pendingAlarmsLock) {
+            final Map<String, Status> pendingAlarms = m_pendingAlarms;
+            m_pendingAlarms = new LinkedHashMap<>();
+            m_lastAppliedUpdate = m_lastQueuedUpdate;
+            return pendingAlarms;
+        }
+    }
+
+    /**
+     * Applies the given alarm statuses to the current graph and publishes a new snapshot.
+     * Must be called while holding the write lock.
+     */
+    private void applyAlarms(BusinessServiceGraph graph, Map<String, Status> statusByReductionKey) {
+        if (statusByReductionKey.isEmpty()) {
+            return;
+        }
+        final Map<GraphVertex, Status> vertexUpdates = new LinkedHashMap<>();
+        for (Entry<String, Status> entry : statusByReductionKey.entrySet()) {
+            final GraphVertex vertex = graph.getVertexByReductionKey(entry.getKey());
+            if (vertex != null) {
+                vertexUpdates.put(vertex, entry.getValue());
+            }
+        }
+        final Set<GraphVertex> updatedVertices = updateAndPropagateVertices(graph, vertexUpdates);
+        if (graph == m_g && !updatedVertices.isEmpty()) {
+            m_snapshot = m_snapshot.withUpdatedVertices(updatedVertices);
+        }
+    }
+
+    /**
+     * Updates the status of the given vertices and propagates the changes up the graph.
+     *
+     * Only the ancestors of vertices whose status changed are reduced. These are visited
+     * level by level, starting with the deepest one, so that every vertex is reduced once,
+     * after all of its children were updated.
+     *
+     * @return the vertices whose status changed
+     */
+    private Set<GraphVertex> updateAndPropagateVertices(BusinessServiceGraph graph, Map<GraphVertex, Status> vertexUpdates) {
+        final Set<GraphVertex> updatedVertices = new LinkedHashSet<>();
+        final NavigableMap<Integer, Set<GraphVertex>> verticesToReduceByLevel = new TreeMap<>();
+        for (Entry<GraphVertex, Status> entry : vertexUpdates.entrySet()) {
+            updateVertex(graph, entry.getKey(), entry.getValue(), updatedVertices, verticesToReduceByLevel);
+        }
+
+        Entry<Integer, Set<GraphVertex>> deepestLevel;
+        while ((deepestLevel = verticesToReduceByLevel.pollLastEntry()) != null) {
+            for (GraphVertex vertex : deepestLevel.getValue()) {
+                updateVertex(graph, vertex, reduce(graph, vertex), updatedVertices, verticesToReduceByLevel);
+            }
+        }
+        return updatedVertices;
+    }
+
+    private void updateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus,
+                              Set<GraphVertex> updatedVertices, NavigableMap<Integer, Set<GraphVertex>> verticesToReduceByLevel) {
         if (vertex == null) {
             // Nothing to do here
             return;
@@ -189,12 +279,12 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             return;
         }
         vertex.setStatus(newStatus);
+        updatedVertices.add(vertex);
 
         // Notify the listeners
         onStatusUpdated(graph, vertex, previousStatus);
 
         // Update the edges with the mapped status
-        List<GraphEdge> updatedEges = Lists.newArrayList();
         for (GraphEdge edge : graph.getInEdges(vertex)) {
             Status mappedStatus = newStatus;
             if (newStatus.isGreaterThan(MIN_SEVERITY)) {
@@ -209,38 +299,24 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 continue;
             }
 
-            // Update the status and add it to the list of edges to propagate
+            // Update the status and schedule the parent to be reduced
             edge.setStatus(mappedStatus);
-            updatedEges.add(edge);
-        }
-
-        // Propagate once all of the edges have been updated
-        for (GraphEdge edge : updatedEges) {
-            reduceUpdateAndPropagateVertex(graph, graph.getOpposite(vertex, edge));
+            final GraphVertex parent = graph.getOpposite(vertex, edge);
+            verticesToReduceByLevel.computeIfAbsent(parent.getLevel(), l -> new LinkedHashSet<>()).add(parent);
         }
     }
 
-    private void reduceUpdateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex) {
-        if (vertex == null) {
-            // Nothing to do here
-            return;
-        }
-
+    private Status reduce(BusinessServiceGraph graph, GraphVertex vertex) {
         // Calculate the weighed statuses from the child edges
         List<StatusWithIndex> statuses = weighEdges(graph.getOutEdges(vertex));
 
         // Reduce
         Optional<StatusWithIndices> reducedStatus = vertex.getReductionFunction().reduce(statuses);
-
-        Status newStatus;
         if (reducedStatus.isPresent()) {
-            newStatus = reducedStatus.get().getStatus();
+            return reducedStatus.get().getStatus();
         } else {
-            newStatus = MIN_SEVERITY;
+            return MIN_SEVERITY;
         }
-
-        // Update and propagate
-        updateAndPropagateVertex(graph, vertex, newStatus);
     }
 
     public static List<StatusWithIndex> weighEdges(Collection<GraphEdge> edges) {
@@ -312,58 +388,26 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     @Override
     public Status getOperationalStatus(BusinessService businessService) {
         Objects.requireNonNull(businessService);
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByBusinessServiceId(businessService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.graph.getVertexByBusinessServiceId(businessService.getId()));
     }
 
     @Override
     public Status getOperationalStatus(IpService ipService) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByIpServiceId(ipService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.graph.getVertexByIpServiceId(ipService.getId()));
     }
 
     @Override
     public Status getOperationalStatus(String reductionKey) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByReductionKey(reductionKey);
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.graph.getVertexByReductionKey(reductionKey));
     }
 
     @Override
     public Status getOperationalStatus(Edge edge) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByEdgeId(edge.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.graph.getVertexByEdgeId(edge.getId()));
     }
 
     public void setAlarmProvider(AlarmProvider alarmProvider) {
@@ -581,6 +625,68 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
         return GraphAlgorithms.calculateImpact(m_g, vertex);
     }
 
+    /**
+     * Immutable copy of the statuses of the vertices in a graph.
+     *
+     * The statuses are stored in fixed size chunks, so that publishing an update only
+     * copies the chunks containing the updated vertices instead of all of the statuses.
+     */
+    private static class StatusSnapshot {
+        private static final int CHUNK_BITS = 6;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+        private final BusinessServiceGraph graph;
+        private final Map<GraphVertex, Integer> indexByVertex;
+        private final Status[][] chunks;
+
+        private StatusSnapshot(BusinessServiceGraph graph) {
+            this.graph = graph;
+            this.indexByVertex = new IdentityHashMap<>();
+            final int vertexCount = graph.getVertexCount();
+            this.chunks = new Status[(vertexCount + CHUNK_SIZE - 1) >> CHUNK_BITS][];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = new Status[Math.min(CHUNK_SIZE, vertexCount - (i << CHUNK_BITS))];
+            }
+            int index = 0;
+            for (GraphVertex vertex : graph.getVertices()) {
+                indexByVertex.put(vertex, index);
+                chunks[index >> CHUNK_BITS][index & (CHUNK_SIZE - 1)] = vertex.getStatus();
+                index++;
+            }
+        }
+
+        private StatusSnapshot(StatusSnapshot snapshot, Collection<GraphVertex> updatedVertices) {
+            this.graph = snapshot.graph;
+            this.indexByVertex = snapshot.indexByVertex;
+            this.chunks = snapshot.chunks.clone();
+            final boolean[] copied = new boolean[chunks.length];
+            for (GraphVertex vertex : updatedVertices) {
+                final int index = indexByVertex.get(vertex);
+                final int chunk = index >> CHUNK_BITS;
+                if (!copied[chunk]) {
+                    chunks[chunk] = chunks[chunk].clone();
+                    copied[chunk] = true;
+                }
+                chunks[chunk][index & (CHUNK_SIZE - 1)] = vertex.getStatus();
+            }
+        }
+
+        private StatusSnapshot withUpdatedVertices(Collection<GraphVertex> updatedVertices) {
+            if (updatedVertices.isEmpty()) {
+                return this;
+            }
+            return new StatusSnapshot(this, updatedVertices);
+        }
+
+        private Status getStatus(GraphVertex vertex) {
+            if (vertex == null) {
+                return null;
+            }
+            final Integer index = indexByVertex.get(vertex);
+            return index != null ? chunks[index >> CHUNK_BITS][index & (CHUNK_SIZE - 1)] : null;
+        }
+    }
+
     private static class StatusUpdate {
         private final BusinessServiceGraph graph;
         private final GraphVertex vertex;
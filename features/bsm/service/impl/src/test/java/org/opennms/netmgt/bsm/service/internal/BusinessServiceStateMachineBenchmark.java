@@ -0,0 +1,153 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.bsm.service.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.netmgt.bsm.mock.MockAlarmWrapper;
+import org.opennms.netmgt.bsm.mock.MockBusinessServiceHierarchy;
+import org.opennms.netmgt.bsm.service.model.AlarmWrapper;
+import org.opennms.netmgt.bsm.service.model.BusinessService;
+import org.opennms.netmgt.bsm.service.model.Status;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to measure the number of alarms per second
+ * the {@link DefaultBusinessServiceStateMachine} can apply for hierarchies of different sizes.
+ * <p>
+ * The hierarchy is a tree in which every business service has {@link #fanOut} child business
+ * services, and every leaf has a single reduction key edge. Alarms are generated for randomly
+ * chosen leaves with random severities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class BusinessServiceStateMachineBenchmark {
+
+    // the number of alarms generated up front and replayed in a loop
+    private static final int NUM_ALARMS = 1 << 14;
+
+    private static final Status[] SEVERITIES = {
+            Status.NORMAL, Status.WARNING, Status.MINOR, Status.MAJOR, Status.CRITICAL
+    };
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @Param({"100", "1000", "5000"})
+    public int businessServices;
+
+    @Param({"10"})
+    public int fanOut;
+
+    private DefaultBusinessServiceStateMachine stateMachine;
+    private BusinessService root;
+    private final List<AlarmWrapper> alarms = new ArrayList<>(NUM_ALARMS);
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final MockBusinessServiceHierarchy.HierarchyBuilder builder = MockBusinessServiceHierarchy.builder();
+        final List<String> reductionKeys = new ArrayList<>();
+        for (int id = 1; id <= businessServices; id++) {
+            final MockBusinessServiceHierarchy.HierarchyBuilder.BusinessServiceBuilder businessService = builder.withBusinessService(id);
+            final long firstChild = (long) (id - 1) * fanOut + 2;
+            if (firstChild > businessServices) {
+                final String reductionKey = "rk-" + id;
+                // child edges use the id of the child business service, so offset the ids of the reduction key edges
+                businessService.withReductionKey(businessServices + id, reductionKey);
+                reductionKeys.add(reductionKey);
+            } else {
+                for (long child = firstChild; child < firstChild + fanOut && child <= businessServices; child++) {
+                    businessService.withBusinessService(child).commit();
+                }
+            }
+            businessService.commit();
+        }
+        final MockBusinessServiceHierarchy hierarchy = builder.build();
+        root = hierarchy.getBusinessServiceById(1);
+
+        stateMachine = new DefaultBusinessServiceStateMachine();
+        stateMachine.setBusinessServices(hierarchy.getBusinessServices());
+
+        final Random random = new Random(42);
+        for (int i = 0; i < NUM_ALARMS; i++) {
+            alarms.add(new MockAlarmWrapper(reductionKeys.get(random.nextInt(reductionKeys.size())),
+                    SEVERITIES[random.nextInt(SEVERITIES.length)]));
+        }
+    }
+
+    private AlarmWrapper nextAlarm(Cursor cursor) {
+        return alarms.get(cursor.next++ & (NUM_ALARMS - 1));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void alarms(Cursor cursor) {
+        stateMachine.handleNewOrUpdatedAlarm(nextAlarm(cursor));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void concurrentAlarms(Cursor cursor) {
+        stateMachine.handleNewOrUpdatedAlarm(nextAlarm(cursor));
+    }
+
+    @Benchmark
+    @Group("alarmsWithReaders")
+    @GroupThreads(1)
+    public void alarmsWithReadersWrite(Cursor cursor) {
+        stateMachine.handleNewOrUpdatedAlarm(nextAlarm(cursor));
+    }
+
+    @Benchmark
+    @Group("alarmsWithReaders")
+    @GroupThreads(3)
+    public Status alarmsWithReadersRead() {
+        return stateMachine.getOperationalStatus(root);
+    }
+}
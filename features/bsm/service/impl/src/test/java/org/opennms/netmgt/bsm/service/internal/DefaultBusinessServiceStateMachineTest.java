@@ -26,10 +26,15 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -49,6 +54,7 @@ import org.opennms.netmgt.bsm.service.model.graph.GraphVertex;
 import org.opennms.netmgt.bsm.test.LoggingStateChangeHandler;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 
 public class DefaultBusinessServiceStateMachineTest {
@@ -234,6 +240,62 @@ public class DefaultBusinessServiceStateMachineTest {
         assertEquals("b1", impacts.get(0).getBusinessService().getName());
     }
 
+    @Test
+    public void canApplyConcurrentAlarmUpdates() throws Exception {
+        // Create a hierarchy with two levels of business services
+        MockBusinessServiceHierarchy h = MockBusinessServiceHierarchy.builder()
+                .withBusinessService(1)
+                    .withBusinessService(2)
+                        .withReductionKey(21, "a1")
+                        .withReductionKey(22, "a2")
+                    .commit()
+                    .withBusinessService(3)
+                        .withReductionKey(31, "a3")
+                        .withReductionKey(32, "a4")
+                    .commit()
+                .commit()
+                .build();
+
+        // Setup the state machine
+        DefaultBusinessServiceStateMachine stateMachine = new DefaultBusinessServiceStateMachine();
+        LoggingStateChangeHandler stateChangeHandler = new LoggingStateChangeHandler();
+        stateMachine.addHandler(stateChangeHandler, Maps.newHashMap());
+        stateMachine.setBusinessServices(h.getBusinessServices());
+
+        // Update every reduction key from its own thread, ending with the given status
+        final Map<String, Status> finalStatus = ImmutableMap.of("a1", Status.MINOR, "a2", Status.NORMAL,
+                "a3", Status.WARNING, "a4", Status.MAJOR);
+        final ExecutorService executor = Executors.newFixedThreadPool(finalStatus.size());
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (Map.Entry<String, Status> entry : finalStatus.entrySet()) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        stateMachine.handleNewOrUpdatedAlarm(new MockAlarmWrapper(entry.getKey(), Status.CRITICAL));
+                        stateMachine.handleNewOrUpdatedAlarm(new MockAlarmWrapper(entry.getKey(), Status.NORMAL));
+                    }
+                    stateMachine.handleNewOrUpdatedAlarm(new MockAlarmWrapper(entry.getKey(), entry.getValue()));
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Verify the state
+        assertEquals(Status.MINOR, stateMachine.getOperationalStatus(h.getBusinessServiceById(2)));
+        assertEquals(Status.MAJOR, stateMachine.getOperationalStatus(h.getBusinessServiceById(3)));
+        assertEquals(Status.MAJOR, stateMachine.getOperationalStatus(h.getBusinessServiceById(1)));
+        assertEquals(Status.MAJOR, stateMachine.getOperationalStatus(h.getEdgeByReductionKey("a4")));
+
+        // The last state change of b1 is the one that is visible
+        assertEquals(Status.MAJOR, Iterables.getLast(stateChangeHandler.getStateChanges().stream()
+                .filter(sc -> sc.getBusinessService().getId() == 1L)
+                .collect(Collectors.toList())).getNewSeverity());
+    }
+
     @Test
     public void canRenderGraphToPng() {
         // Create a simple hierarchy
@@ -86,10 +86,23 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
 
     private boolean isStateDirty;
 
+    /**
+     * Incremented every time the state is marked dirty so that a write-behind flush can tell whether the state changed
+     * again after it took its snapshot.
+     */
+    private long dirtyVersion;
+
+    private long snapshotVersion;
+
     private String key;
 
     private final SerializingBlobStore<T> kvStore;
 
+    /**
+     * The write-behind flusher for our state or null if state is written synchronously.
+     */
+    private final ThresholdStateFlusher stateFlusher;
+
     protected T state;
     
     protected final ThresholdingSession thresholdingSession;
@@ -169,6 +182,7 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
 
         this.thresholdingSession = thresholdingSession;
         kvStore = getKvStoreForType(stateType, thresholdingSession.getBlobStore());
+        stateFlusher = ThresholdStateFlusher.forBlobStore(thresholdingSession.getBlobStore(), stateTTL);
         key = String.format("%d-%s-%s-%s-%s-%s", thresholdingSession.getKey().getNodeId(),
                 thresholdingSession.getKey().getLocation(), threshold.getDsType(),
                 threshold.getDatasourceExpression(), threshold.getType(),
@@ -224,6 +238,11 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
 
     private void persistStateIfNeeded() {
         if (shouldPersist()) {
+            // The flusher will snapshot and write our state in the background
+            if (stateFlusher != null && stateFlusher.schedule(key, this)) {
+                return;
+            }
+
             try {
                 long newTimestamp = kvStore.put(key, state, THRESHOLDING_KV_CONTEXT, stateTTL);
                 lastUpdatedCache.put(key, newTimestamp);
@@ -249,6 +268,12 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
                 return;
             }
 
+            // If we have evaluated changes that have not been written yet then our in-memory state is newer than the
+            // persisted one
+            if (stateFlusher != null && isStateDirty && !firstEvaluation) {
+                return;
+            }
+
             try {
                 Long lastKnownUpdate = lastUpdatedCache.get(key);
 
@@ -276,6 +301,36 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
      */
     protected void markDirty() {
         isStateDirty = true;
+        dirtyVersion++;
+    }
+
+    String getStateKey() {
+        return key;
+    }
+
+    /**
+     * Called by the {@link ThresholdStateFlusher} to serialize the state that needs to be written.
+     *
+     * @return the serialized state or null if the state is not dirty
+     */
+    synchronized byte[] snapshotDirtyState() {
+        if (!isStateDirty) {
+            return null;
+        }
+        snapshotVersion = dirtyVersion;
+        return fst.asByteArray(state);
+    }
+
+    /**
+     * Called by the {@link ThresholdStateFlusher} once the snapshot taken by {@link #snapshotDirtyState()} has been
+     * written.
+     */
+    synchronized void stateFlushed(long timestamp) {
+        lastUpdatedCache.put(key, timestamp);
+        // Only mark the state clean if it did not change after the snapshot was taken
+        if (dirtyVersion == snapshotVersion) {
+            isStateDirty = false;
+        }
     }
 
     @Override
@@ -370,6 +425,10 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
     @Override
     public synchronized void reinitialize() {
         firstEvaluation = true;
+        if (stateFlusher != null) {
+            // The persisted state is being cleared so there is no point in writing what we had before
+            stateFlusher.cancel(key, this);
+        }
         clearStateBeforePersist();
     }
 
@@ -0,0 +1,204 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.threshd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.jexl2.ExpressionImpl;
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.Script;
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.core.utils.jexl.OnmsJexlEngine;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A threshold expression which has been parsed once and can be evaluated repeatedly.
+ *
+ * Compiled expressions are shared by all {@link ExpressionConfigWrapper}s and cached by their interpolated source, so
+ * an expression is only parsed again if it was evicted from the cache. The plain variables of the expression are
+ * turned into script parameters at compile time, so JEXL reads them from a register by index instead of looking them
+ * up by name for every access. Only the values of these variables are copied for an evaluation.
+ */
+class CompiledThresholdExpression {
+
+    private static final String MATH = "math";
+    private static final String DATASOURCES = "datasources";
+
+    private static final ExpressionConfigWrapper.MathBinding MATH_BINDING = new ExpressionConfigWrapper.MathBinding();
+
+    private static final OnmsJexlEngine JEXL_ENGINE = new OnmsJexlEngine();
+    static {
+        JEXL_ENGINE.white(HashMap.class.getName());
+        JEXL_ENGINE.white(ExpressionConfigWrapper.MathBinding.class.getName());
+    }
+
+    private static final Cache<String, CompiledThresholdExpression> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(SystemProperties.getInteger("org.opennms.netmgt.threshd.expression_cache_size", 10000))
+            .build();
+
+    // Resolves all variables through the context. Only used if the value of a parameter is missing, so undefined
+    // variables are reported the same way as before
+    private final ExpressionImpl expression;
+
+    // The same expression with the parameters bound to registers
+    private final Script script;
+
+    // The variables bound to registers, in register order
+    private final String[] parameters;
+    private final List<String> datasources;
+
+    private CompiledThresholdExpression(final String source) {
+        this.expression = (ExpressionImpl) JEXL_ENGINE.createExpression(source);
+
+        final List<String> datasources = new ArrayList<>();
+        final Set<String> parameters = new LinkedHashSet<>();
+        final Set<String> composites = new HashSet<>();
+        for (final List<String> list : this.expression.getVariables()) { // Requires JEXL 2.1.x
+            if (list.get(0).equalsIgnoreCase(MATH)) {
+                continue;
+            }
+            if (list.get(0).equalsIgnoreCase(DATASOURCES)) {
+                // Include the internal parameter. See NMS-5019
+                datasources.add(list.get(1).intern());
+            } else {
+                // Include the first element, because datasources and math are the only composite elements
+                datasources.add(list.get(0).intern());
+                // Dotted data source names like "A.x" are looked up by their full name, which JEXL only does for
+                // variables which are not bound to a register
+                (list.size() == 1 ? parameters : composites).add(list.get(0));
+            }
+        }
+        parameters.removeAll(composites);
+
+        this.parameters = parameters.toArray(new String[0]);
+        this.script = JEXL_ENGINE.createScript(source, null, this.parameters);
+        this.datasources = Collections.unmodifiableList(datasources);
+    }
+
+    /**
+     * Returns the compiled expression for the given (interpolated) source, parsing it if it is not cached.
+     */
+    static CompiledThresholdExpression compile(final String source) throws ThresholdExpressionException {
+        try {
+            return CACHE.get(source, () -> new CompiledThresholdExpression(source));
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            throw new ThresholdExpressionException("Could not parse threshold expression:" + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @VisibleForTesting
+    static void invalidateCache() {
+        CACHE.invalidateAll();
+    }
+
+    @VisibleForTesting
+    static long cacheSize() {
+        return CACHE.size();
+    }
+
+    /**
+     * The data sources referenced by the expression, in the order they appear.
+     */
+    List<String> getDatasources() {
+        return this.datasources;
+    }
+
+    Object evaluate(final Map<String, Double> values) {
+        final Object[] registers = new Object[this.parameters.length];
+        for (int i = 0; i < this.parameters.length; i++) {
+            final Double value = values.get(this.parameters[i]);
+            if (value == null && !values.containsKey(this.parameters[i])) {
+                return this.expression.evaluate(new Binding(values));
+            }
+            registers[i] = value;
+        }
+        return this.script.execute(new Binding(values), registers);
+    }
+
+    /**
+     * The context an expression is evaluated in. Only provides the variables which are not bound to a register.
+     */
+    private static class Binding implements JexlContext {
+        private final Map<String, Double> values;
+
+        private Map<String, Object> datasourcesMap;
+        private Map<String, Object> locals;
+
+        private Binding(final Map<String, Double> values) {
+            this.values = Objects.requireNonNull(values);
+        }
+
+        @Override
+        public Object get(final String name) {
+            if (MATH.equals(name)) {
+                return MATH_BINDING;
+            }
+            if (DATASOURCES.equals(name)) {
+                return this.getDatasourcesMap();
+            }
+
+            if (this.locals != null && this.locals.containsKey(name)) {
+                return this.locals.get(name);
+            }
+
+            return this.values.get(name);
+        }
+
+        @Override
+        public void set(final String name, final Object value) {
+            // Assignments must not leak into the values of the resource. Parameters are assigned to their register
+            if (this.locals == null) {
+                this.locals = new HashMap<>();
+            }
+            this.locals.put(name, value);
+        }
+
+        @Override
+        public boolean has(final String name) {
+            return MATH.equals(name)
+                    || DATASOURCES.equals(name)
+                    || (this.locals != null && this.locals.containsKey(name))
+                    || this.values.containsKey(name);
+        }
+
+        private Map<String, Object> getDatasourcesMap() {
+            // Only copied if the expression uses it. The map must be a HashMap to pass the sandbox. See NMS-5019
+            if (this.datasourcesMap == null) {
+                this.datasourcesMap = new HashMap<>(this.values);
+            }
+            return this.datasourcesMap;
+        }
+    }
+}
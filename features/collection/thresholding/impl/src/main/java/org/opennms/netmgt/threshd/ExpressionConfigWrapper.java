@@ -21,19 +21,13 @@
  */
 package org.opennms.netmgt.threshd;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
-import org.apache.commons.jexl2.ExpressionImpl;
-import org.apache.commons.jexl2.MapContext;
 import org.opennms.core.mate.api.EmptyScope;
 import org.opennms.core.mate.api.Interpolator;
 import org.opennms.core.mate.api.Scope;
-import org.opennms.core.utils.jexl.OnmsJexlEngine;
 import org.opennms.netmgt.config.threshd.Expression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,39 +43,16 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
 
     private final Expression m_expression;
     private final Collection<String> m_datasources;
-    private final OnmsJexlEngine jexlEngine;
 
     public ExpressionConfigWrapper(Expression expression) throws ThresholdExpressionException {
         super(expression);
         m_expression = expression;
 
-        jexlEngine = new OnmsJexlEngine();
-        jexlEngine.white(HashMap.class.getName());
-        jexlEngine.white(MathBinding.class.getName());
-
-        m_datasources = new ArrayList<String>();
-
-        try {
-            // We need to remove any mate data that are part of the expression before we try to find the datasources so
-            // we will interpolate with an empty scope and rely on default values to keep the expression valid
-            ExpressionImpl e = (ExpressionImpl) jexlEngine
-                    .createExpression(interpolateExpression(m_expression.getExpression(), EmptyScope.EMPTY));
-            LOG.trace("List of Variables on the Expression: {}", e.getVariables());
-            for (List<String> list : e.getVariables()) { // Requires JEXL 2.1.x
-                if (list.get(0).equalsIgnoreCase("math")) {
-                    continue;
-                }
-                if (list.get(0).equalsIgnoreCase("datasources")) {
-                    // Include the internal parameter. See NMS-5019
-                    m_datasources.add(list.get(1).intern());
-                } else {
-                    // Include the first element, because datasources and math are the only composite elements
-                    m_datasources.add(list.get(0).intern());
-                }
-            }
-        } catch (Throwable e) {
-            throw new ThresholdExpressionException("Could not parse threshold expression:" + e.getMessage(), e);
-        }
+        // We need to remove any mate data that are part of the expression before we try to find the datasources so
+        // we will interpolate with an empty scope and rely on default values to keep the expression valid
+        m_datasources = CompiledThresholdExpression
+                .compile(interpolateExpression(m_expression.getExpression(), EmptyScope.EMPTY))
+                .getDatasources();
         LOG.trace("Threshold Variables: {}", m_datasources);
     }
 
@@ -150,15 +121,14 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
      * Evaluate given an already interpolated expression that contains no mate data.
      */
     public double evaluate(String expression, Map<String, Double> values) throws ThresholdExpressionException {
-        // Add all of the variable values to the script context
-        Map<String, Object> context = new HashMap<>(values);
-        context.put("datasources", new HashMap<>(values)); // To workaround NMS-5019
-        context.put("math", new MathBinding());
+        // The expression is only parsed if it has not been compiled before
+        final CompiledThresholdExpression compiled = CompiledThresholdExpression.compile(expression);
         double result;
         try {
-            // Fetch an instance of the JEXL script engine to evaluate the script expression
-            Object resultObject = jexlEngine.createExpression(expression).evaluate(new MapContext(context));
-            result = Double.parseDouble(resultObject.toString());
+            Object resultObject = compiled.evaluate(values);
+            result = resultObject instanceof Number
+                    ? ((Number) resultObject).doubleValue()
+                    : Double.parseDouble(resultObject.toString());
         } catch (Throwable e) {
             throw new ThresholdExpressionException("Error while evaluating expression " + m_expression.getExpression() + ": " + e.getMessage(), e);
         }
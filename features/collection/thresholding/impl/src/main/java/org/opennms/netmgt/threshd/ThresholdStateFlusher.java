@@ -0,0 +1,227 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.threshd;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.features.distributed.kvstore.api.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.swrve.ratelimitedlogger.RateLimitedLog;
+
+/**
+ * Write-behind persistence of threshold evaluator state.
+ * <p>
+ * Instead of writing its state to the {@link BlobStore} every time it changes, an evaluator registers itself here as
+ * having dirty state. Registrations are coalesced per key, so an evaluator that changes several times within the flush
+ * interval is only serialized and written once. A background thread periodically snapshots the pending evaluators and
+ * writes them in batches via {@link BlobStore#putAll(Map, String, Integer)}.
+ * <p>
+ * The persisted state therefore lags the in-memory state by at most the flush interval (plus the time it takes to
+ * write a flush). All pending state is written when the flusher is {@link #close() closed}.
+ * <p>
+ * Write-behind is disabled by default and is enabled by setting the {@value #FLUSH_INTERVAL_PROPERTY} system property
+ * to a positive number of milliseconds.
+ */
+public class ThresholdStateFlusher implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ThresholdStateFlusher.class);
+    private static final RateLimitedLog RATE_LIMITED_LOGGER = RateLimitedLog
+            .withRateLimit(LOG)
+            .maxRate(5).every(Duration.ofSeconds(30))
+            .build();
+
+    static final String FLUSH_INTERVAL_PROPERTY = "org.opennms.netmgt.threshd.state_flush_interval";
+    static final String FLUSH_BATCH_SIZE_PROPERTY = "org.opennms.netmgt.threshd.state_flush_batch_size";
+
+    /**
+     * The flushers in use keyed by the blob store they write to.
+     */
+    private static final Map<BlobStore, ThresholdStateFlusher> flushers = new ConcurrentHashMap<>();
+
+    private final BlobStore blobStore;
+    private final int batchSize;
+    private final Integer ttlInSeconds;
+    private final Map<String, AbstractThresholdEvaluatorState<?>> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private volatile boolean closed = false;
+
+    ThresholdStateFlusher(BlobStore blobStore, long flushIntervalMs, int batchSize, Integer ttlInSeconds) {
+        if (flushIntervalMs <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.blobStore = Objects.requireNonNull(blobStore);
+        this.batchSize = batchSize;
+        this.ttlInSeconds = ttlInSeconds;
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("threshold-state-flusher-%d")
+                .setDaemon(true)
+                .build());
+        executor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the flusher for the given blob store or null if write-behind is disabled
+     */
+    static ThresholdStateFlusher forBlobStore(BlobStore blobStore, Integer ttlInSeconds) {
+        long flushIntervalMs = SystemProperties.getLong(FLUSH_INTERVAL_PROPERTY, 0L);
+        if (flushIntervalMs <= 0) {
+            return null;
+        }
+        return flushers.computeIfAbsent(blobStore, b -> new ThresholdStateFlusher(b, flushIntervalMs,
+                SystemProperties.getInteger(FLUSH_BATCH_SIZE_PROPERTY, 500), ttlInSeconds));
+    }
+
+    /**
+     * Flushes and stops all of the flushers in use. Evaluators that are created afterwards will get new flushers.
+     */
+    static void closeAll() {
+        for (Iterator<ThresholdStateFlusher> it = flushers.values().iterator(); it.hasNext(); ) {
+            ThresholdStateFlusher flusher = it.next();
+            it.remove();
+            flusher.close();
+        }
+    }
+
+    /**
+     * Registers the given evaluator as having state that needs to be written.
+     *
+     * @return false if the flusher has been closed in which case the caller must write the state itself
+     */
+    boolean schedule(String key, AbstractThresholdEvaluatorState<?> evaluatorState) {
+        if (closed) {
+            return false;
+        }
+        pending.put(key, evaluatorState);
+        return true;
+    }
+
+    /**
+     * Discards a pending write for the given evaluator, if any.
+     */
+    void cancel(String key, AbstractThresholdEvaluatorState<?> evaluatorState) {
+        pending.remove(key, evaluatorState);
+    }
+
+    @VisibleForTesting
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes all of the currently pending state.
+     *
+     * @throws RuntimeException if writing any of the batches failed, the evaluators in the failed batches are
+     *                          rescheduled
+     */
+    synchronized void flush() {
+        RuntimeException failure = null;
+        Map<String, byte[]> batch = new HashMap<>();
+        List<AbstractThresholdEvaluatorState<?>> batchStates = new ArrayList<>();
+
+        for (Iterator<Map.Entry<String, AbstractThresholdEvaluatorState<?>>> it = pending.entrySet().iterator();
+             it.hasNext(); ) {
+            Map.Entry<String, AbstractThresholdEvaluatorState<?>> entry = it.next();
+            it.remove();
+
+            // The snapshot is null if the state was already written or was reinitialized in the meantime
+            byte[] snapshot = entry.getValue().snapshotDirtyState();
+            if (snapshot == null) {
+                continue;
+            }
+            batch.put(entry.getKey(), snapshot);
+            batchStates.add(entry.getValue());
+
+            if (batch.size() >= batchSize) {
+                failure = write(batch, batchStates, failure);
+                batch = new HashMap<>();
+                batchStates = new ArrayList<>();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            failure = write(batch, batchStates, failure);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private RuntimeException write(Map<String, byte[]> batch, List<AbstractThresholdEvaluatorState<?>> batchStates,
+                                   RuntimeException previousFailure) {
+        try {
+            long timestamp = blobStore.putAll(batch, AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT,
+                    ttlInSeconds);
+            batchStates.forEach(s -> s.stateFlushed(timestamp));
+            return previousFailure;
+        } catch (RuntimeException e) {
+            // The states are still dirty so rescheduling them means they will be retried on the next flush
+            for (AbstractThresholdEvaluatorState<?> state : batchStates) {
+                pending.putIfAbsent(state.getStateKey(), state);
+            }
+            return e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            RATE_LIMITED_LOGGER.warn("Failed to store threshold state, {} states remain pending", pending.size(), e);
+        }
+    }
+
+    /**
+     * Stops the background flushes and writes any state that is still pending.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.warn("Timed out waiting for the threshold state flusher to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+}
@@ -29,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.opennms.core.soa.lookup.ServiceLookup;
 import org.opennms.core.soa.lookup.ServiceLookupBuilder;
@@ -124,6 +125,14 @@ public class ThresholdingServiceImpl implements ThresholdingService, EventListen
         }, 0, TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES));
     }
     
+    // Spring and OSGi destroy entry point
+    @PreDestroy
+    public void destroy() {
+        reInitializeTimer.cancel();
+        // Make sure any threshold state that is still waiting to be written is persisted before we go away
+        ThresholdStateFlusher.closeAll();
+    }
+
     private void reinitializeOnTimer() {
         thresholdingSetPersister.reinitializeThresholdingSets();
     }
@@ -33,6 +33,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.core.mate.api.ContextKey;
+import org.opennms.core.mate.api.EmptyScope;
 import org.opennms.core.mate.api.Scope;
 import org.opennms.core.test.MockLogAppender;
 import org.opennms.netmgt.config.threshd.Expression;
@@ -172,4 +173,63 @@ public class ExpressionConfigWrapperTest {
         values.put("ifSpeed", 10.0);
         Assert.assertEquals(160.0, wrapper.interpolateAndEvaluate(values, scope).value, 0.0);
     }
+
+    @Test
+    public void testCompiledExpressionsAreCached() throws Exception {
+        CompiledThresholdExpression.invalidateCache();
+
+        Expression exp = new Expression();
+        exp.setExpression("ifInOctets * ${requisition:testMultiplier|1}");
+        ExpressionConfigWrapper wrapper1 = new ExpressionConfigWrapper(exp);
+        ExpressionConfigWrapper wrapper2 = new ExpressionConfigWrapper(exp);
+        Assert.assertEquals(1, CompiledThresholdExpression.cacheSize());
+
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("ifInOctets", 2.0);
+
+        // Each interpolation of the expression is compiled once
+        Assert.assertEquals(200.0, wrapper1.interpolateAndEvaluate(values, scope).value, 0.0);
+        Assert.assertEquals(200.0, wrapper2.interpolateAndEvaluate(values, scope).value, 0.0);
+        Assert.assertEquals(2.0, wrapper2.interpolateAndEvaluate(values, EmptyScope.EMPTY).value, 0.0);
+        Assert.assertEquals(2, CompiledThresholdExpression.cacheSize());
+
+        values.put("ifInOctets", 3.0);
+        Assert.assertEquals(300.0, wrapper1.evaluate("ifInOctets * 100", values), 0.0);
+        Assert.assertEquals(2, CompiledThresholdExpression.cacheSize());
+    }
+
+    @Test
+    public void testAssignmentDoesNotModifyValues() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("data = data * 2");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("data", 10.0);
+        Assert.assertEquals(20.0, wrapper.interpolateAndEvaluate(values, scope).value, 0.0);
+        Assert.assertEquals(20.0, wrapper.interpolateAndEvaluate(values, scope).value, 0.0);
+        Assert.assertEquals(10.0, values.get("data"), 0.0);
+    }
+
+    @Test
+    public void testDottedDatasources() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("ifInOctets + ifInOctets * A.x");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("ifInOctets", 2.0);
+        values.put("A.x", 3.0);
+        Assert.assertEquals(8.0, wrapper.interpolateAndEvaluate(values, scope).value, 0.0);
+        values.put("ifInOctets", 4.0);
+        Assert.assertEquals(16.0, wrapper.interpolateAndEvaluate(values, scope).value, 0.0);
+    }
+
+    @Test(expected = ThresholdExpressionException.class)
+    public void testMissingDatasource() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("ifInOctets + ifOutOctets");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("ifInOctets", 10.0);
+        wrapper.interpolateAndEvaluate(values, scope);
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.threshd;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jexl2.MapContext;
+import org.opennms.core.utils.jexl.OnmsJexlEngine;
+import org.opennms.netmgt.config.threshd.Expression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares evaluating a threshold expression by parsing it for every evaluation against a context map (as done before
+ * expressions were compiled) with evaluating the compiled and cached expression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class ThresholdExpressionBenchmark {
+
+    private static final String EXPRESSION = "ifSpeed > 0 and ifSpeed < 100000000 ? ((ifInOctets * 8 / ifSpeed) * 100) : (ifHighSpeed > 0 ? (((ifHCInOctets * 8) / (ifHighSpeed * 1000000)) * 100) : 0)";
+
+    private OnmsJexlEngine jexlEngine;
+    private ExpressionConfigWrapper wrapper;
+    private Map<String, Double> values;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.jexlEngine = new OnmsJexlEngine();
+        this.jexlEngine.white(HashMap.class.getName());
+        this.jexlEngine.white(ExpressionConfigWrapper.MathBinding.class.getName());
+
+        final Expression expression = new Expression();
+        expression.setExpression(EXPRESSION);
+        this.wrapper = new ExpressionConfigWrapper(expression);
+
+        this.values = new HashMap<>();
+        this.values.put("ifHCInOctets", 20000000.0);
+        this.values.put("ifSpeed", 1000000000.0);
+        this.values.put("ifHighSpeed", 1000.0);
+        this.values.put("ifInOctets", 2000000.0);
+        this.values.put("ifOutOctets", 3000000.0);
+    }
+
+    @Benchmark
+    public double parsed() {
+        final Map<String, Object> context = new HashMap<>(this.values);
+        context.put("datasources", new HashMap<>(this.values));
+        context.put("math", new ExpressionConfigWrapper.MathBinding());
+        final Object result = this.jexlEngine.createExpression(EXPRESSION).evaluate(new MapContext(context));
+        return Double.parseDouble(result.toString());
+    }
+
+    @Benchmark
+    public double compiled() throws ThresholdExpressionException {
+        return this.wrapper.evaluate(EXPRESSION, this.values);
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.features.distributed.kvstore.blob.inmemory.InMemoryMapBlobStore;
+import org.opennms.netmgt.config.threshd.Threshold;
+import org.opennms.netmgt.config.threshd.ThresholdType;
+import org.opennms.netmgt.threshd.ThresholdEvaluatorHighLow.ThresholdEvaluatorStateHighLow;
+import org.opennms.netmgt.threshd.ThresholdEvaluatorState.Status;
+import org.opennms.netmgt.threshd.api.ThresholdingSession;
+import org.opennms.netmgt.threshd.api.ThresholdingSessionKey;
+
+public class ThresholdStateFlusherTest {
+    private final AtomicInteger putAllCalls = new AtomicInteger(0);
+    private final AtomicInteger putCalls = new AtomicInteger(0);
+    private final AtomicInteger failingPutAllCalls = new AtomicInteger(0);
+
+    private final InMemoryMapBlobStore blobStore = new InMemoryMapBlobStore(System::currentTimeMillis) {
+        @Override
+        public long put(String key, byte[] value, String context, Integer ttlInSeconds) {
+            putCalls.incrementAndGet();
+            return super.put(key, value, context, ttlInSeconds);
+        }
+
+        @Override
+        public long putAll(Map<String, byte[]> values, String context, Integer ttlInSeconds) {
+            if (failingPutAllCalls.getAndUpdate(i -> Math.max(0, i - 1)) > 0) {
+                throw new RuntimeException("failed");
+            }
+            putAllCalls.incrementAndGet();
+            long timestamp = System.currentTimeMillis();
+            values.forEach((key, value) -> super.put(key, value, context, ttlInSeconds));
+            return timestamp;
+        }
+    };
+
+    private ThresholdingSession session;
+
+    @Before
+    public void setUp() {
+        // Use an interval long enough that only the explicit flushes in the tests write anything
+        System.setProperty(ThresholdStateFlusher.FLUSH_INTERVAL_PROPERTY, "3600000");
+        System.setProperty(ThresholdStateFlusher.FLUSH_BATCH_SIZE_PROPERTY, "2");
+        AbstractThresholdEvaluatorState.clearSerdesMap();
+
+        session = mock(ThresholdingSession.class);
+        ThresholdingSessionKey key = mock(ThresholdingSessionKey.class);
+        when(key.getNodeId()).thenReturn(1);
+        when(key.getLocation()).thenReturn("Default");
+        when(session.getKey()).thenReturn(key);
+        when(session.getBlobStore()).thenReturn(blobStore);
+        when(session.getThresholdStateMonitor()).thenReturn(new BlobStoreAwareMonitor(blobStore));
+    }
+
+    @After
+    public void tearDown() {
+        ThresholdStateFlusher.closeAll();
+        System.clearProperty(ThresholdStateFlusher.FLUSH_INTERVAL_PROPERTY);
+        System.clearProperty(ThresholdStateFlusher.FLUSH_BATCH_SIZE_PROPERTY);
+        AbstractThresholdEvaluatorState.clearSerdesMap();
+    }
+
+    @Test
+    public void canWriteStatesInBatches() {
+        for (int i = 0; i < 5; i++) {
+            newEvaluator("ds" + i).evaluate(100.0);
+        }
+
+        // Nothing should have been written yet
+        assertEquals(0, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+        ThresholdStateFlusher flusher = getFlusher();
+        assertEquals(5, flusher.getPendingCount());
+
+        flusher.flush();
+        assertEquals(5, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+        assertEquals(0, flusher.getPendingCount());
+        assertEquals(3, putAllCalls.get());
+        assertEquals(0, putCalls.get());
+    }
+
+    @Test
+    public void canCoalesceWritesForTheSameKey() {
+        ThresholdEvaluatorStateHighLow item = newEvaluator("ds");
+        item.evaluate(100.0);
+        item.evaluate(0.0);
+        item.evaluate(100.0);
+
+        ThresholdStateFlusher flusher = getFlusher();
+        assertEquals(1, flusher.getPendingCount());
+        flusher.flush();
+        assertEquals(1, putAllCalls.get());
+        assertEquals(1, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+
+        // Nothing changed so there is nothing more to write
+        flusher.flush();
+        assertEquals(1, putAllCalls.get());
+    }
+
+    @Test
+    public void canResumeWithFlushedState() {
+        Status status = newEvaluator("ds").evaluate(100.0);
+        assertEquals(Status.NO_CHANGE, status);
+        getFlusher().flush();
+
+        // A new evaluator fetches the state on its first evaluation and sees the first exceeded value
+        status = newEvaluator("ds").evaluate(100.0);
+        assertEquals(Status.TRIGGERED, status);
+    }
+
+    @Test
+    public void canRetryFailedWrites() {
+        newEvaluator("ds").evaluate(100.0);
+        ThresholdStateFlusher flusher = getFlusher();
+
+        failingPutAllCalls.set(1);
+        try {
+            flusher.flush();
+            fail("flush should have failed");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(1, flusher.getPendingCount());
+
+        flusher.flush();
+        assertEquals(0, flusher.getPendingCount());
+        assertEquals(1, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+    }
+
+    @Test
+    public void canFlushOnClose() {
+        ThresholdEvaluatorStateHighLow item = newEvaluator("ds");
+        item.evaluate(100.0);
+        getFlusher();
+
+        ThresholdStateFlusher.closeAll();
+        assertEquals(1, putAllCalls.get());
+        assertEquals(1, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+
+        // Once closed the state is written synchronously again
+        item.evaluate(0.0);
+        assertEquals(1, putCalls.get());
+    }
+
+    private ThresholdStateFlusher getFlusher() {
+        ThresholdStateFlusher flusher = ThresholdStateFlusher.forBlobStore(blobStore, null);
+        assertNotNull(flusher);
+        return flusher;
+    }
+
+    private ThresholdEvaluatorStateHighLow newEvaluator(String dsName) {
+        Threshold threshold = new Threshold();
+        threshold.setType(ThresholdType.HIGH);
+        threshold.setDsName(dsName);
+        threshold.setDsType("node");
+        threshold.setValue("99.0");
+        threshold.setRearm("0.5");
+        threshold.setTrigger("2");
+        return new ThresholdEvaluatorStateHighLow(new ThresholdConfigWrapper(threshold), session);
+    }
+}
@@ -22,6 +22,7 @@
 package org.opennms.features.distributed.kvstore.api;
 
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
@@ -61,6 +62,30 @@ public interface KeyValueStore<T> {
      */
     long put(String key, T value, String context, Integer ttlInSeconds);
 
+    /**
+     * Put several values under the same context and time-to-live in one call.
+     * <p>
+     * The default implementation simply calls {@link #put(String, Object, String, Integer)} for each entry.
+     * Implementations backed by a remote store should override this to write the entries in as few round trips as
+     * possible.
+     *
+     * @param values       the values to store keyed by their key
+     * @param context      a context used to differentiate between keys with the same name (forms a compound key)
+     * @param ttlInSeconds the time to live in seconds for these keys or no ttl if null
+     * @return the timestamp the values were persisted with, if the values were persisted with different timestamps
+     * this is the earliest of them
+     */
+    default long putAll(Map<String, T> values, String context, Integer ttlInSeconds) {
+        Objects.requireNonNull(values);
+        Objects.requireNonNull(context);
+
+        long timestamp = Long.MAX_VALUE;
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            timestamp = Math.min(timestamp, put(entry.getKey(), entry.getValue(), context, ttlInSeconds));
+        }
+        return values.isEmpty() ? System.currentTimeMillis() : timestamp;
+    }
+
     /**
      * @param context a context used to differentiate between keys with the same name (forms a compound key)
      * @return an optional containing the value if present or empty if the key did not exist
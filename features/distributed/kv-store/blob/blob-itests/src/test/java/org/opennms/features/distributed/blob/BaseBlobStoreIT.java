@@ -30,6 +30,7 @@ import static org.junit.Assert.fail;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -73,6 +74,21 @@ public abstract class BaseBlobStoreIT {
         assertThat(value.get(), equalTo(state));
     }
 
+    @Test
+    public void canPersistAllAndRetrieve() {
+        String context = "canPersistAllAndRetrieve";
+        Map<String, byte[]> values = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put(Integer.toString(i), new byte[]{(byte) i});
+        }
+
+        long timestamp = blobStore.putAll(values, context, null);
+        values.forEach((key, value) -> {
+            assertThat(blobStore.get(key, context).get(), equalTo(value));
+            assertThat(blobStore.getLastUpdated(key, context).getAsLong(), equalTo(timestamp));
+        });
+    }
+
     @Test
     public void emptyWhenKeyDoesNotExist() {
         // If Cassandra is available, but the key does not exist we should get an empty optional back
@@ -32,6 +32,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -112,6 +113,30 @@ public class CassandraBlobStore extends AbstractKeyValueStore<byte[]> implements
         return timestamp;
     }
 
+    @Override
+    public long putAll(Map<String, byte[]> values, String context, Integer ttlInSeconds) {
+        Objects.requireNonNull(values);
+        Objects.requireNonNull(context);
+
+        // The keys will generally land on different partitions so rather than using a (multi-partition) batch
+        // statement we issue the inserts concurrently and wait for all of them to complete
+        long timestamp = System.currentTimeMillis();
+        CompletableFuture<?>[] futures = values.entrySet().stream()
+                .map(entry -> session.executeAsync(getStatementForInsert(entry.getKey(), context,
+                        ByteBuffer.wrap(entry.getValue()), timestamp, ttlInSeconds)).toCompletableFuture())
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            // Surface the driver exception the same way the synchronous put would
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return timestamp;
+    }
+
     @Override
     public Optional<byte[]> get(String key, String context) {
         // Cassandra will throw a runtime exception here if the execution fails
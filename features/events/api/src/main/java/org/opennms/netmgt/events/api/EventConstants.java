@@ -1000,6 +1000,15 @@ public abstract class EventConstants {
     public static final String PARM_APPLICATION_ID = "applicationId";
     public static final String PARM_APPLICATION_NAME = "applicationName";
 
+    //
+    // for Measurements
+    //
+    /** Constant <code>RESOURCE_DELETED_EVENT_UEI="uei.opennms.org/internal/resourceDeleted"</code> */
+    public static final String RESOURCE_DELETED_EVENT_UEI = "uei.opennms.org/internal/resourceDeleted";
+
+    /** Constant <code>PARM_RESOURCE_ID="resourceId"</code> */
+    public static final String PARM_RESOURCE_ID = "resourceId";
+
     //
     // For Trapd
     //
@@ -25,11 +25,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -108,6 +106,12 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
      */
     private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
 
+    /**
+     * Snapshot of the listener threads to dispatch to keyed by UEI. Rebuilt whenever
+     * the registrations above change, so that broadcasting doesn't need to lock.
+     */
+    private volatile UeiListenerIndex<EventListenerExecutor> m_listenerIndex = new UeiListenerIndex<>(Collections.emptyMap(), Collections.emptyList());
+
     /**
      * The thread pool handling the events
      */
@@ -169,8 +173,16 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             );
         }
 
-        public CompletableFuture<Void> addEvent(final IEvent event) {
-            return CompletableFuture.runAsync(new Runnable() {
+        public void addEvent(final IEvent event) {
+            m_delegateThread.execute(createRunnable(event));
+        }
+
+        public CompletableFuture<Void> addEventAndNotify(final IEvent event) {
+            return CompletableFuture.runAsync(createRunnable(event), m_delegateThread);
+        }
+
+        private Runnable createRunnable(final IEvent event) {
+            return new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -187,7 +199,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
                         LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
                     }
                 }
-            }, m_delegateThread);
+            };
         }
 
         /**
@@ -289,67 +301,31 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
         }
 
-        if (LOG.isDebugEnabled() && m_listeners.isEmpty()) {
-            LOG.debug("No listeners interested in all events");
-        }
-
-        List<CompletableFuture<Void>> listenerFutures = new ArrayList<>();
-
-        IEvent immutableEvent = ImmutableMapper.fromMutableEvent(event);
-
-        // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            listenerFutures.add(queueEventToListener(immutableEvent, listener));
-        }
-
-        if (event.getUei() == null) {
+        // Listeners interested in all events along with the ones interested in this event UEI,
+        // including partial wild card "directory" matches
+        final List<EventListenerExecutor> listenerThreads = m_listenerIndex.getTargets(event.getUei());
+        if (listenerThreads.isEmpty()) {
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Event ID {} does not have a UEI, so skipping UEI matching", immutableEvent.getDbid());
+                LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
             }
             return;
         }
 
-        /*
-         * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
-         */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        listenerFutures.add(queueEventToListener(immutableEvent, listener));
-                        sentToListeners.add(listener);
-                    }
-                }
-            }
-            
-            // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
-            if (i > 0) {
-                // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
-            } else {
-                // No more wild cards to match
-                break;
-            }
-        }
-        
-        if (sentToListeners.isEmpty()) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
+        final IEvent immutableEvent = ImmutableMapper.fromMutableEvent(event);
+
+        if (!synchronous) {
+            for (int i = 0; i < listenerThreads.size(); i++) {
+                listenerThreads.get(i).addEvent(immutableEvent);
             }
+            return;
         }
 
-        // If synchronous...
-        if (synchronous) {
-            // Wait for all of the listeners to complete before returning
-            CompletableFuture.allOf(listenerFutures.toArray(new CompletableFuture[0])).join();
+        // Wait for all of the listeners to complete before returning
+        final CompletableFuture<?>[] listenerFutures = new CompletableFuture<?>[listenerThreads.size()];
+        for (int i = 0; i < listenerThreads.size(); i++) {
+            listenerFutures[i] = listenerThreads.get(i).addEventAndNotify(immutableEvent);
         }
-    }
-
-    private CompletableFuture<Void> queueEventToListener(IEvent event, EventListener listener) {
-        return m_listenerThreads.get(listener.getName()).addEvent(event);
+        CompletableFuture.allOf(listenerFutures).join();
     }
 
     /**
@@ -370,6 +346,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+
+        updateListenerIndex();
     }
 
     /**
@@ -399,6 +377,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+
+        updateListenerIndex();
     }
 
     /**
@@ -433,6 +413,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+
+        updateListenerIndex();
     }
 
     /**
@@ -452,6 +434,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+
+        updateListenerIndex();
     }
 
     /**
@@ -478,6 +462,28 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
             m_listenerThreads.remove(listener.getName());
         }
+
+        updateListenerIndex();
+    }
+
+    /**
+     * Rebuild the index used to dispatch events from the current registrations.
+     */
+    private void updateListenerIndex() {
+        final Map<String, List<EventListenerExecutor>> ueiListenerThreads = new HashMap<>();
+        m_ueiListeners.forEach((uei, listeners) -> ueiListenerThreads.put(uei, getListenerThreads(listeners)));
+        m_listenerIndex = new UeiListenerIndex<>(ueiListenerThreads, getListenerThreads(m_listeners));
+    }
+
+    private List<EventListenerExecutor> getListenerThreads(List<EventListener> listeners) {
+        final List<EventListenerExecutor> listenerThreads = new ArrayList<>(listeners.size());
+        for (EventListener listener : listeners) {
+            final EventListenerExecutor listenerThread = m_listenerThreads.get(listener.getName());
+            if (listenerThread != null) {
+                listenerThreads.add(listenerThread);
+            }
+        }
+        return listenerThreads;
     }
 
     /**
@@ -631,10 +637,6 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
     @Override
     public boolean hasEventListener(final String uei) {
-        if (this.m_ueiListeners.containsKey(uei)) {
-            return this.m_ueiListeners.get(uei).size() > 0;
-        } else {
-            return false;
-        }
+        return m_listenerIndex.hasListeners(uei);
     }
 }
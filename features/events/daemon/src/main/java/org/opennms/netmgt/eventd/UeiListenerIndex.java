@@ -0,0 +1,169 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable index of the listeners registered for UEIs.
+ *
+ * UEIs are stored in a trie with one level per "/" separated part of the UEI.
+ * A listener registered for a UEI ending in "/" receives all events whose UEI
+ * starts with it, i.e. "uei.opennms.org/nodes/" matches
+ * "uei.opennms.org/nodes/nodeDown". The deduplicated list of targets for a
+ * given UEI is resolved with a single walk of the trie and cached, so subsequent
+ * lookups for the same UEI are a single hash lookup.
+ *
+ * The index is rebuilt whenever the registrations change, which discards the
+ * cached lookups along with it.
+ *
+ * @param <T> the type of the dispatch targets
+ */
+class UeiListenerIndex<T> {
+
+    /**
+     * Upper bound on the number of distinct UEIs for which lookups are cached.
+     */
+    protected static final int MAX_CACHED_UEIS = 10000;
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> m_children = new HashMap<>();
+
+        /**
+         * Targets registered for the UEI ending at this node.
+         */
+        private final Set<T> m_exact = new LinkedHashSet<>();
+
+        /**
+         * Targets registered for the UEI ending at this node followed by a "/".
+         */
+        private final Set<T> m_prefix = new LinkedHashSet<>();
+    }
+
+    private final Node<T> m_root = new Node<>();
+
+    private final List<T> m_matchAll;
+
+    private final Set<String> m_registeredUeis = new HashSet<>();
+
+    private final Map<String, List<T>> m_targetsByUei = new ConcurrentHashMap<>();
+
+    /**
+     * @param ueiTargets the targets keyed by the UEI they are registered for
+     * @param matchAllTargets the targets interested in all events
+     */
+    UeiListenerIndex(Map<String, ? extends Collection<T>> ueiTargets, Collection<T> matchAllTargets) {
+        m_matchAll = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(matchAllTargets)));
+
+        for (final Map.Entry<String, ? extends Collection<T>> entry : ueiTargets.entrySet()) {
+            final String uei = entry.getKey();
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            m_registeredUeis.add(uei);
+
+            final boolean isPrefix = uei.endsWith("/");
+            Node<T> node = m_root;
+            for (final String part : (isPrefix ? uei.substring(0, uei.length() - 1) : uei).split("/", -1)) {
+                node = node.m_children.computeIfAbsent(part, p -> new Node<>());
+            }
+            (isPrefix ? node.m_prefix : node.m_exact).addAll(entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the targets for events with the given UEI: the ones interested in all
+     * events, the ones registered for the UEI itself and the ones registered for
+     * any of its "/" terminated prefixes, without duplicates.
+     *
+     * @param uei the UEI of the event, may be null
+     * @return an unmodifiable list of targets
+     */
+    List<T> getTargets(String uei) {
+        if (uei == null || uei.isEmpty()) {
+            return m_matchAll;
+        }
+
+        List<T> targets = m_targetsByUei.get(uei);
+        if (targets == null) {
+            targets = resolve(uei);
+            if (m_targetsByUei.size() >= MAX_CACHED_UEIS) {
+                // Don't let events with arbitrary UEIs grow the cache indefinitely
+                m_targetsByUei.clear();
+            }
+            m_targetsByUei.put(uei, targets);
+        }
+        return targets;
+    }
+
+    /**
+     * @return true if there are listeners registered for exactly the given UEI
+     */
+    boolean hasListeners(String uei) {
+        return m_registeredUeis.contains(uei);
+    }
+
+    private List<T> resolve(String uei) {
+        final boolean isPrefix = uei.endsWith("/");
+        final int end = isPrefix ? uei.length() - 1 : uei.length();
+
+        // Walk down the trie, remembering the nodes for the "/" terminated prefixes
+        final List<Node<T>> prefixNodes = new ArrayList<>();
+        Node<T> node = m_root;
+        int start = 0;
+        while (true) {
+            final int slash = uei.indexOf('/', start);
+            if (slash < 0 || slash >= end) {
+                node = node.m_children.get(uei.substring(start, end));
+                break;
+            }
+            node = node.m_children.get(uei.substring(start, slash));
+            if (node == null) {
+                break;
+            }
+            // A leading "/" does not make for a prefix
+            if (slash > 0) {
+                prefixNodes.add(node);
+            }
+            start = slash + 1;
+        }
+
+        // Most specific match first
+        final Set<T> targets = new LinkedHashSet<>(m_matchAll);
+        if (node != null) {
+            targets.addAll(isPrefix ? node.m_prefix : node.m_exact);
+        }
+        for (int i = prefixNodes.size() - 1; i >= 0; i--) {
+            targets.addAll(prefixNodes.get(i).m_prefix);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(targets));
+    }
+}
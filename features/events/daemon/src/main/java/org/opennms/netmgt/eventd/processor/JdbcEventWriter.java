@@ -0,0 +1,355 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.eventd.processor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.events.api.EventProcessorException;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsEventParameter;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
+/**
+ * EventWriter that gathers the events of concurrently processed logs into batches
+ * and inserts these using JDBC batch statements, bypassing the ORM.
+ *
+ * The event IDs for a batch are allocated from the sequence with a single query.
+ * Callers of {@link #process(Log)} block until the batch containing their events
+ * has been committed, so the events have their database IDs set before they
+ * are broadcast.
+ *
+ * If writing a batch fails, the logs in the batch are written again one at a time
+ * using the {@link HibernateEventWriter}, so that a single bad event does not
+ * affect events from other logs.
+ */
+public class JdbcEventWriter extends HibernateEventWriter implements InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriter.class);
+
+    /**
+     * Maximum number of events to write in a single batch.
+     */
+    protected static final int BATCH_SIZE = SystemProperties.getInteger("org.opennms.eventd.jdbc.batchSize", 500);
+
+    /**
+     * Maximum number of milliseconds to wait for more events before writing an incomplete batch.
+     * By default, whatever events are queued are written immediately.
+     */
+    protected static final long BATCH_FLUSH_INTERVAL_MS = SystemProperties.getLong("org.opennms.eventd.jdbc.flushInterval", 0L);
+
+    /**
+     * Maximum number of logs waiting to be written before {@link #process(Log)} blocks.
+     */
+    protected static final int QUEUE_SIZE = SystemProperties.getInteger("org.opennms.eventd.jdbc.queueSize", 10000);
+
+    private static final String ALLOCATE_EVENT_IDS = "SELECT nextval('eventsNxtId') FROM generate_series(1, ?)";
+
+    private static final String INSERT_EVENT = "INSERT INTO events (" +
+            "eventId, eventUei, nodeId, eventTime, eventHost, eventSource, ipAddr, systemId, eventSnmpHost, " +
+            "serviceId, eventSnmp, eventCreateTime, eventDescr, eventLogGroup, eventLogMsg, eventSeverity, " +
+            "eventPathOutage, eventCorrelation, eventSuppressedCount, eventOperInstruct, eventAutoAction, " +
+            "eventOperAction, eventOperActionMenuText, eventNotification, eventTTicket, eventTTicketState, " +
+            "eventForward, eventMouseOverText, eventLog, eventDisplay, eventAckUser, eventAckTime, ifIndex" +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_EVENT_PARAMETER = "INSERT INTO event_parameters (eventId, name, value, type, position) VALUES (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    private final int m_batchSize;
+
+    private final long m_flushIntervalMs;
+
+    private final BlockingQueue<PendingLog> m_queue;
+
+    private final Timer m_batchWriteTimer;
+
+    private final Histogram m_batchSizes;
+
+    private volatile boolean m_running;
+
+    private Thread m_writerThread;
+
+    /**
+     * The events of a log waiting to be written, along with the future
+     * used to notify the caller once they were.
+     */
+    private static class PendingLog {
+        private final Log m_log;
+        private final List<Event> m_events;
+        private final CompletableFuture<Void> m_future = new CompletableFuture<>();
+
+        private PendingLog(Log log, List<Event> events) {
+            m_log = log;
+            m_events = events;
+        }
+    }
+
+    public JdbcEventWriter(MetricRegistry registry) {
+        this(registry, BATCH_SIZE, BATCH_FLUSH_INTERVAL_MS, QUEUE_SIZE);
+    }
+
+    public JdbcEventWriter(MetricRegistry registry, int batchSize, long flushIntervalMs, int queueSize) {
+        super(registry);
+        m_batchSize = batchSize;
+        m_flushIntervalMs = flushIntervalMs;
+        m_queue = new LinkedBlockingQueue<>(queueSize);
+        m_batchWriteTimer = registry.timer("eventlogs.process.write.batch");
+        m_batchSizes = registry.histogram("eventlogs.process.write.batch.size");
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        m_running = true;
+        m_writerThread = new Thread(this::writeBatches, "JdbcEventWriter");
+        m_writerThread.setDaemon(true);
+        m_writerThread.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        m_running = false;
+        if (m_writerThread != null) {
+            m_writerThread.interrupt();
+            m_writerThread.join();
+        }
+        // Don't leave any callers hanging
+        PendingLog pending;
+        while ((pending = m_queue.poll()) != null) {
+            pending.m_future.completeExceptionally(new IllegalStateException("The event writer was stopped"));
+        }
+    }
+
+    @Override
+    public void process(Log eventLog) throws EventProcessorException {
+        if (eventLog == null || eventLog.getEvents() == null || eventLog.getEvents().getEventCollection() == null) {
+            return;
+        }
+
+        // Find the events in the log that need to be persisted
+        final List<Event> eventsToPersist = eventLog.getEvents().getEventCollection().stream()
+                .filter(e -> checkEventSanityAndDoWeProcess(e, "JdbcEventWriter"))
+                .collect(Collectors.toList());
+        if (eventsToPersist.isEmpty()) {
+            return;
+        }
+
+        if (!m_running) {
+            super.process(eventLog);
+            return;
+        }
+
+        final PendingLog pending = new PendingLog(eventLog, eventsToPersist);
+        try {
+            m_queue.put(pending);
+            pending.m_future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for events to be written", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EventProcessorException) {
+                throw (EventProcessorException)e.getCause();
+            }
+            throw new EventProcessorException("Unexpected exception while storing events", e.getCause());
+        }
+    }
+
+    private void writeBatches() {
+        while (m_running) {
+            final List<PendingLog> batch = new ArrayList<>();
+            try {
+                final PendingLog first = m_queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                int numEvents = first.m_events.size();
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_flushIntervalMs);
+                while (numEvents < m_batchSize) {
+                    final PendingLog next = m_flushIntervalMs > 0
+                            ? m_queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                            : m_queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    numEvents += next.m_events.size();
+                }
+            } catch (InterruptedException e) {
+                // We're shutting down, but finish what we've already taken off the queue
+                Thread.currentThread().interrupt();
+            }
+
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+    }
+
+    private void write(List<PendingLog> batch) {
+        try {
+            writeBatch(batch);
+        } catch (Exception e) {
+            LOG.warn("Exception while writing batch of {} event logs, writing them individually", batch.size(), e);
+            for (final PendingLog pending : batch) {
+                try {
+                    super.process(pending.m_log);
+                    pending.m_future.complete(null);
+                } catch (Exception ex) {
+                    pending.m_future.completeExceptionally(ex);
+                }
+            }
+            return;
+        }
+        batch.forEach(pending -> pending.m_future.complete(null));
+    }
+
+    private void writeBatch(List<PendingLog> batch) {
+        final List<OnmsEvent> ovents = new ArrayList<>();
+        try (Context context = m_batchWriteTimer.time()) {
+            getTransactionManager().execute(status -> {
+                for (final PendingLog pending : batch) {
+                    for (final Event event : pending.m_events) {
+                        LOG.debug("JdbcEventWriter: processing {}, nodeid: {}, ipaddr: {}, serviceid: {}, time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
+                        ovents.add(createOnmsEvent(pending.m_log.getHeader(), event));
+                    }
+                }
+
+                final List<Integer> eventIds = m_jdbcTemplate.queryForList(ALLOCATE_EVENT_IDS, Integer.class, ovents.size());
+                if (eventIds.size() != ovents.size()) {
+                    throw new IllegalStateException("Expected " + ovents.size() + " event IDs, but got " + eventIds.size());
+                }
+                final List<Object[]> parameters = new ArrayList<>();
+                for (int i = 0; i < ovents.size(); i++) {
+                    final OnmsEvent ovent = ovents.get(i);
+                    ovent.setId(eventIds.get(i));
+                    if (ovent.getEventParameters() != null) {
+                        // The parameters are kept in order of their position
+                        int position = 0;
+                        for (final OnmsEventParameter parameter : ovent.getEventParameters()) {
+                            parameters.add(new Object[] { ovent.getId(), parameter.getName(), parameter.getValue(), parameter.getType(), position++ });
+                        }
+                    }
+                }
+
+                m_jdbcTemplate.batchUpdate(INSERT_EVENT, ovents, ovents.size(), JdbcEventWriter::setEventValues);
+                if (!parameters.isEmpty()) {
+                    m_jdbcTemplate.batchUpdate(INSERT_EVENT_PARAMETER, parameters);
+                }
+                return null;
+            });
+        }
+        m_batchSizes.update(ovents.size());
+
+        // Update the events with the database IDs of the events stored in the database
+        int i = 0;
+        for (final PendingLog pending : batch) {
+            for (final Event event : pending.m_events) {
+                event.setDbid(ovents.get(i++).getId());
+            }
+        }
+    }
+
+    private static void setEventValues(PreparedStatement ps, OnmsEvent ovent) throws SQLException {
+        int i = 1;
+        ps.setInt(i++, ovent.getId());
+        ps.setString(i++, ovent.getEventUei());
+        setInteger(ps, i++, ovent.getNode() == null ? null : ovent.getNode().getId());
+        setTimestamp(ps, i++, ovent.getEventTime());
+        ps.setString(i++, ovent.getEventHost());
+        ps.setString(i++, ovent.getEventSource());
+        ps.setString(i++, ovent.getIpAddr() == null ? null : InetAddressUtils.str(ovent.getIpAddr()));
+        ps.setString(i++, ovent.getDistPoller() == null ? null : ovent.getDistPoller().getId());
+        ps.setString(i++, ovent.getEventSnmpHost());
+        setInteger(ps, i++, ovent.getServiceType() == null ? null : ovent.getServiceType().getId());
+        ps.setString(i++, ovent.getEventSnmp());
+        setTimestamp(ps, i++, ovent.getEventCreateTime());
+        ps.setString(i++, ovent.getEventDescr());
+        ps.setString(i++, ovent.getEventLogGroup());
+        ps.setString(i++, ovent.getEventLogMsg());
+        setInteger(ps, i++, ovent.getEventSeverity());
+        ps.setString(i++, ovent.getEventPathOutage());
+        ps.setString(i++, ovent.getEventCorrelation());
+        setInteger(ps, i++, ovent.getEventSuppressedCount());
+        ps.setString(i++, ovent.getEventOperInstruct());
+        ps.setString(i++, ovent.getEventAutoAction());
+        ps.setString(i++, ovent.getEventOperAction());
+        ps.setString(i++, ovent.getEventOperActionMenuText());
+        ps.setString(i++, ovent.getEventNotification());
+        ps.setString(i++, ovent.getEventTTicket());
+        setInteger(ps, i++, ovent.getEventTTicketState());
+        ps.setString(i++, ovent.getEventForward());
+        ps.setString(i++, ovent.getEventMouseOverText());
+        ps.setString(i++, ovent.getEventLog());
+        ps.setString(i++, ovent.getEventDisplay());
+        ps.setString(i++, ovent.getEventAckUser());
+        setTimestamp(ps, i++, ovent.getEventAckTime());
+        setInteger(ps, i++, ovent.getIfIndex());
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+
+    private static void setTimestamp(PreparedStatement ps, int index, Date value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.TIMESTAMP);
+        } else {
+            ps.setTimestamp(index, new Timestamp(value.getTime()));
+        }
+    }
+
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        m_jdbcTemplate = jdbcTemplate;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.eventd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class UeiListenerIndexTest {
+
+    @Test
+    public void canMatchUeisAndPrefixes() {
+        final Map<String, List<String>> listeners = new LinkedHashMap<>();
+        listeners.put("uei.opennms.org/nodes/nodeDown", Arrays.asList("exact", "both"));
+        listeners.put("uei.opennms.org/nodes/", Arrays.asList("nodes", "both"));
+        listeners.put("uei.opennms.org/", Collections.singletonList("all-opennms"));
+        listeners.put("uei.opennms.org/nodes", Collections.singletonList("no-slash"));
+        listeners.put("/", Collections.singletonList("slash"));
+        final UeiListenerIndex<String> index = new UeiListenerIndex<>(listeners, Collections.singletonList("any"));
+
+        // Most specific first, without duplicates
+        assertThat(index.getTargets("uei.opennms.org/nodes/nodeDown"), contains("any", "exact", "both", "nodes", "all-opennms"));
+        assertThat(index.getTargets("uei.opennms.org/nodes/nodeUp"), contains("any", "nodes", "both", "all-opennms"));
+        assertThat(index.getTargets("uei.opennms.org/nodes"), contains("any", "no-slash", "all-opennms"));
+        // A UEI ending in "/" matches the registration for itself
+        assertThat(index.getTargets("uei.opennms.org/nodes/"), contains("any", "nodes", "both", "all-opennms"));
+        // Only registrations ending in "/" match deeper UEIs
+        assertThat(index.getTargets("uei.opennms.org/nodes/nodeDown/extra"), contains("any", "nodes", "both", "all-opennms"));
+        assertThat(index.getTargets("uei.opennms.org"), contains("any"));
+        // A leading "/" is not a wild card
+        assertThat(index.getTargets("/uei.opennms.org/nodes/nodeDown"), contains("any"));
+        assertThat(index.getTargets("/"), contains("any", "slash"));
+        assertThat(index.getTargets(null), contains("any"));
+        assertThat(index.getTargets(""), contains("any"));
+    }
+
+    @Test
+    public void canCacheLookups() {
+        final UeiListenerIndex<String> index = new UeiListenerIndex<>(
+                Collections.singletonMap("uei.opennms.org/", Collections.singletonList("a")),
+                Collections.emptyList());
+
+        final List<String> targets = index.getTargets("uei.opennms.org/test");
+        assertThat(index.getTargets("uei.opennms.org/test"), sameInstance(targets));
+        assertThat(index.getTargets("uei.example.org/test"), empty());
+    }
+
+    @Test
+    public void canCheckForRegisteredUeis() {
+        final Map<String, List<String>> listeners = new LinkedHashMap<>();
+        listeners.put("uei.opennms.org/nodes/", Collections.singletonList("a"));
+        listeners.put("uei.opennms.org/nodes/nodeUp", Collections.emptyList());
+        final UeiListenerIndex<String> index = new UeiListenerIndex<>(listeners, Collections.emptyList());
+
+        assertTrue(index.hasListeners("uei.opennms.org/nodes/"));
+        assertFalse(index.hasListeners("uei.opennms.org/nodes/nodeUp"));
+        assertFalse(index.hasListeners("uei.opennms.org/nodes/nodeDown"));
+    }
+}
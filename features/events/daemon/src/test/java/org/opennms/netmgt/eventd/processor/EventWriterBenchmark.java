@@ -0,0 +1,216 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.eventd.processor;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to compare the event write throughput
+ * of the {@link HibernateEventWriter} and the {@link JdbcEventWriter} while many event
+ * logs are processed concurrently.
+ * <p>
+ * Every statement and transaction commit is charged with a simulated database round trip,
+ * so the results reflect the number of round trips rather than the speed of an actual
+ * database. Hibernate runs without JDBC batching, so storing an event costs a round trip
+ * for the sequence, one for the event and one per parameter. A JDBC batch costs a round
+ * trip for the sequence and one per batched statement. Transactions are limited to
+ * {@link #connections} concurrent database connections, like they would be by the pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventWriterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @Param({"hibernate", "jdbc"})
+    public String writer;
+
+    @Param({"2"})
+    public int parameters;
+
+    @Param({"100"})
+    public long roundTripMicros;
+
+    @Param({"4", "32"})
+    public int connections;
+
+    private HibernateEventWriter eventWriter;
+
+    private final AtomicInteger nextEventId = new AtomicInteger(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Semaphore pool = new Semaphore(connections);
+        final MetricRegistry registry = new MetricRegistry();
+        if ("jdbc".equals(writer)) {
+            final JdbcEventWriter jdbcEventWriter = new JdbcEventWriter(registry) {
+                @Override
+                protected OnmsEvent createOnmsEvent(Header eventHeader, Event event) {
+                    return EventWriterBenchmark.createOnmsEvent(event);
+                }
+            };
+            jdbcEventWriter.setJdbcTemplate(jdbcTemplate());
+            eventWriter = jdbcEventWriter;
+        } else {
+            eventWriter = new HibernateEventWriter(registry) {
+                @Override
+                protected OnmsEvent createOnmsEvent(Header eventHeader, Event event) {
+                    return EventWriterBenchmark.createOnmsEvent(event);
+                }
+            };
+        }
+
+        final EventDao eventDao = mock(EventDao.class);
+        when(eventDao.save(any(OnmsEvent.class))).then(roundTrips(2 + parameters, invocation -> {
+            final Integer id = nextEventId.getAndIncrement();
+            invocation.<OnmsEvent>getArgument(0).setId(id);
+            return id;
+        }));
+        ReflectionTestUtils.setField(eventWriter, "eventDao", eventDao);
+
+        eventWriter.setTransactionManager(new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+                pool.acquireUninterruptibly();
+                try {
+                    final T result = action.doInTransaction(null);
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+                    return result;
+                } finally {
+                    pool.release();
+                }
+            }
+        });
+
+        if (eventWriter instanceof JdbcEventWriter) {
+            ((JdbcEventWriter) eventWriter).afterPropertiesSet();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        if (eventWriter instanceof JdbcEventWriter) {
+            ((JdbcEventWriter) eventWriter).destroy();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private JdbcTemplate jdbcTemplate() {
+        final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class), any(Object[].class))).then(roundTrips(1, invocation -> {
+            final int count = invocation.getArgument(2);
+            return IntStream.range(0, count).mapToObj(i -> nextEventId.getAndIncrement()).collect(Collectors.toList());
+        }));
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .then(roundTrips(1, invocation -> new int[0][0]));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).then(roundTrips(1, invocation -> new int[0]));
+        return jdbcTemplate;
+    }
+
+    private <T> Answer<T> roundTrips(int count, Answer<T> answer) {
+        return invocation -> {
+            LockSupport.parkNanos(count * TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+            return answer.answer(invocation);
+        };
+    }
+
+    private static OnmsEvent createOnmsEvent(Event event) {
+        final OnmsEvent ovent = new OnmsEvent();
+        ovent.setEventUei(event.getUei());
+        ovent.setEventTime(event.getTime());
+        ovent.setEventSource(event.getSource());
+        ovent.setDistPoller(new OnmsDistPoller("00000000-0000-0000-0000-000000000000"));
+        ovent.setEventParametersFromEvent(event);
+        return ovent;
+    }
+
+    private Log log() {
+        final EventBuilder builder = new EventBuilder("uei.opennms.org/test/benchmark", "benchmark");
+        builder.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+        for (int i = 0; i < parameters; i++) {
+            builder.addParam("param" + i, i);
+        }
+        final Events events = new Events();
+        events.addEvent(builder.getEvent());
+        final Log log = new Log();
+        log.setEvents(events);
+        return log;
+    }
+
+    @Benchmark
+    @Fork(value = 1)
+    @Threads(32)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void write() throws Exception {
+        eventWriter.process(log());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.eventd.processor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Verifies the batching of the {@link JdbcEventWriter} using a mocked {@link JdbcTemplate}.
+ */
+public class JdbcEventWriterTest {
+
+    private static final int NUM_LOGS = 4;
+
+    private static final int EVENTS_PER_LOG = 2;
+
+    private JdbcEventWriter m_eventWriter;
+    private JdbcTemplate m_jdbcTemplate;
+    private EventDao m_eventDao;
+
+    private final AtomicInteger m_nextEventId = new AtomicInteger(1);
+    private final AtomicInteger m_transactions = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        // Wait for all of the events to arrive before writing the batch
+        m_eventWriter = new JdbcEventWriter(new MetricRegistry(), NUM_LOGS * EVENTS_PER_LOG, 60000, 100) {
+            @Override
+            protected OnmsEvent createOnmsEvent(Header eventHeader, Event event) {
+                final OnmsEvent ovent = new OnmsEvent();
+                ovent.setEventUei(event.getUei());
+                ovent.setEventTime(event.getTime());
+                ovent.setEventSource(event.getSource());
+                ovent.setDistPoller(new OnmsDistPoller("00000000-0000-0000-0000-000000000000"));
+                ovent.setEventParametersFromEvent(event);
+                return ovent;
+            }
+        };
+
+        m_jdbcTemplate = mock(JdbcTemplate.class);
+        when(m_jdbcTemplate.queryForList(anyString(), eq(Integer.class), any(Object[].class))).thenAnswer(invocation -> {
+            final int count = invocation.getArgument(2);
+            return IntStream.range(0, count).mapToObj(i -> m_nextEventId.getAndIncrement()).collect(Collectors.toList());
+        });
+        m_eventWriter.setJdbcTemplate(m_jdbcTemplate);
+
+        m_eventDao = mock(EventDao.class);
+        when(m_eventDao.save(any(OnmsEvent.class))).thenAnswer(invocation -> {
+            final Integer id = m_nextEventId.getAndIncrement();
+            invocation.<OnmsEvent>getArgument(0).setId(id);
+            return id;
+        });
+        ReflectionTestUtils.setField(m_eventWriter, "eventDao", m_eventDao);
+
+        m_eventWriter.setTransactionManager(new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+                m_transactions.incrementAndGet();
+                return action.doInTransaction(null);
+            }
+        });
+        m_eventWriter.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        m_eventWriter.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void canWriteConcurrentLogsInSingleBatch() throws Exception {
+        final List<Event> events = processConcurrently();
+
+        assertThat(m_transactions.get(), equalTo(1));
+        assertThat(events.stream().map(Event::getDbid).collect(Collectors.toList()),
+                containsInAnyOrder(IntStream.rangeClosed(1, NUM_LOGS * EVENTS_PER_LOG).boxed().toArray()));
+
+        // One statement for all events and one for all of their parameters
+        verify(m_jdbcTemplate, times(1)).batchUpdate(anyString(), any(Collection.class), eq(NUM_LOGS * EVENTS_PER_LOG), any(ParameterizedPreparedStatementSetter.class));
+        verify(m_jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void canFallBackToIndividualWritesWhenBatchFails() throws Exception {
+        when(m_jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new IllegalStateException("boom"));
+
+        final List<Event> events = processConcurrently();
+
+        // The failed batch, followed by one transaction per log
+        assertThat(m_transactions.get(), equalTo(1 + NUM_LOGS));
+        verify(m_eventDao, times(NUM_LOGS * EVENTS_PER_LOG)).save(any(OnmsEvent.class));
+        events.forEach(e -> assertThat(e.getDbid() > NUM_LOGS * EVENTS_PER_LOG, equalTo(true)));
+    }
+
+    private List<Event> processConcurrently() throws Exception {
+        final List<Event> events = new ArrayList<>();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(NUM_LOGS);
+        for (int i = 0; i < NUM_LOGS; i++) {
+            final Events logEvents = new Events();
+            for (int j = 0; j < EVENTS_PER_LOG; j++) {
+                final EventBuilder builder = new EventBuilder("testUei", "testSource");
+                builder.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+                builder.addParam("param", i * EVENTS_PER_LOG + j);
+                logEvents.addEvent(builder.getEvent());
+            }
+            events.addAll(logEvents.getEventCollection());
+
+            final Log log = new Log();
+            log.setEvents(logEvents);
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    m_eventWriter.process(log);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        } finally {
+            executor.shutdown();
+        }
+        return events;
+    }
+}
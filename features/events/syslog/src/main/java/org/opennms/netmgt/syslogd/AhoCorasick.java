@@ -0,0 +1,162 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton that finds which of a fixed set of substrings occur in a text
+ * with a single pass over the text, regardless of the number of substrings.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+final class AhoCorasick {
+
+    private static final int ROOT = 0;
+
+    private static final int[] NO_OUTPUTS = new int[0];
+
+    /** Sorted transition characters, per state */
+    private final char[][] m_keys;
+
+    /** Target states, parallel to {@link #m_keys} */
+    private final int[][] m_targets;
+
+    /** Failure transitions, per state */
+    private final int[] m_failures;
+
+    /** Indexes of the substrings that end in each state, including those of its failure states */
+    private final int[][] m_outputs;
+
+    /**
+     * @param substrings the substrings to search for, they are reported by their index in this list
+     */
+    AhoCorasick(final List<String> substrings) {
+        // Build the trie
+        final List<TreeMap<Character, Integer>> transitions = new ArrayList<>();
+        final List<List<Integer>> outputs = new ArrayList<>();
+        transitions.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+        for (int i = 0; i < substrings.size(); i++) {
+            final String substring = substrings.get(i);
+            int state = ROOT;
+            for (int j = 0; j < substring.length(); j++) {
+                final Character c = substring.charAt(j);
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.get(state).add(i);
+        }
+
+        final int numStates = transitions.size();
+        m_keys = new char[numStates][];
+        m_targets = new int[numStates][];
+        for (int state = 0; state < numStates; state++) {
+            final TreeMap<Character, Integer> stateTransitions = transitions.get(state);
+            m_keys[state] = new char[stateTransitions.size()];
+            m_targets[state] = new int[stateTransitions.size()];
+            int k = 0;
+            for (final Map.Entry<Character, Integer> transition : stateTransitions.entrySet()) {
+                m_keys[state][k] = transition.getKey();
+                m_targets[state][k] = transition.getValue();
+                k++;
+            }
+        }
+
+        // Compute the failure transitions breadth first, so that the outputs of
+        // the failure state are complete before they are merged
+        m_failures = new int[numStates];
+        m_outputs = new int[numStates][];
+        m_outputs[ROOT] = toArray(outputs.get(ROOT));
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (final int child : m_targets[ROOT]) {
+            m_failures[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            final List<Integer> stateOutputs = outputs.get(state);
+            for (final int output : m_outputs[m_failures[state]]) {
+                stateOutputs.add(output);
+            }
+            m_outputs[state] = toArray(stateOutputs);
+
+            for (int k = 0; k < m_keys[state].length; k++) {
+                final char c = m_keys[state][k];
+                final int child = m_targets[state][k];
+                int failure = m_failures[state];
+                int next;
+                while ((next = transition(failure, c)) < 0 && failure != ROOT) {
+                    failure = m_failures[failure];
+                }
+                m_failures[child] = next < 0 ? ROOT : next;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Sets the bits of the substrings that occur in the given text.
+     */
+    void findAll(final CharSequence text, final BitSet found) {
+        for (final int output : m_outputs[ROOT]) {
+            found.set(output);
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            int next;
+            while ((next = transition(state, c)) < 0 && state != ROOT) {
+                state = m_failures[state];
+            }
+            state = next < 0 ? ROOT : next;
+            for (final int output : m_outputs[state]) {
+                found.set(output);
+            }
+        }
+    }
+
+    private int transition(final int state, final char c) {
+        final int k = Arrays.binarySearch(m_keys[state], c);
+        return k < 0 ? -1 : m_targets[state][k];
+    }
+
+    private static int[] toArray(final List<Integer> values) {
+        if (values.isEmpty()) {
+            return NO_OUTPUTS;
+        }
+        return values.stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.syslogd;
+
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link UeiMatch} and {@link HideMatch} rules of a {@link SyslogdConfig}, compiled
+ * once so that a message is only tested against the rules that can possibly match it.
+ *
+ * All the substring rules, along with a literal that every match of each regex rule
+ * must contain, are searched for in a single pass using an {@link AhoCorasick} automaton.
+ * Only the rules found by this pass, and the regex rules for which no such literal
+ * could be determined, are then evaluated in configuration order, so the first matching
+ * rule is the same as when evaluating all of them in turn.
+ */
+final class SyslogMatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogMatcher.class);
+
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCHED = 1;
+    private static final byte NOT_MATCHED = 2;
+
+    private static volatile SyslogMatcher s_lastMatcher;
+
+    private final UeiMatch[] m_ueiMatches;
+    private final HideMatch[] m_hideMatches;
+
+    private final UeiRule[] m_ueiRules;
+    private final RuleSet m_ueiRuleSet;
+    private final RuleSet m_hideRuleSet;
+
+    /** Distinct process, hostname and hostaddr expressions, evaluated at most once per message */
+    private final Pattern[] m_filters;
+
+    /**
+     * Returns the compiled rules for the given configuration. The rules are only compiled
+     * again when the lists of {@link UeiMatch} or {@link HideMatch} of the configuration change.
+     */
+    static SyslogMatcher forConfig(final SyslogdConfig config) {
+        final List<UeiMatch> ueiMatches = config.getUeiList() == null ? Collections.emptyList() : config.getUeiList();
+        final List<HideMatch> hideMatches = config.getHideMessages() == null ? Collections.emptyList() : config.getHideMessages();
+        SyslogMatcher matcher = s_lastMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(ueiMatches, hideMatches)) {
+            matcher = new SyslogMatcher(ueiMatches, hideMatches);
+            s_lastMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    SyslogMatcher(final List<UeiMatch> ueiMatches, final List<HideMatch> hideMatches) {
+        m_ueiMatches = ueiMatches.toArray(new UeiMatch[0]);
+        m_hideMatches = hideMatches.toArray(new HideMatch[0]);
+
+        final Map<String, Integer> filterIndexes = new LinkedHashMap<>();
+        final List<Pattern> filters = new ArrayList<>();
+        final List<Pattern> ueiPatterns = new ArrayList<>();
+        final List<String> ueiSubstrings = new ArrayList<>();
+        m_ueiRules = new UeiRule[m_ueiMatches.length];
+        for (int i = 0; i < m_ueiMatches.length; i++) {
+            final UeiMatch ueiMatch = m_ueiMatches[i];
+            final String type = ueiMatch.getMatch().getType();
+            final String expression = ueiMatch.getMatch().getExpression();
+            final boolean isRegex = type.startsWith("regex");
+            m_ueiRules[i] = new UeiRule(ueiMatch,
+                    filter(ueiMatch.getProcessMatch().map(m -> m.getExpression()).orElse(null), filterIndexes, filters),
+                    filter(ueiMatch.getHostnameMatch().map(m -> m.getExpression()).orElse(null), filterIndexes, filters),
+                    filter(ueiMatch.getHostaddrMatch().map(m -> m.getExpression()).orElse(null), filterIndexes, filters),
+                    isRegex);
+            ueiPatterns.add(isRegex ? compile(expression) : null);
+            ueiSubstrings.add("substr".equals(type) ? expression : null);
+        }
+        m_filters = filters.toArray(new Pattern[0]);
+        m_ueiRuleSet = new RuleSet(ueiSubstrings, ueiPatterns);
+
+        final List<Pattern> hidePatterns = new ArrayList<>();
+        final List<String> hideSubstrings = new ArrayList<>();
+        for (final HideMatch hideMatch : m_hideMatches) {
+            final String type = hideMatch.getMatch().getType();
+            final String expression = hideMatch.getMatch().getExpression();
+            hidePatterns.add("regex".equals(type) ? compile(expression) : null);
+            hideSubstrings.add("substr".equals(type) ? expression : null);
+        }
+        m_hideRuleSet = new RuleSet(hideSubstrings, hidePatterns);
+    }
+
+    private boolean isCompiledFrom(final List<UeiMatch> ueiMatches, final List<HideMatch> hideMatches) {
+        if (ueiMatches.size() != m_ueiMatches.length || hideMatches.size() != m_hideMatches.length) {
+            return false;
+        }
+        for (int i = 0; i < m_ueiMatches.length; i++) {
+            if (ueiMatches.get(i) != m_ueiMatches[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < m_hideMatches.length; i++) {
+            if (hideMatches.get(i) != m_hideMatches[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first {@link UeiMatch}, in configuration order, that matches the given message.
+     *
+     * @return the match, or <code>null</code> if none of the rules match
+     */
+    UeiMatchResult findUeiMatch(final SyslogMessage message) {
+        final String text = message.getMessage();
+        if (text == null || m_ueiRules.length == 0) {
+            return null;
+        }
+        final String facility = message.getFacility().toString();
+        final String severity = message.getSeverity().toString();
+        final byte[] filterResults = new byte[m_filters.length];
+        // Resolving the host address may involve a lookup, only do it when a rule needs it
+        String hostAddress = null;
+        boolean hostAddressResolved = false;
+
+        final BitSet candidates = m_ueiRuleSet.getCandidates(text);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final UeiRule rule = m_ueiRules[i];
+            if (!containsIgnoreCase(rule.ueiMatch.getFacilities(), facility)
+                    || !containsIgnoreCase(rule.ueiMatch.getSeverities(), severity)
+                    || !matchFilter(rule.processFilter, message.getProcessName(), filterResults)
+                    || !matchFilter(rule.hostnameFilter, message.getHostName(), filterResults)) {
+                continue;
+            }
+            if (rule.hostaddrFilter >= 0 && !hostAddressResolved) {
+                hostAddress = str(message.getHostAddress());
+                hostAddressResolved = true;
+            }
+            if (!matchFilter(rule.hostaddrFilter, hostAddress, filterResults)) {
+                continue;
+            }
+            if (!rule.isRegex) {
+                // Substring candidates always contain their expression
+                return new UeiMatchResult(rule.ueiMatch, null);
+            }
+            final Pattern pattern = m_ueiRuleSet.patterns[i];
+            if (pattern != null) {
+                final Matcher matcher = pattern.matcher(text);
+                if (matcher.find()) {
+                    return new UeiMatchResult(rule.ueiMatch, matcher);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether any of the {@link HideMatch} rules match the given message.
+     */
+    boolean shouldHide(final SyslogMessage message) {
+        if (m_hideMatches.length == 0) {
+            return false;
+        }
+        // Match against the full string of the message
+        final String fullText = message.asRfc3164Message();
+        final BitSet candidates = m_hideRuleSet.getCandidates(fullText);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final Pattern pattern = m_hideRuleSet.patterns[i];
+            if (pattern == null || pattern.matcher(fullText).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchFilter(final int filter, final String input, final byte[] filterResults) {
+        if (filter < 0) {
+            return true;
+        }
+        if (filterResults[filter] == UNKNOWN) {
+            final Pattern pattern = m_filters[filter];
+            filterResults[filter] = input != null && pattern != null && pattern.matcher(input).find() ? MATCHED : NOT_MATCHED;
+        }
+        return filterResults[filter] == MATCHED;
+    }
+
+    private static int filter(final String expression, final Map<String, Integer> filterIndexes, final List<Pattern> filters) {
+        if (expression == null) {
+            return -1;
+        }
+        return filterIndexes.computeIfAbsent(expression, e -> {
+            filters.add(compile(e));
+            return filters.size() - 1;
+        });
+    }
+
+    private static boolean containsIgnoreCase(final List<String> collection, final String match) {
+        if (collection.size() == 0) return true;
+        for (final String string : collection) {
+            if (string.equalsIgnoreCase(match)) return true;
+        }
+        return false;
+    }
+
+    private static Pattern compile(final String expression) {
+        try {
+            return Pattern.compile(expression, Pattern.MULTILINE);
+        } catch (final PatternSyntaxException e) {
+            LOG.warn("Failed to compile regex pattern '{}'", expression, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a string that every match of the given regular expression contains, or
+     * <code>null</code> if none can be determined.
+     *
+     * This only looks at the top-level sequence of the expression: groups, character
+     * classes, escapes other than quoted metacharacters and optional or repeated characters
+     * end a literal, and alternations or inline flags outside of groups give up entirely.
+     * Of the literals found, all are returned so that the caller can pick the most selective.
+     */
+    static List<String> requiredLiterals(final String regex) {
+        final List<String> literals = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            int next = i + 1;
+            boolean isLiteral = false;
+            switch (c) {
+                case '\\':
+                    if (next >= regex.length()) {
+                        return null;
+                    }
+                    final char escaped = regex.charAt(next);
+                    if (Character.isLetterOrDigit(escaped)) {
+                        if ("dDsSwWbBAGZzhHvVRXtnrfae".indexOf(escaped) < 0) {
+                            // \Q, back references, and escapes followed by arguments
+                            return null;
+                        }
+                        endLiteral(literal, literals);
+                    } else {
+                        literal.append(escaped);
+                        isLiteral = true;
+                    }
+                    next++;
+                    break;
+                case '[':
+                    next = skipClass(regex, i);
+                    if (next < 0) {
+                        return null;
+                    }
+                    endLiteral(literal, literals);
+                    break;
+                case '(':
+                    if (regex.startsWith("(?", i) && isInlineFlags(regex, i + 2)) {
+                        return null;
+                    }
+                    next = skipGroup(regex, i);
+                    if (next < 0) {
+                        return null;
+                    }
+                    endLiteral(literal, literals);
+                    break;
+                case '|':
+                case ')':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    // Alternations, or characters out of their usual context
+                    return null;
+                case '.':
+                case '^':
+                case '$':
+                    endLiteral(literal, literals);
+                    break;
+                default:
+                    literal.append(c);
+                    isLiteral = true;
+                    break;
+            }
+
+            // Handle quantifiers applied to what was just parsed
+            if (next < regex.length()) {
+                final char quantifier = regex.charAt(next);
+                if (quantifier == '*' || quantifier == '?' || quantifier == '{') {
+                    if (isLiteral) {
+                        // The last character may not be there
+                        literal.setLength(literal.length() - 1);
+                        if (literal.length() > 0 && Character.isHighSurrogate(literal.charAt(literal.length() - 1))) {
+                            literal.setLength(literal.length() - 1);
+                        }
+                    }
+                    endLiteral(literal, literals);
+                    if (quantifier == '{') {
+                        next = regex.indexOf('}', next);
+                        if (next < 0) {
+                            return null;
+                        }
+                    }
+                    next = skipQuantifierModifier(regex, next + 1);
+                } else if (quantifier == '+') {
+                    // The last character is there, but may be followed by more of the same
+                    endLiteral(literal, literals);
+                    next = skipQuantifierModifier(regex, next + 1);
+                }
+            }
+            i = next;
+        }
+        endLiteral(literal, literals);
+        return literals;
+    }
+
+    private static void endLiteral(final StringBuilder literal, final List<String> literals) {
+        if (literal.length() > 0) {
+            literals.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    private static int skipQuantifierModifier(final String regex, final int i) {
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            return i + 1;
+        }
+        return i;
+    }
+
+    private static boolean isInlineFlags(final String regex, int i) {
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == ')') {
+                return true;
+            } else if (!Character.isLetter(c) && c != '-') {
+                return false;
+            }
+            i++;
+        }
+        return false;
+    }
+
+    /**
+     * @return the index following the character class starting at the given index, or -1 if it is not terminated
+     */
+    private static int skipClass(final String regex, final int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                depth++;
+                // A closing bracket right after the opening one, or its negation, is literal
+                if (regex.startsWith("^", i + 1)) {
+                    i++;
+                }
+                if (regex.startsWith("]", i + 1)) {
+                    i++;
+                }
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index following the group starting at the given index, or -1 if it is not terminated
+     */
+    private static int skipGroup(final String regex, final int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                if (regex.startsWith("Q", i + 1)) {
+                    return -1;
+                }
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * The candidate rules of a rule list: substring rules are found by their expression,
+     * regex rules by the most selective of their required literals.
+     */
+    private static final class RuleSet {
+        private final Pattern[] patterns;
+        private final AhoCorasick automaton;
+        /** Rule indexes for each substring searched by the automaton */
+        private final int[][] rulesBySubstring;
+        /** Rules that must always be evaluated */
+        private final BitSet alwaysCandidates = new BitSet();
+
+        private RuleSet(final List<String> substrings, final List<Pattern> patterns) {
+            this.patterns = patterns.toArray(new Pattern[0]);
+
+            // Count how many rules require each literal so that we can prefer the rarest
+            final List<List<String>> literalsByRule = new ArrayList<>();
+            final Map<String, Integer> literalCounts = new HashMap<>();
+            for (int i = 0; i < patterns.size(); i++) {
+                List<String> literals = null;
+                if (patterns.get(i) != null) {
+                    literals = requiredLiterals(patterns.get(i).pattern());
+                    if (literals != null) {
+                        literals.forEach(l -> literalCounts.merge(l, 1, Integer::sum));
+                    }
+                }
+                literalsByRule.add(literals);
+            }
+
+            final Map<String, List<Integer>> rulesBySubstring = new LinkedHashMap<>();
+            for (int i = 0; i < patterns.size(); i++) {
+                String key = substrings.get(i);
+                if (key == null && patterns.get(i) != null) {
+                    final List<String> literals = literalsByRule.get(i);
+                    if (literals == null || literals.isEmpty()) {
+                        alwaysCandidates.set(i);
+                        continue;
+                    }
+                    for (final String literal : literals) {
+                        if (key == null || literalCounts.get(literal) < literalCounts.get(key)
+                                || (literalCounts.get(literal).equals(literalCounts.get(key)) && literal.length() > key.length())) {
+                            key = literal;
+                        }
+                    }
+                }
+                if (key != null) {
+                    rulesBySubstring.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                }
+            }
+            automaton = new AhoCorasick(new ArrayList<>(rulesBySubstring.keySet()));
+            this.rulesBySubstring = rulesBySubstring.values().stream()
+                    .map(rules -> rules.stream().mapToInt(Integer::intValue).toArray())
+                    .toArray(int[][]::new);
+        }
+
+        private BitSet getCandidates(final String text) {
+            final BitSet found = new BitSet(rulesBySubstring.length);
+            automaton.findAll(text, found);
+            final BitSet candidates = (BitSet)alwaysCandidates.clone();
+            for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+                for (final int rule : rulesBySubstring[i]) {
+                    candidates.set(rule);
+                }
+            }
+            return candidates;
+        }
+    }
+
+    private static final class UeiRule {
+        private final UeiMatch ueiMatch;
+        private final int processFilter;
+        private final int hostnameFilter;
+        private final int hostaddrFilter;
+        private final boolean isRegex;
+
+        private UeiRule(final UeiMatch ueiMatch, final int processFilter, final int hostnameFilter, final int hostaddrFilter, final boolean isRegex) {
+            this.ueiMatch = ueiMatch;
+            this.processFilter = processFilter;
+            this.hostnameFilter = hostnameFilter;
+            this.hostaddrFilter = hostaddrFilter;
+            this.isRegex = isRegex;
+        }
+    }
+
+    /**
+     * A {@link UeiMatch} that matched a message, along with the groups of its regex, if any.
+     */
+    static final class UeiMatchResult {
+        private final UeiMatch m_ueiMatch;
+        private final MatchResult m_matchResult;
+
+        private UeiMatchResult(final UeiMatch ueiMatch, final MatchResult matchResult) {
+            m_ueiMatch = ueiMatch;
+            m_matchResult = matchResult;
+        }
+
+        UeiMatch getUeiMatch() {
+            return m_ueiMatch;
+        }
+
+        /**
+         * @return the result of the regex, or <code>null</code> for substring matches
+         */
+        MatchResult getMatchResult() {
+            return m_matchResult;
+        }
+    }
+}
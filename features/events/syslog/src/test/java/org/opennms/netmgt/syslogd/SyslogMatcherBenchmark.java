@@ -0,0 +1,181 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.syslogd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.SyslogdConfiguration;
+import org.opennms.netmgt.config.syslogd.SyslogdConfigurationGroup;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to measure the number of messages per second
+ * that can be matched against the UEI and hide rules of Syslogd, using the {@link SyslogMatcher}
+ * or evaluating every rule in turn as {@link ConvertToEvent} used to.
+ * <p>
+ * The "shipped" configuration is the default syslogd-configuration.xml along with all of the
+ * files in etc/syslog, the "loadtest" configuration has 10000 regex rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SyslogMatcherBenchmark {
+
+    private static final List<String[]> MESSAGES = Arrays.asList(
+            new String[] { "sshd", "Failed password for invalid user admin from 198.51.100.7 port 52311 ssh2" },
+            new String[] { "sshd", "Accepted publickey for bob from 198.51.100.7 port 52311 ssh2" },
+            new String[] { "sudo", "sudo:      bob : user NOT in sudoers ; TTY=pts/0 ; PWD=/home/bob ; USER=root ; COMMAND=/bin/ls" },
+            new String[] { "kernel", "Out of memory: Killed process 1234 (java) total-vm:123456kB, anon-rss:1234kB, file-rss:12kB" },
+            new String[] { "postfix/smtpd", "connect from unknown[198.51.100.7]" },
+            new String[] { "CRON", "(root) CMD (run-parts /etc/cron.hourly)" },
+            new String[] { "foo10", "load test 10 on tty1" },
+            new String[] { "foo9999", "load test 9999 on pts/1" });
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @Param({"shipped", "loadtest"})
+    public String config;
+
+    @Param({"compiled", "linear"})
+    public String matcher;
+
+    private List<UeiMatch> m_ueiMatches;
+    private List<HideMatch> m_hideMatches;
+    private SyslogMatcher m_syslogMatcher;
+    private final Map<String, Pattern> m_patterns = new HashMap<>();
+    private SyslogMessage[] m_messages;
+    private int m_index;
+
+    @Setup
+    public void setUp() {
+        if ("shipped".equals(config)) {
+            final File configFile = ConfigurationTestUtils.getFileForConfigFile("syslogd-configuration.xml");
+            final SyslogdConfiguration syslogdConfig = JaxbUtils.unmarshal(SyslogdConfiguration.class, configFile);
+            m_ueiMatches = new ArrayList<>(syslogdConfig.getUeiMatches());
+            m_hideMatches = new ArrayList<>(syslogdConfig.getHideMatches());
+            for (final String importFile : syslogdConfig.getImportFiles()) {
+                final SyslogdConfigurationGroup group = JaxbUtils.unmarshal(SyslogdConfigurationGroup.class, new File(configFile.getParentFile(), importFile));
+                m_ueiMatches.addAll(group.getUeiMatches());
+                m_hideMatches.addAll(group.getHideMatches());
+            }
+        } else {
+            final SyslogdConfiguration syslogdConfig = JaxbUtils.unmarshal(SyslogdConfiguration.class,
+                    ConfigurationTestUtils.getInputStreamForResource(this, "/etc/syslogd-loadtest-configuration.xml"));
+            m_ueiMatches = syslogdConfig.getUeiMatches();
+            m_hideMatches = syslogdConfig.getHideMatches();
+        }
+        m_syslogMatcher = new SyslogMatcher(m_ueiMatches, m_hideMatches);
+
+        m_messages = new SyslogMessage[MESSAGES.size()];
+        for (int i = 0; i < m_messages.length; i++) {
+            m_messages[i] = new SyslogMessage();
+            m_messages[i].setFacility(SyslogFacility.AUTH);
+            m_messages[i].setSeverity(SyslogSeverity.NOTICE);
+            m_messages[i].setHostName("192.0.2.1");
+            m_messages[i].setProcessName(MESSAGES.get(i)[0]);
+            m_messages[i].setMessage(MESSAGES.get(i)[1]);
+        }
+    }
+
+    @Benchmark
+    public Object match() {
+        final SyslogMessage message = m_messages[m_index++ % m_messages.length];
+        if ("compiled".equals(matcher)) {
+            final SyslogMatcher.UeiMatchResult result = m_syslogMatcher.findUeiMatch(message);
+            return m_syslogMatcher.shouldHide(message) ? null : result;
+        } else {
+            final UeiMatch result = findUeiMatchLinear(message);
+            return shouldHideLinear(message) ? null : result;
+        }
+    }
+
+    private UeiMatch findUeiMatchLinear(final SyslogMessage message) {
+        for (final UeiMatch uei : m_ueiMatches) {
+            final boolean matches = containsIgnoreCase(uei.getFacilities(), message.getFacility().toString())
+                    && containsIgnoreCase(uei.getSeverities(), message.getSeverity().toString())
+                    && (!uei.getProcessMatch().isPresent() || find(uei.getProcessMatch().get().getExpression(), message.getProcessName()))
+                    && (!uei.getHostnameMatch().isPresent() || find(uei.getHostnameMatch().get().getExpression(), message.getHostName()));
+            if (!matches) {
+                continue;
+            }
+            if (uei.getMatch().getType().equals("substr")) {
+                if (message.getMessage().contains(uei.getMatch().getExpression())) {
+                    return uei;
+                }
+            } else if (uei.getMatch().getType().startsWith("regex")) {
+                if (find(uei.getMatch().getExpression(), message.getMessage())) {
+                    return uei;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean shouldHideLinear(final SyslogMessage message) {
+        if (m_hideMatches.isEmpty()) {
+            return false;
+        }
+        final String fullText = message.asRfc3164Message();
+        for (final HideMatch hide : m_hideMatches) {
+            if (hide.getMatch().getType().equals("substr") && fullText.contains(hide.getMatch().getExpression())) {
+                return true;
+            } else if (hide.getMatch().getType().equals("regex") && find(hide.getMatch().getExpression(), fullText)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean find(final String expression, final String input) {
+        return input != null && m_patterns.computeIfAbsent(expression, e -> Pattern.compile(e, Pattern.MULTILINE)).matcher(input).find();
+    }
+
+    private static boolean containsIgnoreCase(final List<String> collection, final String match) {
+        return collection.isEmpty() || collection.stream().anyMatch(s -> s.equalsIgnoreCase(match));
+    }
+}
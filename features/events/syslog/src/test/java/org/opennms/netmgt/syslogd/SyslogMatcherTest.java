@@ -0,0 +1,240 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.SyslogdConfiguration;
+import org.opennms.netmgt.config.syslogd.SyslogdConfigurationGroup;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+
+/**
+ * Verifies that the {@link SyslogMatcher} finds the same rules as evaluating every
+ * {@link UeiMatch} and {@link HideMatch} in configuration order.
+ */
+public class SyslogMatcherTest {
+
+    private static final Map<String, Pattern> PATTERNS = new HashMap<>();
+
+    private static final List<String> MESSAGES = Arrays.asList(
+            "Failed password for invalid user admin from 198.51.100.7 port 52311 ssh2",
+            "Failed publickey for root from 198.51.100.7 port 52311 ssh2",
+            "Bind to port 22 on 0.0.0.0 failed: Address already in use.",
+            "Authentication refused: bad ownership or modes for directory /home/bob",
+            "error: Cannot bind any address.",
+            "sudo:      bob : 3 incorrect password attempts ; TTY=pts/0 ; PWD=/home/bob ; USER=root ; COMMAND=/bin/ls",
+            "sudo:      bob : user NOT in sudoers ; TTY=pts/0 ; PWD=/home/bob ; USER=root ; COMMAND=/bin/ls",
+            "su: pam_unix(su:auth): authentication failure; logname=bob uid=1000 euid=0 tty=pts/0 ruser=bob rhost=  user=root",
+            "Killed process 1234 (java) total-vm:123456kB, anon-rss:1234kB, file-rss:12kB, shmem-rss:0kB",
+            "Out of memory: Killed process 1234 (java)",
+            "[Mon Jan 01 00:00:00 2024] [warn] Warning: DocumentRoot [/var/www/nope] does not exist",
+            "warning: database /etc/aliases.db is older than source file /etc/aliases",
+            "Suspicious rcfile \"/home/bob/.procmailrc\"",
+            "Interface wan is online",
+            "Lost 5 ping(s) on interface wan",
+            "New http connection for user admin, source 198.51.100.7 destination 192.0.2.1 ACCEPTED",
+            "The copy operation was completed successfully",
+            "/etc/init.d/rcS K shutdown",
+            "Event(0x0) something happened",
+            "foo10: 2010-08-19 load test 10 on tty1",
+            "This is a TESTHIDING message",
+            "This is a DoubleSecret message",
+            "An entirely unrelated message",
+            "");
+
+    @Test
+    public void canFindRequiredLiterals() {
+        assertEquals(Arrays.asList("Failed ", " for invalid user ", " from ", " port ", " ssh"),
+                SyslogMatcher.requiredLiterals("^Failed (.*?) for invalid user (\\S+) from (.*?) port (\\d+) ssh(\\d)$"));
+        assertEquals(Arrays.asList("foo10: ", "load test ", " on "),
+                SyslogMatcher.requiredLiterals(".*foo10: .*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+)).*"));
+        assertEquals(Arrays.asList("Lost ", " ping(s) on interface "),
+                SyslogMatcher.requiredLiterals("^Lost [0-9]+ ping\\(s\\) on interface (.*)$"));
+        // Optional and repeated characters
+        assertEquals(Arrays.asList("colo", "rab", "c"), SyslogMatcher.requiredLiterals("colou?rab+c"));
+        assertEquals(Arrays.asList("ab"), SyslogMatcher.requiredLiterals("abc{0,2}"));
+        assertEquals(Collections.emptyList(), SyslogMatcher.requiredLiterals(".*"));
+        assertEquals(Arrays.asList("ouble", "ecret"), SyslogMatcher.requiredLiterals("[Dd]ouble[Ss]ecret"));
+        // Alternations, inline flags and quoting are not handled
+        assertNull(SyslogMatcher.requiredLiterals("foo|bar"));
+        assertNull(SyslogMatcher.requiredLiterals("(?i)foo"));
+        assertNull(SyslogMatcher.requiredLiterals("\\Qfoo\\E"));
+        assertNull(SyslogMatcher.requiredLiterals("\\x41bc"));
+        // But they are fine within groups
+        assertEquals(Arrays.asList("baz"), SyslogMatcher.requiredLiterals("(foo|bar)baz"));
+        assertEquals(Arrays.asList("baz"), SyslogMatcher.requiredLiterals("(?i:foo)baz"));
+    }
+
+    @Test
+    public void canMatchLikeLinearEvaluationOnShippedConfig() {
+        final File configFile = ConfigurationTestUtils.getFileForConfigFile("syslogd-configuration.xml");
+        final SyslogdConfiguration config = JaxbUtils.unmarshal(SyslogdConfiguration.class, configFile);
+        final List<UeiMatch> ueiMatches = new ArrayList<>(config.getUeiMatches());
+        final List<HideMatch> hideMatches = new ArrayList<>(config.getHideMatches());
+        final File[] groupFiles = new File(configFile.getParentFile(), "syslog").listFiles((dir, name) -> name.endsWith(".xml"));
+        Arrays.sort(groupFiles);
+        for (final File groupFile : groupFiles) {
+            final SyslogdConfigurationGroup group = JaxbUtils.unmarshal(SyslogdConfigurationGroup.class, groupFile);
+            ueiMatches.addAll(group.getUeiMatches());
+            hideMatches.addAll(group.getHideMatches());
+        }
+        assertTrue(ueiMatches.size() > 40);
+
+        assertSameMatches(ueiMatches, hideMatches, MESSAGES, true);
+    }
+
+    @Test
+    public void canMatchLikeLinearEvaluationOnTestConfigs() {
+        final SyslogdConfiguration config = JaxbUtils.unmarshal(SyslogdConfiguration.class,
+                ConfigurationTestUtils.getInputStreamForResource(this, "/etc/syslogd-configuration.xml"));
+        assertSameMatches(config.getUeiMatches(), config.getHideMatches(), MESSAGES, true);
+    }
+
+    @Test
+    public void canMatchLikeLinearEvaluationOnLoadTestConfig() {
+        final SyslogdConfiguration config = JaxbUtils.unmarshal(SyslogdConfiguration.class,
+                ConfigurationTestUtils.getInputStreamForResource(this, "/etc/syslogd-loadtest-configuration.xml"));
+        // These rules only match on the message, so don't bother with the other fields
+        assertSameMatches(config.getUeiMatches(), config.getHideMatches(), MESSAGES, false);
+    }
+
+    /**
+     * @param allVariants whether to try every message with different process names, severities and hosts
+     */
+    private static void assertSameMatches(final List<UeiMatch> ueiMatches, final List<HideMatch> hideMatches, final List<String> corpus, final boolean allVariants) {
+        final SyslogMatcher matcher = new SyslogMatcher(ueiMatches, hideMatches);
+
+        // Add messages made of the literals of the rules, and process names that match the rules
+        final Set<String> messages = new LinkedHashSet<>(corpus);
+        final Set<String> processNames = new LinkedHashSet<>(Arrays.asList("foo", "sshd", "sudo"));
+        for (final UeiMatch ueiMatch : ueiMatches.subList(0, allVariants ? ueiMatches.size() : 10)) {
+            final String expression = ueiMatch.getMatch().getExpression();
+            if ("substr".equals(ueiMatch.getMatch().getType())) {
+                messages.add("before " + expression + " after");
+            } else {
+                final List<String> literals = SyslogMatcher.requiredLiterals(expression);
+                if (literals != null) {
+                    messages.add(String.join("x", literals));
+                }
+            }
+            ueiMatch.getProcessMatch().ifPresent(p -> processNames.add(p.getExpression().replaceAll("\\^|\\$|\\.\\*|[()]", "")));
+        }
+
+        final List<SyslogSeverity> severities = allVariants
+                ? Arrays.asList(SyslogSeverity.NOTICE, SyslogSeverity.INFORMATIONAL, SyslogSeverity.EMERGENCY)
+                : Arrays.asList(SyslogSeverity.NOTICE);
+        final List<String> hostNames = allVariants ? Arrays.asList("192.0.2.1", "198.51.100.7") : Arrays.asList("192.0.2.1");
+
+        int matched = 0;
+        for (final String text : messages) {
+            for (final String processName : allVariants ? processNames : Collections.singleton("foo10")) {
+                for (final SyslogSeverity severity : severities) {
+                    for (final String hostName : hostNames) {
+                        final SyslogMessage message = new SyslogMessage();
+                        message.setFacility(SyslogFacility.USER);
+                        message.setSeverity(severity);
+                        message.setProcessName(processName);
+                        message.setHostName(hostName);
+                        message.setMessage(text);
+
+                        final SyslogMatcher.UeiMatchResult result = matcher.findUeiMatch(message);
+                        final UeiMatch expected = findUeiMatchLinear(ueiMatches, message);
+                        if (expected == null) {
+                            assertNull(message.toString(), result);
+                        } else {
+                            assertSame(message.toString(), expected, result.getUeiMatch());
+                            matched++;
+                        }
+                        assertEquals(message.toString(), shouldHideLinear(hideMatches, message), matcher.shouldHide(message));
+                    }
+                }
+            }
+        }
+        assertTrue(matched > 0);
+    }
+
+    /**
+     * Evaluates the rules in order the way ConvertToEvent used to.
+     */
+    private static UeiMatch findUeiMatchLinear(final List<UeiMatch> ueiMatches, final SyslogMessage message) {
+        final String hostAddress = str(message.getHostAddress());
+        for (final UeiMatch uei : ueiMatches) {
+            final boolean matches = containsIgnoreCase(uei.getFacilities(), message.getFacility().toString())
+                    && containsIgnoreCase(uei.getSeverities(), message.getSeverity().toString())
+                    && (!uei.getProcessMatch().isPresent() || find(uei.getProcessMatch().get().getExpression(), message.getProcessName()))
+                    && (!uei.getHostnameMatch().isPresent() || find(uei.getHostnameMatch().get().getExpression(), message.getHostName()))
+                    && (!uei.getHostaddrMatch().isPresent() || find(uei.getHostaddrMatch().get().getExpression(), hostAddress));
+            if (!matches) {
+                continue;
+            }
+            if (uei.getMatch().getType().equals("substr")) {
+                if (message.getMessage().contains(uei.getMatch().getExpression())) {
+                    return uei;
+                }
+            } else if (uei.getMatch().getType().startsWith("regex")) {
+                if (find(uei.getMatch().getExpression(), message.getMessage())) {
+                    return uei;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean shouldHideLinear(final List<HideMatch> hideMatches, final SyslogMessage message) {
+        final String fullText = message.asRfc3164Message();
+        for (final HideMatch hide : hideMatches) {
+            if (hide.getMatch().getType().equals("substr") && fullText.contains(hide.getMatch().getExpression())) {
+                return true;
+            } else if (hide.getMatch().getType().equals("regex") && find(hide.getMatch().getExpression(), fullText)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean find(final String expression, final String input) {
+        return input != null && PATTERNS.computeIfAbsent(expression, e -> Pattern.compile(e, Pattern.MULTILINE)).matcher(input).find();
+    }
+
+    private static boolean containsIgnoreCase(final List<String> collection, final String match) {
+        return collection.isEmpty() || collection.stream().anyMatch(s -> s.equalsIgnoreCase(match));
+    }
+}
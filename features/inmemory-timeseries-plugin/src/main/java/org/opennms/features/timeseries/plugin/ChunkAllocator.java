@@ -0,0 +1,93 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+
+package org.opennms.features.timeseries.plugin;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Hands out fixed size, zeroed chunks carved from large direct (off-heap) slabs. Released chunks are recycled
+ * instead of given back to the operating system, so the heap only holds the small {@link GorillaChunk} headers.
+ */
+final class ChunkAllocator {
+
+    private final int chunkSize;
+    private final int chunksPerSlab;
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    private ByteBuffer current;
+    private int inUse;
+
+    ChunkAllocator(final int chunkSize, final int slabSize) {
+        if (chunkSize <= 0 || chunkSize % Long.BYTES != 0) {
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of 8 bytes: " + chunkSize);
+        }
+        if (slabSize < chunkSize) {
+            throw new IllegalArgumentException("Slab size must be at least the chunk size: " + slabSize);
+        }
+        this.chunkSize = chunkSize;
+        this.chunksPerSlab = slabSize / chunkSize;
+    }
+
+    synchronized ByteBuffer allocate() {
+        inUse++;
+        final ByteBuffer recycled = free.pollFirst();
+        if (recycled != null) {
+            return recycled;
+        }
+        if (current == null || !current.hasRemaining()) {
+            current = ByteBuffer.allocateDirect(chunksPerSlab * chunkSize);
+            slabs.add(current);
+        }
+        final ByteBuffer chunk = current.slice();
+        chunk.limit(chunkSize);
+        current.position(current.position() + chunkSize);
+        return chunk.slice();
+    }
+
+    synchronized void release(final ByteBuffer chunk) {
+        for (int i = 0; i < chunkSize; i += Long.BYTES) {
+            chunk.putLong(i, 0L);
+        }
+        free.addFirst(chunk);
+        inUse--;
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    /** Bytes held in chunks currently handed out. */
+    synchronized long usedBytes() {
+        return (long) inUse * chunkSize;
+    }
+
+    /** Bytes reserved off-heap, including recycled chunks. */
+    synchronized long reservedBytes() {
+        return (long) slabs.size() * chunksPerSlab * chunkSize;
+    }
+}
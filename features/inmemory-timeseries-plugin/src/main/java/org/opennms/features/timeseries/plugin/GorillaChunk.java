@@ -0,0 +1,271 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+
+package org.opennms.features.timeseries.plugin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed size block of Gorilla compressed samples (see "Gorilla: A Fast, Scalable, In-Memory Time Series Database",
+ * Pelkonen et al., VLDB 2015).
+ *
+ * The first sample is stored verbatim. Every following timestamp is stored as the delta-of-delta to its predecessor
+ * and every following value as the XOR to the previous value. Regular collection intervals with slowly changing
+ * values therefore end up at a few bits per sample.
+ *
+ * A chunk is not thread safe, the owning {@link Series} serializes access.
+ */
+final class GorillaChunk {
+
+    /** Upper bound of bits a single sample can take: timestamp ('11111' + 64) plus value ('11' + 5 + 6 + 64). */
+    static final int MAX_SAMPLE_BITS = 5 + 64 + 2 + 5 + 6 + 64;
+
+    private final ByteBuffer buffer;
+    private final int capacityBits;
+
+    private int bitPosition;
+    private int count;
+
+    private long firstTime;
+    private long lastTime;
+    private long lastDelta;
+    private long lastValue;
+    private int lastLeading = -1;
+    private int lastTrailing;
+
+    /**
+     * @param buffer zeroed buffer to write into. The capacity must be a multiple of 8 bytes.
+     */
+    GorillaChunk(final ByteBuffer buffer) {
+        if (buffer.capacity() % Long.BYTES != 0 || buffer.capacity() * 8 < 2 * Long.SIZE) {
+            throw new IllegalArgumentException("Invalid chunk capacity: " + buffer.capacity());
+        }
+        this.buffer = buffer;
+        this.capacityBits = buffer.capacity() * 8;
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long firstTime() {
+        return firstTime;
+    }
+
+    long lastTime() {
+        return lastTime;
+    }
+
+    /** Number of bits used so far. */
+    int size() {
+        return bitPosition;
+    }
+
+    /**
+     * Appends a sample. Timestamps must not be lower than {@link #lastTime()}.
+     *
+     * @return false if the chunk is full and the sample was not written.
+     */
+    boolean append(final long time, final double value) {
+        final long bits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            writeBits(time, 64);
+            writeBits(bits, 64);
+            firstTime = time;
+            lastTime = time;
+            lastValue = bits;
+            count = 1;
+            return true;
+        }
+        if (bitPosition + MAX_SAMPLE_BITS > capacityBits) {
+            return false;
+        }
+        if (time < lastTime) {
+            throw new IllegalArgumentException("Out of order timestamp " + time + " < " + lastTime);
+        }
+
+        final long delta = time - lastTime;
+        final long deltaOfDelta = delta - lastDelta;
+        if (deltaOfDelta == 0) {
+            writeBits(0b0, 1);
+        } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta + 63, 7);
+        } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta + 255, 9);
+        } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta + 2047, 12);
+        } else if (deltaOfDelta >= Integer.MIN_VALUE && deltaOfDelta <= Integer.MAX_VALUE) {
+            writeBits(0b11110, 5);
+            writeBits(deltaOfDelta, 32);
+        } else {
+            writeBits(0b11111, 5);
+            writeBits(deltaOfDelta, 64);
+        }
+        lastDelta = delta;
+        lastTime = time;
+
+        final long xor = bits ^ lastValue;
+        if (xor == 0) {
+            writeBits(0b0, 1);
+        } else {
+            // The leading zero count is stored in 5 bits
+            final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            final int trailing = Long.numberOfTrailingZeros(xor);
+            if (lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+                // The meaningful bits fit into the previous window
+                writeBits(0b10, 2);
+                writeBits(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+            } else {
+                final int significant = 64 - leading - trailing;
+                writeBits(0b11, 2);
+                writeBits(leading, 5);
+                writeBits(significant - 1, 6);
+                writeBits(xor >>> trailing, significant);
+                lastLeading = leading;
+                lastTrailing = trailing;
+            }
+        }
+        lastValue = bits;
+        count++;
+        return true;
+    }
+
+    Decoder decoder() {
+        return new Decoder(buffer, count);
+    }
+
+    private void writeBits(final long value, final int length) {
+        if (length == 0) {
+            return;
+        }
+        final long bits = length == 64 ? value : value & ((1L << length) - 1);
+        final int index = (bitPosition >>> 6) << 3;
+        final int offset = bitPosition & 63;
+        final int free = 64 - offset;
+        if (length <= free) {
+            buffer.putLong(index, buffer.getLong(index) | (bits << (free - length)));
+        } else {
+            buffer.putLong(index, buffer.getLong(index) | (bits >>> (length - free)));
+            buffer.putLong(index + 8, bits << (64 - (length - free)));
+        }
+        bitPosition += length;
+    }
+
+    /**
+     * Sequentially decodes the samples written to a chunk.
+     */
+    static final class Decoder {
+        private final ByteBuffer buffer;
+        private final int count;
+
+        private int bitPosition;
+        private int read;
+
+        private long time;
+        private long delta;
+        private long value;
+        private int leading;
+        private int trailing;
+
+        private Decoder(final ByteBuffer buffer, final int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        /**
+         * Advances to the next sample.
+         *
+         * @return false if all samples have been read.
+         */
+        boolean next() {
+            if (read >= count) {
+                return false;
+            }
+            if (read == 0) {
+                time = readBits(64);
+                value = readBits(64);
+                read = 1;
+                return true;
+            }
+
+            final long deltaOfDelta;
+            if (readBits(1) == 0) {
+                deltaOfDelta = 0;
+            } else if (readBits(1) == 0) {
+                deltaOfDelta = readBits(7) - 63;
+            } else if (readBits(1) == 0) {
+                deltaOfDelta = readBits(9) - 255;
+            } else if (readBits(1) == 0) {
+                deltaOfDelta = readBits(12) - 2047;
+            } else if (readBits(1) == 0) {
+                deltaOfDelta = (int) readBits(32);
+            } else {
+                deltaOfDelta = readBits(64);
+            }
+            delta += deltaOfDelta;
+            time += delta;
+
+            if (readBits(1) != 0) {
+                if (readBits(1) != 0) {
+                    leading = (int) readBits(5);
+                    final int significant = (int) readBits(6) + 1;
+                    trailing = 64 - leading - significant;
+                }
+                value ^= readBits(64 - leading - trailing) << trailing;
+            }
+            read++;
+            return true;
+        }
+
+        long time() {
+            return time;
+        }
+
+        double value() {
+            return Double.longBitsToDouble(value);
+        }
+
+        private long readBits(final int length) {
+            final int index = (bitPosition >>> 6) << 3;
+            final int offset = bitPosition & 63;
+            final int available = 64 - offset;
+            final long result;
+            if (length <= available) {
+                final long word = buffer.getLong(index) << offset;
+                result = length == 64 ? word : word >>> (64 - length);
+            } else {
+                final long high = (buffer.getLong(index) << offset) >>> (64 - length);
+                final long low = buffer.getLong(index + 8) >>> (64 - (length - available));
+                result = high | low;
+            }
+            bitPosition += length;
+            return result;
+        }
+    }
+}
@@ -19,23 +19,28 @@
  * language governing permissions and limitations under the
  * License.
  */
+
 package org.opennms.features.timeseries.plugin;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.opennms.integration.api.v1.timeseries.Metric;
 import org.opennms.integration.api.v1.timeseries.Sample;
 import org.opennms.integration.api.v1.timeseries.DataPoint;
+import org.opennms.integration.api.v1.timeseries.MetaTagNames;
 import org.opennms.integration.api.v1.timeseries.Aggregation;
 import org.opennms.integration.api.v1.timeseries.Tag;
 import org.opennms.integration.api.v1.timeseries.TagMatcher;
@@ -46,72 +51,151 @@ import org.opennms.integration.api.v1.timeseries.TimeSeriesFetchRequest;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableDataPoint;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTimeSeriesData;
 
-import com.google.re2j.Pattern;
-
 /**
- * Simulates a TimeSeriesStorage in memory (ConcurrentHashMap). The implementation is super simple and not very efficient.
- * For testing and evaluating purposes only, not for production.
+ * An embedded TimeSeriesStorage keeping all samples in memory.
+ *
+ * Samples are Gorilla compressed (delta-of-delta timestamps, XOR'ed values) into fixed size off-heap chunks, see
+ * {@link GorillaChunk}. Regularly collected metrics take in the order of 1-2 bytes per sample. Metrics are found via an
+ * inverted tag index and reads only decode the chunks overlapping the requested time range.
+ *
+ * AVERAGE, MIN and MAX are computed natively per step. Counters are turned into per second rates before aggregating,
+ * as OpenNMS would do when aggregating itself.
+ *
+ * The meta tags of a metric are taken from the latest stored sample. Samples without a value are skipped.
+ *
+ * Nothing is persisted: all data is lost on restart.
  */
 public class InMemoryStorage implements TimeSeriesStorage {
 
-    private final Map<Metric, Collection<DataPoint>> data = new ConcurrentHashMap<>();
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+    private final ChunkAllocator allocator;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final TagIndex index = new TagIndex();
+
+    private long retention = 0;
+
+    public InMemoryStorage() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_SLAB_SIZE);
+    }
+
+    public InMemoryStorage(final int chunkSize, final int slabSize) {
+        this.allocator = new ChunkAllocator(chunkSize, slabSize);
+    }
+
+    /**
+     * Samples older than the given number of seconds are dropped (chunk wise). Zero keeps all samples.
+     */
+    public void setRetentionSeconds(final long retentionSeconds) {
+        this.retention = TimeUnit.SECONDS.toMillis(retentionSeconds);
+    }
 
+    public long getRetentionSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(retention);
+    }
+
+    /**
+     * Decodes all stored samples. This is expensive and only meant for debugging.
+     */
     public final Map<Metric, Collection<DataPoint>> getAllMetrics() {
-        return Collections.unmodifiableMap(data);
+        final Map<Metric, Collection<DataPoint>> result = new LinkedHashMap<>();
+        for (final Series s : series.values()) {
+            final List<DataPoint> dataPoints = new ArrayList<>();
+            s.read(Long.MIN_VALUE, Long.MAX_VALUE, (time, value) -> dataPoints.add(new ImmutableDataPoint(Instant.ofEpochMilli(time), value)));
+            result.put(s.getMetric(), dataPoints);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** Bytes of off-heap memory holding samples. */
+    public long getUsedBytes() {
+        return allocator.usedBytes();
+    }
+
+    /** Bytes of off-heap memory reserved, including recycled chunks. */
+    public long getReservedBytes() {
+        return allocator.reservedBytes();
     }
 
     @Override
     public void store(final List<Sample> samples) {
         Objects.requireNonNull(samples);
         for(Sample sample : samples) {
-            Collection<DataPoint> timeseries = data.computeIfAbsent(sample.getMetric(), k -> new ConcurrentLinkedQueue<>());
-            timeseries.add(new ImmutableDataPoint(sample.getTime(), sample.getValue()));
+            if (sample.getValue() == null) {
+                continue;
+            }
+            final long time = sample.getTime().toEpochMilli();
+            final double value = sample.getValue();
+            while (true) {
+                final Series s = series(sample.getMetric());
+                final boolean sealed;
+                synchronized (s) {
+                    if (s.isReleased()) {
+                        // Deleted concurrently - start over with a new series
+                        continue;
+                    }
+                    sealed = s.append(time, value, allocator);
+                }
+                if (sealed && retention > 0) {
+                    // A chunk got sealed: a good time to get rid of the ones which are too old
+                    s.expire(System.currentTimeMillis() - retention, allocator);
+                }
+                break;
+            }
         }
     }
 
+    /**
+     * Returns the series of the given metric, creating it if required. The series and the tag index are only changed
+     * while holding the lock of the series key in the map, which makes this atomic with {@link #delete(Metric)}.
+     */
+    private Series series(final Metric metric) {
+        final Series s = series.computeIfAbsent(metric.getKey(), key -> {
+            index.add(key, tagsOf(metric));
+            return new Series(metric);
+        });
+        final Metric current = s.getMetric();
+        if (current == metric || current.getMetaTags().equals(metric.getMetaTags())) {
+            return s;
+        }
+        // Later samples carry other meta tags: take them over and update the index accordingly
+        series.computeIfPresent(metric.getKey(), (key, existing) -> {
+            final Collection<Tag> oldTags = tagsOf(existing.getMetric());
+            final Collection<Tag> newTags = tagsOf(metric);
+            index.remove(key, oldTags.stream().filter(tag -> !newTags.contains(tag)).collect(Collectors.toList()));
+            index.add(key, newTags);
+            existing.setMetric(metric);
+            return existing;
+        });
+        return s;
+    }
+
     @Override
     public List<Metric> findMetrics(Collection<TagMatcher> tagMatchers) {
         Objects.requireNonNull(tagMatchers);
         if(tagMatchers.isEmpty()) {
             throw new IllegalArgumentException("We expect at least one TagMatcher but none was given.");
         }
-        return data.keySet()
-                .stream()
-                .filter(metric -> this.matches(tagMatchers, metric))
-                .collect(Collectors.toList());
-    }
-
-    /** Each matcher must be matched by at least one tag. */
-    private static boolean matches(final Collection<TagMatcher> matchers, final Metric metric) {
-        final Set<Tag> searchableTags = new HashSet<>(metric.getIntrinsicTags());
-        searchableTags.addAll(metric.getMetaTags());
-
-        for(TagMatcher matcher : matchers) {
-            if(searchableTags.stream().noneMatch(t -> matches(matcher, t))) {
-                return false; // this TagMatcher didn't find any matching tag => this Metric is not part of search result;
-            }
-        }
-        return true; // all matched
-    }
 
-    private static boolean matches(final TagMatcher matcher, final Tag tag) {
-
-        if(!matcher.getKey().equals(tag.getKey())) {
-            return false; // not even the key matches => we are done.
+        // Each matcher must be matched by at least one tag. Intersect starting with the most selective matcher.
+        final List<Set<String>> candidates = tagMatchers.stream()
+                .map(index::find)
+                .sorted(Comparator.comparingInt(Set::size))
+                .collect(Collectors.toList());
+        final Set<String> keys = new HashSet<>(candidates.get(0));
+        for (int i = 1; i < candidates.size() && !keys.isEmpty(); i++) {
+            keys.retainAll(candidates.get(i));
         }
 
-        // Tags have always a non null value so we don't have to null check for them.
-        if(TagMatcher.Type.EQUALS == matcher.getType()) {
-            return tag.getValue().equals(matcher.getValue());
-        } else if (TagMatcher.Type.NOT_EQUALS == matcher.getType()) {
-            return !tag.getValue().equals(matcher.getValue());
-        } else if (TagMatcher.Type.EQUALS_REGEX == matcher.getType()) {
-            return Pattern.matches(matcher.getValue(), tag.getValue());
-        } else if (TagMatcher.Type.NOT_EQUALS_REGEX == matcher.getType()) {
-            return !Pattern.matches(matcher.getValue(), tag.getValue());
-        } else {
-            throw new IllegalArgumentException("Implement me for " + matcher.getType());
+        final List<Metric> metrics = new ArrayList<>(keys.size());
+        for (final String key : keys) {
+            final Series s = series.get(key);
+            if (s != null) {
+                metrics.add(s.getMetric());
+            }
         }
+        return metrics;
     }
 
     @Override
@@ -119,27 +203,36 @@ public class InMemoryStorage implements TimeSeriesStorage {
         throw new UnsupportedOperationException("use getTimeSeriesData(TimeSeriesFetchRequest request) instead.");
     }
 
+    @Override
+    public boolean supportsAggregation(final Aggregation aggregation) {
+        return aggregation == Aggregation.AVERAGE
+                || aggregation == Aggregation.MIN
+                || aggregation == Aggregation.MAX;
+    }
+
     @Override
     public TimeSeriesData getTimeSeriesData(TimeSeriesFetchRequest request) {
         Objects.requireNonNull(request);
 
+        // return the original metric instead of the one from the request since the one from the request might not have all tags
+        final Series s = series.get(request.getMetric().getKey());
+        final Metric metric = s != null ? s.getMetric() : request.getMetric();
 
-        if(request.getAggregation() != Aggregation.NONE) {
-            throw new IllegalArgumentException(String.format("Aggregation %s is not supported.", request.getAggregation()));
+        final List<DataPoint> dataPoints;
+        if (s == null) {
+            dataPoints = Collections.emptyList();
+        } else if (request.getAggregation() == Aggregation.NONE
+                || request.getStep() == null
+                || request.getStep().toMillis() <= 0) {
+            dataPoints = new ArrayList<>();
+            s.read(request.getStart().toEpochMilli(), request.getEnd().toEpochMilli(),
+                    (time, value) -> dataPoints.add(new ImmutableDataPoint(Instant.ofEpochMilli(time), value)));
+        } else {
+            final StepAggregator aggregator = new StepAggregator(request.getAggregation(), request.getStep().toMillis(), isCounter(metric));
+            s.read(request.getStart().toEpochMilli(), request.getEnd().toEpochMilli(), aggregator);
+            dataPoints = aggregator.finish();
         }
 
-        // get the original metric instead of the one from the request since the one from the request might not have all tags
-        Metric metric = data.keySet().stream()
-                .filter(m -> m.getKey().equals(request.getMetric().getKey()))
-                .findFirst()
-                .orElse(request.getMetric());
-
-        List<DataPoint> dataPoints = Optional.ofNullable(data.get(request.getMetric())).stream()
-                .flatMap(Collection::stream)
-                .filter(sample -> sample.getTime().isAfter(request.getStart()))
-                .filter(sample -> sample.getTime().isBefore(request.getEnd()))
-                .collect(Collectors.toList());
-
         return ImmutableTimeSeriesData.builder()
                 .metric(metric)
                 .dataPoints(dataPoints)
@@ -149,11 +242,114 @@ public class InMemoryStorage implements TimeSeriesStorage {
     @Override
     public void delete(Metric metric) {
         Objects.requireNonNull(metric);
-        this.data.remove(metric);
+        this.series.computeIfPresent(metric.getKey(), (key, s) -> {
+            index.remove(key, tagsOf(s.getMetric()));
+            s.release(allocator);
+            return null;
+        });
     }
 
     @Override
     public String toString() {
         return this.getClass().getName();
     }
+
+    private static Collection<Tag> tagsOf(final Metric metric) {
+        final Set<Tag> tags = new HashSet<>(metric.getIntrinsicTags());
+        tags.addAll(metric.getMetaTags());
+        return tags;
+    }
+
+    private static boolean isCounter(final Metric metric) {
+        final Tag mtype = metric.getFirstTagByKey(MetaTagNames.mtype);
+        return mtype != null
+                && (Metric.Mtype.count.name().equals(mtype.getValue()) || Metric.Mtype.counter.name().equals(mtype.getValue()));
+    }
+
+    /**
+     * Folds time ordered samples into one data point per step. Each data point is stamped with the start of its step.
+     * Counters are folded as the rate since the previous sample. A decreasing counter (wrap or reset) yields no rate.
+     */
+    private static class StepAggregator implements Series.SampleConsumer {
+        private final Aggregation aggregation;
+        private final long step;
+        private final boolean counter;
+        private final List<DataPoint> dataPoints = new ArrayList<>();
+
+        private long previousTime = Long.MIN_VALUE;
+        private double previousValue = Double.NaN;
+
+        private long bucket = Long.MIN_VALUE;
+        private double accumulator;
+        private int count;
+
+        private StepAggregator(final Aggregation aggregation, final long step, final boolean counter) {
+            this.aggregation = Objects.requireNonNull(aggregation);
+            this.step = step;
+            this.counter = counter;
+        }
+
+        @Override
+        public void accept(final long time, final double sample) {
+            final double value;
+            if (counter) {
+                value = rate(time, sample);
+            } else {
+                value = sample;
+            }
+            final long current = Math.floorDiv(time, step) * step;
+            if (current != bucket) {
+                flush();
+                bucket = current;
+            }
+            if (Double.isNaN(value)) {
+                return;
+            }
+            if (count == 0) {
+                accumulator = value;
+            } else if (aggregation == Aggregation.AVERAGE) {
+                accumulator += value;
+            } else if (aggregation == Aggregation.MIN) {
+                accumulator = Math.min(accumulator, value);
+            } else if (aggregation == Aggregation.MAX) {
+                accumulator = Math.max(accumulator, value);
+            } else {
+                throw new IllegalArgumentException(String.format("Aggregation %s is not supported.", aggregation));
+            }
+            count++;
+        }
+
+        private double rate(final long time, final double sample) {
+            final double rate;
+            if (previousTime == Long.MIN_VALUE || time <= previousTime || sample < previousValue) {
+                rate = Double.NaN;
+            } else {
+                rate = (sample - previousValue) * 1000.0 / (time - previousTime);
+            }
+            previousTime = time;
+            previousValue = sample;
+            return rate;
+        }
+
+        private List<DataPoint> finish() {
+            flush();
+            return dataPoints;
+        }
+
+        private void flush() {
+            if (bucket == Long.MIN_VALUE) {
+                return;
+            }
+            final double value;
+            if (count == 0) {
+                value = Double.NaN;
+            } else if (aggregation == Aggregation.AVERAGE) {
+                value = accumulator / count;
+            } else {
+                value = accumulator;
+            }
+            dataPoints.add(new ImmutableDataPoint(Instant.ofEpochMilli(bucket), value));
+            count = 0;
+        }
+    }
 }
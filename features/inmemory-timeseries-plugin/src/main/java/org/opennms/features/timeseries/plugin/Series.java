@@ -0,0 +1,197 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+
+package org.opennms.features.timeseries.plugin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.opennms.integration.api.v1.timeseries.Metric;
+
+/**
+ * The samples of a single metric: a time ordered list of {@link GorillaChunk}s where only the last one is written to.
+ *
+ * Samples older than the newest stored one can't be appended to a chunk and are kept in a small on-heap buffer instead
+ * which is merged in on read. The buffer is capped at {@link #MAX_OUT_OF_ORDER} samples, beyond that the oldest late
+ * samples are dropped.
+ *
+ * Once released, a series rejects all further samples so a concurrent store can't allocate chunks for a deleted metric.
+ */
+final class Series {
+
+    /**
+     * Maximum number of out of order samples kept per series.
+     */
+    static final int MAX_OUT_OF_ORDER = 4096;
+
+    private volatile Metric metric;
+    private final List<GorillaChunk> chunks = new ArrayList<>();
+    private NavigableMap<Long, Double> outOfOrder;
+    private boolean released;
+
+    Series(final Metric metric) {
+        this.metric = metric;
+    }
+
+    Metric getMetric() {
+        return metric;
+    }
+
+    /**
+     * Replaces the metric, i.e. when later samples carry different meta tags.
+     */
+    void setMetric(final Metric metric) {
+        this.metric = metric;
+    }
+
+    /**
+     * @return true if a new chunk had to be started.
+     * @throws IllegalStateException if the series was already released.
+     */
+    synchronized boolean append(final long time, final double value, final ChunkAllocator allocator) {
+        if (released) {
+            throw new IllegalStateException("Series " + metric.getKey() + " was released");
+        }
+        GorillaChunk head = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (head != null && time < head.lastTime()) {
+            if (outOfOrder == null) {
+                outOfOrder = new TreeMap<>();
+            }
+            outOfOrder.put(time, value);
+            if (outOfOrder.size() > MAX_OUT_OF_ORDER) {
+                outOfOrder.pollFirstEntry();
+            }
+            return false;
+        }
+        if (head != null && head.append(time, value)) {
+            return false;
+        }
+        head = new GorillaChunk(allocator.allocate());
+        chunks.add(head);
+        head.append(time, value);
+        return true;
+    }
+
+    /**
+     * Collects the samples in the open interval (start, end), ordered by time.
+     *
+     * Decoding happens while holding the lock since expired or deleted chunks are recycled right away.
+     */
+    synchronized void read(final long start, final long end, final SampleConsumer consumer) {
+        final Iterator<Map.Entry<Long, Double>> late = outOfOrder == null
+                ? null
+                : outOfOrder.subMap(start, false, end, false).entrySet().iterator();
+        Map.Entry<Long, Double> nextLate = late != null && late.hasNext() ? late.next() : null;
+
+        // Chunks are ordered by time, so skip straight to the first one that can contain a match
+        for (int i = firstChunkEndingAfter(start); i < chunks.size(); i++) {
+            final GorillaChunk chunk = chunks.get(i);
+            if (chunk.firstTime() >= end) {
+                break;
+            }
+            final GorillaChunk.Decoder decoder = chunk.decoder();
+            while (decoder.next()) {
+                final long time = decoder.time();
+                if (time <= start) {
+                    continue;
+                }
+                if (time >= end) {
+                    break;
+                }
+                while (nextLate != null && nextLate.getKey() <= time) {
+                    consumer.accept(nextLate.getKey(), nextLate.getValue());
+                    nextLate = late.hasNext() ? late.next() : null;
+                }
+                consumer.accept(time, decoder.value());
+            }
+        }
+        while (nextLate != null) {
+            consumer.accept(nextLate.getKey(), nextLate.getValue());
+            nextLate = late.hasNext() ? late.next() : null;
+        }
+    }
+
+    /**
+     * Drops all chunks that only hold samples before the given time.
+     */
+    synchronized void expire(final long before, final ChunkAllocator allocator) {
+        // Never drop the head chunk, it still receives samples
+        int expired = 0;
+        while (expired < chunks.size() - 1 && chunks.get(expired).lastTime() < before) {
+            allocator.release(chunks.get(expired).buffer());
+            expired++;
+        }
+        if (expired > 0) {
+            chunks.subList(0, expired).clear();
+        }
+        if (outOfOrder != null) {
+            outOfOrder.headMap(before, false).clear();
+            if (outOfOrder.isEmpty()) {
+                outOfOrder = null;
+            }
+        }
+    }
+
+    synchronized void release(final ChunkAllocator allocator) {
+        for (final GorillaChunk chunk : chunks) {
+            allocator.release(chunk.buffer());
+        }
+        chunks.clear();
+        outOfOrder = null;
+        released = true;
+    }
+
+    synchronized boolean isReleased() {
+        return released;
+    }
+
+    synchronized int count() {
+        int count = outOfOrder == null ? 0 : outOfOrder.size();
+        for (final GorillaChunk chunk : chunks) {
+            count += chunk.count();
+        }
+        return count;
+    }
+
+    private int firstChunkEndingAfter(final long time) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (chunks.get(mid).lastTime() <= time) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @FunctionalInterface
+    interface SampleConsumer {
+        void accept(long time, double value);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+
+package org.opennms.features.timeseries.plugin;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opennms.integration.api.v1.timeseries.Tag;
+import org.opennms.integration.api.v1.timeseries.TagMatcher;
+
+import com.google.re2j.Pattern;
+
+/**
+ * Inverted index from tag key and value to the keys of the metrics carrying that tag.
+ */
+final class TagIndex {
+
+    private final Map<String, Map<String, Set<String>>> index = new ConcurrentHashMap<>();
+
+    void add(final String metricKey, final Collection<Tag> tags) {
+        for (final Tag tag : tags) {
+            index.computeIfAbsent(tag.getKey(), k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(tag.getValue(), v -> ConcurrentHashMap.newKeySet())
+                    .add(metricKey);
+        }
+    }
+
+    void remove(final String metricKey, final Collection<Tag> tags) {
+        for (final Tag tag : tags) {
+            index.computeIfPresent(tag.getKey(), (key, values) -> {
+                values.computeIfPresent(tag.getValue(), (value, metrics) -> {
+                    metrics.remove(metricKey);
+                    return metrics.isEmpty() ? null : metrics;
+                });
+                return values.isEmpty() ? null : values;
+            });
+        }
+    }
+
+    /**
+     * Returns the keys of all metrics with at least one tag matching the given matcher.
+     */
+    Set<String> find(final TagMatcher matcher) {
+        final Map<String, Set<String>> values = index.get(matcher.getKey());
+        if (values == null) {
+            return Collections.emptySet();
+        }
+
+        // Tags have always a non null value so we don't have to null check for them.
+        if (TagMatcher.Type.EQUALS == matcher.getType()) {
+            final Set<String> metrics = values.get(matcher.getValue());
+            return metrics == null ? Collections.emptySet() : new HashSet<>(metrics);
+        }
+
+        final Set<String> result = new HashSet<>();
+        if (TagMatcher.Type.NOT_EQUALS == matcher.getType()) {
+            values.forEach((value, metrics) -> {
+                if (!value.equals(matcher.getValue())) {
+                    result.addAll(metrics);
+                }
+            });
+        } else if (TagMatcher.Type.EQUALS_REGEX == matcher.getType() || TagMatcher.Type.NOT_EQUALS_REGEX == matcher.getType()) {
+            // Compile once per query and evaluate once per distinct value instead of once per metric
+            final Pattern pattern = Pattern.compile(matcher.getValue());
+            final boolean expected = TagMatcher.Type.EQUALS_REGEX == matcher.getType();
+            values.forEach((value, metrics) -> {
+                if (pattern.matches(value) == expected) {
+                    result.addAll(metrics);
+                }
+            });
+        } else {
+            throw new IllegalArgumentException("Implement me for " + matcher.getType());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+
+package org.opennms.features.timeseries.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GorillaChunkTest {
+
+    @Test
+    public void canRoundTripRandomSamples() {
+        final Random random = new Random(42);
+        final GorillaChunk chunk = new GorillaChunk(ByteBuffer.allocate(4096));
+
+        final long[] times = new long[1000];
+        final double[] values = new double[times.length];
+        long time = 1_600_000_000_000L;
+        int count = 0;
+        for (; count < times.length; count++) {
+            switch (random.nextInt(4)) {
+                case 0: time += 300_000; break;
+                case 1: time += random.nextInt(100); break;
+                case 2: time += random.nextInt(Integer.MAX_VALUE); break;
+                default: time += random.nextInt(Integer.MAX_VALUE) * 1000L;
+            }
+            times[count] = time;
+            values[count] = random.nextBoolean() ? random.nextGaussian() : count > 0 ? values[count - 1] : 0;
+            if (!chunk.append(times[count], values[count])) {
+                break;
+            }
+        }
+        assertTrue(count > 10);
+        assertEquals(count, chunk.count());
+
+        final GorillaChunk.Decoder decoder = chunk.decoder();
+        for (int i = 0; i < count; i++) {
+            assertTrue(decoder.next());
+            assertEquals(times[i], decoder.time());
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.value()));
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void canRoundTripSpecialValues() {
+        final double[] values = {0.0, -0.0, Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE, Double.NEGATIVE_INFINITY, 1.0, 1.0};
+        final GorillaChunk chunk = new GorillaChunk(ByteBuffer.allocate(512));
+        for (int i = 0; i < values.length; i++) {
+            assertTrue(chunk.append(i * 1000L, values[i]));
+        }
+
+        final GorillaChunk.Decoder decoder = chunk.decoder();
+        for (int i = 0; i < values.length; i++) {
+            assertTrue(decoder.next());
+            assertEquals(i * 1000L, decoder.time());
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.value()));
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void compressesRegularSamples() {
+        // A gauge collected every 5 minutes with a bit of jitter
+        final Random random = new Random(42);
+        final GorillaChunk chunk = new GorillaChunk(ByteBuffer.allocate(64 * 1024));
+        long time = 1_600_000_000_000L;
+        double value = 100;
+        while (chunk.append(time, value)) {
+            time += 300_000 + random.nextInt(3) - 1;
+            if (random.nextInt(10) == 0) {
+                value += 1;
+            }
+        }
+
+        final double bytesPerSample = chunk.size() / 8.0 / chunk.count();
+        assertTrue("Expected less than 1.5 bytes per sample, but got " + bytesPerSample, bytesPerSample < 1.5);
+    }
+}
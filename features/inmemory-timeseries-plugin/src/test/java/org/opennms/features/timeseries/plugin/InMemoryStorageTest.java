@@ -0,0 +1,332 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+
+package org.opennms.features.timeseries.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.Aggregation;
+import org.opennms.integration.api.v1.timeseries.DataPoint;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.MetaTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.TagMatcher;
+import org.opennms.integration.api.v1.timeseries.TimeSeriesData;
+import org.opennms.integration.api.v1.timeseries.TimeSeriesStorage;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTagMatcher;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTimeSeriesFetchRequest;
+
+public class InMemoryStorageTest {
+
+    private static final Instant START = Instant.ofEpochSecond(1_600_000_080L);
+
+    private InMemoryStorage storage;
+
+    private Metric metricA;
+    private Metric metricB;
+
+    @Before
+    public void setUp() {
+        storage = new InMemoryStorage(64, 4096);
+        metricA = metric("a", "node1", "snmp");
+        metricB = metric("b", "node2", "snmp");
+    }
+
+    @Test
+    public void canFindMetricsByTag() {
+        storage.store(Arrays.asList(sample(metricA, 0, 1.0), sample(metricB, 0, 2.0)));
+
+        assertEquals(Collections.singletonList(metricA), storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.EQUALS, IntrinsicTagNames.name, "a"))));
+        assertEquals(Collections.singletonList(metricB), storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.NOT_EQUALS, IntrinsicTagNames.name, "a"))));
+        assertEquals(new HashSet<>(Arrays.asList(metricA, metricB)), new HashSet<>(storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.EQUALS_REGEX, "node", "node.*")))));
+        assertEquals(Collections.singletonList(metricA), storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.NOT_EQUALS_REGEX, "node", ".*2"))));
+        // meta tags are searchable as well, all matchers need to match
+        assertEquals(Collections.singletonList(metricB), storage.findMetrics(Arrays.asList(
+                matcher(TagMatcher.Type.EQUALS, "source", "snmp"),
+                matcher(TagMatcher.Type.EQUALS, "node", "node2"))));
+        assertEquals(Collections.emptyList(), storage.findMetrics(Arrays.asList(
+                matcher(TagMatcher.Type.EQUALS, "node", "node1"),
+                matcher(TagMatcher.Type.EQUALS, "node", "node2"))));
+        assertEquals(Collections.emptyList(), storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.EQUALS, "unknown", "a"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyMatchers() {
+        storage.findMetrics(Collections.emptyList());
+    }
+
+    @Test
+    public void canReadTimeRanges() {
+        // enough samples to span several chunks
+        for (int i = 0; i < 1000; i++) {
+            storage.store(Collections.singletonList(sample(metricA, i * 300, i)));
+        }
+        assertTrue(storage.getUsedBytes() > 64);
+
+        final List<DataPoint> all = fetch(metricA, -1, 1000 * 300, Aggregation.NONE, null);
+        assertEquals(1000, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(START.plusSeconds(i * 300L), all.get(i).getTime());
+            assertEquals(i, all.get(i).getValue(), 0.0);
+        }
+
+        // start and end are exclusive
+        final List<DataPoint> range = fetch(metricA, 300 * 500, 300 * 600, Aggregation.NONE, null);
+        assertEquals(99, range.size());
+        assertEquals(501, range.get(0).getValue(), 0.0);
+        assertEquals(599, range.get(98).getValue(), 0.0);
+
+        assertEquals(Collections.emptyList(), fetch(metricA, 300 * 2000, 300 * 3000, Aggregation.NONE, null));
+        assertEquals(Collections.emptyList(), fetch(metricB, -1, 300 * 3000, Aggregation.NONE, null));
+    }
+
+    @Test
+    public void canMergeOutOfOrderSamples() {
+        storage.store(Arrays.asList(sample(metricA, 10, 1.0), sample(metricA, 30, 3.0), sample(metricA, 20, 2.0), sample(metricA, 40, 4.0)));
+
+        final List<Double> values = fetch(metricA, 0, 100, Aggregation.NONE, null).stream()
+                .map(DataPoint::getValue)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(1.0, 2.0, 3.0, 4.0), values);
+    }
+
+    @Test
+    public void canAggregate() {
+        for (int i = 0; i < 10; i++) {
+            storage.store(Collections.singletonList(sample(metricA, i * 30, i)));
+        }
+        final Duration step = Duration.ofSeconds(120);
+
+        // buckets start at multiples of the step: [0, 1, 2, 3] [4, 5, 6, 7] [8, 9]
+        final List<DataPoint> average = fetch(metricA, -1, 1000, Aggregation.AVERAGE, step);
+        assertEquals(3, average.size());
+        assertEquals(START, average.get(0).getTime());
+        assertEquals(START.plusSeconds(120), average.get(1).getTime());
+        assertEquals(Arrays.asList(1.5, 5.5, 8.5), values(average));
+
+        assertEquals(Arrays.asList(0.0, 4.0, 8.0), values(fetch(metricA, -1, 1000, Aggregation.MIN, step)));
+        assertEquals(Arrays.asList(3.0, 7.0, 9.0), values(fetch(metricA, -1, 1000, Aggregation.MAX, step)));
+    }
+
+    @Test
+    public void canDeleteMetrics() {
+        storage.store(Arrays.asList(sample(metricA, 0, 1.0), sample(metricB, 0, 2.0)));
+        final long used = storage.getUsedBytes();
+
+        storage.delete(metricA);
+
+        assertEquals(Collections.singletonList(metricB), storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.EQUALS, "source", "snmp"))));
+        assertEquals(Collections.emptyList(), fetch(metricA, -1, 10, Aggregation.NONE, null));
+        assertTrue(storage.getUsedBytes() < used);
+        assertEquals(1, storage.getAllMetrics().size());
+    }
+
+    @Test
+    public void canCapOutOfOrderSamples() {
+        final int late = Series.MAX_OUT_OF_ORDER + 10;
+        storage.store(Collections.singletonList(sample(metricA, late + 1, 0.0)));
+        for (int i = late; i > 0; i--) {
+            storage.store(Collections.singletonList(sample(metricA, i, i)));
+        }
+
+        // The oldest late samples are dropped once the buffer is full
+        final List<DataPoint> dataPoints = fetch(metricA, -1, late + 2, Aggregation.NONE, null);
+        assertEquals(Series.MAX_OUT_OF_ORDER + 1, dataPoints.size());
+        assertEquals(START.plusSeconds(11), dataPoints.get(0).getTime());
+    }
+
+    @Test
+    public void canUpdateMetaTags() {
+        storage.store(Collections.singletonList(sample(metricA, 0, 1.0)));
+
+        final Metric updated = metric("a", "node1", "jmx");
+        storage.store(Collections.singletonList(sample(updated, 10, 2.0)));
+
+        assertEquals(Collections.emptyList(), storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.EQUALS, "source", "snmp"))));
+        final List<Metric> found = storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.EQUALS, "source", "jmx")));
+        assertEquals(1, found.size());
+        assertEquals(updated.getMetaTags(), found.get(0).getMetaTags());
+
+        // Still the same series
+        assertEquals(Arrays.asList(1.0, 2.0), values(fetch(metricA, -1, 100, Aggregation.NONE, null)));
+    }
+
+    @Test
+    public void canAggregateThroughStorageContract() {
+        final TimeSeriesStorage tss = storage;
+        for (int i = 0; i < 10; i++) {
+            storage.store(Collections.singletonList(sample(metricA, i * 30, i)));
+        }
+
+        // OpenNMS only requests an aggregation from the storage if it is supported natively
+        assertTrue(tss.supportsAggregation(Aggregation.AVERAGE));
+        assertTrue(tss.supportsAggregation(Aggregation.MIN));
+        assertTrue(tss.supportsAggregation(Aggregation.MAX));
+        assertFalse(tss.supportsAggregation(Aggregation.NONE));
+
+        final TimeSeriesData data = tss.getTimeSeriesData(ImmutableTimeSeriesFetchRequest.builder()
+                .metric(metricA)
+                .start(START.minusSeconds(1))
+                .end(START.plusSeconds(1000))
+                .step(Duration.ofSeconds(120))
+                .aggregation(Aggregation.MAX)
+                .build());
+        assertEquals(metricA, data.getMetric());
+        assertEquals(Arrays.asList(3.0, 7.0, 9.0), values(data.getDataPoints()));
+    }
+
+    @Test
+    public void canAggregateCountersAsRates() {
+        final Metric counter = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, "c")
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp/node1")
+                .metaTag(MetaTagNames.mtype, Metric.Mtype.count.name())
+                .build();
+        // 1/s for the first two minutes, 2/s afterwards and a reset at the end
+        final double[] values = {0, 30, 60, 90, 120, 180, 240, 300, 360, 10};
+        for (int i = 0; i < values.length; i++) {
+            storage.store(Collections.singletonList(sample(counter, i * 30, values[i])));
+        }
+
+        // The first sample has no rate and the reset is skipped
+        assertEquals(Arrays.asList(1.0, 1.75, 2.0), values(fetch(counter, -1, 1000, Aggregation.AVERAGE, Duration.ofSeconds(120))));
+        // Raw samples are returned as stored
+        assertEquals(10.0, fetch(counter, -1, 1000, Aggregation.NONE, null).get(9).getValue(), 0.0);
+    }
+
+    @Test
+    public void shouldSkipSamplesWithoutValue() {
+        final Sample sample = new Sample() {
+            @Override
+            public Metric getMetric() {
+                return metricA;
+            }
+
+            @Override
+            public Instant getTime() {
+                return START.plusSeconds(10);
+            }
+
+            @Override
+            public Double getValue() {
+                return null;
+            }
+        };
+
+        storage.store(Arrays.asList(sample(metricA, 0, 1.0), sample, sample(metricA, 20, 2.0)));
+
+        assertEquals(Arrays.asList(1.0, 2.0), values(fetch(metricA, -1, 100, Aggregation.NONE, null)));
+    }
+
+    @Test
+    public void canDeleteWhileStoring() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final Future<?> writer = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20000; i++) {
+                    storage.store(Collections.singletonList(sample(metricA, i, i)));
+                }
+                return null;
+            });
+            final Future<?> deleter = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20000; i++) {
+                    storage.delete(metricA);
+                }
+                return null;
+            });
+            start.countDown();
+            writer.get(30, TimeUnit.SECONDS);
+            deleter.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        // No chunk may be left behind for a deleted series
+        storage.delete(metricA);
+        assertEquals(0, storage.getUsedBytes());
+        assertEquals(Collections.emptyList(), storage.findMetrics(Collections.singletonList(matcher(TagMatcher.Type.EQUALS, "source", "snmp"))));
+    }
+
+    private List<DataPoint> fetch(final Metric metric, final long start, final long end, final Aggregation aggregation, final Duration step) {
+        final TimeSeriesData data = storage.getTimeSeriesData(ImmutableTimeSeriesFetchRequest.builder()
+                .metric(metric)
+                .start(START.plusSeconds(start))
+                .end(START.plusSeconds(end))
+                .step(step != null ? step : Duration.ZERO)
+                .aggregation(aggregation)
+                .build());
+        return data.getDataPoints();
+    }
+
+    private static List<Double> values(final List<DataPoint> dataPoints) {
+        return dataPoints.stream().map(DataPoint::getValue).collect(Collectors.toList());
+    }
+
+    private static Metric metric(final String name, final String node, final String source) {
+        return ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, name)
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp/" + node)
+                .intrinsicTag("node", node)
+                .intrinsicTag(IntrinsicTagNames.mtype, Metric.Mtype.gauge.name())
+                .metaTag("source", source)
+                .build();
+    }
+
+    private static Sample sample(final Metric metric, final long seconds, final double value) {
+        return ImmutableSample.builder()
+                .metric(metric)
+                .time(START.plusSeconds(seconds))
+                .value(value)
+                .build();
+    }
+
+    private static TagMatcher matcher(final TagMatcher.Type type, final String key, final String value) {
+        return ImmutableTagMatcher.builder()
+                .type(type)
+                .key(key)
+                .value(value)
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.features.kafka.producer;
+
+import java.util.Objects;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+/**
+ * A SpEL filter expression which can be evaluated concurrently.
+ *
+ * SpEL expressions cache state while being evaluated and compiled expressions are not safely published between
+ * threads, so every thread uses its own parsed copy of the expression together with its own evaluation context.
+ * Both are created on first use and reused for all further evaluations on that thread. The expressions are compiled
+ * to byte code after their first evaluations where possible, falling back to interpretation otherwise.
+ */
+public class FilterExpression {
+    private static final ExpressionParser SPEL_PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, FilterExpression.class.getClassLoader()));
+
+    private final String expressionString;
+
+    private final ThreadLocal<Evaluator> evaluators;
+
+    /**
+     * @throws org.springframework.expression.ParseException if the expression is invalid
+     */
+    public FilterExpression(final String expressionString) {
+        this.expressionString = Objects.requireNonNull(expressionString);
+        // Parse once up front to fail early on invalid expressions
+        SPEL_PARSER.parseExpression(expressionString);
+        this.evaluators = ThreadLocal.withInitial(() -> new Evaluator(SPEL_PARSER.parseExpression(expressionString)));
+    }
+
+    /**
+     * Evaluates the expression against the given object.
+     *
+     * @throws org.springframework.expression.EvaluationException if the expression failed to evaluate
+     * @throws NullPointerException if the expression evaluated to {@code null}
+     */
+    public boolean matches(final Object object) {
+        return this.evaluators.get().matches(object);
+    }
+
+    public String getExpressionString() {
+        return this.expressionString;
+    }
+
+    private static class Evaluator {
+        private final Expression expression;
+        private final StandardEvaluationContext context = new StandardEvaluationContext();
+
+        private Evaluator(final Expression expression) {
+            this.expression = expression;
+        }
+
+        private boolean matches(final Object object) {
+            this.context.setRootObject(object);
+            try {
+                return this.expression.getValue(this.context, Boolean.class);
+            } finally {
+                this.context.setRootObject(null);
+            }
+        }
+    }
+}
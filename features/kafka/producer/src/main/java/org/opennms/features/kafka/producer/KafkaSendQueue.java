@@ -0,0 +1,219 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.features.kafka.producer;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Queues records for sending and hands them to a sender from a fixed number of threads.
+ *
+ * The queue is split into one shard per thread. Records are assigned to a shard by their partition key, so records
+ * with the same key are always handed to the sender in the order they were queued, while records with different
+ * keys are sent in parallel.
+ *
+ * The depth of the queue, the number of dropped records and the lag between queuing a record and its
+ * acknowledgement are tracked per {@link RecordType}.
+ */
+public class KafkaSendQueue {
+
+    public enum RecordType {
+        EVENT("events"),
+        ALARM("alarms"),
+        NODE("nodes"),
+        ALARM_FEEDBACK("alarmFeedback"),
+        TOPOLOGY_EDGE("topologyEdges");
+
+        private final String name;
+
+        RecordType(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final BlockingDeque<KafkaRecord>[] shards;
+
+    private final Map<RecordType, AtomicLong> depths = new EnumMap<>(RecordType.class);
+    private final Map<RecordType, Meter> dropped = new EnumMap<>(RecordType.class);
+    private final Map<RecordType, Timer> lags = new EnumMap<>(RecordType.class);
+
+    private final ExecutorService executor;
+
+    @SuppressWarnings("unchecked")
+    public KafkaSendQueue(final int capacity, final int numThreads, final MetricRegistry metrics) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required: " + numThreads);
+        }
+
+        // Split the capacity evenly so that the total number of queued records remains bounded by the capacity
+        final int shardCapacity = Math.max(1, (capacity + numThreads - 1) / numThreads);
+        this.shards = new BlockingDeque[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            this.shards[i] = new LinkedBlockingDeque<>(shardCapacity);
+        }
+
+        for (final RecordType type : RecordType.values()) {
+            final AtomicLong depth = new AtomicLong();
+            this.depths.put(type, depth);
+            metrics.register(MetricRegistry.name(type.getName(), "queueDepth"), (Gauge<Long>) depth::get);
+            this.dropped.put(type, metrics.meter(MetricRegistry.name(type.getName(), "dropped")));
+            this.lags.put(type, metrics.timer(MetricRegistry.name(type.getName(), "lag")));
+        }
+
+        this.executor = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+                .setNameFormat("KafkaSendQueueProcessor-%d")
+                .build());
+    }
+
+    /**
+     * Starts handing queued records to the given sender.
+     *
+     * The sender is called by one thread per shard and must not block for longer than necessary.
+     */
+    public void start(final Consumer<KafkaRecord> sender) {
+        for (final BlockingDeque<KafkaRecord> shard : this.shards) {
+            this.executor.execute(() -> this.process(shard, sender));
+        }
+    }
+
+    public void stop() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Queues a record at the tail of its shard.
+     *
+     * @return {@code false} if the record was dropped since the shard is full
+     */
+    public boolean offer(final KafkaRecord record) {
+        return this.track(record, this.shardFor(record).offer(record));
+    }
+
+    /**
+     * Queues a record at the head of its shard, i.e. to retry a record which failed to send.
+     *
+     * @return {@code false} if the record was dropped since the shard is full
+     */
+    public boolean offerFirst(final KafkaRecord record) {
+        return this.track(record, this.shardFor(record).offerFirst(record));
+    }
+
+    /**
+     * Records the lag of a record which has been acknowledged.
+     */
+    public void acknowledged(final KafkaRecord record) {
+        this.lags.get(record.getType()).update(System.nanoTime() - record.getQueuedAt(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getDepth(final RecordType type) {
+        return this.depths.get(type).get();
+    }
+
+    private boolean track(final KafkaRecord record, final boolean queued) {
+        if (queued) {
+            this.depths.get(record.getType()).incrementAndGet();
+        } else {
+            this.dropped.get(record.getType()).mark();
+        }
+        return queued;
+    }
+
+    private BlockingDeque<KafkaRecord> shardFor(final KafkaRecord record) {
+        return this.shards[Math.floorMod(record.getPartitionKey(), this.shards.length)];
+    }
+
+    private void process(final BlockingDeque<KafkaRecord> shard, final Consumer<KafkaRecord> sender) {
+        while (!Thread.currentThread().isInterrupted()) {
+            final KafkaRecord record;
+            try {
+                record = shard.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            this.depths.get(record.getType()).decrementAndGet();
+            sender.accept(record);
+        }
+    }
+
+    public static final class KafkaRecord {
+        private final RecordType type;
+        private final int partitionKey;
+        private final ProducerRecord<byte[], byte[]> producerRecord;
+        private final Consumer<RecordMetadata> consumer;
+        private final long queuedAt = System.nanoTime();
+
+        /**
+         * Creates a record which is partitioned by the key of the producer record.
+         */
+        public KafkaRecord(final RecordType type, final ProducerRecord<byte[], byte[]> producerRecord, final Consumer<RecordMetadata> consumer) {
+            this(type, Arrays.hashCode(producerRecord.key()), producerRecord, consumer);
+        }
+
+        public KafkaRecord(final RecordType type, final int partitionKey, final ProducerRecord<byte[], byte[]> producerRecord, final Consumer<RecordMetadata> consumer) {
+            this.type = type;
+            this.partitionKey = partitionKey;
+            this.producerRecord = producerRecord;
+            this.consumer = consumer;
+        }
+
+        public RecordType getType() {
+            return type;
+        }
+
+        public int getPartitionKey() {
+            return partitionKey;
+        }
+
+        public ProducerRecord<byte[], byte[]> getProducerRecord() {
+            return producerRecord;
+        }
+
+        public Consumer<RecordMetadata> getConsumer() {
+            return consumer;
+        }
+
+        long getQueuedAt() {
+            return queuedAt;
+        }
+    }
+}
@@ -31,13 +31,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadFactory;
 import java.util.function.Consumer;
 
@@ -48,6 +46,8 @@ import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.opennms.core.ipc.common.kafka.Utils;
+import org.opennms.features.kafka.producer.KafkaSendQueue.KafkaRecord;
+import org.opennms.features.kafka.producer.KafkaSendQueue.RecordType;
 import org.opennms.features.kafka.producer.datasync.KafkaAlarmDataSync;
 import org.opennms.features.kafka.producer.model.OpennmsModelProtos;
 import org.opennms.features.situationfeedback.api.AlarmFeedback;
@@ -71,10 +71,9 @@ import org.opennms.netmgt.xml.event.Event;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.expression.Expression;
-import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.swrve.ratelimitedlogger.RateLimitedLog;
@@ -87,7 +86,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             .build();
 
     public static final String KAFKA_CLIENT_PID = "org.opennms.features.kafka.producer.client";
-    private static final ExpressionParser SPEL_PARSER = new SpelExpressionParser();
+    private static final String JMX_DOMAIN = "org.opennms.features.kafka.producer";
     private final ThreadFactory nodeUpdateThreadFactory = new ThreadFactoryBuilder()
             .setNameFormat("kafka-producer-node-update-%d")
             .build();
@@ -110,8 +109,8 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     private boolean forwardAlarmFeedback;
     private boolean suppressIncrementalAlarms;
     private boolean forwardNodes;
-    private Expression eventFilterExpression;
-    private Expression alarmFilterExpression;
+    private FilterExpression eventFilterExpression;
+    private FilterExpression alarmFilterExpression;
 
     private final CountDownLatch forwardedEvent = new CountDownLatch(1);
     private final CountDownLatch forwardedAlarm = new CountDownLatch(1);
@@ -129,11 +128,13 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     private final AlarmCallbackStateTracker stateTracker = new AlarmCallbackStateTracker();
     private final OnmsTopologyDao topologyDao;
     private int kafkaSendQueueCapacity;
-    private BlockingDeque<KafkaRecord> kafkaSendDeque;
-    private final ExecutorService kafkaSendQueueExecutor =
-            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "KafkaSendQueueProcessor"));
+    private int kafkaSendQueueThreads = 4;
+    private KafkaSendQueue kafkaSendQueue;
     private final ExecutorService nodeUpdateExecutor;
 
+    private final MetricRegistry metrics = new MetricRegistry();
+    private JmxReporter metricsReporter;
+
     private String encoding = "UTF8";
     private int numEventListenerThreads = 4;
 
@@ -170,8 +171,18 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             LOG.info("Defaulted the 'kafkaSendQueueCapacity' to 1000 since no property was set");
         }
 
-        kafkaSendDeque = new LinkedBlockingDeque<>(kafkaSendQueueCapacity);
-        kafkaSendQueueExecutor.execute(this::processKafkaSendQueue);
+        if (kafkaSendQueueThreads <= 0) {
+            kafkaSendQueueThreads = 1;
+        }
+
+        // Records are sharded by their key over the threads, keeping the order of records with the same key
+        kafkaSendQueue = new KafkaSendQueue(kafkaSendQueueCapacity, kafkaSendQueueThreads, metrics);
+        kafkaSendQueue.start(this::sendKafkaRecord);
+
+        metricsReporter = JmxReporter.forRegistry(metrics)
+                .inDomain(JMX_DOMAIN)
+                .build();
+        metricsReporter.start();
 
         if (forwardEvents) {
             eventSubscriptionService.addEventListener(this);
@@ -181,9 +192,16 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     }
 
     public void destroy() {
-        kafkaSendQueueExecutor.shutdownNow();
+        if (kafkaSendQueue != null) {
+            kafkaSendQueue.stop();
+        }
         nodeUpdateExecutor.shutdownNow();
 
+        if (metricsReporter != null) {
+            metricsReporter.stop();
+            metricsReporter = null;
+        }
+
         if (producer != null) {
             producer.close();
             producer = null;
@@ -218,7 +236,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     }
 
     private void forwardTopologyEdgeMessage(byte[] refid, byte[] message) {
-        sendRecord(() -> {
+        sendRecord(RecordType.TOPOLOGY_EDGE, () -> {
             return new ProducerRecord<>(topologyEdgeTopic, refid, message);
         }, recordMetadata -> {
             // We've got an ACK from the server that the event was forwarded
@@ -233,7 +251,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         // Filtering
         if (eventFilterExpression != null) {
             try {
-                shouldForwardEvent = eventFilterExpression.getValue(event, Boolean.class);
+                shouldForwardEvent = eventFilterExpression.matches(event);
             } catch (Exception e) {
                 LOG.error("Event filter '{}' failed to return a result for event: {}. The event will be forwarded anyways.",
                         eventFilterExpression.getExpressionString(), event.toStringSimple(), e);
@@ -252,8 +270,9 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             updateNodeAsynchronously(event.getNodeid());
         }
 
-        // Forward!
-        sendRecord(() -> {
+        // Forward! Events have no key, so keep the events of each node in order
+        final int partitionKey = event.getNodeid() != null ? Long.hashCode(event.getNodeid()) : 0;
+        sendRecord(RecordType.EVENT, partitionKey, () -> {
             final OpennmsModelProtos.Event mappedEvent = protobufMapper.toEvent(event).build();
             LOG.debug("Sending event with UEI: {}", mappedEvent.getUei());
             return new ProducerRecord<>(eventTopic, mappedEvent.toByteArray());
@@ -265,20 +284,18 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     }
 
     public boolean shouldForwardAlarm(OnmsAlarm alarm) {
-        if (alarmFilterExpression != null) {
-            // The expression is not necessarily thread safe
-            synchronized (this) {
-                try {
-                    final boolean shouldForwardAlarm = alarmFilterExpression.getValue(alarm, Boolean.class);
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Alarm {} not forwarded due to event filter: {}",
-                                alarm, alarmFilterExpression.getExpressionString());
-                    }
-                    return shouldForwardAlarm;
-                } catch (Exception e) {
-                    LOG.error("Alarm filter '{}' failed to return a result for event: {}. The alarm will be forwarded anyways.",
-                            alarmFilterExpression.getExpressionString(), alarm, e);
+        final FilterExpression filterExpression = alarmFilterExpression;
+        if (filterExpression != null) {
+            try {
+                final boolean shouldForwardAlarm = filterExpression.matches(alarm);
+                if (!shouldForwardAlarm && LOG.isTraceEnabled()) {
+                    LOG.trace("Alarm {} not forwarded due to alarm filter: {}",
+                            alarm, filterExpression.getExpressionString());
                 }
+                return shouldForwardAlarm;
+            } catch (Exception e) {
+                LOG.error("Alarm filter '{}' failed to return a result for alarm: {}. The alarm will be forwarded anyways.",
+                        filterExpression.getExpressionString(), alarm, e);
             }
         }
         return true;
@@ -304,7 +321,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             outstandingAlarms.remove(reductionKey);
 
             // The alarm was deleted, push a null record to the reduction key
-            sendRecord(() -> {
+            sendRecord(RecordType.ALARM, () -> {
                 LOG.debug("Deleting alarm with reduction key: {}", reductionKey);
                 return new ProducerRecord<>(alarmTopic, reductionKey.getBytes(encoding), null);
             }, recordMetadata -> {
@@ -330,7 +347,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         }
 
         // Forward!
-        sendRecord(() -> {
+        sendRecord(RecordType.ALARM, () -> {
             final OpennmsModelProtos.Alarm mappedAlarm = protobufMapper.toAlarm(alarm).build();
             LOG.debug("Sending alarm with reduction key: {}", reductionKey);
             return new ProducerRecord<>(alarmTopic, reductionKey.getBytes(encoding), mappedAlarm.toByteArray());
@@ -362,14 +379,14 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
 
             if (node == null) {
                 // The node was deleted, push a null record
-                sendRecord(() -> {
+                sendRecord(RecordType.NODE, () -> {
                     LOG.debug("Deleting node with criteria: {}", nodeCriteria);
                     return new ProducerRecord<>(nodeTopic, nodeCriteria.getBytes(encoding), null);
-                });
+                }, null);
                 return;
             }
 
-            sendRecord(() -> {
+            sendRecord(RecordType.NODE, () -> {
                 final OpennmsModelProtos.Node mappedNode = protobufMapper.toNode(node).build();
                 LOG.debug("Sending node with criteria: {}", nodeCriteria);
                 return new ProducerRecord<>(nodeTopic, nodeCriteria.getBytes(encoding), mappedNode.toByteArray());
@@ -381,11 +398,11 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         });
     }
 
-    private void sendRecord(Callable<ProducerRecord<byte[], byte[]>> callable) {
-        sendRecord(callable, null);
+    private void sendRecord(RecordType type, Callable<ProducerRecord<byte[], byte[]>> callable, Consumer<RecordMetadata> callback) {
+        sendRecord(type, null, callable, callback);
     }
 
-    private void sendRecord(Callable<ProducerRecord<byte[], byte[]>> callable, Consumer<RecordMetadata> callback) {
+    private void sendRecord(RecordType type, Integer partitionKey, Callable<ProducerRecord<byte[], byte[]>> callable, Consumer<RecordMetadata> callback) {
         if (producer == null) {
             return;
         }
@@ -403,45 +420,40 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
 
         // Any offer that fails due to capacity overflow will simply be dropped and will have to wait until the next
         // sync to be processed so this is just a best effort attempt
-        if (!kafkaSendDeque.offer(new KafkaRecord(record, callback))) {
+        final KafkaRecord kafkaRecord = partitionKey != null
+                ? new KafkaRecord(type, partitionKey, record, callback)
+                : new KafkaRecord(type, record, callback);
+        if (!kafkaSendQueue.offer(kafkaRecord)) {
             RATE_LIMITED_LOGGER.warn("Dropped a Kafka record due to queue capacity being full.");
         }
     }
 
-    private void processKafkaSendQueue() {
-        //noinspection InfiniteLoopStatement
-        while (true) {
-            try {
-                KafkaRecord kafkaRecord = kafkaSendDeque.take();
-                ProducerRecord<byte[], byte[]> producerRecord = kafkaRecord.getProducerRecord();
-                Consumer<RecordMetadata> consumer = kafkaRecord.getConsumer();
-
-                try {
-                    producer.send(producerRecord, (recordMetadata, e) -> {
-                        if (e != null) {
-                            LOG.warn("Failed to send record to producer: {}.", producerRecord, e);
-                            if (e instanceof TimeoutException) {
-                                // If Kafka is Offline, buffer the record again for events.
-                                // This is best effort to keep the order although in-flight elements may still miss the order.
-                                if (producerRecord != null &&
-                                        this.eventTopic.equalsIgnoreCase(producerRecord.topic())) {
-                                    if(!kafkaSendDeque.offerFirst(kafkaRecord)) {
-                                        RATE_LIMITED_LOGGER.warn("Dropped a Kafka record due to queue capacity being full.");
-                                    }
-                                }
+    private void sendKafkaRecord(KafkaRecord kafkaRecord) {
+        final ProducerRecord<byte[], byte[]> producerRecord = kafkaRecord.getProducerRecord();
+        final Consumer<RecordMetadata> consumer = kafkaRecord.getConsumer();
+
+        try {
+            producer.send(producerRecord, (recordMetadata, e) -> {
+                if (e != null) {
+                    LOG.warn("Failed to send record to producer: {}.", producerRecord, e);
+                    if (e instanceof TimeoutException) {
+                        // If Kafka is Offline, buffer the record again for events.
+                        // This is best effort to keep the order although in-flight elements may still miss the order.
+                        if (kafkaRecord.getType() == RecordType.EVENT) {
+                            if (!kafkaSendQueue.offerFirst(kafkaRecord)) {
+                                RATE_LIMITED_LOGGER.warn("Dropped a Kafka record due to queue capacity being full.");
                             }
-                            return;
                         }
-                        if (consumer != null) {
-                            consumer.accept(recordMetadata);
-                        }
-                    });
-                } catch (RuntimeException e) {
-                    LOG.warn("Failed to send record to producer: {}.", producerRecord, e);
+                    }
+                    return;
                 }
-            } catch (InterruptedException ignore) {
-                break;
-            }
+                kafkaSendQueue.acknowledged(kafkaRecord);
+                if (consumer != null) {
+                    consumer.accept(recordMetadata);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to send record to producer: {}.", producerRecord, e);
         }
     }
 
@@ -540,7 +552,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         if (Strings.isNullOrEmpty(eventFilter)) {
             eventFilterExpression = null;
         } else {
-            eventFilterExpression = SPEL_PARSER.parseExpression(eventFilter);
+            eventFilterExpression = new FilterExpression(eventFilter);
         }
     }
 
@@ -548,7 +560,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         if (Strings.isNullOrEmpty(alarmFilter)) {
             alarmFilterExpression = null;
         } else {
-            alarmFilterExpression = SPEL_PARSER.parseExpression(alarmFilter);
+            alarmFilterExpression = new FilterExpression(alarmFilter);
         }
     }
 
@@ -564,7 +576,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         }
 
         // NOTE: This will currently block while waiting for Kafka metadata if Kafka is not available.
-        alarmFeedback.forEach(feedback -> sendRecord(() -> {
+        alarmFeedback.forEach(feedback -> sendRecord(RecordType.ALARM_FEEDBACK, () -> {
             LOG.debug("Sending alarm feedback with key: {}", feedback.getAlarmKey());
 
             return new ProducerRecord<>(alarmFeedbackTopic, feedback.getAlarmKey().getBytes(encoding),
@@ -613,27 +625,17 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         this.kafkaSendQueueCapacity = kafkaSendQueueCapacity;
     }
 
-    @Override
-    public int getNumThreads() {
-        return numEventListenerThreads;
+    public void setKafkaSendQueueThreads(int kafkaSendQueueThreads) {
+        this.kafkaSendQueueThreads = kafkaSendQueueThreads;
     }
 
-    private static final class KafkaRecord {
-        private final ProducerRecord<byte[], byte[]> producerRecord;
-        private final Consumer<RecordMetadata> consumer;
-
-        KafkaRecord(ProducerRecord<byte[], byte[]> producerRecord, Consumer<RecordMetadata> consumer) {
-            this.producerRecord = producerRecord;
-            this.consumer = consumer;
-        }
-
-        ProducerRecord<byte[], byte[]> getProducerRecord() {
-            return producerRecord;
-        }
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
 
-        Consumer<RecordMetadata> getConsumer() {
-            return consumer;
-        }
+    @Override
+    public int getNumThreads() {
+        return numEventListenerThreads;
     }
 
     public CountDownLatch getForwardedTopologyVertexMessage() {
@@ -0,0 +1,90 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.features.kafka.producer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.springframework.expression.ParseException;
+
+/**
+ * Tests for {@link FilterExpression}.
+ */
+public class FilterExpressionTest {
+
+    @Test
+    public void testMatches() {
+        final FilterExpression filter = new FilterExpression("getTTicketId() == null && getSeverity().isGreaterThan(T(org.opennms.netmgt.model.OnmsSeverity).MINOR)");
+        assertThat(filter.matches(alarm(null, OnmsSeverity.MAJOR)), is(true));
+        assertThat(filter.matches(alarm(null, OnmsSeverity.MINOR)), is(false));
+        assertThat(filter.matches(alarm("ticket", OnmsSeverity.MAJOR)), is(false));
+    }
+
+    /**
+     * Tests that the same filter can be evaluated from multiple threads at once.
+     */
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        final FilterExpression filter = new FilterExpression("getSeverity() == T(org.opennms.netmgt.model.OnmsSeverity).MAJOR");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        final boolean major = i % 2 == 0;
+                        if (filter.matches(alarm(null, major ? OnmsSeverity.MAJOR : OnmsSeverity.MINOR)) != major) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void testInvalidExpression() {
+        new FilterExpression("getSeverity() ==");
+    }
+
+    private static OnmsAlarm alarm(final String ticketId, final OnmsSeverity severity) {
+        final OnmsAlarm alarm = new OnmsAlarm();
+        alarm.setTTicketId(ticketId);
+        alarm.setSeverity(severity);
+        return alarm;
+    }
+}
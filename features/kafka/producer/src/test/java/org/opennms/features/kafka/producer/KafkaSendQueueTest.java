@@ -0,0 +1,115 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.features.kafka.producer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.Test;
+import org.opennms.features.kafka.producer.KafkaSendQueue.KafkaRecord;
+import org.opennms.features.kafka.producer.KafkaSendQueue.RecordType;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tests for {@link KafkaSendQueue}.
+ */
+public class KafkaSendQueueTest {
+
+    /**
+     * Tests that records with the same key are sent in order while being spread over multiple threads.
+     */
+    @Test
+    public void testOrderingByKey() throws InterruptedException {
+        final int keys = 16;
+        final int recordsPerKey = 500;
+
+        final KafkaSendQueue queue = new KafkaSendQueue(keys * recordsPerKey, 4, new MetricRegistry());
+        final Map<String, List<Integer>> sent = new ConcurrentHashMap<>();
+        final Map<String, Boolean> threads = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(keys * recordsPerKey);
+        queue.start(record -> {
+            final String key = new String(record.getProducerRecord().key());
+            sent.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(Integer.parseInt(new String(record.getProducerRecord().value())));
+            threads.put(Thread.currentThread().getName(), true);
+            latch.countDown();
+        });
+
+        try {
+            for (int i = 0; i < recordsPerKey; i++) {
+                for (int k = 0; k < keys; k++) {
+                    final ProducerRecord<byte[], byte[]> record = new ProducerRecord<>("alarms", ("key" + k).getBytes(), Integer.toString(i).getBytes());
+                    assertThat(queue.offer(new KafkaRecord(RecordType.ALARM, record, null)), is(true));
+                }
+            }
+
+            assertThat(latch.await(1, TimeUnit.MINUTES), is(true));
+        } finally {
+            queue.stop();
+        }
+
+        assertThat(sent.size(), equalTo(keys));
+        for (final List<Integer> values : sent.values()) {
+            assertThat(values.size(), equalTo(recordsPerKey));
+            for (int i = 0; i < recordsPerKey; i++) {
+                assertThat(values.get(i), equalTo(i));
+            }
+        }
+        assertThat(threads.size() > 1, is(true));
+        assertThat(queue.getDepth(RecordType.ALARM), equalTo(0L));
+    }
+
+    /**
+     * Tests that records are dropped once the capacity is exhausted and that this is tracked per type.
+     */
+    @Test
+    public void testCapacityAndMetrics() {
+        final MetricRegistry metrics = new MetricRegistry();
+        final KafkaSendQueue queue = new KafkaSendQueue(2, 1, metrics);
+        try {
+            final ProducerRecord<byte[], byte[]> record = new ProducerRecord<>("events", "event".getBytes());
+            assertThat(queue.offer(new KafkaRecord(RecordType.EVENT, 0, record, null)), is(true));
+            assertThat(queue.offer(new KafkaRecord(RecordType.EVENT, 0, record, null)), is(true));
+            assertThat(queue.offer(new KafkaRecord(RecordType.EVENT, 0, record, null)), is(false));
+            assertThat(queue.offerFirst(new KafkaRecord(RecordType.EVENT, 0, record, null)), is(false));
+
+            assertThat(queue.getDepth(RecordType.EVENT), equalTo(2L));
+            assertThat(queue.getDepth(RecordType.ALARM), equalTo(0L));
+            assertThat(metrics.getGauges().get("events.queueDepth").getValue(), equalTo(2L));
+            assertThat(metrics.meter("events.dropped").getCount(), equalTo(2L));
+            assertThat(metrics.meter("alarms.dropped").getCount(), equalTo(0L));
+        } finally {
+            queue.stop();
+        }
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
+import org.opennms.netmgt.events.api.model.IEvent;
+import org.opennms.netmgt.events.api.model.IParm;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.MeasurementFetchStrategy;
+import org.opennms.netmgt.measurements.model.QueryMetadata;
+import org.opennms.netmgt.measurements.model.QueryResource;
+import org.opennms.netmgt.measurements.model.Source;
+import org.opennms.netmgt.model.ResourceId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the columns returned by another {@link MeasurementFetchStrategy}.
+ *
+ * The columns are stored in chunks of a fixed number of steps, aligned on
+ * multiples of the requested step and keyed by the source's resource, attribute,
+ * aggregation and the parameters of the request. Clients such as dashboards
+ * repeatedly issue the same request for a sliding window: once the chunks of
+ * the window are cached, only the rows before the first chunk boundary and the
+ * uncached head of the window are fetched from the delegate, and spliced together
+ * with the cached chunks.
+ *
+ * Only chunks which are settled, and which were fetched with enough of the
+ * preceding steps to not depend on where the fetch started, are cached.
+ * Results which can not be spliced exactly, i.e. where the delegate returns
+ * a different step or rows which are not aligned on the step, are fetched in full.
+ *
+ * The memory used by the chunks is bounded. The chunks of a resource are
+ * invalidated when it, or one of its parents, is deleted, or is found to no
+ * longer exist.
+ *
+ * The cache is disabled unless a maximum size is set: a cache hit fetches the
+ * rows before and after the cached chunks separately, which only pays off
+ * when clients repeatedly request long windows.
+ */
+public class CachingFetchStrategy implements MeasurementFetchStrategy, EventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingFetchStrategy.class);
+
+    /**
+     * Maximum number of bytes used by the cached chunks, 0 disables the cache.
+     */
+    public static final String MAX_SIZE_PROPERTY = "org.opennms.measurements.cache.max_size";
+
+    public static final long DEFAULT_MAX_SIZE = 0L;
+
+    /**
+     * Number of steps in a chunk.
+     */
+    public static final String CHUNK_STEPS_PROPERTY = "org.opennms.measurements.cache.chunk_steps";
+
+    public static final int DEFAULT_CHUNK_STEPS = 24;
+
+    /**
+     * Time in milliseconds after which the values of a step are no longer
+     * expected to change, and may be cached.
+     */
+    public static final String SETTLE_TIME_PROPERTY = "org.opennms.measurements.cache.settle_time";
+
+    public static final long DEFAULT_SETTLE_TIME = TimeUnit.MINUTES.toMillis(15);
+
+    /**
+     * Time in milliseconds after which the cached chunks expire.
+     */
+    public static final String TTL_PROPERTY = "org.opennms.measurements.cache.ttl";
+
+    public static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Number of steps fetched before and after the rows which are cached, so that
+     * the values are not affected by the bounds of the fetch.
+     */
+    private static final int MARGIN_STEPS = 2;
+
+    /**
+     * Approximate number of bytes used by a cache entry, not counting the values.
+     */
+    private static final int ENTRY_OVERHEAD = 192;
+
+    private final MeasurementFetchStrategy m_delegate;
+
+    private final Cache<ChunkKey, Chunk> m_chunks;
+
+    private final int m_chunkSteps;
+
+    private final long m_settleTime;
+
+    private final LongSupplier m_clock;
+
+    private final Meter m_reqs;
+
+    private final Meter m_hits;
+
+    private final Meter m_misses;
+
+    private final Meter m_cachedRows;
+
+    private EventSubscriptionService m_eventSubscriptionService;
+
+    public CachingFetchStrategy(final MeasurementFetchStrategy delegate, final MetricRegistry registry) {
+        this(delegate, registry,
+                SystemProperties.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE),
+                SystemProperties.getInteger(CHUNK_STEPS_PROPERTY, DEFAULT_CHUNK_STEPS),
+                SystemProperties.getLong(SETTLE_TIME_PROPERTY, DEFAULT_SETTLE_TIME),
+                SystemProperties.getLong(TTL_PROPERTY, DEFAULT_TTL),
+                System::currentTimeMillis);
+    }
+
+    CachingFetchStrategy(final MeasurementFetchStrategy delegate, final MetricRegistry registry,
+            final long maxSize, final int chunkSteps, final long settleTime, final long ttl, final LongSupplier clock) {
+        m_delegate = Objects.requireNonNull(delegate, "delegate argument");
+        m_chunkSteps = chunkSteps;
+        m_settleTime = settleTime;
+        m_clock = Objects.requireNonNull(clock, "clock argument");
+
+        final String strategy = delegate.getClass().getSimpleName();
+        if (maxSize > 0 && chunkSteps > 0) {
+            LOG.info("Initializing the measurements cache for {} ({} bytes max, {} steps per chunk)", strategy, maxSize, chunkSteps);
+            m_chunks = CacheBuilder.newBuilder()
+                    .maximumWeight(maxSize)
+                    .weigher((ChunkKey key, Chunk chunk) -> chunk.weight())
+                    .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                    .build();
+        } else {
+            LOG.info("The measurements cache for {} is disabled", strategy);
+            m_chunks = null;
+        }
+
+        m_reqs = registry.meter(MetricRegistry.name("cache", strategy, "reqs"));
+        m_hits = registry.meter(MetricRegistry.name("cache", strategy, "hits"));
+        m_misses = registry.meter(MetricRegistry.name("cache", strategy, "misses"));
+        m_cachedRows = registry.meter(MetricRegistry.name("cache", strategy, "cached-rows"));
+
+        registry.register(MetricRegistry.name("cache", strategy, "hit-ratio"),
+                new RatioGauge() {
+                    @Override
+                    protected Ratio getRatio() {
+                        return Ratio.of(m_hits.getCount(), m_hits.getCount() + m_misses.getCount());
+                    }
+                });
+        registry.register(MetricRegistry.name("cache", strategy, "size"),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return m_chunks != null ? m_chunks.size() : 0L;
+                    }
+                });
+        registry.register(MetricRegistry.name("cache", strategy, "max-size"),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return Math.max(0L, maxSize);
+                    }
+                });
+    }
+
+    @Override
+    public FetchResults fetch(long start, long end, long step, int maxrows, Long interval, Long heartbeat, List<Source> sources, boolean relaxed) throws Exception {
+        if (m_chunks == null || step <= 0 || end <= start || sources.isEmpty()) {
+            return m_delegate.fetch(start, end, step, maxrows, interval, heartbeat, sources, relaxed);
+        }
+        m_reqs.mark();
+
+        // The keys are built before fetching, the strategies may substitute the fallback attribute
+        final List<SeriesKey> series = new ArrayList<>(sources.size());
+        for (final Source source : sources) {
+            series.add(new SeriesKey(source, step, maxrows, interval, heartbeat));
+        }
+
+        // Look for a run of cached chunks from the first chunk boundary in the window,
+        // the chunk containing the end of the window is never complete
+        final long span = step * m_chunkSteps;
+        final long first = Math.floorDiv(start, span) + 1;
+        final long last = Math.floorDiv(end, span);
+        final List<Chunk[]> cached = new ArrayList<>();
+        long effectiveStep = 0;
+        for (long index = first; index < last; index++) {
+            final Chunk[] chunks = lookup(series, index, effectiveStep);
+            if (chunks == null) {
+                break;
+            }
+            effectiveStep = chunks[0].step;
+            cached.add(chunks);
+        }
+        if (cached.isEmpty()) {
+            return fetchAll(start, end, step, maxrows, interval, heartbeat, sources, relaxed, series);
+        }
+
+        final long cachedStart = first * span;
+        final long cachedEnd = cachedStart + cached.size() * span;
+        final long margin = margin(effectiveStep, heartbeat);
+
+        final FetchResults leading = m_delegate.fetch(start, cachedStart + MARGIN_STEPS * effectiveStep, step, maxrows, interval, heartbeat, sources, relaxed);
+        final FetchResults head = m_delegate.fetch(cachedEnd - margin, end, step, maxrows, interval, heartbeat, sources, relaxed);
+        if (leading == null || head == null) {
+            // Some of the resources or attributes no longer exist
+            for (final SeriesKey key : series) {
+                invalidate(key.resourceId);
+            }
+            m_misses.mark();
+            return null;
+        }
+
+        if (relaxed) {
+            // Missing resources are filled in with NaNs when relaxed, instead of failing the fetch
+            final Set<String> missing = missingResources(head.getMetadata(), series);
+            if (!missing.isEmpty()) {
+                LOG.debug("Invalidating the cached chunks of missing resources: {}", missing);
+                for (final String resourceId : missing) {
+                    invalidate(resourceId);
+                }
+                return fetchAll(start, end, step, maxrows, interval, heartbeat, sources, relaxed, series);
+            }
+        }
+
+        final long[] leadingTimestamps = leading.getTimestamps();
+        final long[] headTimestamps = head.getTimestamps();
+        final int leadingRows = lowerBound(leadingTimestamps, cachedStart);
+        final int headFrom = lowerBound(headTimestamps, cachedEnd);
+        if (leading.getStep() != effectiveStep || head.getStep() != effectiveStep
+                || (leadingRows > 0 && leadingTimestamps[leadingRows - 1] != cachedStart - effectiveStep)
+                || headFrom >= headTimestamps.length || headTimestamps[headFrom] != cachedEnd) {
+            LOG.debug("The fetched rows can not be spliced with the cached chunks, fetching the window in full.");
+            return fetchAll(start, end, step, maxrows, interval, heartbeat, sources, relaxed, series);
+        }
+
+        final int chunkRows = (int) (span / effectiveStep);
+        final int cachedRows = cached.size() * chunkRows;
+        final int headRows = headTimestamps.length - headFrom;
+        final int rows = leadingRows + cachedRows + headRows;
+
+        final long[] timestamps = new long[rows];
+        System.arraycopy(leadingTimestamps, 0, timestamps, 0, leadingRows);
+        for (int i = 0; i < cachedRows; i++) {
+            timestamps[leadingRows + i] = cachedStart + i * effectiveStep;
+        }
+        System.arraycopy(headTimestamps, headFrom, timestamps, leadingRows + cachedRows, headRows);
+
+        final Map<String, double[]> columns = new HashMap<>();
+        for (int k = 0; k < sources.size(); k++) {
+            final String label = sources.get(k).getLabel();
+            final double[] leadingValues = leading.getColumns().get(label);
+            final double[] headValues = head.getColumns().get(label);
+            if (leadingValues == null || headValues == null) {
+                return fetchAll(start, end, step, maxrows, interval, heartbeat, sources, relaxed, series);
+            }
+
+            final double[] values = new double[rows];
+            System.arraycopy(leadingValues, 0, values, 0, leadingRows);
+            int offset = leadingRows;
+            for (final Chunk[] chunks : cached) {
+                System.arraycopy(chunks[k].values, 0, values, offset, chunkRows);
+                offset += chunkRows;
+            }
+            System.arraycopy(headValues, headFrom, values, offset, headRows);
+            columns.put(label, values);
+        }
+
+        m_hits.mark();
+        m_cachedRows.mark(cachedRows);
+        store(head, cachedEnd - margin, end, span, heartbeat, sources, relaxed, series);
+
+        return new FetchResults(timestamps, columns, effectiveStep, head.getConstants(), head.getMetadata());
+    }
+
+    /**
+     * Invalidates the cached chunks of deleted nodes and resources. Nothing is
+     * subscribed if the cache is disabled.
+     *
+     * @param eventSubscriptionService the service to subscribe to, if any
+     */
+    @Autowired(required = false)
+    public void setEventSubscriptionService(@Qualifier("eventSubscriptionService") final EventSubscriptionService eventSubscriptionService) {
+        if (m_chunks == null || eventSubscriptionService == null) {
+            return;
+        }
+        m_eventSubscriptionService = eventSubscriptionService;
+        m_eventSubscriptionService.addEventListener(this, Arrays.asList(
+                EventConstants.NODE_DELETED_EVENT_UEI,
+                EventConstants.RESOURCE_DELETED_EVENT_UEI));
+    }
+
+    public void destroy() {
+        if (m_eventSubscriptionService != null) {
+            m_eventSubscriptionService.removeEventListener(this);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public void onEvent(final IEvent event) {
+        if (EventConstants.NODE_DELETED_EVENT_UEI.equals(event.getUei())) {
+            // Sources may refer to the node by id or by foreign source and id
+            if (event.getNodeid() != null) {
+                invalidate(ResourceId.get("node", event.getNodeid().toString()).toString());
+            }
+            final String foreignSource = parm(event, EventConstants.PARM_FOREIGN_SOURCE);
+            final String foreignId = parm(event, EventConstants.PARM_FOREIGN_ID);
+            if (foreignSource != null && foreignId != null) {
+                final String name = foreignSource + ":" + foreignId;
+                invalidate(ResourceId.get("node", name).toString());
+                invalidate(ResourceId.get("nodeSource", name).toString());
+            }
+        } else if (EventConstants.RESOURCE_DELETED_EVENT_UEI.equals(event.getUei())) {
+            invalidate(parm(event, EventConstants.PARM_RESOURCE_ID));
+        }
+    }
+
+    /**
+     * Removes the cached chunks of the given resource and of its children.
+     *
+     * @param resourceId the id of the resource
+     */
+    public void invalidate(final String resourceId) {
+        if (m_chunks == null || resourceId == null) {
+            return;
+        }
+        final String childPrefix = resourceId + ".";
+        m_chunks.asMap().keySet().removeIf(key -> key.series.resourceId != null
+                && (key.series.resourceId.equals(resourceId) || key.series.resourceId.startsWith(childPrefix)));
+    }
+
+    long size() {
+        return m_chunks != null ? m_chunks.size() : 0L;
+    }
+
+    long weight() {
+        long weight = 0;
+        if (m_chunks != null) {
+            for (final Chunk chunk : m_chunks.asMap().values()) {
+                weight += chunk.weight();
+            }
+        }
+        return weight;
+    }
+
+    private FetchResults fetchAll(long start, long end, long step, int maxrows, Long interval, Long heartbeat,
+            List<Source> sources, boolean relaxed, List<SeriesKey> series) throws Exception {
+        m_misses.mark();
+        final FetchResults results = m_delegate.fetch(start, end, step, maxrows, interval, heartbeat, sources, relaxed);
+        if (results != null) {
+            store(results, start, end, step * m_chunkSteps, heartbeat, sources, relaxed, series);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the cached chunks of all the series at the given index, or null
+     * if any of them is missing or has a different step.
+     */
+    private Chunk[] lookup(final List<SeriesKey> series, final long index, final long effectiveStep) {
+        final Chunk[] chunks = new Chunk[series.size()];
+        for (int k = 0; k < chunks.length; k++) {
+            final Chunk chunk = m_chunks.getIfPresent(new ChunkKey(series.get(k), index));
+            if (chunk == null) {
+                return null;
+            }
+            final long expectedStep = k > 0 ? chunks[0].step : effectiveStep;
+            if (expectedStep != 0 && chunk.step != expectedStep) {
+                return null;
+            }
+            chunks[k] = chunk;
+        }
+        return chunks;
+    }
+
+    /**
+     * Caches the complete and settled chunks of the given results.
+     */
+    private void store(final FetchResults results, final long start, final long end, final long span, final Long heartbeat,
+            final List<Source> sources, final boolean relaxed, final List<SeriesKey> series) {
+        final long effectiveStep = results.getStep();
+        if (effectiveStep <= 0 || span % effectiveStep != 0) {
+            return;
+        }
+
+        final Set<String> missing;
+        if (relaxed) {
+            if (results.getMetadata() == null) {
+                return;
+            }
+            missing = missingResources(results.getMetadata(), series);
+        } else {
+            missing = null;
+        }
+
+        final long[] timestamps = results.getTimestamps();
+        final int chunkRows = (int) (span / effectiveStep);
+        final long settled = m_clock.getAsLong() - m_settleTime;
+        final long last = Math.min(settled, end - MARGIN_STEPS * effectiveStep);
+
+        for (long index = -Math.floorDiv(-(start + margin(effectiveStep, heartbeat)), span); (index + 1) * span <= last; index++) {
+            final long chunkStart = index * span;
+            final int from = Arrays.binarySearch(timestamps, chunkStart);
+            if (from < 0 || from + chunkRows > timestamps.length) {
+                continue;
+            }
+            boolean aligned = true;
+            for (int i = 1; i < chunkRows && aligned; i++) {
+                aligned = timestamps[from + i] == chunkStart + i * effectiveStep;
+            }
+            if (!aligned) {
+                continue;
+            }
+
+            for (int k = 0; k < sources.size(); k++) {
+                final SeriesKey key = series.get(k);
+                final double[] values = results.getColumns().get(sources.get(k).getLabel());
+                if (values == null || (missing != null && missing.contains(key.resourceId))) {
+                    continue;
+                }
+                m_chunks.asMap().putIfAbsent(new ChunkKey(key, index),
+                        new Chunk(effectiveStep, Arrays.copyOfRange(values, from, from + chunkRows)));
+            }
+        }
+    }
+
+    /**
+     * The number of milliseconds fetched before the first cached row, which
+     * covers the heartbeat and the steps needed to compute rates.
+     */
+    private static long margin(final long effectiveStep, final Long heartbeat) {
+        return MARGIN_STEPS * effectiveStep + (heartbeat != null ? Math.max(0L, heartbeat) : 0L);
+    }
+
+    private static String parm(final IEvent event, final String name) {
+        final IParm parm = event.getParm(name);
+        return parm != null && parm.getValue() != null ? parm.getValue().getContent() : null;
+    }
+
+    private static Set<String> missingResources(final QueryMetadata metadata, final List<SeriesKey> series) {
+        final Set<String> found = new HashSet<>();
+        if (metadata != null && metadata.getResources() != null) {
+            for (final QueryResource resource : metadata.getResources()) {
+                found.add(resource.getId());
+            }
+        }
+        final Set<String> missing = new HashSet<>();
+        for (final SeriesKey key : series) {
+            if (!found.contains(key.resourceId)) {
+                missing.add(key.resourceId);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the index of the first timestamp greater than or equal to the given one.
+     */
+    private static int lowerBound(final long[] timestamps, final long timestamp) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class SeriesKey {
+        private final String resourceId;
+        private final String attribute;
+        private final String fallbackAttribute;
+        private final String dataSource;
+        private final String aggregation;
+        private final long step;
+        private final int maxrows;
+        private final Long interval;
+        private final Long heartbeat;
+        private final int hashCode;
+
+        private SeriesKey(final Source source, final long step, final int maxrows, final Long interval, final Long heartbeat) {
+            this.resourceId = source.getResourceId();
+            this.attribute = source.getAttribute();
+            this.fallbackAttribute = source.getFallbackAttribute();
+            this.dataSource = source.getDataSource();
+            this.aggregation = source.getAggregation();
+            this.step = step;
+            this.maxrows = maxrows;
+            this.interval = interval;
+            this.heartbeat = heartbeat;
+            this.hashCode = Objects.hash(resourceId, attribute, fallbackAttribute, dataSource, aggregation, step, maxrows, interval, heartbeat);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SeriesKey)) {
+                return false;
+            }
+            final SeriesKey other = (SeriesKey) obj;
+            return hashCode == other.hashCode
+                    && step == other.step
+                    && maxrows == other.maxrows
+                    && Objects.equals(resourceId, other.resourceId)
+                    && Objects.equals(attribute, other.attribute)
+                    && Objects.equals(fallbackAttribute, other.fallbackAttribute)
+                    && Objects.equals(dataSource, other.dataSource)
+                    && Objects.equals(aggregation, other.aggregation)
+                    && Objects.equals(interval, other.interval)
+                    && Objects.equals(heartbeat, other.heartbeat);
+        }
+    }
+
+    private static final class ChunkKey {
+        private final SeriesKey series;
+        private final long index;
+
+        private ChunkKey(final SeriesKey series, final long index) {
+            this.series = series;
+            this.index = index;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * series.hashCode() + Long.hashCode(index);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ChunkKey)) {
+                return false;
+            }
+            final ChunkKey other = (ChunkKey) obj;
+            return index == other.index && series.equals(other.series);
+        }
+    }
+
+    private static final class Chunk {
+        private final long step;
+        private final double[] values;
+
+        private Chunk(final long step, final double[] values) {
+            this.step = step;
+            this.values = values;
+        }
+
+        private int weight() {
+            return ENTRY_OVERHEAD + Double.BYTES * values.length;
+        }
+    }
+}
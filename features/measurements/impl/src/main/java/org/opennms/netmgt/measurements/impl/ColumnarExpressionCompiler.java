@@ -0,0 +1,959 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.parser.ASTAdditiveNode;
+import org.apache.commons.jexl2.parser.ASTAndNode;
+import org.apache.commons.jexl2.parser.ASTDivNode;
+import org.apache.commons.jexl2.parser.ASTEQNode;
+import org.apache.commons.jexl2.parser.ASTFunctionNode;
+import org.apache.commons.jexl2.parser.ASTGENode;
+import org.apache.commons.jexl2.parser.ASTGTNode;
+import org.apache.commons.jexl2.parser.ASTIdentifier;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTLENode;
+import org.apache.commons.jexl2.parser.ASTLTNode;
+import org.apache.commons.jexl2.parser.ASTMethodNode;
+import org.apache.commons.jexl2.parser.ASTModNode;
+import org.apache.commons.jexl2.parser.ASTMulNode;
+import org.apache.commons.jexl2.parser.ASTNENode;
+import org.apache.commons.jexl2.parser.ASTNotNode;
+import org.apache.commons.jexl2.parser.ASTOrNode;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTReferenceExpression;
+import org.apache.commons.jexl2.parser.ASTTernaryNode;
+import org.apache.commons.jexl2.parser.ASTUnaryMinusNode;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Compiles parsed measurement expressions into trees of column-at-a-time
+ * operations over the sample arrays of a fetch.
+ *
+ * Only the subset of the expression language for which the result can be
+ * reproduced exactly is compiled: double arithmetic, comparisons, boolean
+ * logic, the ternary operator, the double valued functions of the <code>math</code>
+ * and <code>strictmath</code> namespaces and the {@link SampleArrayFunctions}.
+ * Sub-expressions which do not depend on the current row are evaluated once
+ * using JEXL itself. Values are tracked together with the Java types JEXL would
+ * have produced for them, since these drive its arithmetic and coercion rules.
+ *
+ * {@link #compile(ASTJexlScript)} returns <code>null</code> for anything outside
+ * of this subset, in which case the expression must be evaluated by JEXL.
+ */
+class ColumnarExpressionCompiler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarExpressionCompiler.class);
+
+    /**
+     * Value types, combined as bit masks when a node may produce several of them.
+     */
+    static final int DOUBLE = 1;
+    static final int FLOAT = 2;
+    static final int INTEGRAL = 4;
+    static final int BOOLEAN = 8;
+
+    private static final int FLOATING = DOUBLE | FLOAT;
+
+    /**
+     * Integral values beyond this magnitude can not be represented exactly by a double.
+     */
+    private static final long MAX_EXACT_INTEGRAL = 1L << 53;
+
+    private static final Map<String, DoubleUnaryOperator> MATH_UNARY_FUNCTIONS = ImmutableMap.<String, DoubleUnaryOperator>builder()
+            .put("sin", Math::sin).put("cos", Math::cos).put("tan", Math::tan)
+            .put("asin", Math::asin).put("acos", Math::acos).put("atan", Math::atan)
+            .put("sinh", Math::sinh).put("cosh", Math::cosh).put("tanh", Math::tanh)
+            .put("exp", Math::exp).put("expm1", Math::expm1)
+            .put("log", Math::log).put("log10", Math::log10).put("log1p", Math::log1p)
+            .put("sqrt", Math::sqrt).put("cbrt", Math::cbrt)
+            .put("ceil", Math::ceil).put("floor", Math::floor).put("rint", Math::rint)
+            .put("toDegrees", Math::toDegrees).put("toRadians", Math::toRadians)
+            .build();
+
+    private static final Map<String, DoubleBinaryOperator> MATH_BINARY_FUNCTIONS = ImmutableMap.<String, DoubleBinaryOperator>builder()
+            .put("atan2", Math::atan2).put("pow", Math::pow).put("hypot", Math::hypot)
+            .put("IEEEremainder", Math::IEEEremainder)
+            .build();
+
+    /**
+     * Overloaded functions, only compiled when JEXL is known to pick the double variant.
+     */
+    private static final Map<String, DoubleUnaryOperator> MATH_OVERLOADED_UNARY_FUNCTIONS = ImmutableMap.<String, DoubleUnaryOperator>builder()
+            .put("abs", Math::abs).put("signum", Math::signum)
+            .build();
+
+    private static final Map<String, DoubleBinaryOperator> MATH_OVERLOADED_BINARY_FUNCTIONS = ImmutableMap.<String, DoubleBinaryOperator>builder()
+            .put("min", Math::min).put("max", Math::max)
+            .build();
+
+    private static final Map<String, DoubleUnaryOperator> STRICTMATH_UNARY_FUNCTIONS = ImmutableMap.<String, DoubleUnaryOperator>builder()
+            .put("sin", StrictMath::sin).put("cos", StrictMath::cos).put("tan", StrictMath::tan)
+            .put("asin", StrictMath::asin).put("acos", StrictMath::acos).put("atan", StrictMath::atan)
+            .put("sinh", StrictMath::sinh).put("cosh", StrictMath::cosh).put("tanh", StrictMath::tanh)
+            .put("exp", StrictMath::exp).put("expm1", StrictMath::expm1)
+            .put("log", StrictMath::log).put("log10", StrictMath::log10).put("log1p", StrictMath::log1p)
+            .put("sqrt", StrictMath::sqrt).put("cbrt", StrictMath::cbrt)
+            .put("ceil", StrictMath::ceil).put("floor", StrictMath::floor).put("rint", StrictMath::rint)
+            .put("toDegrees", StrictMath::toDegrees).put("toRadians", StrictMath::toRadians)
+            .build();
+
+    private static final Map<String, DoubleBinaryOperator> STRICTMATH_BINARY_FUNCTIONS = ImmutableMap.<String, DoubleBinaryOperator>builder()
+            .put("atan2", StrictMath::atan2).put("pow", StrictMath::pow).put("hypot", StrictMath::hypot)
+            .put("IEEEremainder", StrictMath::IEEEremainder)
+            .build();
+
+    private static final Map<String, DoubleUnaryOperator> STRICTMATH_OVERLOADED_UNARY_FUNCTIONS = ImmutableMap.<String, DoubleUnaryOperator>builder()
+            .put("abs", StrictMath::abs).put("signum", StrictMath::signum)
+            .build();
+
+    private static final Map<String, DoubleBinaryOperator> STRICTMATH_OVERLOADED_BINARY_FUNCTIONS = ImmutableMap.<String, DoubleBinaryOperator>builder()
+            .put("min", StrictMath::min).put("max", StrictMath::max)
+            .build();
+
+    private static final Unsupported UNSUPPORTED = new Unsupported();
+
+    private final MeasurementsJexlEngine jexl;
+    private final Batch batch;
+    private final JexlContext constants;
+    private final Set<String> rowNames = new HashSet<>();
+
+    /**
+     * @param jexl engine used to evaluate row independent sub-expressions
+     * @param batch the columns the compiled expressions are evaluated against
+     * @param constants the values of all the names which do not vary by row
+     * @param labels the labels of all of the expressions in the request
+     */
+    ColumnarExpressionCompiler(MeasurementsJexlEngine jexl, Batch batch, JexlContext constants, Collection<String> labels) {
+        this.jexl = jexl;
+        this.batch = batch;
+        this.constants = constants;
+
+        for (final String source : batch.sources.keySet()) {
+            rowNames.add(source);
+            rowNames.add("__" + source);
+        }
+        rowNames.add("timestamp");
+        rowNames.add("__i");
+        rowNames.addAll(labels);
+    }
+
+    /**
+     * Compiles the given expression against the current state of the batch,
+     * so expressions must be compiled in order, after the results of all of the
+     * previous expressions were added to the batch.
+     *
+     * @return the compiled expression, or <code>null</code> if it must be evaluated by JEXL
+     */
+    Node compile(ASTJexlScript script) {
+        if (script.jjtGetNumChildren() != 1) {
+            return null;
+        }
+        try {
+            final Node node = compile(script.jjtGetChild(0));
+            // Boolean results can not be converted to a double, leave the error handling to JEXL
+            return (node.kind & BOOLEAN) == 0 ? node : null;
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates a compiled expression for all of the rows in the batch.
+     *
+     * @throws FallbackRequired if JEXL would fail to evaluate the expression for some row
+     */
+    static double[] evaluate(Node node, Batch batch) {
+        final double[] values = node.eval(batch, null);
+        // Never hand out the arrays of the sources, or of other expressions
+        return node instanceof Column || node instanceof Constant ? values.clone() : values;
+    }
+
+    private Node compile(JexlNode node) throws Unsupported {
+        if (isRowIndependent(node)) {
+            return constant(evaluateConstant(node));
+        } else if (node instanceof ASTReference) {
+            if (node.jjtGetNumChildren() != 1) {
+                throw UNSUPPORTED;
+            }
+            final JexlNode child = node.jjtGetChild(0);
+            if (child instanceof ASTIdentifier) {
+                return identifier(child.image);
+            } else if (child instanceof ASTReferenceExpression && child.jjtGetNumChildren() == 1) {
+                return compile(child.jjtGetChild(0));
+            } else if (child instanceof ASTFunctionNode) {
+                return function(child);
+            }
+        } else if (node instanceof ASTAdditiveNode) {
+            Node left = compile(node.jjtGetChild(0));
+            for (int c = 2; c < node.jjtGetNumChildren(); c += 2) {
+                final String operator = node.jjtGetChild(c - 1).image;
+                if (!"+".equals(operator) && !"-".equals(operator)) {
+                    throw UNSUPPORTED;
+                }
+                left = arithmetic(operator.charAt(0), left, compile(node.jjtGetChild(c)));
+            }
+            return left;
+        } else if (node instanceof ASTMulNode) {
+            return arithmetic('*', compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTDivNode) {
+            return arithmetic('/', compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTModNode) {
+            return arithmetic('%', compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTUnaryMinusNode) {
+            return negate(compile(node.jjtGetChild(0)));
+        } else if (node instanceof ASTEQNode) {
+            return equality(false, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTNENode) {
+            return equality(true, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTLTNode) {
+            return new Comparison(Comparison.LT, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTLENode) {
+            return new Comparison(Comparison.LE, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTGTNode) {
+            return new Comparison(Comparison.GT, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTGENode) {
+            return new Comparison(Comparison.GE, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTAndNode) {
+            return new Logical(true, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTOrNode) {
+            return new Logical(false, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        } else if (node instanceof ASTNotNode) {
+            return new Not(compile(node.jjtGetChild(0)));
+        } else if (node instanceof ASTTernaryNode) {
+            final Node condition = compile(node.jjtGetChild(0));
+            if (node.jjtGetNumChildren() == 3) {
+                return new Ternary(condition, compile(node.jjtGetChild(1)), compile(node.jjtGetChild(2)));
+            }
+            return new Ternary(condition, null, compile(node.jjtGetChild(1)));
+        }
+        throw UNSUPPORTED;
+    }
+
+    /**
+     * Determines whether the node can be evaluated once for all rows.
+     */
+    private boolean isRowIndependent(JexlNode node) {
+        if (node instanceof ASTIdentifier) {
+            return !rowNames.contains(node.image);
+        } else if (node instanceof ASTMethodNode) {
+            return false;
+        } else if (node instanceof ASTFunctionNode) {
+            final String namespace = node.jjtGetChild(0).image;
+            if (!("math".equals(namespace) || "strictmath".equals(namespace)) || "random".equals(node.jjtGetChild(1).image)) {
+                return false;
+            }
+            for (int c = 2; c < node.jjtGetNumChildren(); c++) {
+                if (!isRowIndependent(node.jjtGetChild(c))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (node instanceof ASTReference && isAntishReference(node)) {
+            // JEXL also resolves dotted references such as 'x.speed' as a single variable name
+            final StringBuilder name = new StringBuilder();
+            for (int c = 0; c < node.jjtGetNumChildren(); c++) {
+                if (c > 0) {
+                    name.append('.');
+                }
+                name.append(node.jjtGetChild(c).image);
+                if (rowNames.contains(name.toString())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int c = 0; c < node.jjtGetNumChildren(); c++) {
+            if (!isRowIndependent(node.jjtGetChild(c))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isAntishReference(JexlNode node) {
+        for (int c = 0; c < node.jjtGetNumChildren(); c++) {
+            if (!(node.jjtGetChild(c) instanceof ASTIdentifier)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object evaluateConstant(JexlNode node) throws Unsupported {
+        try {
+            return jexl.interpret(node, constants);
+        } catch (RuntimeException e) {
+            // Leave it to JEXL to fail on the rows where this is evaluated
+            throw UNSUPPORTED;
+        }
+    }
+
+    private static Constant constant(Object value) throws Unsupported {
+        if (value instanceof Double) {
+            return new Constant(DOUBLE, (Double) value);
+        } else if (value instanceof Float) {
+            // Same conversion as JexlArithmetic.toDouble()
+            return new Constant(FLOAT, Double.parseDouble(String.valueOf(value)));
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return new Constant(INTEGRAL, ((Number) value).doubleValue());
+        } else if (value instanceof Long && Math.abs((Long) value) <= MAX_EXACT_INTEGRAL) {
+            return new Constant(INTEGRAL, ((Long) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            return new Constant(BOOLEAN, (Boolean) value ? 1d : 0d);
+        }
+        throw UNSUPPORTED;
+    }
+
+    private Node identifier(String name) throws Unsupported {
+        // Same precedence as the names in the context used by the JEXLExpressionEngine
+        final double[] source = batch.sources.get(name);
+        if (source != null) {
+            return new Column(DOUBLE, source);
+        } else if (name.startsWith("__") && batch.sources.containsKey(name.substring(2))) {
+            throw UNSUPPORTED;
+        } else if ("timestamp".equals(name)) {
+            return new Column(INTEGRAL, batch.getTimestampColumn());
+        } else if ("__i".equals(name)) {
+            return new Column(INTEGRAL, batch.getIndexColumn());
+        }
+        final double[] label = batch.labels.get(name);
+        if (label != null) {
+            return new Column(DOUBLE, label);
+        }
+        throw UNSUPPORTED;
+    }
+
+    private static boolean isFloatingOnly(Node node) {
+        return (node.kind & ~FLOATING) == 0;
+    }
+
+    private static Node arithmetic(char operator, Node left, Node right) throws Unsupported {
+        // JEXL only uses double arithmetic when one of the operands is a floating point number
+        if (!isFloatingOnly(left) && !isFloatingOnly(right)) {
+            throw UNSUPPORTED;
+        }
+        return new Arithmetic(operator, left, right);
+    }
+
+    private static Node negate(Node operand) throws Unsupported {
+        if (isFloatingOnly(operand)) {
+            return new Negate(operand.kind, Negate.MINUS, operand);
+        } else if (operand.kind == INTEGRAL) {
+            return new Negate(INTEGRAL, Negate.INTEGRAL_MINUS, operand);
+        } else if (operand.kind == BOOLEAN) {
+            return new Negate(BOOLEAN, Negate.NOT, operand);
+        }
+        throw UNSUPPORTED;
+    }
+
+    private static Node equality(boolean negated, Node left, Node right) throws Unsupported {
+        if (left.kind == BOOLEAN || right.kind == BOOLEAN) {
+            // Boolean operands are compared by truth value
+            return new Comparison(negated ? Comparison.NE_BOOLEAN : Comparison.EQ_BOOLEAN, left, right);
+        } else if (((left.kind | right.kind) & BOOLEAN) != 0) {
+            throw UNSUPPORTED;
+        }
+        return new Comparison(negated ? Comparison.NE : Comparison.EQ, left, right);
+    }
+
+    private Node function(JexlNode node) throws Unsupported {
+        final String namespace = node.jjtGetChild(0).image;
+        final String name = node.jjtGetChild(1).image;
+        final int numArgs = node.jjtGetNumChildren() - 2;
+
+        if ("fn".equals(namespace)) {
+            return sampleArrayFunction(node, name, numArgs);
+        }
+
+        final boolean strict;
+        if ("math".equals(namespace)) {
+            strict = false;
+        } else if ("strictmath".equals(namespace)) {
+            strict = true;
+        } else {
+            throw UNSUPPORTED;
+        }
+
+        final Node[] args = new Node[numArgs];
+        for (int i = 0; i < numArgs; i++) {
+            args[i] = compile(node.jjtGetChild(i + 2));
+        }
+
+        if (numArgs == 1) {
+            final DoubleUnaryOperator function = (strict ? STRICTMATH_UNARY_FUNCTIONS : MATH_UNARY_FUNCTIONS).get(name);
+            if (function != null && isWidenableToDouble(args[0])) {
+                return new UnaryFunction(function, args[0]);
+            }
+            final DoubleUnaryOperator overloaded = (strict ? STRICTMATH_OVERLOADED_UNARY_FUNCTIONS : MATH_OVERLOADED_UNARY_FUNCTIONS).get(name);
+            if (overloaded != null && args[0].kind == DOUBLE) {
+                return new UnaryFunction(overloaded, args[0]);
+            }
+        } else if (numArgs == 2) {
+            final DoubleBinaryOperator function = (strict ? STRICTMATH_BINARY_FUNCTIONS : MATH_BINARY_FUNCTIONS).get(name);
+            if (function != null && isWidenableToDouble(args[0]) && isWidenableToDouble(args[1])) {
+                return new BinaryFunction(function, args[0], args[1]);
+            }
+            final DoubleBinaryOperator overloaded = (strict ? STRICTMATH_OVERLOADED_BINARY_FUNCTIONS : MATH_OVERLOADED_BINARY_FUNCTIONS).get(name);
+            if (overloaded != null
+                    && (args[0].kind == DOUBLE || args[0].kind == INTEGRAL)
+                    && (args[1].kind == DOUBLE || args[1].kind == INTEGRAL)
+                    && (args[0].kind == DOUBLE || args[1].kind == DOUBLE)) {
+                return new BinaryFunction(overloaded, args[0], args[1]);
+            }
+        }
+        throw UNSUPPORTED;
+    }
+
+    /**
+     * Floats are excluded since widening them differs from JEXL's own conversion.
+     */
+    private static boolean isWidenableToDouble(Node node) {
+        return (node.kind & ~(DOUBLE | INTEGRAL)) == 0;
+    }
+
+    private Node sampleArrayFunction(JexlNode node, String name, int numArgs) throws Unsupported {
+        final int mode;
+        if ("arrayZero".equals(name) && numArgs == 2) {
+            mode = Shift.ZERO;
+        } else if ("arrayFirst".equals(name) && numArgs == 2) {
+            mode = Shift.FIRST;
+        } else if ("arrayNaN".equals(name) && numArgs == 2) {
+            mode = Shift.NAN;
+        } else if ("arrayStart".equals(name) && numArgs == 3) {
+            mode = Shift.START;
+        } else {
+            throw UNSUPPORTED;
+        }
+
+        // The functions look up the sample array and the row index in the context
+        if (batch.sources.containsKey("i")) {
+            throw UNSUPPORTED;
+        }
+        for (int c = 2; c < node.jjtGetNumChildren(); c++) {
+            if (!isRowIndependent(node.jjtGetChild(c))) {
+                throw UNSUPPORTED;
+            }
+        }
+
+        final Object sampleName = evaluateConstant(node.jjtGetChild(2));
+        final Object n = evaluateConstant(node.jjtGetChild(3));
+        if (!(sampleName instanceof String) || !(n instanceof Integer)) {
+            throw UNSUPPORTED;
+        }
+
+        double start = Double.NaN;
+        if (mode == Shift.START) {
+            final Object value = evaluateConstant(node.jjtGetChild(4));
+            if (!(value instanceof Double || value instanceof Float || value instanceof Integer
+                    || value instanceof Long || value instanceof Short || value instanceof Byte)) {
+                throw UNSUPPORTED;
+            }
+            start = ((Number) value).doubleValue();
+        }
+
+        final String key = "__" + sampleName;
+        double[] sample = batch.sources.get(sampleName);
+        if (sample == null) {
+            if (rowNames.contains(key) || constants.has(key)) {
+                throw UNSUPPORTED;
+            }
+            LOG.warn("fn:{} attribute not in jexl context: {}", name, key);
+        } else if (batch.sources.containsKey(key)) {
+            throw UNSUPPORTED;
+        }
+        return new Shift(mode, sample, (Integer) n, start);
+    }
+
+    /**
+     * Thrown while compiling when an expression falls outside of the supported subset.
+     */
+    private static class Unsupported extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Thrown while evaluating when JEXL would fail on one of the rows,
+     * so that it can produce the exact same error.
+     */
+    static class FallbackRequired extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        FallbackRequired() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The columns against which the expressions are evaluated.
+     */
+    static class Batch {
+        final int numRows;
+        final long[] timestamps;
+        final Map<String, double[]> sources;
+        final Map<String, double[]> labels = new HashMap<>();
+
+        private double[] timestampColumn;
+        private double[] indexColumn;
+
+        Batch(long[] timestamps, Map<String, double[]> sources) {
+            this.numRows = timestamps.length;
+            this.timestamps = timestamps;
+            this.sources = sources;
+        }
+
+        double[] getTimestampColumn() {
+            if (timestampColumn == null) {
+                timestampColumn = new double[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    timestampColumn[i] = timestamps[i];
+                }
+            }
+            return timestampColumn;
+        }
+
+        double[] getIndexColumn() {
+            if (indexColumn == null) {
+                indexColumn = new double[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    indexColumn[i] = i;
+                }
+            }
+            return indexColumn;
+        }
+    }
+
+    /**
+     * A compiled expression.
+     */
+    abstract static class Node {
+        final int kind;
+
+        Node(int kind) {
+            this.kind = kind;
+        }
+
+        /**
+         * Evaluates the node for all of the rows in the batch.
+         *
+         * @param mask the rows for which JEXL would actually evaluate the node,
+         *             or <code>null</code> for all rows. The values of the other
+         *             rows are unspecified.
+         * @return the values, which must not be modified
+         */
+        abstract double[] eval(Batch batch, boolean[] mask);
+    }
+
+    /**
+     * Truth value of a number, as given by JexlArithmetic.toBoolean().
+     */
+    private static boolean isTrue(double value) {
+        return value != 0d && !Double.isNaN(value);
+    }
+
+    private static boolean isActive(boolean[] mask, int i) {
+        return mask == null || mask[i];
+    }
+
+    private static boolean[] mask(boolean[] mask, double[] condition, boolean value) {
+        final boolean[] result = new boolean[condition.length];
+        for (int i = 0; i < condition.length; i++) {
+            result[i] = isActive(mask, i) && isTrue(condition[i]) == value;
+        }
+        return result;
+    }
+
+    private static class Constant extends Node {
+        private final double value;
+        private double[] column;
+
+        Constant(int kind, double value) {
+            super(kind);
+            this.value = value;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            if (column == null) {
+                column = new double[batch.numRows];
+                Arrays.fill(column, value);
+            }
+            return column;
+        }
+    }
+
+    private static class Column extends Node {
+        private final double[] values;
+
+        Column(int kind, double[] values) {
+            super(kind);
+            this.values = values;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            return values;
+        }
+    }
+
+    private static class Arithmetic extends Node {
+        private final char operator;
+        private final Node left;
+        private final Node right;
+
+        Arithmetic(char operator, Node left, Node right) {
+            super(DOUBLE);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] l = left.eval(batch, mask);
+            final double[] out = new double[batch.numRows];
+            if (right instanceof Constant) {
+                final double r = ((Constant) right).value;
+                switch (operator) {
+                    case '+': for (int i = 0; i < out.length; i++) out[i] = l[i] + r; break;
+                    case '-': for (int i = 0; i < out.length; i++) out[i] = l[i] - r; break;
+                    case '*': for (int i = 0; i < out.length; i++) out[i] = l[i] * r; break;
+                    case '/':
+                        if (r == 0d && hasActiveRows(mask, out.length)) {
+                            throw new FallbackRequired();
+                        }
+                        for (int i = 0; i < out.length; i++) out[i] = l[i] / r;
+                        break;
+                    default:
+                        if (r == 0d && hasActiveRows(mask, out.length)) {
+                            throw new FallbackRequired();
+                        }
+                        for (int i = 0; i < out.length; i++) out[i] = l[i] % r;
+                }
+                return out;
+            }
+
+            final double[] r = right.eval(batch, mask);
+            switch (operator) {
+                case '+': for (int i = 0; i < out.length; i++) out[i] = l[i] + r[i]; break;
+                case '-': for (int i = 0; i < out.length; i++) out[i] = l[i] - r[i]; break;
+                case '*': for (int i = 0; i < out.length; i++) out[i] = l[i] * r[i]; break;
+                case '/':
+                    for (int i = 0; i < out.length; i++) {
+                        if (r[i] == 0d && isActive(mask, i)) {
+                            throw new FallbackRequired();
+                        }
+                        out[i] = l[i] / r[i];
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < out.length; i++) {
+                        if (r[i] == 0d && isActive(mask, i)) {
+                            throw new FallbackRequired();
+                        }
+                        out[i] = l[i] % r[i];
+                    }
+            }
+            return out;
+        }
+
+        private static boolean hasActiveRows(boolean[] mask, int numRows) {
+            for (int i = 0; i < numRows; i++) {
+                if (isActive(mask, i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Negate extends Node {
+        static final int MINUS = 0;
+        static final int INTEGRAL_MINUS = 1;
+        static final int NOT = 2;
+
+        private final int mode;
+        private final Node operand;
+
+        Negate(int kind, int mode, Node operand) {
+            super(kind);
+            this.mode = mode;
+            this.operand = operand;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] v = operand.eval(batch, mask);
+            final double[] out = new double[batch.numRows];
+            switch (mode) {
+                case MINUS: for (int i = 0; i < out.length; i++) out[i] = -v[i]; break;
+                // Integral zero has no sign
+                case INTEGRAL_MINUS: for (int i = 0; i < out.length; i++) out[i] = 0d - v[i]; break;
+                default: for (int i = 0; i < out.length; i++) out[i] = 1d - v[i];
+            }
+            return out;
+        }
+    }
+
+    private static class Comparison extends Node {
+        static final int EQ = 0;
+        static final int NE = 1;
+        static final int LT = 2;
+        static final int LE = 3;
+        static final int GT = 4;
+        static final int GE = 5;
+        static final int EQ_BOOLEAN = 6;
+        static final int NE_BOOLEAN = 7;
+
+        private final int operator;
+        private final Node left;
+        private final Node right;
+
+        Comparison(int operator, Node left, Node right) {
+            super(BOOLEAN);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] l = left.eval(batch, mask);
+            final double[] r = right.eval(batch, mask);
+            final double[] out = new double[batch.numRows];
+            for (int i = 0; i < out.length; i++) {
+                final boolean result;
+                switch (operator) {
+                    case EQ: result = compare(l[i], r[i]) == 0; break;
+                    case NE: result = compare(l[i], r[i]) != 0; break;
+                    case LT: result = compare(l[i], r[i]) < 0; break;
+                    case LE: result = compare(l[i], r[i]) <= 0; break;
+                    case GT: result = compare(l[i], r[i]) > 0; break;
+                    case GE: result = compare(l[i], r[i]) >= 0; break;
+                    case EQ_BOOLEAN: result = isTrue(l[i]) == isTrue(r[i]); break;
+                    default: result = isTrue(l[i]) != isTrue(r[i]);
+                }
+                out[i] = result ? 1d : 0d;
+            }
+            return out;
+        }
+
+        /**
+         * Same ordering as JexlArithmetic.compare(), where NaN is equal to itself
+         * and smaller than any other number.
+         */
+        private static int compare(double l, double r) {
+            if (Double.isNaN(l)) {
+                return Double.isNaN(r) ? 0 : -1;
+            } else if (Double.isNaN(r)) {
+                return 1;
+            }
+            return l < r ? -1 : (l > r ? 1 : 0);
+        }
+    }
+
+    private static class Logical extends Node {
+        private final boolean and;
+        private final Node left;
+        private final Node right;
+
+        Logical(boolean and, Node left, Node right) {
+            super(BOOLEAN);
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] l = left.eval(batch, mask);
+            // The right operand is only evaluated when the left one doesn't decide the result
+            final double[] r = right.eval(batch, mask(mask, l, and));
+            final double[] out = new double[batch.numRows];
+            for (int i = 0; i < out.length; i++) {
+                final boolean result = and ? isTrue(l[i]) && isTrue(r[i]) : isTrue(l[i]) || isTrue(r[i]);
+                out[i] = result ? 1d : 0d;
+            }
+            return out;
+        }
+    }
+
+    private static class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            super(BOOLEAN);
+            this.operand = operand;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] v = operand.eval(batch, mask);
+            final double[] out = new double[batch.numRows];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = isTrue(v[i]) ? 0d : 1d;
+            }
+            return out;
+        }
+    }
+
+    private static class Ternary extends Node {
+        private final Node condition;
+        private final Node whenTrue;
+        private final Node whenFalse;
+
+        /**
+         * @param whenTrue <code>null</code> for the elvis operator, which yields the condition itself
+         */
+        Ternary(Node condition, Node whenTrue, Node whenFalse) {
+            super((whenTrue != null ? whenTrue.kind : condition.kind) | whenFalse.kind);
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] c = condition.eval(batch, mask);
+            final double[] t = whenTrue != null ? whenTrue.eval(batch, mask(mask, c, true)) : c;
+            final double[] f = whenFalse.eval(batch, mask(mask, c, false));
+            final double[] out = new double[batch.numRows];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = isTrue(c[i]) ? t[i] : f[i];
+            }
+            return out;
+        }
+    }
+
+    private static class UnaryFunction extends Node {
+        private final DoubleUnaryOperator function;
+        private final Node arg;
+
+        UnaryFunction(DoubleUnaryOperator function, Node arg) {
+            super(DOUBLE);
+            this.function = function;
+            this.arg = arg;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] a = arg.eval(batch, mask);
+            final double[] out = new double[batch.numRows];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = function.applyAsDouble(a[i]);
+            }
+            return out;
+        }
+    }
+
+    private static class BinaryFunction extends Node {
+        private final DoubleBinaryOperator function;
+        private final Node left;
+        private final Node right;
+
+        BinaryFunction(DoubleBinaryOperator function, Node left, Node right) {
+            super(DOUBLE);
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] l = left.eval(batch, mask);
+            final double[] r = right.eval(batch, mask);
+            final double[] out = new double[batch.numRows];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = function.applyAsDouble(l[i], r[i]);
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Column-wise equivalent of the {@link SampleArrayFunctions}.
+     */
+    private static class Shift extends Node {
+        static final int ZERO = 0;
+        static final int FIRST = 1;
+        static final int NAN = 2;
+        static final int START = 3;
+
+        private final int mode;
+        private final double[] sample;
+        private final int n;
+        private final double start;
+
+        /**
+         * @param sample <code>null</code> if the sample is missing, which yields NaN for all rows
+         */
+        Shift(int mode, double[] sample, int n, double start) {
+            super(DOUBLE);
+            this.mode = mode;
+            this.sample = sample;
+            this.n = n;
+            this.start = start;
+        }
+
+        @Override
+        double[] eval(Batch batch, boolean[] mask) {
+            final double[] out = new double[batch.numRows];
+            if (sample == null) {
+                Arrays.fill(out, Double.NaN);
+                return out;
+            }
+            for (int i = 0; i < out.length; i++) {
+                final int index = i - n;
+                if (index >= sample.length) {
+                    out[i] = Double.NaN;
+                } else if (index >= 0) {
+                    out[i] = sample[index];
+                } else {
+                    switch (mode) {
+                        case ZERO: out[i] = 0d; break;
+                        case FIRST: out[i] = sample.length > 0 ? sample[0] : Double.NaN; break;
+                        case NAN: out[i] = Double.NaN; break;
+                        default: out[i] = start;
+                    }
+                }
+            }
+            return out;
+        }
+    }
+}
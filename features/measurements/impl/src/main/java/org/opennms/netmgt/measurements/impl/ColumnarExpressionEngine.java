@@ -0,0 +1,311 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlException;
+import org.apache.commons.jexl2.MapContext;
+import org.apache.commons.jexl2.parser.ASTAssignment;
+import org.apache.commons.jexl2.parser.ASTForeachStatement;
+import org.apache.commons.jexl2.parser.ASTFunctionNode;
+import org.apache.commons.jexl2.parser.ASTIdentifier;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTVar;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.impl.ColumnarExpressionCompiler.Batch;
+import org.opennms.netmgt.measurements.impl.ColumnarExpressionCompiler.FallbackRequired;
+import org.opennms.netmgt.measurements.impl.ColumnarExpressionCompiler.Node;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+import org.opennms.netmgt.measurements.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An expression engine which evaluates the expressions one column at a time,
+ * rather than one row at a time.
+ *
+ * The expressions are compiled into operations over the sample arrays using
+ * {@link ColumnarExpressionCompiler}, which avoids populating a context and boxing
+ * every value for each row. Expressions which can not be compiled are evaluated
+ * by JEXL, row by row. Requests which rely on the side effects of the row-wise
+ * evaluation, such as expressions referencing the results of later expressions
+ * or assigning variables, are handed to the {@link JEXLExpressionEngine} as a whole.
+ *
+ * The results are the same as the ones of the {@link JEXLExpressionEngine}.
+ */
+public class ColumnarExpressionEngine implements ExpressionEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarExpressionEngine.class);
+
+    private final MeasurementsJexlEngine jexl = new MeasurementsJexlEngine();
+
+    private final JEXLExpressionEngine delegate = new JEXLExpressionEngine();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyExpressions(final QueryRequest request, final FetchResults results) throws ExpressionException {
+        Preconditions.checkNotNull(request, "request argument");
+        Preconditions.checkNotNull(results, "results argument");
+
+        final List<Expression> expressions = new ArrayList<>(request.getExpressions());
+
+        // Don't do anything if there are no expressions
+        if (expressions.isEmpty()) {
+            return;
+        }
+
+        final long timestamps[] = results.getTimestamps();
+        final Map<String, double[]> columns = results.getColumns();
+
+        // Parse the expressions, leaving the error handling to the JEXL engine
+        final List<ASTJexlScript> scripts = new ArrayList<>(expressions.size());
+        for (final Expression e : expressions) {
+            try {
+                scripts.add(jexl.parseScript(e.getExpression()));
+            } catch (JexlException ex) {
+                delegate.applyExpressions(request, results);
+                return;
+            }
+        }
+
+        if (!canEvaluateByColumn(expressions, scripts, columns, timestamps.length)) {
+            LOG.debug("Evaluating expressions row by row.");
+            delegate.applyExpressions(request, results);
+            return;
+        }
+
+        final Map<String, Object> constants = getConstants(results);
+        final Batch batch = new Batch(timestamps, columns);
+        final List<String> labels = new ArrayList<>(expressions.size());
+        for (final Expression e : expressions) {
+            labels.add(e.getLabel());
+        }
+        final ColumnarExpressionCompiler compiler = new ColumnarExpressionCompiler(jexl, batch, new MapContext(constants), labels);
+
+        // Evaluate every expression, in the same order as which they appeared in the query
+        final double values[][] = new double[expressions.size()][];
+        for (int j = 0; j < expressions.size(); j++) {
+            final Expression e = expressions.get(j);
+            final Node node = compiler.compile(scripts.get(j));
+            if (node != null) {
+                try {
+                    values[j] = ColumnarExpressionCompiler.evaluate(node, batch);
+                } catch (FallbackRequired ex) {
+                    LOG.debug("Expression with label '{}' can not be evaluated by column.", e.getLabel());
+                }
+            }
+            if (values[j] == null) {
+                values[j] = evaluateByRow(e, batch, constants);
+            }
+
+            // Store the result back in the batch, so that it can be referenced by subsequent expressions
+            batch.labels.put(e.getLabel(), values[j]);
+        }
+
+        // Store the results
+        for (int j = 0; j < expressions.size(); j++) {
+            if (!expressions.get(j).getTransient()) {
+                columns.put(expressions.get(j).getLabel(), values[j]);
+            }
+        }
+    }
+
+    /**
+     * Determines whether evaluating the expressions one after the other gives
+     * the same results as evaluating them row by row.
+     */
+    private static boolean canEvaluateByColumn(List<Expression> expressions, List<ASTJexlScript> scripts, Map<String, double[]> columns, int numRows) {
+        for (final Map.Entry<String, double[]> column : columns.entrySet()) {
+            if (column.getValue().length < numRows || columns.containsKey("__" + column.getKey())) {
+                return false;
+            }
+        }
+
+        // The labels must not shadow any of the row values
+        final Map<String, Integer> labels = new HashMap<>();
+        for (int j = 0; j < expressions.size(); j++) {
+            final String label = expressions.get(j).getLabel();
+            if (labels.put(label, j) != null
+                    || columns.containsKey(label)
+                    || "timestamp".equals(label) || "__i".equals(label)
+                    || (label.startsWith("__") && columns.containsKey(label.substring(2)))) {
+                return false;
+            }
+        }
+
+        for (int j = 0; j < scripts.size(); j++) {
+            final ASTJexlScript script = scripts.get(j);
+            if (script.jjtGetNumChildren() != 1 || !canEvaluateByColumn(script, j, labels)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean canEvaluateByColumn(JexlNode node, int index, Map<String, Integer> labels) {
+        if (node instanceof ASTAssignment || node instanceof ASTVar || node instanceof ASTForeachStatement) {
+            // Variables set in the context are visible to the following rows and expressions
+            return false;
+        } else if (node instanceof ASTFunctionNode && "jexl".equals(node.jjtGetChild(0).image)) {
+            // These may evaluate arbitrary expressions against the context
+            return false;
+        } else if (node instanceof ASTIdentifier && !isLabelVisible(node.image, index, labels)) {
+            return false;
+        } else if (node instanceof ASTReference && ColumnarExpressionCompiler.isAntishReference(node)) {
+            final StringBuilder name = new StringBuilder();
+            for (int c = 0; c < node.jjtGetNumChildren(); c++) {
+                if (c > 0) {
+                    name.append('.');
+                }
+                name.append(node.jjtGetChild(c).image);
+                if (!isLabelVisible(name.toString(), index, labels)) {
+                    return false;
+                }
+            }
+        }
+        for (int c = 0; c < node.jjtGetNumChildren(); c++) {
+            if (!canEvaluateByColumn(node.jjtGetChild(c), index, labels)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * When evaluating row by row, the expressions see the values of the following
+     * expressions from the previous row.
+     */
+    private static boolean isLabelVisible(String name, int index, Map<String, Integer> labels) {
+        final Integer labelIndex = labels.get(name);
+        return labelIndex == null || labelIndex < index;
+    }
+
+    private static Map<String, Object> getConstants(FetchResults results) {
+        final Map<String, Object> constants = new HashMap<>();
+
+        // Add constants (i.e. values from strings.properties) retrieved by the fetch operation
+        constants.putAll(results.getConstants());
+
+        // Same additional constants as the JEXL engine
+        constants.put("__inf", Double.POSITIVE_INFINITY);
+        constants.put("__neg_inf", Double.NEGATIVE_INFINITY);
+        constants.put("NaN", Double.NaN);
+        constants.put("__E", java.lang.Math.E);
+        constants.put("__PI", java.lang.Math.PI);
+
+        final long timestamps[] = results.getTimestamps();
+        final int numRows = timestamps.length;
+        constants.put("__diff_time", numRows < 1 ? 0d : timestamps[numRows-1] - timestamps[0]);
+        constants.put("__step", results.getStep());
+        return constants;
+    }
+
+    private double[] evaluateByRow(Expression e, Batch batch, Map<String, Object> constants) throws ExpressionException {
+        final org.apache.commons.jexl2.Expression expression = jexl.createExpression(e.getExpression());
+        final RowContext context = new RowContext(batch, constants);
+        final double values[] = new double[batch.numRows];
+        for (int i = 0; i < batch.numRows; i++) {
+            context.row = i;
+            try {
+                values[i] = Utils.toDouble(expression.evaluate(context));
+            } catch (NullPointerException|NumberFormatException ex) {
+                throw new ExpressionException(ex, "The return value from expression with label '" +
+                        e.getLabel() + "' could not be cast to a Double.");
+            } catch (JexlException ex) {
+                throw new ExpressionException(ex, "Failed to evaluate expression with label '" +
+                        e.getLabel() + "'.");
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Exposes the same values as the context of the {@link JEXLExpressionEngine}
+     * for a given row, without copying them.
+     */
+    private static class RowContext implements JexlContext {
+        private final Batch batch;
+        private final Map<String, Object> constants;
+        private final Map<String, Object> locals = new HashMap<>();
+        private int row;
+
+        private RowContext(Batch batch, Map<String, Object> constants) {
+            this.batch = batch;
+            this.constants = constants;
+        }
+
+        @Override
+        public Object get(String name) {
+            double[] values = batch.sources.get(name);
+            if (values != null) {
+                return values[row];
+            }
+            if (name.startsWith("__")) {
+                values = batch.sources.get(name.substring(2));
+                if (values != null) {
+                    return values;
+                }
+            }
+            if ("timestamp".equals(name)) {
+                return batch.timestamps[row];
+            } else if ("__i".equals(name)) {
+                return Integer.valueOf(row);
+            }
+            values = batch.labels.get(name);
+            if (values != null) {
+                return values[row];
+            } else if (locals.containsKey(name)) {
+                return locals.get(name);
+            }
+            return constants.get(name);
+        }
+
+        @Override
+        public void set(String name, Object value) {
+            locals.put(name, value);
+        }
+
+        @Override
+        public boolean has(String name) {
+            return batch.sources.containsKey(name)
+                    || (name.startsWith("__") && batch.sources.containsKey(name.substring(2)))
+                    || "timestamp".equals(name) || "__i".equals(name)
+                    || batch.labels.containsKey(name)
+                    || locals.containsKey(name)
+                    || constants.containsKey(name);
+        }
+    }
+}
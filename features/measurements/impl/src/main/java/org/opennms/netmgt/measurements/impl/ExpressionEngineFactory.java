@@ -0,0 +1,54 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.measurements.impl;
+
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Used to instantiate the configured expression engine.
+ *
+ * The {@link JEXLExpressionEngine} is used by default, the {@link ColumnarExpressionEngine}
+ * can be enabled by setting {@link #ENGINE_PROPERTY} to {@value #COLUMNAR_ENGINE}.
+ */
+public abstract class ExpressionEngineFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExpressionEngineFactory.class);
+
+    public static final String ENGINE_PROPERTY = "org.opennms.measurements.expression.engine";
+
+    public static final String JEXL_ENGINE = "jexl";
+
+    public static final String COLUMNAR_ENGINE = "columnar";
+
+    public static ExpressionEngine getEngine() {
+        final String engine = System.getProperty(ENGINE_PROPERTY, JEXL_ENGINE);
+        if (COLUMNAR_ENGINE.equalsIgnoreCase(engine)) {
+            return new ColumnarExpressionEngine();
+        }
+        if (!JEXL_ENGINE.equalsIgnoreCase(engine)) {
+            LOG.warn("Unknown expression engine '{}'. Defaulting to {}.", engine, JEXL_ENGINE);
+        }
+        return new JEXLExpressionEngine();
+    }
+}
@@ -23,7 +23,6 @@ package org.opennms.netmgt.measurements.impl;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.SortedSet;
 
 import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlException;
@@ -58,22 +57,7 @@ public class JEXLExpressionEngine implements ExpressionEngine {
     private final OnmsJexlEngine jexl;
 
     public JEXLExpressionEngine() {
-        jexl = new OnmsJexlEngine();
-        jexl.white(Math.class.getName());
-        jexl.white(StrictMath.class.getName());
-        jexl.white(SortedSet.class.getName());
-        jexl.white(JexlEvaluateFunctions.class.getName());
-        jexl.white(SampleArrayFunctions.class.getName());
-
-        // Add additional functions to the engine
-        final Map<String, Object> functions = Maps.newHashMap();
-        functions.put("math", Math.class);
-        functions.put("strictmath", StrictMath.class);
-        
-        // Add SampleArrayFunctions functions
-        functions.put("fn", SampleArrayFunctions.class);
-        
-        jexl.setFunctions(functions);
+        jexl = new MeasurementsJexlEngine();
     }
 
     /**
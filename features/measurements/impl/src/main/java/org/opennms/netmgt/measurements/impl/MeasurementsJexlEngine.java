@@ -0,0 +1,75 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.Map;
+import java.util.SortedSet;
+
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.opennms.core.utils.jexl.OnmsJexlEngine;
+
+import com.google.common.collect.Maps;
+
+/**
+ * The JEXL engine used to evaluate measurement expressions, with the
+ * white-listed classes and function namespaces available to them.
+ *
+ * Also exposes parsing and node level interpretation so that the
+ * {@link ColumnarExpressionEngine} can inspect and partially evaluate
+ * expressions.
+ */
+class MeasurementsJexlEngine extends OnmsJexlEngine {
+
+    MeasurementsJexlEngine() {
+        white(Math.class.getName());
+        white(StrictMath.class.getName());
+        white(SortedSet.class.getName());
+        white(JexlEvaluateFunctions.class.getName());
+        white(SampleArrayFunctions.class.getName());
+
+        // Add additional functions to the engine
+        final Map<String, Object> functions = Maps.newHashMap();
+        functions.put("math", Math.class);
+        functions.put("strictmath", StrictMath.class);
+
+        // Add SampleArrayFunctions functions
+        functions.put("fn", SampleArrayFunctions.class);
+
+        setFunctions(functions);
+    }
+
+    /**
+     * Parses the given expression without caching the resulting tree.
+     */
+    ASTJexlScript parseScript(String expression) {
+        return parse(expression, null, null);
+    }
+
+    /**
+     * Evaluates a single node of a parsed expression against the given context.
+     */
+    Object interpret(JexlNode node, JexlContext context) {
+        return createInterpreter(context).interpret(node);
+    }
+}
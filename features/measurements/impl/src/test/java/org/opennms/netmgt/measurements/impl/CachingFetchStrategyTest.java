@@ -0,0 +1,284 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.model.ImmutableMapper;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.MeasurementFetchStrategy;
+import org.opennms.netmgt.measurements.model.QueryMetadata;
+import org.opennms.netmgt.measurements.model.QueryResource;
+import org.opennms.netmgt.measurements.model.Source;
+import org.opennms.netmgt.model.events.EventBuilder;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class CachingFetchStrategyTest {
+
+    private static final long STEP = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long WINDOW = TimeUnit.HOURS.toMillis(24);
+
+    private final AtomicLong now = new AtomicLong(1_600_000_123_000L);
+
+    private GridFetchStrategy delegate;
+
+    private GridFetchStrategy reference;
+
+    private MetricRegistry registry;
+
+    @Before
+    public void setUp() {
+        delegate = new GridFetchStrategy();
+        reference = new GridFetchStrategy();
+        registry = new MetricRegistry();
+    }
+
+    @Test
+    public void canSpliceSlidingWindows() throws Exception {
+        final CachingFetchStrategy cache = newCache(1024 * 1024);
+        final List<Source> sources = Arrays.asList(
+                new Source("in", "node[1].interfaceSnmp[eth0]", "ifHCInOctets", null, false),
+                new Source("out", "node[1].interfaceSnmp[eth0]", "ifHCOutOctets", null, false));
+
+        for (int i = 0; i < 20; i++) {
+            delegate.calls.clear();
+            final long end = now.get();
+            final FetchResults results = cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false);
+            assertSameResults(reference.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false), results);
+
+            if (i > 0) {
+                // Only the rows before the first chunk boundary and the head of the window are fetched
+                assertEquals(2, delegate.calls.size());
+                long fetched = 0;
+                for (final long[] call : delegate.calls) {
+                    fetched += call[1] - call[0];
+                }
+                assertTrue("fetched " + fetched + "ms", fetched < TimeUnit.HOURS.toMillis(6));
+            }
+            now.addAndGet(TimeUnit.SECONDS.toMillis(45));
+        }
+
+        assertEquals(20, registry.meter("cache.GridFetchStrategy.reqs").getCount());
+        assertEquals(19, registry.meter("cache.GridFetchStrategy.hits").getCount());
+        assertEquals(1, registry.meter("cache.GridFetchStrategy.misses").getCount());
+    }
+
+    @Test
+    public void canInvalidateDeletedResources() throws Exception {
+        final CachingFetchStrategy cache = newCache(1024 * 1024);
+        final List<Source> sources = Arrays.asList(
+                new Source("a", "node[1].nodeSnmp[]", "loadavg1", null, false),
+                new Source("b", "node[2].nodeSnmp[]", "loadavg1", null, false));
+
+        final long end = now.get();
+        assertNotNull(cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false));
+        final long size = cache.size();
+        assertTrue(size > 0);
+
+        // Invalidating a parent removes the chunks of its children
+        cache.invalidate("node[1]");
+        assertEquals(size / 2, cache.size());
+
+        assertNotNull(cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false));
+        assertEquals(size, cache.size());
+
+        // The fetch fails without telling which resource is gone, so the chunks of all the sources are dropped
+        delegate.deleted.add("node[2].nodeSnmp[]");
+        assertNull(cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void canInvalidateOnDeleteEvents() throws Exception {
+        final CachingFetchStrategy cache = newCache(1024 * 1024);
+        final List<Source> sources = Arrays.asList(
+                new Source("a", "node[1].nodeSnmp[]", "loadavg1", null, false),
+                new Source("b", "nodeSource[fs:2].nodeSnmp[]", "loadavg1", null, false),
+                new Source("c", "node[3].interfaceSnmp[eth0]", "ifHCInOctets", null, false));
+
+        final long end = now.get();
+        assertNotNull(cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false));
+        final long size = cache.size();
+        assertTrue(size > 0);
+
+        // Nodes are matched by id and by foreign source and id
+        cache.onEvent(ImmutableMapper.fromMutableEvent(new EventBuilder(EventConstants.NODE_DELETED_EVENT_UEI, "test")
+                .setNodeid(2)
+                .addParam(EventConstants.PARM_FOREIGN_SOURCE, "fs")
+                .addParam(EventConstants.PARM_FOREIGN_ID, "2")
+                .getEvent()));
+        assertEquals(size * 2 / 3, cache.size());
+
+        cache.onEvent(ImmutableMapper.fromMutableEvent(new EventBuilder(EventConstants.NODE_DELETED_EVENT_UEI, "test")
+                .setNodeid(1)
+                .getEvent()));
+        assertEquals(size / 3, cache.size());
+
+        cache.onEvent(ImmutableMapper.fromMutableEvent(new EventBuilder(EventConstants.RESOURCE_DELETED_EVENT_UEI, "test")
+                .addParam(EventConstants.PARM_RESOURCE_ID, "node[3].interfaceSnmp[eth0]")
+                .getEvent()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void isDisabledByDefault() throws Exception {
+        final CachingFetchStrategy cache = new CachingFetchStrategy(delegate, registry);
+        final List<Source> sources = Arrays.asList(new Source("a", "node[1].nodeSnmp[]", "loadavg1", null, false));
+
+        final long end = System.currentTimeMillis();
+        assertNotNull(cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false));
+        assertEquals(0, cache.size());
+        assertEquals(0, registry.meter("cache.GridFetchStrategy.reqs").getCount());
+    }
+
+    @Test
+    public void canInvalidateMissingResourcesWhenRelaxed() throws Exception {
+        final CachingFetchStrategy cache = newCache(1024 * 1024);
+        final List<Source> sources = Arrays.asList(
+                new Source("a", "node[1].nodeSnmp[]", "loadavg1", null, false),
+                new Source("b", "node[2].nodeSnmp[]", "loadavg1", null, false));
+
+        final long end = now.get();
+        cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, true);
+        final long size = cache.size();
+
+        delegate.deleted.add("node[2].nodeSnmp[]");
+        reference.deleted.add("node[2].nodeSnmp[]");
+        assertSameResults(reference.fetch(end - WINDOW, end, STEP, 0, null, null, sources, true),
+                cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, true));
+        assertEquals(size / 2, cache.size());
+    }
+
+    @Test
+    public void canFallBackWhenTheStepChanges() throws Exception {
+        final CachingFetchStrategy cache = newCache(1024 * 1024);
+        final List<Source> sources = Arrays.asList(new Source("a", "node[1].nodeSnmp[]", "loadavg1", null, false));
+
+        final long end = now.get();
+        cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false);
+
+        delegate.effectiveStep = 2 * STEP;
+        reference.effectiveStep = 2 * STEP;
+        assertSameResults(reference.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false),
+                cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false));
+    }
+
+    @Test
+    public void doesNotCacheUnsettledRows() throws Exception {
+        final CachingFetchStrategy cache = newCache(1024 * 1024);
+        final List<Source> sources = Arrays.asList(new Source("a", "node[1].nodeSnmp[]", "loadavg1", null, false));
+
+        final long end = now.get();
+        cache.fetch(end - TimeUnit.MINUTES.toMillis(30), end, STEP, 0, null, null, sources, false);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void canBoundMemory() throws Exception {
+        final long maxSize = 16 * 1024;
+        final CachingFetchStrategy cache = newCache(maxSize);
+
+        for (int i = 0; i < 50; i++) {
+            final List<Source> sources = Arrays.asList(new Source("a", "node[" + i + "].nodeSnmp[]", "loadavg1", null, false));
+            final long end = now.get();
+            cache.fetch(end - WINDOW, end, STEP, 0, null, null, sources, false);
+        }
+
+        assertTrue(cache.size() > 0);
+        assertTrue("weight " + cache.weight(), cache.weight() <= maxSize);
+    }
+
+    private CachingFetchStrategy newCache(final long maxSize) {
+        return new CachingFetchStrategy(delegate, registry, maxSize, 24,
+                TimeUnit.MINUTES.toMillis(15), TimeUnit.HOURS.toMillis(1), now::get);
+    }
+
+    private static void assertSameResults(final FetchResults expected, final FetchResults actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getStep(), actual.getStep());
+        assertArrayEquals(expected.getTimestamps(), actual.getTimestamps());
+        assertEquals(expected.getColumns().keySet(), actual.getColumns().keySet());
+        for (final Map.Entry<String, double[]> column : expected.getColumns().entrySet()) {
+            assertArrayEquals(column.getValue(), actual.getColumns().get(column.getKey()), 0.0d);
+        }
+    }
+
+    /**
+     * Returns a row for every multiple of the step in the requested range, with values
+     * derived from the source and the timestamp.
+     */
+    private static class GridFetchStrategy implements MeasurementFetchStrategy {
+        private final List<long[]> calls = new ArrayList<>();
+        private final Set<String> deleted = new HashSet<>();
+        private long effectiveStep;
+
+        @Override
+        public FetchResults fetch(long start, long end, long step, int maxrows, Long interval, Long heartbeat, List<Source> sources, boolean relaxed) {
+            calls.add(new long[] { start, end });
+            final long rowStep = effectiveStep > 0 ? effectiveStep : step;
+            final long first = Math.floorDiv(start, rowStep) * rowStep;
+            final int rows = (int) ((end - first) / rowStep) + 1;
+
+            final long[] timestamps = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                timestamps[i] = first + i * rowStep;
+            }
+
+            final Map<String, double[]> columns = new HashMap<>();
+            final List<QueryResource> resources = new ArrayList<>();
+            for (final Source source : sources) {
+                final boolean missing = deleted.contains(source.getResourceId());
+                if (missing && !relaxed) {
+                    return null;
+                }
+                final double[] values = new double[rows];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = missing ? Double.NaN : source.getLabel().hashCode() + timestamps[i] / 1000.0d;
+                }
+                columns.put(source.getLabel(), values);
+                if (!missing) {
+                    resources.add(new QueryResource(source.getResourceId(), null, null, null, null));
+                }
+            }
+            return new FetchResults(timestamps, columns, rowStep, new HashMap<>(), new QueryMetadata(resources));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.jexl2.MapContext;
+import org.junit.Test;
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Verifies that the {@link ColumnarExpressionEngine} gives the exact same
+ * results as the {@link JEXLExpressionEngine}.
+ */
+public class ColumnarExpressionEngineTest {
+
+    private static final double[] SAMPLES = new double[] {
+        1.0, 2.5, 0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        -3.0, 7.0, 100.0, 0.1, 1e12, -1e-9, 42.0, 3.0
+    };
+
+    private static final int N = 48;
+
+    private final ExpressionEngine jexlExpressionEngine = new JEXLExpressionEngine();
+    private final ExpressionEngine columnarExpressionEngine = new ColumnarExpressionEngine();
+
+    @Test
+    public void canPerformArithmetic() throws Exception {
+        verify("x * 8", "x + y", "x - y * 2", "x / y", "x % y", "1 / x", "x + 1 + 2",
+                "x * 0.62137", "x * 0.62137d", "x * I", "x + F", "I + x", "F * I + x",
+                "(x - y) / (x + y)", "x / 0", "x / 0.0", "x % 0", "x / (y - y)", "x / I",
+                "x * n.speed", "x / __diff_time", "__E * x + __PI", "x * __step");
+    }
+
+    @Test
+    public void canPerformIntegralArithmetic() throws Exception {
+        verify("__i + 0.5", "__i * 2", "timestamp / 1000.0", "timestamp / 1000", "__i / 2",
+                "timestamp", "__i", "I", "F", "A", "1 + 1", "__i + x", "x - timestamp");
+    }
+
+    @Test
+    public void canNegate() throws Exception {
+        verify("-x", "-__i", "-timestamp", "-(x - x)", "-(0 * __i)", "-F", "-(x > 1) ? 1.0 : 2.0",
+                "-(x > 0 ? __i : 0)", "-(x > 0 ? x : 0)");
+    }
+
+    @Test
+    public void canCompare() throws Exception {
+        verify("x > y ? x : y", "x == y ? 1 : 0", "x != x ? 0 : x", "x == NaN ? 0.0 : x",
+                "x == __inf ? NaN : x", "x <= y ? 1.0 : 0.0", "x >= y ? 1.0 : 0.0", "x < NaN ? 1.0 : 0.0",
+                "0.0 == -0.0 ? x : y", "__i > 3 ? x : y", "__i == 3.0 ? x : y", "(x > 0) == true ? x : y",
+                "(x > 0) == 1 ? x : y", "(x > 0) < (y > 0) ? x : y", "x == I ? x : y",
+                "(x > 0 ? true : 1) == 1 ? x : y");
+    }
+
+    @Test
+    public void canPerformLogicalOperations() throws Exception {
+        verify("(x < 0 || y < 0) ? NaN : x + y", "!(x > 0) ? 1.0 : 2.0", "x && y ? x : y",
+                "x == 0 ? 0 : y / x", "x > 0 && y / x > 1 ? 1.0 : 0.0", "x == 0 || y / x > 1 ? 1.0 : 0.0",
+                "x ?: y", "x ? 1 : 2", "(x > 0) * x", "x * (y > 0)", "!x ? y : x",
+                "( ( (A == __inf) || (A == __neg_inf) || (x == __inf) || (x == __neg_inf) || (y < A) || (y > x) ) ? NaN : y )");
+    }
+
+    @Test
+    public void canPerformMathFunctions() throws Exception {
+        verify("math:abs(x)", "math:max(x, 0)", "math:min(__i, x)", "math:max(x, y)", "math:min(x, NaN)",
+                "math:pow(x, 2)", "math:sqrt(x)", "math:log10(x)", "strictmath:sin(x)", "math:abs(__i)",
+                "math:floor(x / 3.0)", "math:atan2(y, x)", "math:sin(__i)", "math:signum(x)",
+                "math:max(__i, 3)", "math:round(x)", "math:random() * 0", "math:sin(F)", "math:cos(3)",
+                "strictmath:hypot(x, y)", "math:abs(x > 0 ? x : I)", "math:exp(math:log(x))");
+    }
+
+    @Test
+    public void canPerformSampleArrayFunctions() throws Exception {
+        verify("fn:arrayNaN(\"x\", 1)", "x - fn:arrayNaN(\"x\", 1)", "fn:arrayZero(\"x\", 2)",
+                "fn:arrayFirst(\"y\", 3)", "fn:arrayStart(\"x\", 1, 5)", "fn:arrayStart(\"x\", 1, 0.5)",
+                "fn:arrayStart(\"x\", 1, x)", "fn:arrayNaN(\"x\", -1)", "fn:arrayNaN(\"x\", 100)",
+                "fn:arrayNaN(\"missing\", 1)", "fn:arrayNaN(\"x\", 0)", "fn:arrayNaN('y', I)",
+                "(x - fn:arrayNaN(\"x\", 1)) / __step",
+                "(x - fn:arrayNaN(\"x\", 1)) / ((timestamp - fn:arrayNaN(\"timestamp\", 1)) / 1000)",
+                "x > fn:arrayNaN(\"x\", 1) ? x - fn:arrayNaN(\"x\", 1) : 0");
+    }
+
+    @Test
+    public void failsTheSameWay() throws Exception {
+        verify("x > 1", "true", "S", "x + S", "undefined * x", "x.foo", "", "x * 8;", "/");
+    }
+
+    @Test
+    public void canReferencePreviousExpressions() throws Exception {
+        verify(new Expression("a", "x * 2", true),
+                new Expression("b", "a + y", false),
+                new Expression("c", "b / a", false),
+                new Expression("d", "a > 1 ? fn:arrayNaN(\"x\", 1) : b", false));
+    }
+
+    @Test
+    public void canEvaluateTypicalGraph() throws Exception {
+        verify(new Expression("bits", "x * 8", false),
+                new Expression("delta", "x - fn:arrayNaN(\"x\", 1)", true),
+                new Expression("rate", "delta / (__step / 1000)", false),
+                new Expression("util", "A > 0 ? (y * 8 / (A * 1000000)) * 100 : NaN", false),
+                new Expression("peak", "math:max(bits, rate)", false),
+                new Expression("smoothed", "(y + fn:arrayFirst(\"y\", 1) + fn:arrayFirst(\"y\", 2)) / 3", false));
+    }
+
+    @Test
+    public void canReferenceFollowingExpressions() throws Exception {
+        // Cumulative sum, relying on the value of the previous row
+        verify(new Expression("sum", "__i == 0 ? 0 : sum + x", false));
+        verify(new Expression("a", "__i == 0 ? 0 : b + 1", false),
+                new Expression("b", "x * 2", false));
+    }
+
+    @Test
+    public void canHandleLabelsShadowingOtherValues() throws Exception {
+        verify(new Expression("x", "x * 2", false),
+                new Expression("z", "x + 1", false));
+        verify(new Expression("n.speed", "x * 2", false),
+                new Expression("z", "n.speed + 1", false));
+        verify(new Expression("a", "x * 2", false),
+                new Expression("a", "x * 3", false));
+        verify(new Expression("__step", "x * 2", false),
+                new Expression("z", "__step + 1", false));
+    }
+
+    @Test
+    public void canHandleAssignments() throws Exception {
+        verify(new Expression("a", "t = x * 2; t + 1", false),
+                new Expression("b", "t", false));
+    }
+
+    @Test
+    public void compilesTypicalExpressions() {
+        for (final String expression : Arrays.asList(
+                "x * 8",
+                "-x",
+                "x == __inf ? NaN : x",
+                "math:max(x, 0)",
+                "strictmath:sqrt(x * x + y * y)",
+                "fn:arrayZero(\"y\", 2) + fn:arrayFirst(\"y\", 2) + fn:arrayStart(\"y\", 2, 0.5)",
+                "x > y ? x : (y ?: -x)",
+                "!(x > 0 && y < 0) ? x : __i",
+                "(x - fn:arrayNaN(\"x\", 1)) / __step",
+                "( ( (A == __inf) || (A == __neg_inf) || (x < A) ) ? NaN : x )",
+                "x == 0 ? 0 : y / x")) {
+            assertNotNull(expression, compile(expression));
+        }
+        for (final String expression : Arrays.asList("x > 1", "__i * 2", "math:abs(__i)", "x.foo", "math:random() * x", "fn:arrayNaN(\"x\", __i)")) {
+            assertNull(expression, compile(expression));
+        }
+    }
+
+    private static ColumnarExpressionCompiler.Node compile(String expression) {
+        final MeasurementsJexlEngine jexl = new MeasurementsJexlEngine();
+        final FetchResults results = getFetchResults();
+        final ColumnarExpressionCompiler.Batch batch = new ColumnarExpressionCompiler.Batch(results.getTimestamps(), results.getColumns());
+        final Map<String, Object> constants = Maps.newHashMap(results.getConstants());
+        constants.put("NaN", Double.NaN);
+        constants.put("__inf", Double.POSITIVE_INFINITY);
+        constants.put("__neg_inf", Double.NEGATIVE_INFINITY);
+        constants.put("__step", results.getStep());
+        return new ColumnarExpressionCompiler(jexl, batch, new MapContext(constants), Lists.newArrayList("z"))
+                .compile(jexl.parseScript(expression));
+    }
+
+    private void verify(String... expressions) throws Exception {
+        for (final String expression : expressions) {
+            verify(new Expression("z", expression, false));
+        }
+    }
+
+    private void verify(Expression... expressions) throws Exception {
+        final String description = Arrays.toString(expressions);
+
+        final FetchResults expected = getFetchResults();
+        ExpressionException expectedException = null;
+        try {
+            jexlExpressionEngine.applyExpressions(getQueryRequest(expressions), expected);
+        } catch (ExpressionException e) {
+            expectedException = e;
+        }
+
+        final FetchResults actual = getFetchResults();
+        try {
+            columnarExpressionEngine.applyExpressions(getQueryRequest(expressions), actual);
+            if (expectedException != null) {
+                fail(description + " should have failed with: " + expectedException.getMessage());
+            }
+        } catch (ExpressionException e) {
+            if (expectedException == null) {
+                throw new AssertionError(description + " failed unexpectedly", e);
+            }
+            assertEquals(description, expectedException.getMessage(), e.getMessage());
+            return;
+        }
+
+        assertEquals(description, expected.getColumns().keySet(), actual.getColumns().keySet());
+        for (final Map.Entry<String, double[]> column : expected.getColumns().entrySet()) {
+            final double[] actualValues = actual.getColumns().get(column.getKey());
+            assertEquals(description, column.getValue().length, actualValues.length);
+            for (int i = 0; i < actualValues.length; i++) {
+                assertEquals(description + " at row " + i,
+                        Double.doubleToLongBits(column.getValue()[i]),
+                        Double.doubleToLongBits(actualValues[i]));
+            }
+        }
+        assertArrayEquals(expected.getTimestamps(), actual.getTimestamps());
+    }
+
+    private static QueryRequest getQueryRequest(Expression... expressions) {
+        final QueryRequest request = new QueryRequest();
+        request.setExpressions(Lists.newArrayList(expressions));
+        return request;
+    }
+
+    private static FetchResults getFetchResults() {
+        final long timestamps[] = new long[N];
+        final double xValues[] = new double[N];
+        final double yValues[] = new double[N];
+        for (int i = 0; i < N; i++) {
+            timestamps[i] = 1500000000000L + i * 300000L;
+            xValues[i] = SAMPLES[i % SAMPLES.length];
+            yValues[i] = SAMPLES[(i * 7 + 3) % SAMPLES.length];
+        }
+
+        final Map<String, double[]> values = Maps.newHashMap();
+        values.put("x", xValues);
+        values.put("y", yValues);
+
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("A", 1.5d);
+        constants.put("I", 2);
+        constants.put("F", 0.62137f);
+        constants.put("S", "str");
+        constants.put("n.speed", 100d);
+        return new FetchResults(timestamps, values, 300, constants, null);
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ExpressionEngineFactoryTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ExpressionEngineFactory.ENGINE_PROPERTY);
+    }
+
+    @Test
+    public void defaultsToJexl() {
+        assertTrue(ExpressionEngineFactory.getEngine() instanceof JEXLExpressionEngine);
+
+        System.setProperty(ExpressionEngineFactory.ENGINE_PROPERTY, "unknown");
+        assertTrue(ExpressionEngineFactory.getEngine() instanceof JEXLExpressionEngine);
+    }
+
+    @Test
+    public void canSelectColumnarEngine() {
+        System.setProperty(ExpressionEngineFactory.ENGINE_PROPERTY, ExpressionEngineFactory.COLUMNAR_ENGINE);
+        assertTrue(ExpressionEngineFactory.getEngine() instanceof ColumnarExpressionEngine);
+    }
+}
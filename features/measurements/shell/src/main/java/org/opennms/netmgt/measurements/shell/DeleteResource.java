@@ -27,7 +27,10 @@ import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.opennms.netmgt.dao.api.ResourceDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.model.ResourceId;
+import org.opennms.netmgt.model.events.EventBuilder;
 
 @Command(scope = "opennms", name = "delete-measurement-resource", description = "Delete the measurements and meta-data for a given resource ID")
 @Service
@@ -36,13 +39,20 @@ public class DeleteResource implements Action {
     @Reference
     ResourceDao resourceDao;
 
+    @Reference
+    EventForwarder eventForwarder;
+
     @Argument(description = "Resource ID")
     String resourceId;
 
     @Override
     public Object execute() {
         System.out.printf("Deleting measurements and meta-data associated with resource ID '%s'...\n", resourceId);
-        resourceDao.deleteResourceById(ResourceId.fromString(resourceId));
+        if (resourceDao.deleteResourceById(ResourceId.fromString(resourceId))) {
+            eventForwarder.sendNow(new EventBuilder(EventConstants.RESOURCE_DELETED_EVENT_UEI, "delete-measurement-resource")
+                    .addParam(EventConstants.PARM_RESOURCE_ID, resourceId)
+                    .getEvent());
+        }
         System.out.printf("Done.\n");
         return null;
     }
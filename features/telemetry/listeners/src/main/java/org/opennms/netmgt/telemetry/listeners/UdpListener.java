@@ -23,9 +23,12 @@ package org.opennms.netmgt.telemetry.listeners;
 
 import java.net.InetSocketAddress;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -36,9 +39,11 @@ import org.opennms.netmgt.telemetry.api.receiver.Listener;
 import org.opennms.netmgt.telemetry.api.receiver.Parser;
 import org.opennms.netmgt.telemetry.listeners.utils.BufferUtils;
 import org.opennms.netmgt.telemetry.listeners.utils.NettyEventListener;
+import org.opennms.netmgt.telemetry.listeners.utils.UdpSocketStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -53,10 +58,15 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.FixedRecvByteBufAllocator;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.NettyRuntime;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.internal.SocketUtils;
 
@@ -71,21 +81,24 @@ public class UdpListener implements GracefulShutdownListener {
     private final String name;
     private final List<UdpParser> parsers;
 
+    private final MetricRegistry metrics;
     private final Meter packetsReceived;
+    private final List<String> socketMetrics = new ArrayList<>();
 
     private EventLoopGroup bossGroup;
-    private ChannelFuture socketFuture;
+    private List<ChannelFuture> socketFutures = Collections.emptyList();
 
     private String host = null;
     private int port = 50000;
     private int maxPacketSize = 8096;
+    private int sockets = 1;
 
     private Future<String> stopFuture;
 
     public UdpListener(final String name, final List<UdpParser> parsers, final MetricRegistry metrics) {
         this.name = Objects.requireNonNull(name);
         this.parsers = Objects.requireNonNull(parsers);
-        Objects.requireNonNull(metrics);
+        this.metrics = Objects.requireNonNull(metrics);
 
         if (this.parsers.isEmpty()) {
             throw new IllegalArgumentException("At least 1 parsers must be defined");
@@ -100,10 +113,18 @@ public class UdpListener implements GracefulShutdownListener {
     }
 
     public void start() throws InterruptedException {
-        // Netty defaults to 2 * num cores when the number of threads is set to 0
-        this.bossGroup = new NioEventLoopGroup(0, new ThreadFactoryBuilder()
-                .setNameFormat("telemetryd-nio-" + name + "-%d")
-                .build() );
+        final boolean reusePort = this.isReusePortAvailable();
+        if (reusePort) {
+            // Ensure each socket gets an event loop of its own as the channels are assigned round-robin
+            this.bossGroup = new EpollEventLoopGroup(Math.max(this.sockets, NettyRuntime.availableProcessors() * 2), new ThreadFactoryBuilder()
+                    .setNameFormat("telemetryd-epoll-" + name + "-%d")
+                    .build());
+        } else {
+            // Netty defaults to 2 * num cores when the number of threads is set to 0
+            this.bossGroup = new NioEventLoopGroup(0, new ThreadFactoryBuilder()
+                    .setNameFormat("telemetryd-nio-" + name + "-%d")
+                    .build() );
+        }
 
         this.parsers.forEach(parser -> parser.start(this.bossGroup));
 
@@ -111,15 +132,70 @@ public class UdpListener implements GracefulShutdownListener {
                 ? SocketUtils.socketAddress(this.host, this.port)
                 : new InetSocketAddress(this.port);
 
-        this.socketFuture = new Bootstrap()
+        final Bootstrap bootstrap = new Bootstrap()
                 .group(this.bossGroup)
-                .channel(NioDatagramChannel.class)
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .option(ChannelOption.SO_RCVBUF, Integer.MAX_VALUE)
-                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxPacketSize))
-                .handler(new DefaultChannelInitializer())
-                .bind(address)
-                .sync();
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxPacketSize));
+
+        if (reusePort) {
+            // Bind multiple sockets to the same port and let the kernel distribute the packets between them. The
+            // kernel selects the socket by hashing the source and destination address and port of a packet, so all
+            // packets of an exporter end up on the same socket and are parsed in order by the same thread.
+            bootstrap.channel(EpollDatagramChannel.class)
+                    .option(EpollChannelOption.SO_REUSEPORT, true);
+
+            final List<ChannelFuture> socketFutures = new ArrayList<>(this.sockets);
+            for (int i = 0; i < this.sockets; i++) {
+                final String socketName = MetricRegistry.name("listeners", this.name, "sockets", Integer.toString(i));
+
+                final String packetsReceivedName = MetricRegistry.name(socketName, "packetsReceived");
+                this.socketMetrics.add(packetsReceivedName);
+
+                final ChannelFuture socketFuture = bootstrap.clone()
+                        .handler(new DefaultChannelInitializer(this.metrics.meter(packetsReceivedName)))
+                        .bind(address)
+                        .sync();
+                socketFutures.add(socketFuture);
+
+                this.registerDropsGauge(MetricRegistry.name(socketName, "drops"), (EpollDatagramChannel) socketFuture.channel());
+            }
+            this.socketFutures = socketFutures;
+
+            LOG.info("Listener {} bound {} sockets to {}", this.name, this.sockets, address);
+        } else {
+            this.socketFutures = Collections.singletonList(bootstrap
+                    .channel(NioDatagramChannel.class)
+                    .handler(new DefaultChannelInitializer(null))
+                    .bind(address)
+                    .sync());
+        }
+    }
+
+    private boolean isReusePortAvailable() {
+        if (this.sockets <= 1) {
+            return false;
+        }
+
+        if (!Epoll.isAvailable()) {
+            LOG.warn("Native epoll transport is not available. Listener {} falls back to a single socket: {}",
+                    this.name, Epoll.unavailabilityCause().toString());
+            return false;
+        }
+
+        return true;
+    }
+
+    private void registerDropsGauge(final String gaugeName, final EpollDatagramChannel channel) {
+        final Optional<Long> inode = UdpSocketStatistics.inode(channel.fd().intValue());
+        if (!inode.isPresent()) {
+            LOG.debug("Cannot determine inode of socket {} - drop statistics are not available", gaugeName);
+            return;
+        }
+
+        this.metrics.remove(gaugeName);
+        this.metrics.register(gaugeName, (Gauge<Long>) () -> UdpSocketStatistics.drops(inode.get()).orElse(null));
+        this.socketMetrics.add(gaugeName);
     }
 
     public void stop() throws InterruptedException {
@@ -131,14 +207,17 @@ public class UdpListener implements GracefulShutdownListener {
             this.bossGroup.shutdownGracefully().addListener(bossListener);
         }
 
-        if (this.socketFuture != null) {
+        for (final ChannelFuture socketFuture : this.socketFutures) {
             LOG.info("Closing channel...");
-            this.socketFuture.channel().close().sync();
-            if (this.socketFuture.channel().parent() != null) {
-                this.socketFuture.channel().parent().close().sync();
+            socketFuture.channel().close().sync();
+            if (socketFuture.channel().parent() != null) {
+                socketFuture.channel().parent().close().sync();
             }
         }
 
+        this.socketMetrics.forEach(this.metrics::remove);
+        this.socketMetrics.clear();
+
         this.parsers.forEach(Parser::stop);
 
         stopFuture = new Future<String>() {
@@ -193,6 +272,18 @@ public class UdpListener implements GracefulShutdownListener {
         this.maxPacketSize = maxPacketSize;
     }
 
+    public int getSockets() {
+        return sockets;
+    }
+
+    /**
+     * Sets the number of sockets bound to the port. More than one socket requires the native epoll transport, which
+     * is only available on Linux.
+     */
+    public void setSockets(int sockets) {
+        this.sockets = sockets;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -216,10 +307,16 @@ public class UdpListener implements GracefulShutdownListener {
 
     private class DefaultChannelInitializer extends ChannelInitializer<DatagramChannel> {
 
+        private final Meter socketPacketsReceived;
+
+        private DefaultChannelInitializer(final Meter socketPacketsReceived) {
+            this.socketPacketsReceived = socketPacketsReceived;
+        }
+
         @Override
         protected void initChannel(DatagramChannel ch) {
             // Accounting
-            ch.pipeline().addFirst(new AccountingHandler());
+            ch.pipeline().addFirst(new AccountingHandler(this.socketPacketsReceived));
 
             if (parsers.size() == 1) {
                 final UdpParser parser = parsers.get(0);
@@ -253,9 +350,19 @@ public class UdpListener implements GracefulShutdownListener {
     }
 
     private class AccountingHandler extends ChannelInboundHandlerAdapter {
+        // Only set if multiple sockets are bound
+        private final Meter socketPacketsReceived;
+
+        private AccountingHandler(final Meter socketPacketsReceived) {
+            this.socketPacketsReceived = socketPacketsReceived;
+        }
+
         @Override
         public  void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
             packetsReceived.mark();
+            if (this.socketPacketsReceived != null) {
+                this.socketPacketsReceived.mark();
+            }
             super.channelRead(ctx, msg);
         }
     }
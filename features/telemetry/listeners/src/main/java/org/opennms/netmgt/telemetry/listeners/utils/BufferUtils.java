@@ -62,6 +62,14 @@ public final class BufferUtils {
     }
 
     public static UnsignedLong uint(final ByteBuf buffer, final int octets) {
+        return UnsignedLong.fromLongBits(uintBits(buffer, octets));
+    }
+
+    /**
+     * Reads an unsigned integer of the given size and returns its raw bits without boxing them into an
+     * {@link UnsignedLong}.
+     */
+    public static long uintBits(final ByteBuf buffer, final int octets) {
         Preconditions.checkArgument(0 <= octets && octets <= 8);
 
         long result = 0;
@@ -70,7 +78,7 @@ public final class BufferUtils {
             result = (result << 8L) | (buffer.readUnsignedByte() & 0xFFL);
         }
 
-        return UnsignedLong.fromLongBits(result);
+        return result;
     }
 
     public static Long sint(final ByteBuf buffer, final int octets) {
@@ -0,0 +1,92 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.listeners.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Reads the kernel statistics of UDP sockets owned by this process from procfs (Linux only).
+ *
+ * The sockets are identified by their inode, which is resolved from the file descriptor of the socket. The statistics
+ * are looked up in {@code /proc/net/udp} and {@code /proc/net/udp6}.
+ */
+public final class UdpSocketStatistics {
+
+    private static final Path[] PROC_NET_UDP = new Path[] {
+            Paths.get("/proc/net/udp"),
+            Paths.get("/proc/net/udp6"),
+    };
+
+    // Column indices in /proc/net/udp{,6}
+    private static final int INODE_COLUMN = 9;
+    private static final int DROPS_COLUMN = 12;
+
+    private UdpSocketStatistics() {
+    }
+
+    /**
+     * Resolves the inode of the socket behind the given file descriptor of this process.
+     */
+    public static Optional<Long> inode(final int fd) {
+        try {
+            final String link = Files.readSymbolicLink(Paths.get("/proc/self/fd", Integer.toString(fd))).toString();
+            if (link.startsWith("socket:[") && link.endsWith("]")) {
+                return Optional.of(Long.parseLong(link.substring(8, link.length() - 1)));
+            }
+        } catch (final IOException | UnsupportedOperationException | NumberFormatException e) {
+            // Not available on this platform
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the number of datagrams dropped by the kernel for the socket with the given inode, i.e. because the
+     * receive buffer of the socket was full.
+     */
+    public static Optional<Long> drops(final long inode) {
+        final String needle = Long.toString(inode);
+        for (final Path path : PROC_NET_UDP) {
+            try (final BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+                // Skip the header line
+                String line = reader.readLine();
+                while ((line = reader.readLine()) != null) {
+                    final String[] columns = line.trim().split("\\s+");
+                    if (columns.length > DROPS_COLUMN && needle.equals(columns[INODE_COLUMN])) {
+                        return Optional.of(Long.parseLong(columns[DROPS_COLUMN]));
+                    }
+                }
+            } catch (final NoSuchFileException e) {
+                // IPv6 may be disabled
+            } catch (final IOException | NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+}
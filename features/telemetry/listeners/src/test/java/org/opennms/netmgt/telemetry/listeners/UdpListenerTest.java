@@ -0,0 +1,177 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.listeners;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.epoll.Epoll;
+
+public class UdpListenerTest {
+
+    private static final int EXPORTERS = 8;
+    private static final int PACKETS = 50;
+
+    @Test
+    public void verifySingleSocket() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final RecordingParser parser = new RecordingParser(EXPORTERS * PACKETS);
+
+        final UdpListener listener = new UdpListener("test", Collections.singletonList(parser), metrics);
+        listener.setHost("127.0.0.1");
+        listener.setPort(freePort());
+        listener.start();
+        try {
+            send(listener.getPort());
+            assertTrue(parser.latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            listener.stop();
+        }
+
+        assertEquals(EXPORTERS * PACKETS, metrics.meter("listeners.test.packetsReceived").getCount());
+        assertTrue(metrics.getMeters((n, m) -> n.startsWith("listeners.test.sockets.")).isEmpty());
+    }
+
+    @Test
+    public void verifyReusePortSockets() throws Exception {
+        Assume.assumeTrue(Epoll.isAvailable());
+
+        final MetricRegistry metrics = new MetricRegistry();
+        final RecordingParser parser = new RecordingParser(EXPORTERS * PACKETS);
+
+        final UdpListener listener = new UdpListener("test", Collections.singletonList(parser), metrics);
+        listener.setHost("127.0.0.1");
+        listener.setPort(freePort());
+        listener.setSockets(4);
+        listener.start();
+        try {
+            send(listener.getPort());
+            assertTrue(parser.latch.await(10, TimeUnit.SECONDS));
+
+            // All packets of an exporter must be handled by the same thread
+            for (final Set<String> threads : parser.threads.values()) {
+                assertEquals(1, threads.size());
+            }
+
+            final Map<String, Meter> socketMeters = metrics.getMeters((n, m) -> n.startsWith("listeners.test.sockets."));
+            assertEquals(4, socketMeters.size());
+            assertEquals(EXPORTERS * PACKETS, socketMeters.values().stream().mapToLong(Meter::getCount).sum());
+            assertEquals(EXPORTERS * PACKETS, metrics.meter("listeners.test.packetsReceived").getCount());
+
+            assertEquals(4, metrics.getGauges((n, m) -> n.startsWith("listeners.test.sockets.") && n.endsWith(".drops")).size());
+            assertEquals(0L, metrics.getGauges().get("listeners.test.sockets.0.drops").getValue());
+        } finally {
+            listener.stop();
+        }
+
+        assertTrue(metrics.getGauges().isEmpty());
+        assertTrue(metrics.getMeters((n, m) -> n.startsWith("listeners.test.sockets.")).isEmpty());
+    }
+
+    private static int freePort() throws Exception {
+        try (final DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void send(final int port) throws Exception {
+        final List<DatagramSocket> exporters = new ArrayList<>();
+        try {
+            for (int i = 0; i < EXPORTERS; i++) {
+                exporters.add(new DatagramSocket(0, InetAddress.getLoopbackAddress()));
+            }
+
+            final byte[] payload = new byte[] { 0x00, 0x01, 0x02, 0x03 };
+            for (int i = 0; i < PACKETS; i++) {
+                for (final DatagramSocket exporter : exporters) {
+                    exporter.send(new DatagramPacket(payload, payload.length, InetAddress.getLoopbackAddress(), port));
+                }
+            }
+        } finally {
+            exporters.forEach(DatagramSocket::close);
+        }
+    }
+
+    private static class RecordingParser implements UdpParser {
+        private final CountDownLatch latch;
+        private final Map<Integer, Set<String>> threads = new ConcurrentHashMap<>();
+
+        private RecordingParser(final int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public CompletableFuture<?> parse(final ByteBuf buffer,
+                                          final InetSocketAddress remoteAddress,
+                                          final InetSocketAddress localAddress) {
+            this.threads.computeIfAbsent(remoteAddress.getPort(), p -> ConcurrentHashMap.newKeySet())
+                    .add(Thread.currentThread().getName());
+            this.latch.countDown();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public String getName() {
+            return "recording";
+        }
+
+        @Override
+        public String getDescription() {
+            return "recording";
+        }
+
+        @Override
+        public Object dumpInternalState() {
+            return null;
+        }
+
+        @Override
+        public void start(final ScheduledExecutorService executorService) {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
@@ -23,18 +23,28 @@ package org.opennms.netmgt.telemetry.protocols.collection;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.script.ScriptException;
 
 import org.opennms.core.fileutils.FileUpdateCallback;
 import org.opennms.core.fileutils.FileUpdateWatcher;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionSet;
 import org.opennms.netmgt.telemetry.config.api.AdapterDefinition;
+import org.opennms.netmgt.telemetry.protocols.collection.mapping.CompiledTelemetryMapping;
+import org.opennms.netmgt.telemetry.protocols.collection.mapping.TelemetryMapping;
 import org.osgi.framework.BundleContext;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Strings;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.Message;
 
 public abstract class AbstractScriptedCollectionAdapter extends AbstractCollectionAdapter {
 
@@ -42,6 +52,17 @@ public abstract class AbstractScriptedCollectionAdapter extends AbstractCollecti
 
     private String script;
 
+    private FileUpdateWatcher mappingUpdateWatcher;
+
+    private String mapping;
+
+    /*
+     * Compiled mappings are immutable and shared by all threads. Mappings are compiled lazily per message type and
+     * the cache is cleared whenever the mapping file changes. An empty value marks a mapping which failed to compile
+     * or does not apply to the message type, in which case the script is used instead.
+     */
+    private final Map<Descriptors.Descriptor, Optional<CompiledTelemetryMapping>> compiledMappings = new ConcurrentHashMap<>();
+
     /*
      * Since ScriptCollectionSetBuilder is not thread safe , loading of script
      * is handled in ThreadLocal.
@@ -158,6 +179,72 @@ public abstract class AbstractScriptedCollectionAdapter extends AbstractCollecti
         };
     }
 
+    /**
+     * Builds a collection set from the given message.
+     *
+     * If a mapping is configured and can be compiled for the type of the message, the compiled mapping is used.
+     * Otherwise the message is handed to the script.
+     *
+     * @return the collection set or {@code null} if neither the mapping nor the script are usable
+     */
+    protected CollectionSet buildCollectionSet(final CollectionAgent agent, final Message message, final Long timestamp) throws ScriptException {
+        final CompiledTelemetryMapping compiledMapping = getCompiledMapping(message);
+        if (compiledMapping != null) {
+            return compiledMapping.build(agent, message, timestamp);
+        }
+
+        final ScriptedCollectionSetBuilder builder = getCollectionBuilder();
+        if (builder == null) {
+            return null;
+        }
+        return builder.build(agent, message, timestamp);
+    }
+
+    /**
+     * The registry used to resolve extensions referenced by mappings.
+     */
+    protected ExtensionRegistry getExtensionRegistry() {
+        return ExtensionRegistry.getEmptyRegistry();
+    }
+
+    /**
+     * The lookup used to bind the accessors of the generated messages referenced by mappings.
+     *
+     * Adapters supporting mappings must return {@code MethodHandles.lookup()} from a class loaded alongside their
+     * generated messages.
+     *
+     * @return the lookup or {@code null} if the adapter does not support mappings
+     */
+    protected MethodHandles.Lookup getMappingLookup() {
+        return null;
+    }
+
+    protected CompiledTelemetryMapping getCompiledMapping(final Message message) {
+        if (Strings.isNullOrEmpty(mapping)) {
+            return null;
+        }
+        final MethodHandles.Lookup lookup = getMappingLookup();
+        if (lookup == null) {
+            return null;
+        }
+        return compiledMappings.computeIfAbsent(message.getDescriptorForType(), descriptor -> {
+            try {
+                final TelemetryMapping telemetryMapping = JaxbUtils.unmarshal(TelemetryMapping.class, new File(mapping));
+                return Optional.of(CompiledTelemetryMapping.compile(telemetryMapping, message.getDefaultInstanceForType(), getExtensionRegistry(), lookup));
+            } catch (final Exception e) {
+                LOG.error("Failed to compile mapping '{}' for {}. Falling back to script.", mapping, descriptor.getFullName(), e);
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    private FileUpdateCallback reloadMapping() {
+        return () -> {
+            LOG.debug("Mapping '{}' changed", mapping);
+            compiledMappings.clear();
+        };
+    }
+
     public String getScript() {
         return script;
     }
@@ -167,10 +254,33 @@ public abstract class AbstractScriptedCollectionAdapter extends AbstractCollecti
         setFileUpdateCallback(script);
     }
 
+    public String getMapping() {
+        return mapping;
+    }
+
+    public void setMapping(String mapping) {
+        this.mapping = mapping;
+        compiledMappings.clear();
+        if (!Strings.isNullOrEmpty(mapping) && getMappingLookup() == null) {
+            LOG.warn("Mappings are not supported by {}. Ignoring mapping '{}'.", getClass().getSimpleName(), mapping);
+            return;
+        }
+        if (!Strings.isNullOrEmpty(mapping)) {
+            try {
+                mappingUpdateWatcher = new FileUpdateWatcher(mapping, reloadMapping());
+            } catch (Exception e) {
+                LOG.info("Mapping reload Utils is not registered", e);
+            }
+        }
+    }
+
     @Override
     public void destroy() {
         if (scriptUpdateWatcher != null) {
             scriptUpdateWatcher.destroy();
         }
+        if (mappingUpdateWatcher != null) {
+            mappingUpdateWatcher.destroy();
+        }
     }
 }
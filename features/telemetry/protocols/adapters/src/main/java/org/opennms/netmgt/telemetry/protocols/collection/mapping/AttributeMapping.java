@@ -0,0 +1,97 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.collection.mapping;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Maps a scalar field of a resource message to an attribute.
+ */
+@XmlRootElement(name="attribute")
+@XmlAccessorType(XmlAccessType.NONE)
+public class AttributeMapping {
+
+    @XmlAttribute(name="group", required=true)
+    private String group;
+
+    @XmlAttribute(name="name", required=true)
+    private String name;
+
+    @XmlAttribute(name="path", required=true)
+    private String path;
+
+    @XmlAttribute(name="type")
+    private String type = "gauge";
+
+    public String getGroup() {
+        return this.group;
+    }
+
+    public void setGroup(final String group) {
+        this.group = group;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * The path of the value relative to the resource message.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * The attribute type, one of {@code gauge}, {@code counter} or {@code string}.
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    public void setType(final String type) {
+        this.type = type;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("group", this.group)
+                .add("name", this.name)
+                .add("path", this.path)
+                .add("type", this.type)
+                .toString();
+    }
+}
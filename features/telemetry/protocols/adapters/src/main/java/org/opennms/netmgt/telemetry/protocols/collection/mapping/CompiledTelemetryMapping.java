@@ -0,0 +1,467 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.collection.mapping;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.opennms.core.utils.RrdLabelUtils;
+import org.opennms.netmgt.collection.api.AttributeType;
+import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionSet;
+import org.opennms.netmgt.collection.support.builder.CollectionSetBuilder;
+import org.opennms.netmgt.collection.support.builder.DeferredGenericTypeResource;
+import org.opennms.netmgt.collection.support.builder.InterfaceLevelResource;
+import org.opennms.netmgt.collection.support.builder.NodeLevelResource;
+import org.opennms.netmgt.collection.support.builder.Resource;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.Message;
+
+/**
+ * A {@link TelemetryMapping} compiled against the descriptor of a protobuf message type.
+ *
+ * All field paths are resolved once when the mapping is compiled: regular fields are bound to functions calling the
+ * generated accessors and extensions are looked up in the given registry. Building a collection set from a message
+ * only walks these pre-resolved paths, so instances are immutable and can be shared between threads.
+ */
+public class CompiledTelemetryMapping {
+
+    private final Descriptors.Descriptor descriptor;
+
+    private final Path sequenceNumber;
+
+    private final List<CompiledResource> resources;
+
+    private CompiledTelemetryMapping(final Descriptors.Descriptor descriptor,
+                                     final Path sequenceNumber,
+                                     final List<CompiledResource> resources) {
+        this.descriptor = Objects.requireNonNull(descriptor);
+        this.sequenceNumber = sequenceNumber;
+        this.resources = Objects.requireNonNull(resources);
+    }
+
+    /**
+     * Compiles the given mapping for messages of the same type as the given prototype.
+     *
+     * @param mapping the mapping to compile
+     * @param prototype an instance of the root message type, usually the default instance
+     * @param registry the registry used to resolve extensions referenced by the mapping
+     * @param lookup a full privilege lookup of a class loaded by the class loader of the generated messages, used to
+     *               bind the generated accessors
+     * @return the compiled mapping
+     * @throws IllegalArgumentException if the mapping references fields which do not exist or are not applicable
+     */
+    public static CompiledTelemetryMapping compile(final TelemetryMapping mapping,
+                                                   final Message prototype,
+                                                   final ExtensionRegistry registry,
+                                                   final MethodHandles.Lookup lookup) {
+        final Descriptors.Descriptor descriptor = prototype.getDescriptorForType();
+        final Class<?> clazz = prototype.getClass();
+
+        final Path sequenceNumber = Strings.isNullOrEmpty(mapping.getSequenceNumber())
+                ? null
+                : Path.compile(mapping.getSequenceNumber(), descriptor, clazz, registry, lookup).requireScalar();
+
+        final List<CompiledResource> resources = new ArrayList<>(mapping.getResources().size());
+        for (final ResourceMapping resource : mapping.getResources()) {
+            resources.add(CompiledResource.compile(resource, descriptor, clazz, registry, lookup));
+        }
+
+        return new CompiledTelemetryMapping(descriptor, sequenceNumber, resources);
+    }
+
+    public Descriptors.Descriptor getDescriptor() {
+        return this.descriptor;
+    }
+
+    /**
+     * Builds a collection set from the given message.
+     *
+     * @param agent the agent associated with the collection set
+     * @param message the message containing the metrics
+     * @param timestamp the timestamp of the collection set, ignored if not positive
+     * @return a collection set
+     */
+    public CollectionSet build(final CollectionAgent agent, final Message message, final Long timestamp) {
+        if (message.getDescriptorForType() != this.descriptor) {
+            throw new IllegalArgumentException("Mapping compiled for " + this.descriptor.getFullName()
+                    + " cannot be applied to " + message.getDescriptorForType().getFullName());
+        }
+
+        final CollectionSetBuilder builder = new CollectionSetBuilder(agent);
+        if (timestamp != null && timestamp > 0) {
+            builder.withTimestamp(new Date(timestamp));
+        }
+
+        if (this.sequenceNumber != null) {
+            final Object value = this.sequenceNumber.get(message);
+            if (value instanceof Number) {
+                builder.withSequenceNumber(((Number) value).longValue());
+            }
+        }
+
+        final NodeLevelResource node = new NodeLevelResource(agent.getNodeId());
+        for (final CompiledResource resource : this.resources) {
+            resource.apply(builder, node, message);
+        }
+
+        return builder.build();
+    }
+
+    private static class CompiledResource {
+        private final ResourceMapping.Type type;
+        private final String resourceType;
+        private final Path path;
+        private final Path instance;
+        private final List<CompiledAttribute> attributes;
+
+        private CompiledResource(final ResourceMapping.Type type,
+                                 final String resourceType,
+                                 final Path path,
+                                 final Path instance,
+                                 final List<CompiledAttribute> attributes) {
+            this.type = type;
+            this.resourceType = resourceType;
+            this.path = path;
+            this.instance = instance;
+            this.attributes = attributes;
+        }
+
+        private static CompiledResource compile(final ResourceMapping resource,
+                                                final Descriptors.Descriptor descriptor,
+                                                final Class<?> clazz,
+                                                final ExtensionRegistry registry,
+                                                final MethodHandles.Lookup lookup) {
+            if (resource.getType() == null) {
+                throw new IllegalArgumentException("Missing resource type: " + resource);
+            }
+
+            final Path path = Path.compile(resource.getPath(), descriptor, clazz, registry, lookup);
+            if (path.getDescriptor() == null) {
+                throw new IllegalArgumentException("Resource path must point to a message: " + resource);
+            }
+
+            Path instance = null;
+            if (resource.getType() != ResourceMapping.Type.NODE) {
+                if (Strings.isNullOrEmpty(resource.getInstance())) {
+                    throw new IllegalArgumentException("Missing instance path: " + resource);
+                }
+                instance = Path.compile(resource.getInstance(), path.getDescriptor(), path.getType(), registry, lookup).requireScalar();
+            }
+
+            if (resource.getType() == ResourceMapping.Type.GENERIC && Strings.isNullOrEmpty(resource.getResourceType())) {
+                throw new IllegalArgumentException("Missing resource type name: " + resource);
+            }
+
+            final List<CompiledAttribute> attributes = new ArrayList<>(resource.getAttributes().size());
+            for (final AttributeMapping attribute : resource.getAttributes()) {
+                attributes.add(CompiledAttribute.compile(attribute, path.getDescriptor(), path.getType(), registry, lookup));
+            }
+
+            return new CompiledResource(resource.getType(), resource.getResourceType(), path, instance, attributes);
+        }
+
+        private void apply(final CollectionSetBuilder builder, final NodeLevelResource node, final Object message) {
+            this.path.forEach(message, element -> {
+                final Resource resource;
+                switch (this.type) {
+                    case INTERFACE:
+                        resource = new InterfaceLevelResource(node, RrdLabelUtils.computeLabelForRRD(Objects.toString(this.instance.get(element), null), null, null));
+                        break;
+                    case GENERIC:
+                        resource = new DeferredGenericTypeResource(node, this.resourceType, Objects.toString(this.instance.get(element), null));
+                        break;
+                    default:
+                        resource = node;
+                }
+
+                for (final CompiledAttribute attribute : this.attributes) {
+                    attribute.apply(builder, resource, element);
+                }
+            });
+        }
+    }
+
+    private static class CompiledAttribute {
+        private final String group;
+        private final String name;
+        private final AttributeType type;
+        private final Path path;
+
+        private CompiledAttribute(final String group,
+                                  final String name,
+                                  final AttributeType type,
+                                  final Path path) {
+            this.group = group;
+            this.name = name;
+            this.type = type;
+            this.path = path;
+        }
+
+        private static CompiledAttribute compile(final AttributeMapping attribute,
+                                                 final Descriptors.Descriptor descriptor,
+                                                 final Class<?> clazz,
+                                                 final ExtensionRegistry registry,
+                                                 final MethodHandles.Lookup lookup) {
+            final AttributeType type = AttributeType.parse(attribute.getType());
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown attribute type: " + attribute);
+            }
+
+            final Path path = Path.compile(attribute.getPath(), descriptor, clazz, registry, lookup).requireScalar();
+            if (path.getDescriptor() != null) {
+                throw new IllegalArgumentException("Attribute path must point to a scalar field: " + attribute);
+            }
+
+            return new CompiledAttribute(attribute.getGroup(), attribute.getName(), type, path);
+        }
+
+        private void apply(final CollectionSetBuilder builder, final Resource resource, final Object message) {
+            final Object value = this.path.get(message);
+            if (value == null) {
+                return;
+            }
+
+            if (this.type.isNumeric()) {
+                final Number number;
+                if (value instanceof Number) {
+                    number = (Number) value;
+                } else if (value instanceof Boolean) {
+                    number = ((Boolean) value) ? 1 : 0;
+                } else {
+                    return;
+                }
+                builder.withNumericAttribute(resource, this.group, this.name, number, this.type);
+            } else {
+                builder.withStringAttribute(resource, this.group, this.name, value.toString());
+            }
+        }
+    }
+
+    /**
+     * A sequence of resolved field accessors.
+     */
+    private static class Path {
+        private final Step[] steps;
+        private final Descriptors.Descriptor descriptor;
+        private final Class<?> type;
+
+        private Path(final Step[] steps, final Descriptors.Descriptor descriptor, final Class<?> type) {
+            this.steps = steps;
+            this.descriptor = descriptor;
+            this.type = type;
+        }
+
+        private static Path compile(final String path,
+                                    Descriptors.Descriptor descriptor,
+                                    Class<?> clazz,
+                                    final ExtensionRegistry registry,
+                                    final MethodHandles.Lookup lookup) {
+            final List<Step> steps = new ArrayList<>();
+
+            for (final String segment : Splitter.on('/').omitEmptyStrings().trimResults().split(Strings.nullToEmpty(path))) {
+                if (descriptor == null) {
+                    throw new IllegalArgumentException("Cannot traverse into scalar field at '" + segment + "' in path: " + path);
+                }
+
+                final Step step;
+                if (segment.startsWith("[") && segment.endsWith("]")) {
+                    step = Step.extension(segment.substring(1, segment.length() - 1), descriptor, registry);
+                } else {
+                    step = Step.field(segment, descriptor, clazz, lookup);
+                }
+
+                steps.add(step);
+                descriptor = step.descriptor;
+                clazz = step.type;
+            }
+
+            return new Path(steps.toArray(new Step[0]), descriptor, clazz);
+        }
+
+        /**
+         * The descriptor of the value this path points to or {@code null} if the value is not a message.
+         */
+        private Descriptors.Descriptor getDescriptor() {
+            return this.descriptor;
+        }
+
+        private Class<?> getType() {
+            return this.type;
+        }
+
+        private Path requireScalar() {
+            for (final Step step : this.steps) {
+                if (step.repeated) {
+                    throw new IllegalArgumentException("Path must not contain repeated fields: " + step.name);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Returns the value of a path without repeated fields.
+         */
+        private Object get(Object message) {
+            for (final Step step : this.steps) {
+                message = step.get(message);
+            }
+            return message;
+        }
+
+        /**
+         * Calls the consumer for all values this path points to, expanding all repeated fields along the path.
+         */
+        private void forEach(final Object message, final Consumer<Object> consumer) {
+            this.forEach(message, 0, consumer);
+        }
+
+        private void forEach(final Object message, final int index, final Consumer<Object> consumer) {
+            if (index == this.steps.length) {
+                consumer.accept(message);
+                return;
+            }
+
+            final Step step = this.steps[index];
+            final Object value = step.get(message);
+            if (step.repeated) {
+                for (final Object element : (List<?>) value) {
+                    this.forEach(element, index + 1, consumer);
+                }
+            } else {
+                this.forEach(value, index + 1, consumer);
+            }
+        }
+    }
+
+    private static final class Step {
+        private final String name;
+        private final boolean repeated;
+        private final Descriptors.Descriptor descriptor;
+        private final Class<?> type;
+        private final Function<Object, Object> accessor;
+
+        private Step(final Descriptors.FieldDescriptor field, final Class<?> type, final Function<Object, Object> accessor) {
+            this.name = field.getFullName();
+            this.repeated = field.isRepeated();
+            this.descriptor = field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE
+                    ? field.getMessageType()
+                    : null;
+            this.type = type;
+            this.accessor = accessor;
+        }
+
+        private Object get(final Object message) {
+            return this.accessor.apply(message);
+        }
+
+        private static Step field(final String name,
+                                  final Descriptors.Descriptor descriptor,
+                                  final Class<?> clazz,
+                                  final MethodHandles.Lookup lookup) {
+            final Descriptors.FieldDescriptor field = descriptor.findFieldByName(name);
+            if (field == null) {
+                throw new IllegalArgumentException("No such field '" + name + "' in " + descriptor.getFullName());
+            }
+
+            // Generated accessors are named after the camel-cased field name, which matches the field name without
+            // underscores when ignoring the case
+            final String accessor = "get" + field.getName().replace("_", "") + (field.isRepeated() ? "List" : "");
+            final Method getter = findMethod(clazz, accessor, 0);
+
+            Class<?> type = getter.getReturnType();
+            if (field.isRepeated() && field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+                type = findMethod(clazz, "get" + field.getName().replace("_", ""), 1).getReturnType();
+            }
+
+            return new Step(field, type, accessor(getter, lookup));
+        }
+
+        /**
+         * Spins a {@link Function} calling the given getter, which the JIT can inline like a hand-written lambda.
+         *
+         * The function is defined by the given lookup, which must have full privilege access and see the generated
+         * messages. In OSGi, the generated messages live in the bundle of the adapter and not in this one, so only a
+         * lookup of the adapter can be used.
+         */
+        @SuppressWarnings("unchecked")
+        private static Function<Object, Object> accessor(final Method getter, final MethodHandles.Lookup lookup) {
+            try {
+                final MethodHandle handle = lookup.unreflect(getter);
+                return (Function<Object, Object>) LambdaMetafactory.metafactory(lookup,
+                        "apply",
+                        MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        handle,
+                        handle.type().wrap())
+                        .getTarget()
+                        .invokeExact();
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new IllegalArgumentException("Cannot access " + getter, t);
+            }
+        }
+
+        private static Step extension(final String name,
+                                      final Descriptors.Descriptor descriptor,
+                                      final ExtensionRegistry registry,
+                                      final MethodHandles.Lookup lookup) {
+            final ExtensionRegistry.ExtensionInfo info = registry.findImmutableExtensionByName(name);
+            if (info == null) {
+                throw new IllegalArgumentException("No such extension: " + name);
+            }
+            if (info.descriptor.getContainingType() != descriptor) {
+                throw new IllegalArgumentException("Extension " + name + " does not extend " + descriptor.getFullName());
+            }
+
+            final Descriptors.FieldDescriptor field = info.descriptor;
+            final Class<?> type = info.defaultInstance != null ? info.defaultInstance.getClass() : null;
+
+            return new Step(field, type, message -> ((Message) message).getField(field));
+        }
+
+        private static Method findMethod(final Class<?> clazz, final String name, final int parameterCount) {
+            for (final Method method : clazz.getMethods()) {
+                if (method.getName().equalsIgnoreCase(name)
+                        && method.getParameterCount() == parameterCount
+                        && (parameterCount == 0 || method.getParameterTypes()[0] == int.class)) {
+                    return method;
+                }
+            }
+            throw new IllegalArgumentException("No accessor '" + name + "' in " + clazz.getName());
+        }
+    }
+}
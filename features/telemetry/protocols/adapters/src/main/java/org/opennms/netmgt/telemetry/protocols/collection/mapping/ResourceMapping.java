@@ -0,0 +1,130 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.collection.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlEnumValue;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Maps the messages found at a field path to resources.
+ *
+ * If the path traverses repeated fields, a resource is created for every element.
+ */
+@XmlRootElement(name="resource")
+@XmlAccessorType(XmlAccessType.NONE)
+public class ResourceMapping {
+
+    @XmlEnum
+    public enum Type {
+        @XmlEnumValue("node")
+        NODE,
+        @XmlEnumValue("interface")
+        INTERFACE,
+        @XmlEnumValue("generic")
+        GENERIC,
+    }
+
+    @XmlAttribute(name="type", required=true)
+    private Type type;
+
+    @XmlAttribute(name="path")
+    private String path;
+
+    @XmlAttribute(name="instance")
+    private String instance;
+
+    @XmlAttribute(name="resource-type")
+    private String resourceType;
+
+    @XmlElement(name="attribute")
+    private List<AttributeMapping> attributes = new ArrayList<>();
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public void setType(final Type type) {
+        this.type = type;
+    }
+
+    /**
+     * The path of the messages relative to the root message.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * The path of the interface label or the generic resource instance relative to the resource message.
+     */
+    public String getInstance() {
+        return this.instance;
+    }
+
+    public void setInstance(final String instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * The name of the resource type for generic resources.
+     */
+    public String getResourceType() {
+        return this.resourceType;
+    }
+
+    public void setResourceType(final String resourceType) {
+        this.resourceType = resourceType;
+    }
+
+    public List<AttributeMapping> getAttributes() {
+        return this.attributes;
+    }
+
+    public void setAttributes(final List<AttributeMapping> attributes) {
+        this.attributes = attributes;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("type", this.type)
+                .add("path", this.path)
+                .add("instance", this.instance)
+                .add("resourceType", this.resourceType)
+                .add("attributes", this.attributes)
+                .toString();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.collection.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Declarative mapping of protobuf telemetry messages to collection sets.
+ *
+ * Field paths are sequences of protobuf field names separated by {@code /}.
+ * Extensions are referenced by their full name in brackets, i.e.
+ * {@code enterprise/[juniperNetworks]/[jnpr_interface_ext]/interface_stats}.
+ */
+@XmlRootElement(name="telemetry-mapping")
+@XmlAccessorType(XmlAccessType.NONE)
+public class TelemetryMapping {
+
+    @XmlAttribute(name="sequence-number")
+    private String sequenceNumber;
+
+    @XmlElement(name="resource")
+    private List<ResourceMapping> resources = new ArrayList<>();
+
+    public String getSequenceNumber() {
+        return this.sequenceNumber;
+    }
+
+    public void setSequenceNumber(final String sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    public List<ResourceMapping> getResources() {
+        return this.resources;
+    }
+
+    public void setResources(final List<ResourceMapping> resources) {
+        this.resources = resources;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sequenceNumber", this.sequenceNumber)
+                .add("resources", this.resources)
+                .toString();
+    }
+}
@@ -28,8 +28,15 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -67,7 +74,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import com.google.common.base.Joiner;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.swrve.ratelimitedlogger.RateLimitedLog;
 
 public class BmpMessagePersister implements BmpMessageHandler {
@@ -106,10 +115,68 @@ public class BmpMessagePersister implements BmpMessageHandler {
     @Autowired
     private SessionUtils sessionUtils;
 
+    private BmpRib bmpRib = new BmpRib();
+
+    // Number of times a failed batch is written again before the RIB is reloaded from the database
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private int batchSize = 1000;
+
+    private long flushInterval = 1000;
+
     private SetMultimap<String, BmpPeer> peerMultimap = HashMultimap.create();
 
+    // Unicast prefix changes and RIB logs not yet written to the database, guarded by this
+    private Map<String, BmpUnicastPrefix> pendingPrefixes = new LinkedHashMap<>();
+    private List<BmpIpRibLog> pendingRibLogs = new ArrayList<>();
+
+    // Number of failed attempts to write the pending changes, guarded by this
+    private int failedWrites = 0;
+
+    // Serializes writes of pending changes, so they reach the database in the order they were taken.
+    // Always acquired before the lock on this.
+    private final Object writeLock = new Object();
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("BmpRibFlush-%d")
+            .setDaemon(true)
+            .build());
+
+    private ScheduledFuture<?> flushTask;
+
     @Override
-    public synchronized void handle(Message message, Context context) {
+    public void handle(Message message, Context context) {
+        if (message.getType() == Type.UNICAST_PREFIX) {
+            // Unicast prefixes are resolved against the in-memory RIB and written behind in batches
+            synchronized (this) {
+                List<BmpUnicastPrefix> bmpUnicastPrefixes = buildBmpUnicastPrefix(message);
+                bmpUnicastPrefixes.forEach(unicastPrefix -> {
+                    updateStats(unicastPrefix, context.location);
+                    pendingPrefixes.put(unicastPrefix.getHashId(), unicastPrefix);
+                });
+                scheduleFlush();
+            }
+            return;
+        }
+
+        if (message.getType() == Type.PEER) {
+            // Peer messages prune the prefixes of the peer in the database, which must see all pending changes
+            // and all changes being written in the background, and no change may be taken in between
+            synchronized (writeLock) {
+                synchronized (this) {
+                    flush();
+                    persist(message);
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            persist(message);
+        }
+    }
+
+    private void persist(Message message) {
         sessionUtils.withTransaction(() -> {
             switch (message.getType()) {
                 case COLLECTOR:
@@ -161,6 +228,9 @@ public class BmpMessagePersister implements BmpMessageHandler {
                         peer.setBmpUnicastPrefixes(unicastPrefixes);
                         try {
                             bmpPeerDao.saveOrUpdate(peer);
+                            bmpRib.putPeer(peer);
+                            bmpRib.removeIf(peer.getHashId(), bmpUnicastPrefix ->
+                                    bmpUnicastPrefix.getTimestamp().getTime() <= peer.getTimestamp().getTime());
                         } catch (Exception e) {
                             LOG.error("Exception while persisting BMP peer {}", peer, e);
                         }
@@ -186,26 +256,152 @@ public class BmpMessagePersister implements BmpMessageHandler {
 
                     });
                     break;
-                case UNICAST_PREFIX:
-                    List<BmpUnicastPrefix> bmpUnicastPrefixes = buildBmpUnicastPrefix(message);
-                    bmpUnicastPrefixes.forEach(unicastPrefix -> {
-                        try {
-                            updateStats(unicastPrefix, context.location);
-                            bmpUnicastPrefixDao.saveOrUpdate(unicastPrefix);
-                        } catch (Exception e) {
-                            LOG.error("Exception while persisting BMP unicast prefix {}", unicastPrefix, e);
-                        }
-                    });
-                    break;
             }
         });
     }
 
+    /**
+     * Writes all pending unicast prefix changes to the database.
+     *
+     * The pending changes are swapped out and copied while holding the lock, but written without it, so messages
+     * can be handled while the changes are being written. A prefix that is changed again while being written is
+     * pending again and will be written by the next flush.
+     *
+     * Changes which failed to be written are pending again. If they keep failing, they are dropped and the RIB is
+     * loaded from the database again, so it doesn't diverge from what was persisted.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            final List<BmpUnicastPrefix> prefixes;
+            final List<BmpUnicastPrefix> copies;
+            final List<BmpIpRibLog> ribLogs;
+            synchronized (this) {
+                if (pendingPrefixes.isEmpty() && pendingRibLogs.isEmpty()) {
+                    return;
+                }
+                // The prefixes are changed in place by the messages handled while writing, so write copies of them
+                prefixes = new ArrayList<>(pendingPrefixes.values());
+                copies = prefixes.stream().map(BmpMessagePersister::copyOf).collect(Collectors.toList());
+                ribLogs = pendingRibLogs;
+                pendingPrefixes = new LinkedHashMap<>();
+                pendingRibLogs = new ArrayList<>();
+            }
+
+            final Set<Integer> failedPrefixes = new LinkedHashSet<>();
+            final List<BmpIpRibLog> failedRibLogs = new ArrayList<>();
+            write(copies, ribLogs, failedPrefixes, failedRibLogs);
+
+            synchronized (this) {
+                for (int i = 0; i < prefixes.size(); i++) {
+                    // Prefixes inserted by writing the copy are updated by subsequent writes
+                    if (prefixes.get(i).getId() == null && !failedPrefixes.contains(i)) {
+                        prefixes.get(i).setId(copies.get(i).getId());
+                    }
+                }
+
+                if (failedPrefixes.isEmpty() && failedRibLogs.isEmpty()) {
+                    failedWrites = 0;
+                } else if (++failedWrites < MAX_WRITE_ATTEMPTS) {
+                    LOG.warn("Failed to write {} BMP unicast prefixes and {} BMP ip rib logs, retrying with the next flush",
+                            failedPrefixes.size(), failedRibLogs.size());
+                    // Changes made in the meantime are pending already and more recent
+                    failedPrefixes.forEach(i -> pendingPrefixes.putIfAbsent(prefixes.get(i).getHashId(), prefixes.get(i)));
+                    failedRibLogs.addAll(pendingRibLogs);
+                    pendingRibLogs = failedRibLogs;
+                } else {
+                    LOG.error("Failed to write {} BMP unicast prefixes and {} BMP ip rib logs {} times, dropping them and reloading the RIB",
+                            failedPrefixes.size(), failedRibLogs.size(), failedWrites);
+                    failedWrites = 0;
+                    bmpRib.invalidate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the given changes in batches, collecting the indexes of the prefixes and the RIB logs of failed batches.
+     */
+    private void write(List<BmpUnicastPrefix> prefixes, List<BmpIpRibLog> ribLogs,
+                       Set<Integer> failedPrefixes, List<BmpIpRibLog> failedRibLogs) {
+        for (int from = 0; from < prefixes.size(); from += batchSize) {
+            final List<BmpUnicastPrefix> batch = prefixes.subList(from, Math.min(from + batchSize, prefixes.size()));
+            try {
+                sessionUtils.withTransaction(() -> batch.forEach(bmpUnicastPrefixDao::saveOrUpdate));
+            } catch (Exception e) {
+                LOG.error("Exception while persisting batch of {} BMP unicast prefixes", batch.size(), e);
+                for (int i = from; i < from + batch.size(); i++) {
+                    failedPrefixes.add(i);
+                }
+            }
+        }
+
+        for (final List<BmpIpRibLog> batch : Lists.partition(ribLogs, batchSize)) {
+            try {
+                sessionUtils.withTransaction(() -> batch.forEach(bmpIpRibLogDao::saveOrUpdate));
+            } catch (Exception e) {
+                LOG.error("Exception while persisting batch of {} BMP ip rib logs", batch.size(), e);
+                failedRibLogs.addAll(batch);
+            }
+        }
+    }
+
+    private static BmpUnicastPrefix copyOf(BmpUnicastPrefix prefix) {
+        final BmpUnicastPrefix copy = new BmpUnicastPrefix();
+        copy.setId(prefix.getId());
+        copy.setHashId(prefix.getHashId());
+        copy.setBmpPeer(prefix.getBmpPeer());
+        copy.setBaseAttrHashId(prefix.getBaseAttrHashId());
+        copy.setIpv4(prefix.isIpv4());
+        copy.setOriginAs(prefix.getOriginAs());
+        copy.setPrefix(prefix.getPrefix());
+        copy.setPrefixLen(prefix.getPrefixLen());
+        copy.setTimestamp(prefix.getTimestamp());
+        copy.setFirstAddedTimestamp(prefix.getFirstAddedTimestamp());
+        copy.setWithDrawn(prefix.isWithDrawn());
+        copy.setPrefixBits(prefix.getPrefixBits());
+        copy.setPathId(prefix.getPathId());
+        copy.setLabels(prefix.getLabels());
+        copy.setPrePolicy(prefix.isPrePolicy());
+        copy.setAdjRibIn(prefix.isAdjRibIn());
+        copy.setPrevBaseAttrHashId(prefix.getPrevBaseAttrHashId());
+        copy.setPrevWithDrawnState(prefix.isPrevWithDrawnState());
+        return copy;
+    }
+
+    private void scheduleFlush() {
+        if (flushTask == null) {
+            flushTask = flushExecutor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+        if (pendingPrefixes.size() >= batchSize) {
+            flushExecutor.execute(this::flush);
+        }
+    }
+
+    private void loadRib() {
+        sessionUtils.withReadOnlyTransaction(() -> {
+            final List<BmpUnicastPrefix> prefixes = bmpUnicastPrefixDao.findAll();
+            bmpRib.load(prefixes);
+            LOG.info("Loaded {} BMP unicast prefixes into the RIB", prefixes.size());
+        });
+    }
+
+    private BmpPeer findPeer(String peerHashId) {
+        BmpPeer bmpPeer = bmpRib.getPeer(peerHashId);
+        if (bmpPeer == null) {
+            bmpPeer = sessionUtils.withReadOnlyTransaction(() -> bmpPeerDao.findByPeerHashId(peerHashId));
+            if (bmpPeer != null) {
+                bmpRib.putPeer(bmpPeer);
+            }
+        }
+        return bmpPeer;
+    }
+
 
     private void updateStats(BmpUnicastPrefix unicastPrefix, String location) {
         // Update counts if this is new prefix update or
-        // if previous withdrawn state is different or it's an update with different base attributes
-        if (unicastPrefix.getId() == null ||
+        // if previous withdrawn state is different or it's an update with different base attributes.
+        // Prefixes seen for the first time have no previous state, even if they are not persisted yet.
+        if (unicastPrefix.getPrevBaseAttrHashId() == null ||
                 (unicastPrefix.isWithDrawn() != unicastPrefix.isPrevWithDrawnState() ||
                         (!unicastPrefix.isWithDrawn() && !unicastPrefix.getBaseAttrHashId().equals(unicastPrefix.getPrevBaseAttrHashId())))) {
 
@@ -218,7 +414,7 @@ public class BmpMessagePersister implements BmpMessageHandler {
             bmpIpRibLog.setOriginAs(unicastPrefix.getOriginAs());
             bmpIpRibLog.setTimestamp(new Date());
             bmpIpRibLog.setWithDrawn(unicastPrefix.isWithDrawn());
-            bmpIpRibLogDao.saveOrUpdate(bmpIpRibLog);
+            pendingRibLogs.add(bmpIpRibLog);
         }
 
     }
@@ -226,6 +422,12 @@ public class BmpMessagePersister implements BmpMessageHandler {
 
     @Override
     public void close() {
+        flush();
+    }
+
+    public void destroy() {
+        flushExecutor.shutdown();
+        flush();
     }
 
     private List<BmpCollector> buildBmpCollectors(Message message) {
@@ -388,17 +590,21 @@ public class BmpMessagePersister implements BmpMessageHandler {
 
     private List<BmpUnicastPrefix> buildBmpUnicastPrefix(Message message) {
 
+        if (!bmpRib.isLoaded()) {
+            loadRib();
+        }
+
         List<BmpUnicastPrefix> bmpUnicastPrefixes = new ArrayList<>();
         message.getRecords().forEach(record -> {
             if (record.getType().equals(Type.UNICAST_PREFIX)) {
                 BmpPeer bmpPeer;
                 UnicastPrefix unicastPrefix = (UnicastPrefix) record;
                 try {
-                    BmpUnicastPrefix bmpUnicastPrefix = bmpUnicastPrefixDao.findByHashId(unicastPrefix.hash);
+                    BmpUnicastPrefix bmpUnicastPrefix = bmpRib.getByHashId(unicastPrefix.hash);
                     if (bmpUnicastPrefix == null) {
                         bmpUnicastPrefix = new BmpUnicastPrefix();
                         bmpUnicastPrefix.setFirstAddedTimestamp(Date.from(unicastPrefix.timestamp));
-                        bmpPeer = bmpPeerDao.findByPeerHashId(unicastPrefix.peerHash);
+                        bmpPeer = findPeer(unicastPrefix.peerHash);
                     } else {
                         bmpUnicastPrefix.setPrevBaseAttrHashId(bmpUnicastPrefix.getBaseAttrHashId());
                         bmpUnicastPrefix.setPrevWithDrawnState(bmpUnicastPrefix.isWithDrawn());
@@ -410,19 +616,21 @@ public class BmpMessagePersister implements BmpMessageHandler {
                         return;
                     }
                     bmpUnicastPrefix.setBmpPeer(bmpPeer);
-                    bmpUnicastPrefix.setHashId(unicastPrefix.hash);
-                    bmpUnicastPrefix.setBaseAttrHashId(unicastPrefix.baseAttrHash);
-                    bmpUnicastPrefix.setIpv4(unicastPrefix.ipv4);
-                    bmpUnicastPrefix.setOriginAs(unicastPrefix.originAs);
-                    bmpUnicastPrefix.setPrefix(InetAddressUtils.str(unicastPrefix.prefix));
-                    bmpUnicastPrefix.setPrefixLen(unicastPrefix.length);
-                    bmpUnicastPrefix.setTimestamp(Date.from(unicastPrefix.timestamp));
-                    boolean withDrawn = !unicastPrefix.action.equals(UnicastPrefix.Action.ADD);
-                    bmpUnicastPrefix.setWithDrawn(withDrawn);
-                    bmpUnicastPrefix.setPathId(unicastPrefix.pathId);
-                    bmpUnicastPrefix.setLabels(unicastPrefix.labels);
-                    bmpUnicastPrefix.setPrePolicy(unicastPrefix.prePolicy);
-                    bmpUnicastPrefix.setAdjRibIn(unicastPrefix.adjIn);
+                    bmpRib.update(bmpUnicastPrefix, entity -> {
+                        entity.setHashId(unicastPrefix.hash);
+                        entity.setBaseAttrHashId(unicastPrefix.baseAttrHash);
+                        entity.setIpv4(unicastPrefix.ipv4);
+                        entity.setOriginAs(unicastPrefix.originAs);
+                        entity.setPrefix(InetAddressUtils.str(unicastPrefix.prefix));
+                        entity.setPrefixLen(unicastPrefix.length);
+                        entity.setTimestamp(Date.from(unicastPrefix.timestamp));
+                        boolean withDrawn = !unicastPrefix.action.equals(UnicastPrefix.Action.ADD);
+                        entity.setWithDrawn(withDrawn);
+                        entity.setPathId(unicastPrefix.pathId);
+                        entity.setLabels(unicastPrefix.labels);
+                        entity.setPrePolicy(unicastPrefix.prePolicy);
+                        entity.setAdjRibIn(unicastPrefix.adjIn);
+                    });
                     bmpUnicastPrefixes.add(bmpUnicastPrefix);
                 } catch (Exception e) {
                     LOG.error("Exception while mapping Unicast prefix with prefix {} to UnicastPrefix entity",
@@ -562,6 +770,30 @@ public class BmpMessagePersister implements BmpMessageHandler {
         this.bmpIpRibLogDao = bmpIpRibLogDao;
     }
 
+    public BmpRib getBmpRib() {
+        return bmpRib;
+    }
+
+    public void setBmpRib(BmpRib bmpRib) {
+        this.bmpRib = bmpRib;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
     public SessionUtils getSessionUtils() {
         return sessionUtils;
     }
@@ -0,0 +1,300 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.bmp.adapter;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpPeer;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpUnicastPrefix;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpUnicastRib;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.PrefixByAS;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.PrefixTrie;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.StatsPeerRib;
+
+/**
+ * In-memory state of the unicast RIBs of all peers.
+ *
+ * Each peer has its own {@link PrefixTrie} holding the paths of all prefixes received from the peer. A global trie
+ * keeps the number of paths per prefix and origin AS, and each peer keeps its prefix counts, so the aggregations
+ * required by the stats are maintained incrementally on every update.
+ *
+ * The prefix entities held by the RIB are the same instances which are persisted by the {@link BmpMessagePersister}.
+ */
+public class BmpRib implements BmpUnicastRib {
+
+    // Origin AS numbers which are not accounted in the global RIB
+    private static final long AS_UNKNOWN = 0L;
+    private static final long AS_TRANS = 23456L;
+
+    private static final long PEER_RIB_INTERVAL = 900_000L;
+
+    private static class PeerRib {
+        private BmpPeer peer;
+        private final PrefixTrie<List<BmpUnicastPrefix>> prefixes = new PrefixTrie<>();
+        private long v4Prefixes;
+        private long v6Prefixes;
+    }
+
+    private static class GlobalPrefix {
+        private final String prefix;
+        private final int prefixLen;
+        private final Map<Long, Origin> origins = new HashMap<>(2);
+
+        private GlobalPrefix(final String prefix, final int prefixLen) {
+            this.prefix = prefix;
+            this.prefixLen = prefixLen;
+        }
+    }
+
+    private static class Origin {
+        private long count;
+        private Date timestamp;
+    }
+
+    private final Map<String, BmpUnicastPrefix> prefixesByHashId = new HashMap<>();
+
+    private final Map<String, PeerRib> peers = new HashMap<>();
+
+    private final PrefixTrie<GlobalPrefix> global = new PrefixTrie<>();
+
+    private volatile boolean loaded = false;
+
+    /**
+     * Replaces the state of the RIB with the given prefixes as stored in the database.
+     */
+    public synchronized void load(final Collection<BmpUnicastPrefix> prefixes) {
+        this.prefixesByHashId.clear();
+        this.peers.clear();
+        this.global.clear();
+
+        for (final BmpUnicastPrefix prefix : prefixes) {
+            this.add(prefix);
+        }
+
+        this.loaded = true;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * Marks the RIB as out of sync with the database, so it gets loaded again.
+     */
+    public void invalidate() {
+        this.loaded = false;
+    }
+
+    public synchronized int size() {
+        return this.prefixesByHashId.size();
+    }
+
+    public synchronized BmpUnicastPrefix getByHashId(final String hashId) {
+        return this.prefixesByHashId.get(hashId);
+    }
+
+    public synchronized BmpPeer getPeer(final String peerHashId) {
+        final PeerRib peerRib = this.peers.get(peerHashId);
+        return peerRib != null ? peerRib.peer : null;
+    }
+
+    public synchronized void putPeer(final BmpPeer peer) {
+        this.peers.computeIfAbsent(peer.getHashId(), k -> new PeerRib()).peer = peer;
+    }
+
+    /**
+     * Applies the changes to the prefix and updates the RIB accordingly.
+     *
+     * The prefix is added to the RIB if it is not yet part of it.
+     */
+    public synchronized void update(final BmpUnicastPrefix prefix, final Consumer<BmpUnicastPrefix> changes) {
+        if (this.prefixesByHashId.get(prefix.getHashId()) == prefix) {
+            this.remove(prefix);
+        }
+        changes.accept(prefix);
+        this.add(prefix);
+    }
+
+    /**
+     * Removes all prefixes of the given peer matching the predicate.
+     *
+     * @return the number of removed prefixes
+     */
+    public synchronized int removeIf(final String peerHashId, final Predicate<BmpUnicastPrefix> predicate) {
+        final PeerRib peerRib = this.peers.get(peerHashId);
+        if (peerRib == null) {
+            return 0;
+        }
+
+        final List<BmpUnicastPrefix> matching = new ArrayList<>();
+        peerRib.prefixes.forEach((p, paths) -> paths.stream().filter(predicate).forEach(matching::add));
+        matching.forEach(this::remove);
+        return matching.size();
+    }
+
+    @Override
+    public synchronized List<PrefixByAS> getPrefixesGroupedByAS() {
+        final List<PrefixByAS> result = new ArrayList<>(this.global.size());
+        this.global.forEach((p, globalPrefix) -> globalPrefix.origins.forEach((originAs, origin) ->
+                result.add(new PrefixByAS(globalPrefix.prefix, globalPrefix.prefixLen, originAs, origin.timestamp, origin.count))));
+        return result;
+    }
+
+    @Override
+    public synchronized List<StatsPeerRib> getPeerRibCountsByPeer() {
+        final Date intervalTime = new Date(System.currentTimeMillis() / PEER_RIB_INTERVAL * PEER_RIB_INTERVAL);
+
+        final List<StatsPeerRib> result = new ArrayList<>(this.peers.size());
+        this.peers.forEach((peerHashId, peerRib) -> {
+            if (peerRib.v4Prefixes + peerRib.v6Prefixes > 0) {
+                result.add(new StatsPeerRib(intervalTime, peerHashId, BigInteger.valueOf(peerRib.v4Prefixes), BigInteger.valueOf(peerRib.v6Prefixes)));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public synchronized List<BmpUnicastPrefix> findLongestMatch(final String peerHashId, final InetAddress address) {
+        final PeerRib peerRib = this.peers.get(peerHashId);
+        if (peerRib == null) {
+            return Collections.emptyList();
+        }
+
+        final List<BmpUnicastPrefix> paths = peerRib.prefixes.longestMatch(address);
+        return paths != null ? new ArrayList<>(paths) : Collections.emptyList();
+    }
+
+    private void add(final BmpUnicastPrefix prefix) {
+        final InetAddress address = InetAddressUtils.addr(prefix.getPrefix());
+        final int prefixLen = prefix.getPrefixLen();
+
+        final BmpUnicastPrefix previous = this.prefixesByHashId.get(prefix.getHashId());
+        if (previous != null) {
+            this.remove(previous);
+        }
+        this.prefixesByHashId.put(prefix.getHashId(), prefix);
+
+        final PeerRib peerRib = this.peers.computeIfAbsent(prefix.getBmpPeer().getHashId(), k -> new PeerRib());
+        if (peerRib.peer == null) {
+            peerRib.peer = prefix.getBmpPeer();
+        }
+
+        List<BmpUnicastPrefix> paths = peerRib.prefixes.get(address, prefixLen);
+        if (paths == null) {
+            paths = new ArrayList<>(1);
+            peerRib.prefixes.put(address, prefixLen, paths);
+        }
+        paths.add(prefix);
+
+        if (prefix.isWithDrawn()) {
+            return;
+        }
+
+        if (prefix.isIpv4()) {
+            peerRib.v4Prefixes++;
+        } else {
+            peerRib.v6Prefixes++;
+        }
+
+        final Long originAs = prefix.getOriginAs();
+        if (originAs == null || originAs == AS_UNKNOWN || originAs == AS_TRANS) {
+            return;
+        }
+
+        GlobalPrefix globalPrefix = this.global.get(address, prefixLen);
+        if (globalPrefix == null) {
+            globalPrefix = new GlobalPrefix(prefix.getPrefix(), prefixLen);
+            this.global.put(address, prefixLen, globalPrefix);
+        }
+
+        final Origin origin = globalPrefix.origins.computeIfAbsent(originAs, k -> new Origin());
+        origin.count++;
+        if (origin.timestamp == null || (prefix.getTimestamp() != null && prefix.getTimestamp().after(origin.timestamp))) {
+            origin.timestamp = prefix.getTimestamp();
+        }
+    }
+
+    private void remove(final BmpUnicastPrefix prefix) {
+        if (this.prefixesByHashId.get(prefix.getHashId()) != prefix) {
+            return;
+        }
+        this.prefixesByHashId.remove(prefix.getHashId());
+
+        final InetAddress address = InetAddressUtils.addr(prefix.getPrefix());
+        final int prefixLen = prefix.getPrefixLen();
+
+        final PeerRib peerRib = this.peers.get(prefix.getBmpPeer().getHashId());
+        final List<BmpUnicastPrefix> paths = peerRib.prefixes.get(address, prefixLen);
+        if (paths != null) {
+            for (final Iterator<BmpUnicastPrefix> it = paths.iterator(); it.hasNext(); ) {
+                if (it.next() == prefix) {
+                    it.remove();
+                    break;
+                }
+            }
+            if (paths.isEmpty()) {
+                peerRib.prefixes.remove(address, prefixLen);
+            }
+        }
+
+        if (prefix.isWithDrawn()) {
+            return;
+        }
+
+        if (prefix.isIpv4()) {
+            peerRib.v4Prefixes--;
+        } else {
+            peerRib.v6Prefixes--;
+        }
+
+        final Long originAs = prefix.getOriginAs();
+        if (originAs == null || originAs == AS_UNKNOWN || originAs == AS_TRANS) {
+            return;
+        }
+
+        final GlobalPrefix globalPrefix = this.global.get(address, prefixLen);
+        if (globalPrefix == null) {
+            return;
+        }
+
+        final Origin origin = globalPrefix.origins.get(originAs);
+        if (origin != null && --origin.count == 0) {
+            globalPrefix.origins.remove(originAs);
+            if (globalPrefix.origins.isEmpty()) {
+                this.global.remove(address, prefixLen);
+            }
+        }
+    }
+}
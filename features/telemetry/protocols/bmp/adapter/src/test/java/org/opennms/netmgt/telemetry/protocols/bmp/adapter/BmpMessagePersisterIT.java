@@ -166,6 +166,8 @@ public class BmpMessagePersisterIT {
         UnicastPrefix unicastPrefix = getUnicastPrefix();
         msg = new Message("91e3a7ff9f5676ed6ae6fcd8a6b455ec", Type.UNICAST_PREFIX, ImmutableList.of(unicastPrefix));
         bmpMessageHandler.handle(msg, context);
+        // Unicast prefixes are written behind
+        bmpMessageHandler.flush();
         List<BmpUnicastPrefix> prefixList = bmpUnicastPrefixDao.findAll();
         Assert.assertFalse(prefixList.isEmpty());
 
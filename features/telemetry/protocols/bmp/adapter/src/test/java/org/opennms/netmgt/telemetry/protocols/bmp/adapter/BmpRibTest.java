@@ -0,0 +1,188 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.bmp.adapter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.mock.MockSessionUtils;
+import org.opennms.netmgt.telemetry.protocols.bmp.adapter.openbmp.Context;
+import org.opennms.netmgt.telemetry.protocols.bmp.adapter.openbmp.proto.Message;
+import org.opennms.netmgt.telemetry.protocols.bmp.adapter.openbmp.proto.Type;
+import org.opennms.netmgt.telemetry.protocols.bmp.adapter.openbmp.proto.records.UnicastPrefix;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpIpRibLog;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpIpRibLogDao;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpPeer;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpPeerDao;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpUnicastPrefix;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpUnicastPrefixDao;
+
+import com.google.common.collect.ImmutableList;
+
+public class BmpRibTest {
+
+    @Test
+    public void testAggregations() {
+        final BmpPeer peer1 = peer("peer1");
+        final BmpPeer peer2 = peer("peer2");
+
+        final BmpRib rib = new BmpRib();
+        rib.load(ImmutableList.of(
+                prefix("p1", peer1, "10.0.0.0", 8, 65001L, false),
+                prefix("p2", peer2, "10.0.0.0", 8, 65001L, false),
+                prefix("p3", peer2, "10.0.0.0", 8, 65002L, false),
+                prefix("p4", peer1, "10.1.0.0", 16, 65003L, true),
+                prefix("p5", peer1, "2001:db8::", 32, 23456L, false)));
+        assertTrue(rib.isLoaded());
+        assertEquals(5, rib.size());
+
+        assertThat(groupedByAS(rib), Matchers.containsInAnyOrder("10.0.0.0/8 AS65001 x2", "10.0.0.0/8 AS65002 x1"));
+        assertThat(peerRibCounts(rib), Matchers.containsInAnyOrder("peer1 v4=1 v6=1", "peer2 v4=2 v6=0"));
+
+        // Withdraw a path and announce the withdrawn prefix again
+        rib.update(rib.getByHashId("p2"), p -> p.setWithDrawn(true));
+        rib.update(rib.getByHashId("p4"), p -> p.setWithDrawn(false));
+        assertThat(groupedByAS(rib), Matchers.containsInAnyOrder("10.0.0.0/8 AS65001 x1", "10.0.0.0/8 AS65002 x1", "10.1.0.0/16 AS65003 x1"));
+        assertThat(peerRibCounts(rib), Matchers.containsInAnyOrder("peer1 v4=2 v6=1", "peer2 v4=1 v6=0"));
+
+        // Change of origin
+        rib.update(rib.getByHashId("p3"), p -> p.setOriginAs(65001L));
+        assertThat(groupedByAS(rib), Matchers.containsInAnyOrder("10.0.0.0/8 AS65001 x2", "10.1.0.0/16 AS65003 x1"));
+
+        // New prefix
+        final BmpUnicastPrefix p6 = prefix("p6", peer2, "10.1.2.0", 24, 65004L, false);
+        rib.update(p6, p -> {});
+        assertSame(p6, rib.getByHashId("p6"));
+        assertEquals(ImmutableList.of(p6), rib.findLongestMatch("peer2", InetAddressUtils.addr("10.1.2.3")));
+        assertEquals(ImmutableList.of(rib.getByHashId("p2"), rib.getByHashId("p3")), rib.findLongestMatch("peer2", InetAddressUtils.addr("10.1.3.3")));
+        assertEquals(ImmutableList.of(rib.getByHashId("p4")), rib.findLongestMatch("peer1", InetAddressUtils.addr("10.1.2.3")));
+        assertEquals(Collections.emptyList(), rib.findLongestMatch("peer3", InetAddressUtils.addr("10.1.2.3")));
+
+        // Prune all prefixes of a peer
+        assertEquals(3, rib.removeIf("peer2", p -> true));
+        assertEquals(3, rib.size());
+        assertThat(groupedByAS(rib), Matchers.containsInAnyOrder("10.0.0.0/8 AS65001 x1", "10.1.0.0/16 AS65003 x1"));
+        assertThat(peerRibCounts(rib), Matchers.containsInAnyOrder("peer1 v4=2 v6=1"));
+        assertEquals(Collections.emptyList(), rib.findLongestMatch("peer2", InetAddressUtils.addr("10.1.2.3")));
+    }
+
+    @Test
+    public void testPersisterWritesBehind() {
+        final BmpPeer peer = peer("peer1");
+
+        final BmpUnicastPrefixDao bmpUnicastPrefixDao = Mockito.mock(BmpUnicastPrefixDao.class);
+        Mockito.when(bmpUnicastPrefixDao.findAll()).thenReturn(ImmutableList.of(prefix("p1", peer, "10.0.0.0", 8, 65001L, false)));
+        final BmpPeerDao bmpPeerDao = Mockito.mock(BmpPeerDao.class);
+        Mockito.when(bmpPeerDao.findByPeerHashId("peer1")).thenReturn(peer);
+        final BmpIpRibLogDao bmpIpRibLogDao = Mockito.mock(BmpIpRibLogDao.class);
+
+        final BmpMessagePersister persister = new BmpMessagePersister();
+        persister.setBmpUnicastPrefixDao(bmpUnicastPrefixDao);
+        persister.setBmpPeerDao(bmpPeerDao);
+        persister.setBmpIpRibLogDao(bmpIpRibLogDao);
+        persister.setSessionUtils(new MockSessionUtils());
+        persister.setFlushInterval(60_000);
+
+        final Context context = Mockito.mock(Context.class);
+        persister.handle(new Message("collector", Type.UNICAST_PREFIX, ImmutableList.of(
+                unicastPrefix("p1", "10.0.0.0", 8, 65001L, UnicastPrefix.Action.ADD),
+                unicastPrefix("p2", "10.1.0.0", 16, 65002L, UnicastPrefix.Action.ADD))), context);
+        persister.handle(new Message("collector", Type.UNICAST_PREFIX, ImmutableList.of(
+                unicastPrefix("p2", "10.1.0.0", 16, 65002L, UnicastPrefix.Action.DELETE))), context);
+
+        // Nothing is looked up per prefix and nothing is written before the flush
+        Mockito.verify(bmpUnicastPrefixDao, Mockito.times(1)).findAll();
+        Mockito.verify(bmpUnicastPrefixDao, Mockito.never()).findByHashId(Mockito.anyString());
+        // The peer is known from the loaded RIB
+        Mockito.verify(bmpPeerDao, Mockito.never()).findByPeerHashId("peer1");
+        Mockito.verify(bmpUnicastPrefixDao, Mockito.never()).saveOrUpdate(Mockito.any());
+
+        assertThat(groupedByAS(persister.getBmpRib()), Matchers.containsInAnyOrder("10.0.0.0/8 AS65001 x1"));
+
+        persister.flush();
+        Mockito.verify(bmpUnicastPrefixDao, Mockito.times(2)).saveOrUpdate(Mockito.any());
+        // Unchanged prefix is not logged, the new prefix is logged once per state
+        Mockito.verify(bmpIpRibLogDao, Mockito.times(2)).saveOrUpdate(Mockito.any(BmpIpRibLog.class));
+
+        persister.destroy();
+    }
+
+    private static List<String> groupedByAS(final BmpRib rib) {
+        return rib.getPrefixesGroupedByAS().stream()
+                .map(p -> p.getPrefix() + "/" + p.getPrefixLen() + " AS" + p.getOriginAs() + " x" + p.getCount())
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> peerRibCounts(final BmpRib rib) {
+        return rib.getPeerRibCountsByPeer().stream()
+                .map(p -> p.getPeerHashId() + " v4=" + p.getV4prefixes() + " v6=" + p.getV6prefixes())
+                .collect(Collectors.toList());
+    }
+
+    private static BmpPeer peer(final String hashId) {
+        final BmpPeer peer = new BmpPeer();
+        peer.setHashId(hashId);
+        return peer;
+    }
+
+    private static BmpUnicastPrefix prefix(final String hashId, final BmpPeer peer, final String prefix, final int prefixLen,
+                                           final long originAs, final boolean withdrawn) {
+        final BmpUnicastPrefix bmpUnicastPrefix = new BmpUnicastPrefix();
+        bmpUnicastPrefix.setHashId(hashId);
+        bmpUnicastPrefix.setBmpPeer(peer);
+        bmpUnicastPrefix.setBaseAttrHashId("attr");
+        bmpUnicastPrefix.setPrefix(prefix);
+        bmpUnicastPrefix.setPrefixLen(prefixLen);
+        bmpUnicastPrefix.setIpv4(prefix.indexOf(':') < 0);
+        bmpUnicastPrefix.setOriginAs(originAs);
+        bmpUnicastPrefix.setWithDrawn(withdrawn);
+        bmpUnicastPrefix.setTimestamp(new Date());
+        return bmpUnicastPrefix;
+    }
+
+    private static UnicastPrefix unicastPrefix(final String hashId, final String prefix, final int length, final long originAs,
+                                               final UnicastPrefix.Action action) {
+        final UnicastPrefix unicastPrefix = new UnicastPrefix();
+        unicastPrefix.action = action;
+        unicastPrefix.hash = hashId;
+        unicastPrefix.peerHash = "peer1";
+        unicastPrefix.baseAttrHash = "attr";
+        unicastPrefix.ipv4 = true;
+        unicastPrefix.originAs = originAs;
+        unicastPrefix.prefix = InetAddressUtils.addr(prefix);
+        unicastPrefix.length = length;
+        unicastPrefix.timestamp = Instant.now();
+        return unicastPrefix;
+    }
+}
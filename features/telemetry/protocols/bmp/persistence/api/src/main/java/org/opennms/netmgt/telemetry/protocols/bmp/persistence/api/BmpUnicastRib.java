@@ -0,0 +1,54 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.bmp.persistence.api;
+
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * Live unicast RIB state held in memory by the BMP persisting adapter.
+ *
+ * Allows the stats aggregation to be computed from the in-memory state instead of querying the
+ * {@link BmpUnicastPrefixDao} for every run.
+ */
+public interface BmpUnicastRib {
+
+    /**
+     * Whether the RIB has been populated from the database and reflects the state of all peers.
+     */
+    boolean isLoaded();
+
+    /**
+     * Same as {@link BmpUnicastPrefixDao#getPrefixesGroupedByAS()}.
+     */
+    List<PrefixByAS> getPrefixesGroupedByAS();
+
+    /**
+     * Same as {@link BmpUnicastPrefixDao#getPeerRibCountsByPeer()}.
+     */
+    List<StatsPeerRib> getPeerRibCountsByPeer();
+
+    /**
+     * Returns all paths of the most specific prefix of the given peer covering the address.
+     */
+    List<BmpUnicastPrefix> findLongestMatch(String peerHashId, InetAddress address);
+}
@@ -0,0 +1,353 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.bmp.persistence.api;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Path-compressed binary (Patricia) trie mapping IP prefixes to values.
+ *
+ * IPv4 and IPv6 prefixes are kept in separate trees. Host bits beyond the
+ * prefix length are ignored, so {@code 10.1.2.3/8} and {@code 10.0.0.0/8}
+ * denote the same key.
+ *
+ * The trie is not thread-safe.
+ *
+ * @param <V> the type of the stored values
+ */
+public class PrefixTrie<V> {
+
+    private static final class Node<V> {
+        private final byte[] key;
+        private final int length;
+        private V value;
+        private Node<V> parent;
+        private final Node<V>[] children;
+
+        @SuppressWarnings("unchecked")
+        private Node(final byte[] key, final int length, final V value) {
+            this.key = key;
+            this.length = length;
+            this.value = value;
+            this.children = (Node<V>[]) new Node[2];
+        }
+
+        private void setChild(final int bit, final Node<V> child) {
+            this.children[bit] = child;
+            if (child != null) {
+                child.parent = this;
+            }
+        }
+    }
+
+    private Node<V> root4;
+    private Node<V> root6;
+    private int size;
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public void clear() {
+        this.root4 = null;
+        this.root6 = null;
+        this.size = 0;
+    }
+
+    /**
+     * Returns the value stored for exactly the given prefix, or {@code null}.
+     */
+    public V get(final InetAddress prefix, final int length) {
+        final Node<V> node = this.find(prefix.getAddress(), length);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * Associates the value with the given prefix.
+     *
+     * @return the previous value of the prefix or {@code null}
+     */
+    public V put(final InetAddress prefix, final int length, final V value) {
+        Objects.requireNonNull(value);
+
+        final byte[] key = mask(prefix.getAddress(), length);
+
+        Node<V> node = this.root(key);
+        if (node == null) {
+            this.setRoot(key, new Node<>(key, length, value));
+            this.size++;
+            return null;
+        }
+
+        while (true) {
+            final int common = Math.min(Math.min(commonPrefixLength(node.key, key), node.length), length);
+
+            if (common < node.length) {
+                // The new prefix branches off above the current node
+                final Node<V> parent = node.parent;
+                final int slot = parent != null ? bit(key, parent.length) : -1;
+
+                final Node<V> split;
+                if (common == length) {
+                    split = new Node<>(key, length, value);
+                    split.setChild(bit(node.key, length), node);
+                } else {
+                    split = new Node<>(mask(key, common), common, null);
+                    split.setChild(bit(node.key, common), node);
+                    split.setChild(bit(key, common), new Node<>(key, length, value));
+                }
+
+                if (parent != null) {
+                    parent.setChild(slot, split);
+                } else {
+                    split.parent = null;
+                    this.setRoot(key, split);
+                }
+                this.size++;
+                return null;
+            }
+
+            if (node.length == length) {
+                final V previous = node.value;
+                node.value = value;
+                if (previous == null) {
+                    this.size++;
+                }
+                return previous;
+            }
+
+            final int next = bit(key, node.length);
+            if (node.children[next] == null) {
+                node.setChild(next, new Node<>(key, length, value));
+                this.size++;
+                return null;
+            }
+            node = node.children[next];
+        }
+    }
+
+    /**
+     * Removes the value stored for exactly the given prefix.
+     *
+     * @return the removed value or {@code null}
+     */
+    public V remove(final InetAddress prefix, final int length) {
+        final Node<V> node = this.find(prefix.getAddress(), length);
+        if (node == null || node.value == null) {
+            return null;
+        }
+
+        final V previous = node.value;
+        node.value = null;
+        this.size--;
+
+        this.compact(node);
+        return previous;
+    }
+
+    /**
+     * Returns the value of the most specific stored prefix covering the given prefix, or {@code null}.
+     */
+    public V longestMatch(final InetAddress address, final int length) {
+        final byte[] key = address.getAddress();
+
+        V match = null;
+        for (Node<V> node = this.root(key); node != null && node.length <= length && covers(node, key); node = node.children[bit(key, node.length)]) {
+            if (node.value != null) {
+                match = node.value;
+            }
+            if (node.length == length) {
+                break;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Returns the value of the most specific stored prefix covering the given address, or {@code null}.
+     */
+    public V longestMatch(final InetAddress address) {
+        return this.longestMatch(address, address.getAddress().length * 8);
+    }
+
+    /**
+     * Calls the consumer for all stored prefixes covering the given prefix, from the least to the most specific one.
+     */
+    public void forEachCovering(final InetAddress address, final int length, final Consumer<V> consumer) {
+        final byte[] key = address.getAddress();
+
+        for (Node<V> node = this.root(key); node != null && node.length <= length && covers(node, key); node = node.children[bit(key, node.length)]) {
+            if (node.value != null) {
+                consumer.accept(node.value);
+            }
+            if (node.length == length) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer for all stored prefixes in address order, IPv4 before IPv6.
+     */
+    public void forEach(final BiConsumer<Prefix, V> consumer) {
+        walk(this.root4, consumer);
+        walk(this.root6, consumer);
+    }
+
+    private static <V> void walk(final Node<V> node, final BiConsumer<Prefix, V> consumer) {
+        if (node == null) {
+            return;
+        }
+        if (node.value != null) {
+            consumer.accept(new Prefix(node.key, node.length), node.value);
+        }
+        walk(node.children[0], consumer);
+        walk(node.children[1], consumer);
+    }
+
+    private Node<V> find(final byte[] key, final int length) {
+        Node<V> node = this.root(key);
+        while (node != null && node.length <= length && covers(node, key)) {
+            if (node.length == length) {
+                return node;
+            }
+            node = node.children[bit(key, node.length)];
+        }
+        return null;
+    }
+
+    private void compact(Node<V> node) {
+        // Drop glue nodes which do not branch any more
+        while (node != null && node.value == null) {
+            final Node<V> left = node.children[0];
+            final Node<V> right = node.children[1];
+            if (left != null && right != null) {
+                return;
+            }
+
+            final Node<V> child = left != null ? left : right;
+            final Node<V> parent = node.parent;
+            if (parent == null) {
+                if (child != null) {
+                    child.parent = null;
+                }
+                this.setRoot(node.key, child);
+                return;
+            }
+
+            parent.setChild(parent.children[0] == node ? 0 : 1, child);
+            if (child != null) {
+                return;
+            }
+            node = parent;
+        }
+    }
+
+    private Node<V> root(final byte[] key) {
+        return key.length == 4 ? this.root4 : this.root6;
+    }
+
+    private void setRoot(final byte[] key, final Node<V> node) {
+        if (key.length == 4) {
+            this.root4 = node;
+        } else {
+            this.root6 = node;
+        }
+    }
+
+    private static boolean covers(final Node<?> node, final byte[] key) {
+        return node.key.length == key.length && commonPrefixLength(node.key, key) >= node.length;
+    }
+
+    private static int bit(final byte[] key, final int index) {
+        return (key[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    private static int commonPrefixLength(final byte[] a, final byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            final int diff = (a[i] ^ b[i]) & 0xff;
+            if (diff != 0) {
+                return i * 8 + Integer.numberOfLeadingZeros(diff) - 24;
+            }
+        }
+        return a.length * 8;
+    }
+
+    private static byte[] mask(final byte[] address, final int length) {
+        if (length < 0 || length > address.length * 8) {
+            throw new IllegalArgumentException("Invalid prefix length: " + length);
+        }
+
+        final byte[] key = address.clone();
+        for (int i = 0; i < key.length; i++) {
+            final int bits = length - i * 8;
+            if (bits <= 0) {
+                key[i] = 0;
+            } else if (bits < 8) {
+                key[i] &= (byte) (0xff << (8 - bits));
+            }
+        }
+        return key;
+    }
+
+    /**
+     * A prefix stored in the trie.
+     */
+    public static final class Prefix {
+        private final byte[] address;
+        private final int length;
+
+        private Prefix(final byte[] address, final int length) {
+            this.address = address;
+            this.length = length;
+        }
+
+        public InetAddress getAddress() {
+            try {
+                return InetAddress.getByAddress(this.address);
+            } catch (final UnknownHostException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public int getLength() {
+            return this.length;
+        }
+
+        public boolean isIpv4() {
+            return this.address.length == 4;
+        }
+
+        @Override
+        public String toString() {
+            return this.getAddress().getHostAddress() + "/" + this.length;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.bmp.persistence.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+
+public class PrefixTrieTest {
+
+    private static InetAddress addr(final String address) {
+        return InetAddressUtils.addr(address);
+    }
+
+    @Test
+    public void testExactLookups() {
+        final PrefixTrie<String> trie = new PrefixTrie<>();
+        assertNull(trie.put(addr("10.0.0.0"), 8, "a"));
+        assertNull(trie.put(addr("10.1.0.0"), 16, "b"));
+        assertNull(trie.put(addr("10.1.2.0"), 24, "c"));
+        assertNull(trie.put(addr("192.168.0.0"), 16, "d"));
+        assertNull(trie.put(addr("2001:db8::"), 32, "e"));
+        assertEquals(5, trie.size());
+
+        assertEquals("a", trie.get(addr("10.0.0.0"), 8));
+        assertEquals("b", trie.get(addr("10.1.0.0"), 16));
+        assertEquals("c", trie.get(addr("10.1.2.0"), 24));
+        assertEquals("d", trie.get(addr("192.168.0.0"), 16));
+        assertEquals("e", trie.get(addr("2001:db8::"), 32));
+
+        // Host bits are ignored
+        assertEquals("a", trie.get(addr("10.1.2.3"), 8));
+        assertEquals("b", trie.put(addr("10.1.255.255"), 16, "b2"));
+        assertEquals("b2", trie.get(addr("10.1.0.0"), 16));
+        assertEquals(5, trie.size());
+
+        assertNull(trie.get(addr("10.0.0.0"), 9));
+        assertNull(trie.get(addr("10.1.0.0"), 24));
+        assertNull(trie.get(addr("2001:db8::"), 8));
+    }
+
+    @Test
+    public void testLongestMatch() {
+        final PrefixTrie<String> trie = new PrefixTrie<>();
+        trie.put(addr("0.0.0.0"), 0, "default");
+        trie.put(addr("10.0.0.0"), 8, "a");
+        trie.put(addr("10.1.0.0"), 16, "b");
+        trie.put(addr("10.1.2.0"), 24, "c");
+        trie.put(addr("10.1.2.128"), 25, "d");
+
+        assertEquals("c", trie.longestMatch(addr("10.1.2.3")));
+        assertEquals("d", trie.longestMatch(addr("10.1.2.200")));
+        assertEquals("b", trie.longestMatch(addr("10.1.3.1")));
+        assertEquals("a", trie.longestMatch(addr("10.2.3.1")));
+        assertEquals("default", trie.longestMatch(addr("11.0.0.1")));
+        assertEquals("b", trie.longestMatch(addr("10.1.2.0"), 23));
+        assertNull(trie.longestMatch(addr("::1")));
+
+        final List<String> covering = new ArrayList<>();
+        trie.forEachCovering(addr("10.1.2.130"), 32, covering::add);
+        assertEquals(List.of("default", "a", "b", "c", "d"), covering);
+
+        covering.clear();
+        trie.forEachCovering(addr("10.1.0.0"), 16, covering::add);
+        assertEquals(List.of("default", "a", "b"), covering);
+    }
+
+    @Test
+    public void testRemove() {
+        final PrefixTrie<String> trie = new PrefixTrie<>();
+        trie.put(addr("10.0.0.0"), 8, "a");
+        trie.put(addr("10.1.0.0"), 16, "b");
+        trie.put(addr("10.2.0.0"), 16, "c");
+
+        assertNull(trie.remove(addr("10.3.0.0"), 16));
+        assertEquals("a", trie.remove(addr("10.0.0.0"), 8));
+        assertNull(trie.get(addr("10.0.0.0"), 8));
+        assertEquals("b", trie.longestMatch(addr("10.1.1.1")));
+        assertNull(trie.longestMatch(addr("10.3.1.1")));
+
+        assertEquals("b", trie.remove(addr("10.1.0.0"), 16));
+        assertEquals("c", trie.remove(addr("10.2.0.0"), 16));
+        assertEquals(0, trie.size());
+        assertTrue(trie.isEmpty());
+        assertNull(trie.longestMatch(addr("10.2.0.1")));
+    }
+
+    @Test
+    public void testAgainstMap() throws Exception {
+        final Random random = new Random(42);
+        final PrefixTrie<String> trie = new PrefixTrie<>();
+        final Map<String, String> reference = new HashMap<>();
+
+        for (int i = 0; i < 20000; i++) {
+            final int length = random.nextInt(33);
+            final byte[] bytes = new byte[] { 10, (byte) random.nextInt(4), (byte) random.nextInt(4), (byte) random.nextInt(256) };
+            final InetAddress prefix = mask(bytes, length);
+            final String key = InetAddressUtils.str(prefix) + "/" + length;
+
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(key), trie.remove(prefix, length));
+            } else {
+                assertEquals(reference.put(key, key), trie.put(prefix, length, key));
+            }
+            assertEquals(reference.size(), trie.size());
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            final byte[] bytes = new byte[] { 10, (byte) random.nextInt(4), (byte) random.nextInt(4), (byte) random.nextInt(256) };
+            String expected = null;
+            for (int length = 32; length >= 0 && expected == null; length--) {
+                expected = reference.get(InetAddressUtils.str(mask(bytes, length)) + "/" + length);
+            }
+            assertEquals(expected, trie.longestMatch(InetAddress.getByAddress(bytes)));
+        }
+
+        final List<String> keys = new ArrayList<>();
+        trie.forEach((prefix, value) -> {
+            assertEquals(value, prefix.toString());
+            keys.add(value);
+        });
+        assertEquals(reference.size(), keys.size());
+    }
+
+    private static InetAddress mask(final byte[] address, final int length) {
+        final byte[] masked = address.clone();
+        for (int i = 0; i < masked.length; i++) {
+            final int bits = Math.max(0, Math.min(8, length - i * 8));
+            masked[i] &= (byte) (0xff << (8 - bits));
+        }
+        try {
+            return InetAddress.getByAddress(masked);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
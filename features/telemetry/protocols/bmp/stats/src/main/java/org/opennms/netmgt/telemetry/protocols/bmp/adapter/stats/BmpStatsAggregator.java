@@ -21,12 +21,17 @@
  */
 package org.opennms.netmgt.telemetry.protocols.bmp.adapter.stats;
 
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.SessionUtils;
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpAsnInfoDao;
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpGlobalIpRib;
@@ -47,7 +52,9 @@ import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpStatsIpOrig
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpStatsPeerRib;
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpStatsPeerRibDao;
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpUnicastPrefixDao;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.BmpUnicastRib;
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.PrefixByAS;
+import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.PrefixTrie;
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.StatsByAsn;
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.StatsByPeer;
 import org.opennms.netmgt.telemetry.protocols.bmp.persistence.api.StatsByPrefix;
@@ -58,6 +65,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
@@ -109,6 +118,9 @@ public class BmpStatsAggregator {
     @Autowired
     private SessionUtils sessionUtils;
 
+    // In-memory RIBs of the persisting adapter, if running on this instance
+    private List<BmpUnicastRib> bmpUnicastRibs = Collections.emptyList();
+
     public void init() {
         scheduledExecutorService.scheduleAtFixedRate(this::updatePeerStats, 0, 5, TimeUnit.MINUTES);
         scheduledExecutorService.scheduleAtFixedRate(this::updateStatsByAsn, 0, 5, TimeUnit.MINUTES);
@@ -124,11 +136,15 @@ public class BmpStatsAggregator {
 
     private void updateGlobalRibsAndAsnInfo() {
         LOG.debug("Updating GlobalRibs ++");
-        setShouldDeleteForExisting();
-        List<PrefixByAS> prefixByASList = bmpUnicastPrefixDao.getPrefixesGroupedByAS();
+        Table<String, Long, BmpGlobalIpRib> existingGlobalRibs = setShouldDeleteForExisting();
+        PrefixTrie<List<BmpRpkiInfo>> rpkiInfos = loadRpkiInfos();
+        BmpUnicastRib bmpUnicastRib = getLoadedRib();
+        List<PrefixByAS> prefixByASList = bmpUnicastRib != null
+                ? bmpUnicastRib.getPrefixesGroupedByAS()
+                : bmpUnicastPrefixDao.getPrefixesGroupedByAS();
         LOG.debug("Retrieved {} PrefixByAS elements", prefixByASList.size());
         prefixByASList.forEach(prefixByAS -> {
-            BmpGlobalIpRib bmpGlobalIpRib = buildGlobalIpRib(prefixByAS);
+            BmpGlobalIpRib bmpGlobalIpRib = buildGlobalIpRib(prefixByAS, existingGlobalRibs, rpkiInfos);
             if (bmpGlobalIpRib != null) {
                 try {
                     bmpGlobalIpRibDao.saveOrUpdate(bmpGlobalIpRib);
@@ -142,13 +158,74 @@ public class BmpStatsAggregator {
         LOG.debug("Updating GlobalRibs --");
     }
 
-    private void setShouldDeleteForExisting() {
+    private Table<String, Long, BmpGlobalIpRib> setShouldDeleteForExisting() {
 
+        Table<String, Long, BmpGlobalIpRib> existingGlobalRibs = HashBasedTable.create();
         List<BmpGlobalIpRib> bmpGlobalIpRibs = bmpGlobalIpRibDao.findAll();
         bmpGlobalIpRibs.forEach(bmpGlobalIpRib -> {
             bmpGlobalIpRib.setShouldDelete(true);
             bmpGlobalIpRibDao.update(bmpGlobalIpRib);
+            if (bmpGlobalIpRib.getPrefix() != null && bmpGlobalIpRib.getRecvOriginAs() != null
+                    && !existingGlobalRibs.contains(bmpGlobalIpRib.getPrefix(), bmpGlobalIpRib.getRecvOriginAs())) {
+                existingGlobalRibs.put(bmpGlobalIpRib.getPrefix(), bmpGlobalIpRib.getRecvOriginAs(), bmpGlobalIpRib);
+            }
+        });
+        return existingGlobalRibs;
+    }
+
+    private PrefixTrie<List<BmpRpkiInfo>> loadRpkiInfos() {
+        PrefixTrie<List<BmpRpkiInfo>> rpkiInfos = new PrefixTrie<>();
+        bmpRpkiInfoDao.findAll().forEach(bmpRpkiInfo -> {
+            InetAddress prefix = parsePrefix(bmpRpkiInfo.getPrefix());
+            if (prefix == null || bmpRpkiInfo.getPrefixLen() == null) {
+                return;
+            }
+            List<BmpRpkiInfo> roas = rpkiInfos.get(prefix, bmpRpkiInfo.getPrefixLen());
+            if (roas == null) {
+                roas = new ArrayList<>(1);
+                rpkiInfos.put(prefix, bmpRpkiInfo.getPrefixLen(), roas);
+            }
+            roas.add(bmpRpkiInfo);
         });
+        return rpkiInfos;
+    }
+
+    /**
+     * Finds the ROA covering the given prefix, i.e. a ROA for the same or a less specific prefix with a max length
+     * allowing the prefix length. ROAs authorizing the received origin AS are preferred, followed by the most specific
+     * ones.
+     */
+    private static BmpRpkiInfo findMatchingRpkiInfo(PrefixTrie<List<BmpRpkiInfo>> rpkiInfos, String prefix, int prefixLen, Long originAs) {
+        InetAddress address = parsePrefix(prefix);
+        if (address == null) {
+            return null;
+        }
+        BmpRpkiInfo[] match = new BmpRpkiInfo[1];
+        rpkiInfos.forEachCovering(address, prefixLen, roas -> roas.forEach(roa -> {
+            if (roa.getPrefixLenMax() != null && roa.getPrefixLenMax() < prefixLen) {
+                return;
+            }
+            if (match[0] == null || Objects.equals(roa.getOriginAs(), originAs) || !Objects.equals(match[0].getOriginAs(), originAs)) {
+                match[0] = roa;
+            }
+        }));
+        return match[0];
+    }
+
+    private static InetAddress parsePrefix(String prefix) {
+        if (Strings.isNullOrEmpty(prefix)) {
+            return null;
+        }
+        try {
+            return InetAddressUtils.addr(prefix);
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Invalid prefix {}", prefix, e);
+            return null;
+        }
+    }
+
+    private BmpUnicastRib getLoadedRib() {
+        return bmpUnicastRibs.stream().filter(BmpUnicastRib::isLoaded).findFirst().orElse(null);
     }
 
     private void deleteExpiredGlobalRibs() {
@@ -158,9 +235,11 @@ public class BmpStatsAggregator {
         LOG.debug("Deleting expired global ribs -- ");
     }
 
-    private BmpGlobalIpRib buildGlobalIpRib(PrefixByAS prefixByAS) {
+    private BmpGlobalIpRib buildGlobalIpRib(PrefixByAS prefixByAS,
+                                            Table<String, Long, BmpGlobalIpRib> existingGlobalRibs,
+                                            PrefixTrie<List<BmpRpkiInfo>> rpkiInfos) {
         try {
-            BmpGlobalIpRib bmpGlobalIpRib = bmpGlobalIpRibDao.findByPrefixAndAS(prefixByAS.getPrefix(), prefixByAS.getOriginAs());
+            BmpGlobalIpRib bmpGlobalIpRib = existingGlobalRibs.get(prefixByAS.getPrefix(), prefixByAS.getOriginAs());
             if (bmpGlobalIpRib == null) {
                 bmpGlobalIpRib = new BmpGlobalIpRib();
                 bmpGlobalIpRib.setPrefix(prefixByAS.getPrefix());
@@ -176,7 +255,7 @@ public class BmpStatsAggregator {
                     }
                 }
                 // Fetch Rpki info
-                BmpRpkiInfo bmpRpkiInfo = bmpRpkiInfoDao.findMatchingRpkiInfoForGlobalRIb(prefix, bmpGlobalIpRib.getPrefixLen());
+                BmpRpkiInfo bmpRpkiInfo = findMatchingRpkiInfo(rpkiInfos, prefix, bmpGlobalIpRib.getPrefixLen(), bmpGlobalIpRib.getRecvOriginAs());
                 if(bmpRpkiInfo != null) {
                     bmpGlobalIpRib.setRpkiOriginAs(bmpRpkiInfo.getOriginAs());
                 }
@@ -331,7 +410,10 @@ public class BmpStatsAggregator {
 
     private void updatePeerRibCountStats() {
         LOG.debug("Updating StatsPeerRib ++");
-        List<StatsPeerRib> statsPeerRibs = bmpUnicastPrefixDao.getPeerRibCountsByPeer();
+        BmpUnicastRib bmpUnicastRib = getLoadedRib();
+        List<StatsPeerRib> statsPeerRibs = bmpUnicastRib != null
+                ? bmpUnicastRib.getPeerRibCountsByPeer()
+                : bmpUnicastPrefixDao.getPeerRibCountsByPeer();
         LOG.debug("Retrieved {} StatsPeerRib elements", statsPeerRibs.size());
 
         statsPeerRibs.forEach(statsPeerRib -> {
@@ -462,4 +544,8 @@ public class BmpStatsAggregator {
     public void setSessionUtils(SessionUtils sessionUtils) {
         this.sessionUtils = sessionUtils;
     }
+
+    public void setBmpUnicastRibs(List<BmpUnicastRib> bmpUnicastRibs) {
+        this.bmpUnicastRibs = bmpUnicastRibs;
+    }
 }
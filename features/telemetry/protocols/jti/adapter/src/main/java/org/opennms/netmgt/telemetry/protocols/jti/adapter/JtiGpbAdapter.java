@@ -21,6 +21,7 @@
  */
 package org.opennms.netmgt.telemetry.protocols.jti.adapter;
 
+import java.lang.invoke.MethodHandles;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Optional;
@@ -40,7 +41,6 @@ import org.opennms.netmgt.telemetry.api.adapter.TelemetryMessageLogEntry;
 import org.opennms.netmgt.telemetry.config.api.AdapterDefinition;
 import org.opennms.netmgt.telemetry.protocols.collection.AbstractScriptedCollectionAdapter;
 import org.opennms.netmgt.telemetry.protocols.collection.CollectionSetWithAgent;
-import org.opennms.netmgt.telemetry.protocols.collection.ScriptedCollectionSetBuilder;
 import org.opennms.netmgt.telemetry.protocols.jti.adapter.proto.CpuMemoryUtilizationOuterClass;
 import org.opennms.netmgt.telemetry.protocols.jti.adapter.proto.FirewallOuterClass;
 import org.opennms.netmgt.telemetry.protocols.jti.adapter.proto.LogicalPortOuterClass;
@@ -63,7 +63,8 @@ import com.google.protobuf.InvalidProtocolBufferException;
  * An adapter for handling Junos Telemetry Interface packets.
  *
  * Messages are decoded using the corresponding classes generated by the Google
- * Protobuf definitions and forwarded to a script for further processing.
+ * Protobuf definitions and either mapped to collection sets using a declarative
+ * mapping or forwarded to a script for further processing.
  *
  * @author jwhite
  */
@@ -94,6 +95,21 @@ public class JtiGpbAdapter extends AbstractScriptedCollectionAdapter {
         super(adapterConfig, metricRegistry);
     }
 
+    @Override
+    protected ExtensionRegistry getExtensionRegistry() {
+        return getRegistry();
+    }
+
+    static ExtensionRegistry getRegistry() {
+        return s_registry;
+    }
+
+    @Override
+    protected MethodHandles.Lookup getMappingLookup() {
+        // The generated messages are loaded by the class loader of this bundle
+        return MethodHandles.lookup();
+    }
+
     @Override
     public Stream<CollectionSetWithAgent> handleCollectionMessage(TelemetryMessageLogEntry message, TelemetryMessageLog messageLog) {
         final TelemetryTop.TelemetryStream jtiMsg;
@@ -140,14 +156,12 @@ public class JtiGpbAdapter extends AbstractScriptedCollectionAdapter {
             return Stream.empty();
         }
 
-        final ScriptedCollectionSetBuilder builder = getCollectionBuilder();
-        if (builder == null) {
-            LOG.error("Error compiling script '{}'. See logs for details.", this.getScript());
-            return Stream.empty();
-        }
-
         try {
-            final CollectionSet collectionSet = builder.build(agent, jtiMsg, jtiMsg.getTimestamp());
+            final CollectionSet collectionSet = buildCollectionSet(agent, jtiMsg, jtiMsg.getTimestamp());
+            if (collectionSet == null) {
+                LOG.error("Error compiling script '{}'. See logs for details.", this.getScript());
+                return Stream.empty();
+            }
             return Stream.of(new CollectionSetWithAgent(agent, collectionSet));
 
         } catch (final ScriptException e) {
@@ -0,0 +1,80 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.jti.adapter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.collection.api.CollectionSet;
+import org.opennms.netmgt.collection.dto.CollectionAgentDTO;
+import org.opennms.netmgt.telemetry.protocols.collection.ScriptedCollectionSetBuilder;
+import org.opennms.netmgt.telemetry.protocols.collection.mapping.CompiledTelemetryMapping;
+import org.opennms.netmgt.telemetry.protocols.jti.adapter.proto.TelemetryTop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the default JTI script with the equivalent compiled mapping on a recorded message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class JtiMappingBenchmark {
+
+    private CollectionAgentDTO agent;
+
+    private TelemetryTop.TelemetryStream message;
+
+    private ScriptedCollectionSetBuilder script;
+
+    private CompiledTelemetryMapping mapping;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Not a mock, which would dominate the measurement
+        agent = new CollectionAgentDTO();
+        agent.setNodeId(1);
+        message = JtiMappingTest.loadMessage();
+        script = new ScriptedCollectionSetBuilder(JtiMappingTest.getAdapterFile("junos-telemetry-interface.groovy"));
+        mapping = JtiMappingTest.compileMapping();
+    }
+
+    @Benchmark
+    public CollectionSet script() throws Exception {
+        return script.build(agent, message, message.getTimestamp());
+    }
+
+    @Benchmark
+    public CollectionSet mapping() {
+        return mapping.build(agent, message, message.getTimestamp());
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.jti.adapter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.script.ScriptException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionAttribute;
+import org.opennms.netmgt.collection.api.CollectionResource;
+import org.opennms.netmgt.collection.api.CollectionSet;
+import org.opennms.netmgt.collection.support.AbstractCollectionSetVisitor;
+import org.opennms.netmgt.telemetry.config.api.AdapterDefinition;
+import org.opennms.netmgt.telemetry.protocols.collection.AbstractScriptedCollectionAdapter;
+import org.opennms.netmgt.telemetry.protocols.collection.ScriptedCollectionSetBuilder;
+import org.opennms.netmgt.telemetry.protocols.collection.mapping.CompiledTelemetryMapping;
+import org.opennms.netmgt.telemetry.protocols.collection.mapping.TelemetryMapping;
+import org.opennms.netmgt.telemetry.protocols.jti.adapter.proto.Port;
+import org.opennms.netmgt.telemetry.protocols.jti.adapter.proto.TelemetryTop;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.Message;
+
+public class JtiMappingTest {
+
+    private CollectionAgent agent;
+
+    private TelemetryTop.TelemetryStream message;
+
+    @Before
+    public void setUp() throws IOException {
+        agent = Mockito.mock(CollectionAgent.class);
+        Mockito.when(agent.getNodeId()).thenReturn(1);
+        message = loadMessage();
+    }
+
+    @Test
+    public void canMapRecordedMessage() {
+        final CompiledTelemetryMapping mapping = compileMapping();
+        final List<String> values = visit(mapping.build(agent, message, message.getTimestamp()));
+
+        // The sequence number and 4 attributes for every interface in the message
+        final int interfaces = message.getEnterprise()
+                .getExtension(TelemetryTop.juniperNetworks)
+                .getExtension(Port.jnprInterfaceExt)
+                .getInterfaceStatsCount();
+        assertThat(values, hasSize(interfaces * 4 + 1));
+        assertThat(values, hasItem("sequence=" + message.getSequenceNumber()));
+    }
+
+    @Test
+    public void mappingMatchesScript() throws IOException, ScriptException {
+        final ScriptedCollectionSetBuilder script = new ScriptedCollectionSetBuilder(getAdapterFile("junos-telemetry-interface.groovy"));
+        final CompiledTelemetryMapping mapping = compileMapping();
+
+        assertThat(visit(mapping.build(agent, message, message.getTimestamp())),
+                equalTo(visit(script.build(agent, message, message.getTimestamp()))));
+    }
+
+    /**
+     * In Karaf the adapter and its generated messages are loaded by the class loader of the adapter bundle and not by
+     * the one of the mapping. Ensures the adapter still compiles the mapping instead of falling back to the script.
+     */
+    @Test
+    public void canMapMessagesOfAnotherClassLoader() throws Exception {
+        try (final URLClassLoader classLoader = new AdapterClassLoader()) {
+            final Class<?> adapterClass = classLoader.loadClass(JtiGpbAdapter.class.getName());
+            assertThat(adapterClass, not(sameInstance(JtiGpbAdapter.class)));
+
+            final AdapterDefinition adapterConfig = Mockito.mock(AdapterDefinition.class);
+            Mockito.when(adapterConfig.getFullName()).thenReturn("JTI-GPB");
+            final AbstractScriptedCollectionAdapter adapter = (AbstractScriptedCollectionAdapter) adapterClass
+                    .getConstructor(AdapterDefinition.class, MetricRegistry.class)
+                    .newInstance(adapterConfig, new MetricRegistry());
+            adapter.setMapping(getAdapterFile("junos-telemetry-interface.xml").getAbsolutePath());
+
+            final Method getRegistry = adapterClass.getDeclaredMethod("getRegistry");
+            getRegistry.setAccessible(true);
+            final ExtensionRegistry registry = (ExtensionRegistry) getRegistry.invoke(null);
+
+            final Class<?> streamClass = classLoader.loadClass(TelemetryTop.TelemetryStream.class.getName());
+            final Message prototype = (Message) streamClass.getMethod("getDefaultInstance").invoke(null);
+            final Message isolatedMessage;
+            try (InputStream is = JtiMappingTest.class.getResourceAsStream("/jti_15.1F4_ifd_ae_40000.raw")) {
+                isolatedMessage = prototype.getParserForType().parseFrom(is, registry);
+            }
+
+            final Method getCompiledMapping = AbstractScriptedCollectionAdapter.class.getDeclaredMethod("getCompiledMapping", Message.class);
+            getCompiledMapping.setAccessible(true);
+            final CompiledTelemetryMapping isolatedMapping = (CompiledTelemetryMapping) getCompiledMapping.invoke(adapter, isolatedMessage);
+            assertThat(isolatedMapping, notNullValue());
+
+            assertThat(visit(isolatedMapping.build(agent, isolatedMessage, message.getTimestamp())),
+                    equalTo(visit(compileMapping().build(agent, message, message.getTimestamp()))));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsOnUnknownField() {
+        final TelemetryMapping telemetryMapping = JaxbUtils.unmarshal(TelemetryMapping.class, getAdapterFile("junos-telemetry-interface.xml"));
+        telemetryMapping.getResources().get(0).getAttributes().get(0).setPath("ingress_stats/no_such_field");
+        CompiledTelemetryMapping.compile(telemetryMapping, TelemetryTop.TelemetryStream.getDefaultInstance(), JtiGpbAdapter.getRegistry(), MethodHandles.lookup());
+    }
+
+    protected static TelemetryTop.TelemetryStream loadMessage() throws IOException {
+        try (InputStream is = JtiMappingTest.class.getResourceAsStream("/jti_15.1F4_ifd_ae_40000.raw")) {
+            return TelemetryTop.TelemetryStream.parseFrom(is, JtiGpbAdapter.getRegistry());
+        }
+    }
+
+    protected static CompiledTelemetryMapping compileMapping() {
+        final TelemetryMapping telemetryMapping = JaxbUtils.unmarshal(TelemetryMapping.class, getAdapterFile("junos-telemetry-interface.xml"));
+        return CompiledTelemetryMapping.compile(telemetryMapping, TelemetryTop.TelemetryStream.getDefaultInstance(), JtiGpbAdapter.getRegistry(), MethodHandles.lookup());
+    }
+
+    /**
+     * Returns the script or mapping file shipped with the assembly.
+     */
+    protected static File getAdapterFile(final String name) {
+        return new File("../../../../../opennms-base-assembly/src/main/filtered/etc/telemetryd-adapters/" + name);
+    }
+
+    /**
+     * Loads the classes of the adapter and its generated messages itself and delegates everything else to the class
+     * loader of the test, like the class loader of the adapter bundle does.
+     */
+    private static class AdapterClassLoader extends URLClassLoader {
+        private static final String ADAPTER_PACKAGE = JtiGpbAdapter.class.getPackage().getName() + ".";
+
+        private AdapterClassLoader() {
+            super(new URL[]{JtiGpbAdapter.class.getProtectionDomain().getCodeSource().getLocation()},
+                    JtiMappingTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(ADAPTER_PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) {
+                    try {
+                        clazz = findClass(name);
+                    } catch (final ClassNotFoundException e) {
+                        // Not part of the adapter, like the test classes
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(clazz);
+                }
+                return clazz;
+            }
+        }
+    }
+
+    private static List<String> visit(final CollectionSet collectionSet) {
+        final List<String> values = new ArrayList<>();
+        collectionSet.getSequenceNumber().ifPresent(sequence -> values.add("sequence=" + sequence));
+        collectionSet.visit(new AbstractCollectionSetVisitor() {
+            private String resource;
+
+            @Override
+            public void visitResource(CollectionResource resource) {
+                this.resource = resource.getResourceTypeName() + "/" + resource.getInstance();
+            }
+
+            @Override
+            public void visitAttribute(CollectionAttribute attribute) {
+                values.add(resource + "/" + attribute.getAttributeType().getGroupType().getName() + "/" + attribute.getName()
+                        + "=" + attribute.getType() + ":" + attribute.getNumericValue());
+            }
+        });
+        return values;
+    }
+}
@@ -35,6 +35,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import com.google.common.cache.CacheLoader;
 import com.google.common.util.concurrent.RateLimiter;
@@ -47,6 +48,7 @@ import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.telemetry.api.receiver.Parser;
 import org.opennms.netmgt.telemetry.api.receiver.TelemetryMessage;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.SequenceNumberTracker;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageBuilder;
@@ -126,6 +128,8 @@ public abstract class ParserBase implements Parser {
 
     private boolean dnsLookupsEnabled = true;
 
+    private boolean batchRecords = false;
+
     private LoadingCache<InetAddress, RateLimiter> clockSkewEventLimiters;
 
     private LoadingCache<InetAddress, RateLimiter> illegalFlowEventLimiters;
@@ -250,6 +254,14 @@ public abstract class ParserBase implements Parser {
         this.dnsLookupsEnabled = dnsLookupsEnabled;
     }
 
+    public boolean getBatchRecords() {
+        return this.batchRecords;
+    }
+
+    public void setBatchRecords(final boolean batchRecords) {
+        this.batchRecords = batchRecords;
+    }
+
     public int getThreads() {
         return threads;
     }
@@ -270,6 +282,10 @@ public abstract class ParserBase implements Parser {
 
         final RecordEnricher recordEnricher = new RecordEnricher(dnsResolver, getDnsLookupsEnabled());
 
+        if (this.batchRecords) {
+            return this.transmitBatch(packet, session, remoteAddress, recordEnricher);
+        }
+
         // The packets are coming in hot - performance here is critical
         //   LOG.trace("Got packet: {}", packet);
         // Perform the record enrichment and serialization in a thread pool allowing these to be parallelized
@@ -289,61 +305,112 @@ public abstract class ParserBase implements Parser {
                     })
                     .thenApplyAsync(enrichment -> {
                         this.recordsScheduled.mark();
+                        return this.buildMessage(record, enrichment, session, remoteAddress);
+                    }, executor)
+                    .thenCompose(this::dispatch);
+        }).toArray(CompletableFuture[]::new);
+
+        // Return a future which is completed when all records are finished dispatching (i.e. written to Kafka)
+        return CompletableFuture.allOf(futures).whenComplete((any, exx) -> {
+            if (exx != null) {
+                LOG.warn("One or more of the records were not successfully dispatched.", exx);
+            }
+        });
+    }
+
+    /**
+     * Handles all records of a packet as a single unit.
+     *
+     * The reverse lookups for all records are issued at once and de-duplicated and the serialization of all records
+     * happens in a single task on the worker pool instead of handing off every record on its own.
+     */
+    private CompletableFuture<?> transmitBatch(final RecordProvider packet, final Session session, final InetSocketAddress remoteAddress, final RecordEnricher recordEnricher) {
+        final List<Iterable<Value<?>>> records = packet.getRecords().collect(Collectors.toList());
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        this.recordsReceived.mark(records.size());
 
-                        // Let's serialize
-                        final FlowMessage.Builder flowMessage;
+        final Timer.Context timerContext = recordEnrichmentTimer.time();
+
+        return recordEnricher.enrichAll(records)
+                .whenComplete((enrichment, ex) -> {
+                    timerContext.close();
+
+                    if (ex != null) {
+                        this.recordEnrichmentErrors.inc(records.size());
+                    }
+                })
+                .thenApplyAsync(enrichment -> {
+                    this.recordsScheduled.mark(records.size());
+
+                    final CompletableFuture<?>[] futures = new CompletableFuture<?>[records.size()];
+                    for (int i = 0; i < futures.length; i++) {
+                        final TelemetryMessage msg;
                         try {
-                            flowMessage = this.getMessageBuilder().buildMessage(record, enrichment);
-                        } catch (final Exception e) {
-                            throw new RuntimeException(e);
+                            msg = this.buildMessage(records.get(i), enrichment, session, remoteAddress);
+                        } catch (final RuntimeException e) {
+                            futures[i] = CompletableFuture.failedFuture(e);
+                            continue;
                         }
+                        futures[i] = this.dispatch(msg);
+                    }
+                    return futures;
+                }, executor)
+                .thenCompose(CompletableFuture::allOf)
+                .whenComplete((any, exx) -> {
+                    if (exx != null) {
+                        LOG.warn("One or more of the records were not successfully dispatched.", exx);
+                    }
+                });
+    }
 
-                        // Check if the flow is valid (and maybe correct it)
-                        final List<String> corrections = this.correctFlow(flowMessage);
-                        if (!corrections.isEmpty()) {
-                            this.invalidFlows.mark();
-
-                            if (illegalFlowEventLimiters.getUnchecked(session.getRemoteAddress()).tryAcquire()) {
-                                eventForwarder.sendNow(new EventBuilder()
-                                        .setUei(ILLEGAL_FLOW_EVENT_UEI)
-                                        .setTime(new Date())
-                                        .setSource(getName())
-                                        .setInterface(session.getRemoteAddress())
-                                        .setDistPoller(identity.getId())
-                                        .addParam("monitoringSystemId", identity.getId())
-                                        .addParam("monitoringSystemLocation", identity.getLocation())
-                                        .setParam("cause", Joiner.on('\n').join(corrections))
-                                        .setParam("protocol", protocol.name())
-                                        .setParam("illegalFlowEventRate", (int) getIllegalFlowEventRate())
-                                        .getEvent());
-
-                                for (final String correction : corrections) {
-                                    LOG.warn("Illegal flow detected from exporter {}: \n{}", session.getRemoteAddress().getAddress(), correction);
-                                }
-                            }
-                        }
+    private TelemetryMessage buildMessage(final Iterable<Value<?>> record, final RecordEnrichment enrichment, final Session session, final InetSocketAddress remoteAddress) {
+        // Let's serialize
+        final FlowMessage.Builder flowMessage;
+        try {
+            flowMessage = this.getMessageBuilder().buildMessage(record, enrichment);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
 
-                        // Build the message to dispatch
-                        return new TelemetryMessage(remoteAddress, ByteBuffer.wrap(flowMessage.build().toByteArray()));
+        // Check if the flow is valid (and maybe correct it)
+        final List<String> corrections = this.correctFlow(flowMessage);
+        if (!corrections.isEmpty()) {
+            this.invalidFlows.mark();
+
+            if (illegalFlowEventLimiters.getUnchecked(session.getRemoteAddress()).tryAcquire()) {
+                eventForwarder.sendNow(new EventBuilder()
+                        .setUei(ILLEGAL_FLOW_EVENT_UEI)
+                        .setTime(new Date())
+                        .setSource(getName())
+                        .setInterface(session.getRemoteAddress())
+                        .setDistPoller(identity.getId())
+                        .addParam("monitoringSystemId", identity.getId())
+                        .addParam("monitoringSystemLocation", identity.getLocation())
+                        .setParam("cause", Joiner.on('\n').join(corrections))
+                        .setParam("protocol", protocol.name())
+                        .setParam("illegalFlowEventRate", (int) getIllegalFlowEventRate())
+                        .getEvent());
+
+                for (final String correction : corrections) {
+                    LOG.warn("Illegal flow detected from exporter {}: \n{}", session.getRemoteAddress().getAddress(), correction);
+                }
+            }
+        }
 
-                    }, executor)
-                    .thenCompose(msg -> {
-                        // Dispatch
-                        recordsDispatched.mark();
-                        return dispatcher.send(msg).whenComplete((b, exx) -> {
-                            if (exx != null) {
-                                this.recordDispatchErrors.inc();
-                            } else {
-                                this.recordsCompleted.mark();
-                            }
-                        });
-                    });
-        }).toArray(CompletableFuture[]::new);
+        // Build the message to dispatch
+        return new TelemetryMessage(remoteAddress, ByteBuffer.wrap(flowMessage.build().toByteArray()));
+    }
 
-        // Return a future which is completed when all records are finished dispatching (i.e. written to Kafka)
-        return CompletableFuture.allOf(futures).whenComplete((any, exx) -> {
+    private CompletableFuture<?> dispatch(final TelemetryMessage msg) {
+        recordsDispatched.mark();
+        return dispatcher.send(msg).whenComplete((b, exx) -> {
             if (exx != null) {
-                LOG.warn("One or more of the records were not successfully dispatched.", exx);
+                this.recordDispatchErrors.inc();
+            } else {
+                this.recordsCompleted.mark();
             }
         });
     }
@@ -22,6 +22,7 @@
 package org.opennms.netmgt.telemetry.protocols.netflow.parser;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,6 +33,7 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 import org.opennms.netmgt.dnsresolver.api.DnsResolver;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlatRecord;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.BooleanValue;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.DateTimeValue;
@@ -63,6 +65,19 @@ public class RecordEnricher {
     }
 
     public CompletableFuture<RecordEnrichment> enrich(Iterable<Value<?>> record) {
+        return this.enrichAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Enriches a batch of records at once.
+     *
+     * The addresses of all records are de-duplicated before issuing the reverse lookups, so every address is only
+     * resolved once per batch. The returned enrichment is shared by all records of the batch.
+     *
+     * @param records the records to enrich
+     * @return a future completed with the enrichment covering all given records
+     */
+    public CompletableFuture<RecordEnrichment> enrichAll(Collection<? extends Iterable<Value<?>>> records) {
         if (!this.dnsLookupsEnabled) {
             final CompletableFuture<RecordEnrichment> emptyFuture = new CompletableFuture<>();
             final RecordEnrichment emptyEnrichment = new DefaultRecordEnrichment(Collections.<InetAddress, String>emptyMap());
@@ -70,8 +85,14 @@ public class RecordEnricher {
             return emptyFuture;
         }
         final IpAddressCapturingVisitor ipAddressCapturingVisitor = new IpAddressCapturingVisitor();
-        for (final Value<?> value : record) {
-            value.visit(ipAddressCapturingVisitor);
+        for (final Iterable<Value<?>> record : records) {
+            final FlatRecord values = FlatRecord.of(record);
+            for (int i = 0; i < values.size(); i++) {
+                // Unsigned numbers never carry addresses - skip them without creating their values
+                if (!values.isUnsigned(i)) {
+                    values.get(i).visit(ipAddressCapturingVisitor);
+                }
+            }
         }
         final Set<InetAddress> addressesToReverseLookup = ipAddressCapturingVisitor.getAddresses();
         final Map<InetAddress, String> hostnamesByAddress = new HashMap<>(addressesToReverseLookup.size());
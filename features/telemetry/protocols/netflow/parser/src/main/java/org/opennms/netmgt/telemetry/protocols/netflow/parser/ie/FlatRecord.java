@@ -0,0 +1,223 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.ie;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UnsignedValue;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * The values of a record, decoded into flat arrays.
+ *
+ * Fixed-length unsigned fields, which make up most of a flow record, are kept as raw bits and turned into
+ * {@link UnsignedValue}s only when accessed through {@link #get(int)}. Consumers which only need the name or the number
+ * of a field use {@link #getName(int)} and {@link #getLong(int)} and do not create a value per field.
+ *
+ * The created values are cached. Values are immutable, so concurrent readers at most create the same value twice.
+ */
+public abstract class FlatRecord extends AbstractList<Value<?>> implements RandomAccess {
+
+    private static final FlatRecord EMPTY = new Decoded(null, null, new Value<?>[0]);
+
+    private FlatRecord() {
+    }
+
+    /**
+     * Creates a record from decoded fields.
+     *
+     * @param parsers the parser for every index holding raw bits, or {@code null} if no index holds raw bits
+     * @param bits the raw bits of the indices having a parser
+     * @param values the values of all indices not having a parser
+     */
+    public static FlatRecord of(final UnsignedValue.Parser[] parsers, final long[] bits, final Value<?>[] values) {
+        return new Decoded(parsers, bits, values);
+    }
+
+    /**
+     * Returns the given values as flat record, without copying them if they already are one.
+     */
+    @SuppressWarnings("unchecked")
+    public static FlatRecord of(final Iterable<Value<?>> values) {
+        if (values instanceof FlatRecord) {
+            return (FlatRecord) values;
+        }
+
+        final Value<?>[] array = values instanceof List
+                ? ((List<Value<?>>) values).toArray(new Value<?>[0])
+                : Iterables.toArray(values, Value.class);
+        return array.length != 0
+                ? new Decoded(null, null, array)
+                : EMPTY;
+    }
+
+    /**
+     * Returns a record consisting of all fields of the given records, in order. The records are not copied.
+     */
+    public static FlatRecord concat(final FlatRecord... parts) {
+        return new Concatenated(parts);
+    }
+
+    /**
+     * Returns the name of the field at the given index without creating its value.
+     */
+    public abstract String getName(final int index);
+
+    /**
+     * Returns whether the field at the given index is an unsigned number.
+     */
+    public abstract boolean isUnsigned(final int index);
+
+    /**
+     * Returns the number of the field at the given index without creating its value.
+     *
+     * @return the raw bits of the unsigned number or {@code null} if the field is not an unsigned number
+     */
+    public abstract Long getLong(final int index);
+
+    private static final class Decoded extends FlatRecord {
+        // The parser for every field kept as raw bits, null if there are none
+        private final UnsignedValue.Parser[] parsers;
+
+        // The raw bits of the unsigned fields, null if there are none
+        private final long[] bits;
+
+        // The values of all other fields and the values created for the unsigned fields
+        private final Value<?>[] values;
+
+        private Decoded(final UnsignedValue.Parser[] parsers, final long[] bits, final Value<?>[] values) {
+            this.parsers = parsers;
+            this.bits = bits;
+            this.values = Objects.requireNonNull(values);
+        }
+
+        @Override
+        public int size() {
+            return this.values.length;
+        }
+
+        @Override
+        public Value<?> get(final int index) {
+            Value<?> value = this.values[index];
+            if (value == null) {
+                value = this.values[index] = this.parsers[index].create(this.bits[index]);
+            }
+            return value;
+        }
+
+        @Override
+        public String getName(final int index) {
+            if (this.isRaw(index)) {
+                return this.parsers[index].getName();
+            }
+            return this.values[index].getName();
+        }
+
+        @Override
+        public boolean isUnsigned(final int index) {
+            return this.isRaw(index) || this.values[index] instanceof UnsignedValue;
+        }
+
+        @Override
+        public Long getLong(final int index) {
+            if (this.isRaw(index)) {
+                return this.bits[index];
+            }
+            if (this.values[index] instanceof UnsignedValue) {
+                return ((UnsignedValue) this.values[index]).longValue();
+            }
+            return null;
+        }
+
+        private boolean isRaw(final int index) {
+            return this.parsers != null && this.parsers[index] != null;
+        }
+    }
+
+    private static final class Concatenated extends FlatRecord {
+        private final FlatRecord[] parts;
+        private final int size;
+
+        private Concatenated(final FlatRecord[] parts) {
+            this.parts = Objects.requireNonNull(parts);
+
+            int size = 0;
+            for (final FlatRecord part : parts) {
+                size += part.size();
+            }
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public Value<?> get(int index) {
+            for (final FlatRecord part : this.parts) {
+                if (index < part.size()) {
+                    return part.get(index);
+                }
+                index -= part.size();
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public String getName(int index) {
+            for (final FlatRecord part : this.parts) {
+                if (index < part.size()) {
+                    return part.getName(index);
+                }
+                index -= part.size();
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public boolean isUnsigned(int index) {
+            for (final FlatRecord part : this.parts) {
+                if (index < part.size()) {
+                    return part.isUnsigned(index);
+                }
+                index -= part.size();
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public Long getLong(int index) {
+            for (final FlatRecord part : this.parts) {
+                if (index < part.size()) {
+                    return part.getLong(index);
+                }
+                index -= part.size();
+            }
+            throw new IndexOutOfBoundsException();
+        }
+    }
+}
@@ -21,7 +21,7 @@
  */
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values;
 
-import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.uint;
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.uintBits;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -37,13 +37,20 @@ import com.google.common.primitives.UnsignedLong;
 import io.netty.buffer.ByteBuf;
 
 public class UnsignedValue extends Value<UnsignedLong> {
-    private final UnsignedLong value;
+    // The raw bits of the unsigned value - boxed on demand only
+    private final long value;
 
     public UnsignedValue(final String name,
                          final Optional<Semantics> semantics,
                          final UnsignedLong value) {
+        this(name, semantics, Objects.requireNonNull(value).longValue());
+    }
+
+    private UnsignedValue(final String name,
+                          final Optional<Semantics> semantics,
+                          final long bits) {
         super(name, semantics);
-        this.value = Objects.requireNonNull(value);
+        this.value = bits;
     }
 
     public UnsignedValue(final String name,
@@ -55,132 +62,85 @@ public class UnsignedValue extends Value<UnsignedLong> {
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("name", getName())
-                .add("value", value)
+                .add("value", UnsignedLong.fromLongBits(value))
                 .toString();
     }
 
+    /**
+     * Parser for unsigned information elements.
+     *
+     * Fields of these elements have a fixed length, so records can keep their raw bits (see {@link #create(long)})
+     * instead of creating a value for every field.
+     */
+    public static final class Parser implements InformationElement {
+        private final String name;
+        private final Optional<Semantics> semantics;
+        private final int maximumFieldLength;
+
+        private Parser(final String name, final Optional<Semantics> semantics, final int maximumFieldLength) {
+            this.name = Objects.requireNonNull(name);
+            this.semantics = Objects.requireNonNull(semantics);
+            this.maximumFieldLength = maximumFieldLength;
+        }
+
+        @Override
+        public Value<?> parse(final Session.Resolver resolver, final ByteBuf buffer) {
+            // 8 bit fields have always been read as a single octet
+            return this.create(uintBits(buffer, this.maximumFieldLength == 1 ? 1 : buffer.readableBytes()));
+        }
+
+        /**
+         * Creates the value from the raw bits of a field, as read by {@link #parse(Session.Resolver, ByteBuf)}.
+         */
+        public UnsignedValue create(final long bits) {
+            return new UnsignedValue(this.name, this.semantics, bits);
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public int getMinimumFieldLength() {
+            return 0;
+        }
+
+        @Override
+        public int getMaximumFieldLength() {
+            return this.maximumFieldLength;
+        }
+    }
+
     public static InformationElement parserWith8Bit(final String name, final Optional<Semantics> semantics) {
-        return new InformationElement() {
-            @Override
-            public Value<?> parse(final Session.Resolver resolver, final ByteBuf buffer) {
-                return new UnsignedValue(name, semantics, uint(buffer, 1));
-            }
-
-            @Override
-            public String getName() {
-                return name;
-            }
-
-            @Override
-            public int getMinimumFieldLength() {
-                return 0;
-            }
-
-            @Override
-            public int getMaximumFieldLength() {
-                return 1;
-            }
-        };
+        return new Parser(name, semantics, 1);
     }
 
     public static InformationElement parserWith16Bit(final String name, final Optional<Semantics> semantics) {
-        return new InformationElement() {
-            @Override
-            public Value<?> parse(final Session.Resolver resolver, final ByteBuf buffer) {
-                return new UnsignedValue(name, semantics, uint(buffer, buffer.readableBytes()));
-            }
-
-            @Override
-            public String getName() {
-                return name;
-            }
-
-            @Override
-            public int getMinimumFieldLength() {
-                return 0;
-            }
-
-            @Override
-            public int getMaximumFieldLength() {
-                return 2;
-            }
-        };
+        return new Parser(name, semantics, 2);
     }
 
     public static InformationElement parserWith24Bit(final String name, final Optional<Semantics> semantics) {
-        return new InformationElement() {
-            @Override
-            public Value<?> parse(final Session.Resolver resolver, final ByteBuf buffer) {
-                return new UnsignedValue(name, semantics, uint(buffer, buffer.readableBytes()));
-            }
-
-            @Override
-            public String getName() {
-                return name;
-            }
-
-            @Override
-            public int getMinimumFieldLength() {
-                return 0;
-            }
-
-            @Override
-            public int getMaximumFieldLength() {
-                return 3;
-            }
-        };
+        return new Parser(name, semantics, 3);
     }
 
     public static InformationElement parserWith32Bit(final String name, final Optional<Semantics> semantics) {
-        return new InformationElement() {
-            @Override
-            public Value<?> parse(final Session.Resolver resolver, final ByteBuf buffer) {
-                return new UnsignedValue(name, semantics, uint(buffer, buffer.readableBytes()));
-            }
-
-            @Override
-            public String getName() {
-                return name;
-            }
-
-            @Override
-            public int getMinimumFieldLength() {
-                return 0;
-            }
-
-            @Override
-            public int getMaximumFieldLength() {
-                return 4;
-            }
-        };
+        return new Parser(name, semantics, 4);
     }
 
     public static InformationElement parserWith64Bit(final String name, final Optional<Semantics> semantics) {
-        return new InformationElement() {
-            @Override
-            public Value<?> parse(final Session.Resolver resolver, final ByteBuf buffer) {
-                return new UnsignedValue(name, semantics, uint(buffer, buffer.readableBytes()));
-            }
-
-            @Override
-            public String getName() {
-                return name;
-            }
-
-            @Override
-            public int getMinimumFieldLength() {
-                return 0;
-            }
-
-            @Override
-            public int getMaximumFieldLength() {
-                return 8;
-            }
-        };
+        return new Parser(name, semantics, 8);
     }
 
     @Override
     public UnsignedLong getValue() {
+        return UnsignedLong.fromLongBits(this.value);
+    }
+
+    /**
+     * Returns the raw bits of the value, equivalent to {@code getValue().longValue()}.
+     */
+    public long longValue() {
         return this.value;
     }
 
@@ -21,12 +21,6 @@
  */
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto;
 
-import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
-import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.uint16;
-import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.uint8;
-
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -36,6 +30,7 @@ import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Field;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.TemplateDecoder;
 
 import com.google.common.base.MoreObjects;
 
@@ -73,8 +68,8 @@ public final class DataRecord implements Record {
      +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
     */
 
-    public static final int VARIABLE_SIZED = 0xFFFF;
-    public static final int VARIABLE_SIZED_EXTENDED = 0xFF;
+    public static final int VARIABLE_SIZED = TemplateDecoder.VARIABLE_SIZED;
+    public static final int VARIABLE_SIZED_EXTENDED = TemplateDecoder.VARIABLE_SIZED_EXTENDED;
 
     public final DataSet set;  // Enclosing set
 
@@ -92,18 +87,8 @@ public final class DataRecord implements Record {
 
         this.template = Objects.requireNonNull(template);
 
-        final List<Value<?>> scopes = new ArrayList<>(this.template.scopes.size());
-        for (final Field scope : this.template.scopes) {
-            scopes.add(parseField(scope, resolver, buffer));
-        }
-
-        final List<Value<?>> fields = new ArrayList<>(this.template.fields.size());
-        for (final Field field : this.template.fields) {
-            fields.add(parseField(field, resolver, buffer));
-        }
-
-        this.scopes = Collections.unmodifiableList(scopes);
-        this.fields = Collections.unmodifiableList(fields);
+        this.scopes = this.template.decoder.decodeScopes(resolver, buffer);
+        this.fields = this.template.decoder.decodeFields(resolver, buffer);
 
         // Expand the data record by appending values from
         // TODO fooker: extend fields with packet metadata
@@ -126,14 +111,6 @@ public final class DataRecord implements Record {
     public static Value<?> parseField(final Field field,
                                       final Session.Resolver resolver,
                                       final ByteBuf buffer) throws InvalidPacketException, MissingTemplateException {
-        int length = field.length();
-        if (length == VARIABLE_SIZED) {
-            length = uint8(buffer);
-            if (length == VARIABLE_SIZED_EXTENDED) {
-                length = uint16(buffer);
-            }
-        }
-
-        return field.parse(resolver, slice(buffer, length));
+        return TemplateDecoder.decodeField(field, resolver, buffer);
     }
 }
@@ -21,9 +21,9 @@
  */
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
@@ -52,11 +52,9 @@ public class DataSet extends FlowSet<DataRecord> {
         this.resolver = Objects.requireNonNull(resolver);
         this.template = this.resolver.lookupTemplate(this.header.setId);
 
-        // For variable length fields we assume at least the length value (1 byte) to be present
-        final int minimumRecordLength = this.template.stream()
-                .mapToInt(f -> f.length() != DataRecord.VARIABLE_SIZED ? f.length() : 1).sum();
+        final int minimumRecordLength = this.template.decoder.getMinimumRecordLength();
 
-        final List<DataRecord> records = new LinkedList();
+        final List<DataRecord> records = new ArrayList<>();
         while (buffer.isReadable(minimumRecordLength)) {
             records.add(new DataRecord(this, this.resolver, this.template, buffer));
         }
@@ -96,6 +96,11 @@ public final class FieldSpecifier implements Field, Scope {
         return this.informationElement.parse(resolver, buffer);
     }
 
+    @Override
+    public InformationElement informationElement() {
+        return this.informationElement;
+    }
+
     @Override
     public int length() {
         return this.fieldLength;
@@ -21,17 +21,12 @@
  */
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto;
 
-import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
-
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
-import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Field;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
 
@@ -69,18 +64,8 @@ public final class DataRecord implements Record {
 
         this.template = Objects.requireNonNull(template);
 
-        final List<Value<?>> scopes = new ArrayList<>(this.template.scopes.size());
-        for (final Field scope : template.scopes) {
-            scopes.add(scope.parse(resolver, slice(buffer, scope.length())));
-        }
-
-        final List<Value<?>> fields = new ArrayList<>(this.template.fields.size());
-        for (final Field field : template.fields) {
-            fields.add(field.parse(resolver, slice(buffer, field.length())));
-        }
-
-        this.scopes = Collections.unmodifiableList(scopes);
-        this.fields = Collections.unmodifiableList(fields);
+        this.scopes = this.template.decoder.decodeScopes(resolver, buffer);
+        this.fields = this.template.decoder.decodeFields(resolver, buffer);
 
         // Expand the data record by appending values from
         this.options = resolver.lookupOptions(ScopeFieldSpecifier.buildScopeValues(this));
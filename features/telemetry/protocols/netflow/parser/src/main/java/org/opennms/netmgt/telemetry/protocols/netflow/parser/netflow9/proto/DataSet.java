@@ -21,9 +21,9 @@
  */
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
@@ -52,10 +52,9 @@ public final class DataSet extends FlowSet<DataRecord> {
         this.resolver = Objects.requireNonNull(resolver);
         this.template = this.resolver.lookupTemplate(this.header.setId);
 
-        final int minimumRecordLength = template.stream()
-                .mapToInt(f -> f.length()).sum();
+        final int minimumRecordLength = template.decoder.getMinimumRecordLength();
 
-        final List<DataRecord> records = new LinkedList();
+        final List<DataRecord> records = new ArrayList<>();
         while (buffer.isReadable(minimumRecordLength)) {
             records.add(new DataRecord(this, resolver, template, buffer));
         }
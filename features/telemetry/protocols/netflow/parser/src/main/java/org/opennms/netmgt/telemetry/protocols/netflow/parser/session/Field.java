@@ -23,6 +23,7 @@ package org.opennms.netmgt.telemetry.protocols.netflow.parser.session;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 
 import io.netty.buffer.ByteBuf;
@@ -30,6 +31,13 @@ import io.netty.buffer.ByteBuf;
 public interface Field {
     int length();
 
+    /**
+     * The information element parsing this field, or {@code null} if the field is not parsed by a single element.
+     */
+    default InformationElement informationElement() {
+        return null;
+    }
+
     Value<?> parse(final Session.Resolver resolver,
                    final ByteBuf buffer) throws InvalidPacketException, MissingTemplateException;
 }
@@ -38,6 +38,7 @@ import java.util.stream.Stream;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlatRecord;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.state.ExporterState;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.state.OptionState;
@@ -70,7 +71,8 @@ public class TcpSession implements Session {
         public List<Value<?>> lookupOptions(final List<Value<?>> values) {
             final LinkedHashMap<String, Value<?>> options = new LinkedHashMap<>();
 
-            final Set<String> scoped = values.stream().map(Value::getName).collect(Collectors.toSet());
+            FlatRecord record = null;
+            Set<String> scoped = null;
 
             for (final Map.Entry<TemplateKey, Map<Set<Value<?>>, List<Value<?>>>> e : Iterables.filter(TcpSession.this.options.entrySet(),
                                                                                                e -> e.getKey().observationDomainId == this.observationDomainId)) {
@@ -78,12 +80,23 @@ public class TcpSession implements Session {
 
                 final Set<String> scopes = template.scopes.stream().map(Scope::getName).collect(Collectors.toSet());
 
+                if (scoped == null) {
+                    record = FlatRecord.of(values);
+                    scoped = new HashSet<>(record.size());
+                    for (int i = 0; i < record.size(); i++) {
+                        scoped.add(record.getName(i));
+                    }
+                }
+
                 if (scoped.containsAll(scopes)) {
                     // Found option template where scoped fields is subset of actual data fields
 
-                    final Set<Value<?>> scopeValues = values.stream()
-                            .filter(s -> scopes.contains(s.getName()))
-                            .collect(Collectors.toSet());
+                    final Set<Value<?>> scopeValues = new HashSet<>(scopes.size());
+                    for (int i = 0; i < record.size(); i++) {
+                        if (scopes.contains(record.getName(i))) {
+                            scopeValues.add(record.get(i));
+                        }
+                    }
 
                     for (final Value<?> value : e.getValue().getOrDefault(scopeValues, Collections.emptyList())) {
                         options.put(value.getName(), value);
@@ -91,7 +104,9 @@ public class TcpSession implements Session {
                 }
             }
 
-            return new ArrayList<>(options.values());
+            return options.isEmpty()
+                    ? Collections.emptyList()
+                    : new ArrayList<>(options.values());
         }
     }
 
@@ -0,0 +1,170 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.session;
+
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.uint16;
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.uint8;
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.uintBits;
+
+import java.nio.BufferUnderflowException;
+import java.util.Collections;
+import java.util.List;
+
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlatRecord;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UnsignedValue;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decodes the data records described by a {@link Template}.
+ *
+ * The layout of a template is resolved once, when the template is received, instead of for every data set: the fields
+ * are kept in arrays and the minimum length of a record is pre-computed.
+ *
+ * Records are decoded into a {@link FlatRecord}. Fixed-length unsigned fields are read straight into its raw bits,
+ * all other fields are parsed into values from a slice bounded to the field.
+ */
+public final class TemplateDecoder {
+
+    /**
+     * Field length denoting a variable-length field (see RFC 7011, section 7). NetFlow v9 has no variable-length
+     * fields, but a field of this length would never fit into a NetFlow v9 packet either.
+     */
+    public static final int VARIABLE_SIZED = 0xFFFF;
+    public static final int VARIABLE_SIZED_EXTENDED = 0xFF;
+
+    private final Layout scopes;
+    private final Layout fields;
+
+    private final int minimumRecordLength;
+
+    TemplateDecoder(final List<? extends Field> scopes, final List<? extends Field> fields) {
+        this.scopes = new Layout(scopes);
+        this.fields = new Layout(fields);
+
+        // For variable length fields we assume at least the length value (1 byte) to be present
+        int minimumRecordLength = 0;
+        for (final Field field : this.scopes.fields) {
+            minimumRecordLength += field.length() != VARIABLE_SIZED ? field.length() : 1;
+        }
+        for (final Field field : this.fields.fields) {
+            minimumRecordLength += field.length() != VARIABLE_SIZED ? field.length() : 1;
+        }
+
+        this.minimumRecordLength = minimumRecordLength;
+    }
+
+    /**
+     * The minimum number of bytes a data record of this template occupies. For templates without variable-length
+     * fields, this is the exact length of every record.
+     */
+    public int getMinimumRecordLength() {
+        return this.minimumRecordLength;
+    }
+
+    public List<Value<?>> decodeScopes(final Session.Resolver resolver,
+                                       final ByteBuf buffer) throws InvalidPacketException, MissingTemplateException {
+        return this.scopes.decode(resolver, buffer);
+    }
+
+    public List<Value<?>> decodeFields(final Session.Resolver resolver,
+                                       final ByteBuf buffer) throws InvalidPacketException, MissingTemplateException {
+        return this.fields.decode(resolver, buffer);
+    }
+
+    /**
+     * Decodes a single field from the buffer and advances the reader index of the buffer behind the field.
+     *
+     * The field is parsed from a slice of the buffer, so the parser can only read the bytes belonging to the field.
+     * Variable-length fields are prefixed by their length as specified in RFC 7011, section 7.
+     */
+    public static Value<?> decodeField(final Field field,
+                                       final Session.Resolver resolver,
+                                       final ByteBuf buffer) throws InvalidPacketException, MissingTemplateException {
+        int length = field.length();
+        if (length == VARIABLE_SIZED) {
+            length = uint8(buffer);
+            if (length == VARIABLE_SIZED_EXTENDED) {
+                length = uint16(buffer);
+            }
+        }
+
+        return field.parse(resolver, slice(buffer, length));
+    }
+
+    /**
+     * The fields of a template and, for every fixed-length unsigned field, the parser creating its value.
+     */
+    private static final class Layout {
+        private final Field[] fields;
+
+        // The parser of every field read as raw bits, null if there is no such field
+        private final UnsignedValue.Parser[] parsers;
+
+        private Layout(final List<? extends Field> fields) {
+            this.fields = fields.toArray(new Field[0]);
+
+            UnsignedValue.Parser[] parsers = null;
+            for (int i = 0; i < this.fields.length; i++) {
+                final InformationElement element = this.fields[i].informationElement();
+                final int length = this.fields[i].length();
+                if (element instanceof UnsignedValue.Parser
+                        && length > 0
+                        && length <= element.getMaximumFieldLength()) {
+                    if (parsers == null) {
+                        parsers = new UnsignedValue.Parser[this.fields.length];
+                    }
+                    parsers[i] = (UnsignedValue.Parser) element;
+                }
+            }
+            this.parsers = parsers;
+        }
+
+        private List<Value<?>> decode(final Session.Resolver resolver,
+                                      final ByteBuf buffer) throws InvalidPacketException, MissingTemplateException {
+            if (this.fields.length == 0) {
+                return Collections.emptyList();
+            }
+
+            final long[] bits = this.parsers != null ? new long[this.fields.length] : null;
+            final Value<?>[] values = new Value<?>[this.fields.length];
+            for (int i = 0; i < this.fields.length; i++) {
+                if (this.parsers != null && this.parsers[i] != null) {
+                    final int length = this.fields[i].length();
+                    if (length > buffer.readableBytes()) {
+                        throw new BufferUnderflowException();
+                    }
+                    bits[i] = uintBits(buffer, length);
+                } else {
+                    values[i] = decodeField(this.fields[i], resolver, buffer);
+                }
+            }
+
+            return FlatRecord.of(this.parsers, bits, values);
+        }
+    }
+}
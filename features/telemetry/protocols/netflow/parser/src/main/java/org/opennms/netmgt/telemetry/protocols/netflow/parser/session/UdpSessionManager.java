@@ -25,46 +25,59 @@ import java.net.InetAddress;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlatRecord;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.state.ExporterState;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.state.OptionState;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.state.ParserState;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.state.TemplateState;
 
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 
+/**
+ * Keeps the templates and options of all UDP exporters.
+ *
+ * The store is sharded by exporter (the session key) and by observation domain. Each domain holds a copy-on-write
+ * table of templates keyed by the primitive template ID, so resolving a template on the packet path is a hash lookup
+ * for the exporter followed by two array searches and does not allocate.
+ *
+ * Template expiry is driven by an {@link ExpiryWheel}: every template slot is filed into the bucket of the time it
+ * was last seen and housekeeping only visits buckets which are older than the timeout. Refreshing a template does not
+ * touch the wheel - slots which have been refreshed in the meantime are re-filed lazily when their bucket expires.
+ */
 public class UdpSessionManager {
-    final ConcurrentMap<TemplateKey, TimeWrapper<TemplateOptions>> templates = Maps.newConcurrentMap();
-    private final Map<DomainKey, SequenceNumberTracker> sequenceNumbers = Maps.newConcurrentMap();
+    private final ConcurrentMap<SessionKey, Exporter> exporters = Maps.newConcurrentMap();
+    private final AtomicInteger templateCount = new AtomicInteger();
+    private final ExpiryWheel wheel;
     private final Duration timeout;
     private final Supplier<SequenceNumberTracker> sequenceNumberTracker;
 
     public UdpSessionManager(final Duration timeout, final Supplier<SequenceNumberTracker> sequenceNumberTracker) {
         this.timeout = timeout;
         this.sequenceNumberTracker = Objects.requireNonNull(sequenceNumberTracker);
+        this.wheel = new ExpiryWheel(timeout);
     }
 
     public void doHousekeeping() {
         final Instant timeout = Instant.now().minus(this.timeout);
-        this.removeTemplateIf(e -> e.getValue().time.isBefore(timeout));
-    }
-
-    private void removeTemplateIf(final Predicate<Map.Entry<TemplateKey, TimeWrapper<TemplateOptions>>> predicate) {
-        UdpSessionManager.this.templates.entrySet().removeIf(predicate);
+        this.wheel.expire(timeout);
     }
 
     public Session getSession(final SessionKey sessionKey) {
@@ -72,105 +85,326 @@ public class UdpSessionManager {
     }
 
     public void drop(final SessionKey sessionKey) {
-        removeTemplateIf(e -> Objects.equals(e.getKey().observationDomainId.sessionKey, sessionKey));
+        final Exporter exporter = this.exporters.get(sessionKey);
+        if (exporter != null) {
+            for (final Domain domain : exporter.domains) {
+                domain.removeIf(slot -> true);
+            }
+        }
     }
 
     public int count() {
-        return this.templates.size();
+        return this.templateCount.get();
+    }
+
+    TimeWrapper<TemplateOptions> lookup(final SessionKey sessionKey, final long observationDomainId, final int templateId) {
+        final Exporter exporter = this.exporters.get(sessionKey);
+        if (exporter == null) {
+            return null;
+        }
+
+        final Domain domain = exporter.domain(observationDomainId);
+        if (domain == null) {
+            return null;
+        }
+
+        final TemplateSlot slot = domain.table.get(templateId);
+        return slot != null ? slot.value : null;
     }
 
     public Object dumpInternalState() {
         final ParserState.Builder parser = ParserState.builder();
 
-        final Map<DomainKey, List<Map.Entry<TemplateKey, TimeWrapper<TemplateOptions>>>> sessions = this.templates.entrySet().stream()
-                .collect(Collectors.groupingBy(e -> e.getKey().observationDomainId));
+        for (final Exporter exporter : this.exporters.values()) {
+            for (final Domain domain : exporter.domains) {
+                final TemplateSlot[] slots = domain.table.slots;
+                if (slots.length == 0) {
+                    continue;
+                }
 
-        for (final var entry : sessions.entrySet()) {
-            final String key = String.format("%s#%s",
-                    entry.getKey().sessionKey.getDescription(),
-                    entry.getKey().observationDomainId);
+                final String key = String.format("%s#%s",
+                        exporter.sessionKey.getDescription(),
+                        domain.observationDomainId);
 
-            final ExporterState.Builder exporter = ExporterState.builder(key);
+                final ExporterState.Builder exporterState = ExporterState.builder(key);
 
-            entry.getValue().forEach(e -> {
-                exporter.withTemplate(TemplateState.builder(e.getKey().templateId).withInsertionTime(e.getValue().time));
-                e.getValue().wrapped.options.forEach((selectors, values) ->
-                        exporter.withOptions(OptionState.builder(e.getKey().templateId)
-                                .withInsertionTime(values.time)
-                                .withSelectors(selectors)
-                                .withValues(values.wrapped)));
-            });
+                for (final TemplateSlot slot : slots) {
+                    final TimeWrapper<TemplateOptions> value = slot.value;
+                    exporterState.withTemplate(TemplateState.builder(slot.templateId).withInsertionTime(value.time));
+                    value.wrapped.options.forEach((selectors, values) ->
+                            exporterState.withOptions(OptionState.builder(slot.templateId)
+                                    .withInsertionTime(values.time)
+                                    .withSelectors(selectors)
+                                    .withValues(values.wrapped)));
+                }
 
-            parser.withExporter(exporter);
+                parser.withExporter(exporterState);
+            }
         }
 
         return parser.build();
     }
 
+    private Exporter exporter(final SessionKey sessionKey) {
+        final Exporter exporter = this.exporters.get(sessionKey);
+        if (exporter != null) {
+            return exporter;
+        }
+        return this.exporters.computeIfAbsent(sessionKey, Exporter::new);
+    }
+
     public interface SessionKey {
         String getDescription();
 
         InetAddress getRemoteAddress();
     }
 
-    private final static class DomainKey {
-        public final SessionKey sessionKey;
-        public final long observationDomainId;
+    /**
+     * All observation domains of a single exporter.
+     *
+     * The list of domains is small (usually a single entry) and changes rarely, so it is kept as a copy-on-write array
+     * which is scanned linearly.
+     */
+    private final class Exporter {
+        private final SessionKey sessionKey;
 
-        private DomainKey(final SessionKey sessionKey,
-                          final long observationDomainId) {
+        private volatile Domain[] domains = new Domain[0];
+
+        private Exporter(final SessionKey sessionKey) {
             this.sessionKey = Objects.requireNonNull(sessionKey);
+        }
+
+        private Domain domain(final long observationDomainId) {
+            for (final Domain domain : this.domains) {
+                if (domain.observationDomainId == observationDomainId) {
+                    return domain;
+                }
+            }
+            return null;
+        }
+
+        private Domain getOrCreateDomain(final long observationDomainId) {
+            final Domain domain = this.domain(observationDomainId);
+            if (domain != null) {
+                return domain;
+            }
+
+            synchronized (this) {
+                final Domain existing = this.domain(observationDomainId);
+                if (existing != null) {
+                    return existing;
+                }
+
+                final Domain created = new Domain(this, observationDomainId, UdpSessionManager.this.sequenceNumberTracker.get());
+                final Domain[] domains = Arrays.copyOf(this.domains, this.domains.length + 1);
+                domains[domains.length - 1] = created;
+                this.domains = domains;
+                return created;
+            }
+        }
+    }
+
+    /**
+     * The templates of a single observation domain of an exporter.
+     *
+     * Readers access the current table without locking. All modifications are serialized on the domain and publish a
+     * new table.
+     */
+    private final class Domain {
+        private final Exporter exporter;
+        private final long observationDomainId;
+        private final SequenceNumberTracker sequenceNumbers;
+
+        private volatile TemplateTable table = TemplateTable.EMPTY;
+
+        private Domain(final Exporter exporter, final long observationDomainId, final SequenceNumberTracker sequenceNumbers) {
+            this.exporter = Objects.requireNonNull(exporter);
             this.observationDomainId = observationDomainId;
+            this.sequenceNumbers = Objects.requireNonNull(sequenceNumbers);
         }
 
-        @Override
-        public boolean equals(final Object o) {
-            if (this == o) {
-                return true;
+        private synchronized void put(final Template template) {
+            final TemplateSlot slot = this.table.get(template.id);
+            if (slot != null) {
+                // preserve the old option values
+                slot.value = new TimeWrapper<>(new TemplateOptions(template, slot.value.wrapped.options));
+                return;
             }
-            if (!(o instanceof DomainKey)) {
+
+            final TemplateSlot created = new TemplateSlot(this, template.id, new TimeWrapper<>(new TemplateOptions(template)));
+            this.table = this.table.with(created);
+            UdpSessionManager.this.templateCount.incrementAndGet();
+            UdpSessionManager.this.wheel.file(created);
+        }
+
+        private synchronized void remove(final int templateId) {
+            final TemplateSlot slot = this.table.get(templateId);
+            if (slot != null) {
+                this.unlink(slot);
+            }
+        }
+
+        private synchronized void removeIf(final Predicate<TemplateSlot> predicate) {
+            for (final TemplateSlot slot : this.table.slots) {
+                if (predicate.test(slot)) {
+                    this.unlink(slot);
+                }
+            }
+        }
+
+        /**
+         * Removes the slot if it has not been refreshed since the given point in time.
+         *
+         * @return {@code true} if the slot is still alive and must be tracked further
+         */
+        private synchronized boolean expire(final TemplateSlot slot, final Instant timeout) {
+            if (slot.removed) {
+                return false;
+            }
+
+            if (slot.value.time.isBefore(timeout)) {
+                this.unlink(slot);
                 return false;
             }
 
-            final DomainKey that = (DomainKey) o;
-            return Objects.equals(this.observationDomainId, that.observationDomainId) &&
-                   Objects.equals(this.sessionKey, that.sessionKey);
+            return true;
         }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(this.sessionKey, this.observationDomainId);
+        private void unlink(final TemplateSlot slot) {
+            this.table = this.table.without(slot.templateId);
+            slot.removed = true;
+            UdpSessionManager.this.templateCount.decrementAndGet();
         }
     }
 
-    final static class TemplateKey {
-        public final DomainKey observationDomainId;
-        public final int templateId;
+    /**
+     * Immutable table of template slots sorted by template ID.
+     */
+    private final static class TemplateTable {
+        private final static TemplateTable EMPTY = new TemplateTable(new int[0], new TemplateSlot[0]);
 
-        TemplateKey(final SessionKey sessionKey,
-                    final long observationDomainId,
-                    final int templateId) {
-            this.observationDomainId = new DomainKey(sessionKey, observationDomainId);
-            this.templateId = templateId;
+        private final int[] ids;
+        private final TemplateSlot[] slots;
+
+        private TemplateTable(final int[] ids, final TemplateSlot[] slots) {
+            this.ids = ids;
+            this.slots = slots;
         }
 
-        @Override
-        public boolean equals(final Object o) {
-            if (this == o) {
-                return true;
+        private TemplateSlot get(final int templateId) {
+            final int index = Arrays.binarySearch(this.ids, templateId);
+            return index >= 0 ? this.slots[index] : null;
+        }
+
+        private TemplateTable with(final TemplateSlot slot) {
+            final int index = -(Arrays.binarySearch(this.ids, slot.templateId) + 1);
+
+            final int[] ids = new int[this.ids.length + 1];
+            final TemplateSlot[] slots = new TemplateSlot[this.slots.length + 1];
+
+            System.arraycopy(this.ids, 0, ids, 0, index);
+            System.arraycopy(this.slots, 0, slots, 0, index);
+            ids[index] = slot.templateId;
+            slots[index] = slot;
+            System.arraycopy(this.ids, index, ids, index + 1, this.ids.length - index);
+            System.arraycopy(this.slots, index, slots, index + 1, this.slots.length - index);
+
+            return new TemplateTable(ids, slots);
+        }
+
+        private TemplateTable without(final int templateId) {
+            final int index = Arrays.binarySearch(this.ids, templateId);
+            if (index < 0) {
+                return this;
             }
-            if (!(o instanceof TemplateKey)) {
-                return false;
+
+            final int[] ids = new int[this.ids.length - 1];
+            final TemplateSlot[] slots = new TemplateSlot[this.slots.length - 1];
+
+            System.arraycopy(this.ids, 0, ids, 0, index);
+            System.arraycopy(this.slots, 0, slots, 0, index);
+            System.arraycopy(this.ids, index + 1, ids, index, this.ids.length - index - 1);
+            System.arraycopy(this.slots, index + 1, slots, index, this.slots.length - index - 1);
+
+            return new TemplateTable(ids, slots);
+        }
+    }
+
+    private final static class TemplateSlot {
+        private final Domain domain;
+        private final int templateId;
+
+        private volatile TimeWrapper<TemplateOptions> value;
+        private volatile boolean removed = false;
+
+        private TemplateSlot(final Domain domain, final int templateId, final TimeWrapper<TemplateOptions> value) {
+            this.domain = Objects.requireNonNull(domain);
+            this.templateId = templateId;
+            this.value = Objects.requireNonNull(value);
+        }
+    }
+
+    /**
+     * Buckets template slots by the time they were last seen.
+     *
+     * The timeout is divided into a fixed number of ticks. A slot is filed into the bucket of the tick it was last seen
+     * in and the wheel has enough buckets to cover the whole timeout window, so buckets are never shared between live
+     * ticks. Expiring only visits the buckets which have fallen out of the window since the last run.
+     */
+    private final static class ExpiryWheel {
+        private final static int TICKS = 64;
+
+        private final long tickMillis;
+        private final Queue<TemplateSlot>[] buckets;
+
+        private long expiredTick = Long.MIN_VALUE;
+
+        @SuppressWarnings("unchecked")
+        private ExpiryWheel(final Duration timeout) {
+            this.tickMillis = Math.max(1L, timeout.toMillis() / TICKS);
+            this.buckets = new Queue[(int) (timeout.toMillis() / this.tickMillis) + 2];
+            for (int i = 0; i < this.buckets.length; i++) {
+                this.buckets[i] = new ConcurrentLinkedQueue<>();
             }
+        }
 
-            final TemplateKey that = (TemplateKey) o;
-            return Objects.equals(this.observationDomainId, that.observationDomainId) &&
-                    Objects.equals(this.templateId, that.templateId);
+        private long tick(final Instant time) {
+            return Math.floorDiv(time.toEpochMilli(), this.tickMillis);
         }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(this.observationDomainId, this.templateId);
+        private Queue<TemplateSlot> bucket(final long tick) {
+            return this.buckets[(int) Math.floorMod(tick, this.buckets.length)];
+        }
+
+        private void file(final TemplateSlot slot) {
+            this.bucket(this.tick(slot.value.time)).add(slot);
+        }
+
+        private synchronized void expire(final Instant timeout) {
+            final long timeoutTick = this.tick(timeout);
+
+            // Never visit more than one round of buckets
+            final long firstTick = Math.max(this.expiredTick + 1, timeoutTick - this.buckets.length + 1);
+
+            // Slots which are still alive are re-filed after all buckets have been drained as their new bucket may
+            // be one which is visited in this run
+            final List<TemplateSlot> alive = new ArrayList<>();
+
+            for (long tick = firstTick; tick <= timeoutTick; tick++) {
+                final Queue<TemplateSlot> bucket = this.bucket(tick);
+
+                TemplateSlot slot;
+                while ((slot = bucket.poll()) != null) {
+                    if (slot.domain.expire(slot, timeout)) {
+                        alive.add(slot);
+                    }
+                }
+            }
+
+            alive.forEach(this::file);
+
+            // The bucket of the timeout itself may receive further slots which are not expired yet
+            this.expiredTick = timeoutTick - 1;
         }
     }
 
@@ -206,31 +440,23 @@ public class UdpSessionManager {
             this.sessionKey = Objects.requireNonNull(sessionKey);
         }
 
+        private Domain domain(final long observationDomainId) {
+            return UdpSessionManager.this.exporter(this.sessionKey).getOrCreateDomain(observationDomainId);
+        }
+
         @Override
         public void addTemplate(final long observationDomainId, final Template template) {
-            final TemplateKey key = new TemplateKey(this.sessionKey, observationDomainId, template.id);
-            UdpSessionManager.this.templates.compute(key, (k, wrapper) -> {
-                TemplateOptions newTemplateOptions;
-                if (wrapper == null) {
-                    newTemplateOptions = new TemplateOptions(template);
-                } else {
-                    // preserve the old option values
-                    newTemplateOptions = new TemplateOptions(template, wrapper.wrapped.options);
-                }
-                return new TimeWrapper<>(newTemplateOptions);
-            });
+            this.domain(observationDomainId).put(template);
         }
 
         @Override
         public void removeTemplate(final long observationDomainId, final int templateId) {
-            final TemplateKey key = new TemplateKey(this.sessionKey, observationDomainId, templateId);
-            UdpSessionManager.this.templates.remove(key);
+            this.domain(observationDomainId).remove(templateId);
         }
 
         @Override
         public void removeAllTemplate(final long observationDomainId, final Template.Type type) {
-            final DomainKey domainKey = new DomainKey(this.sessionKey, observationDomainId);
-            UdpSessionManager.this.removeTemplateIf(e -> domainKey.equals(e.getKey().observationDomainId) && e.getValue().wrapped.template.type == type);
+            this.domain(observationDomainId).removeIf(slot -> slot.value.wrapped.template.type == type);
         }
 
         @Override
@@ -238,13 +464,15 @@ public class UdpSessionManager {
                                final int templateId,
                                final Collection<Value<?>> scopes,
                                final List<Value<?>> values) {
-            final TemplateKey key = new TemplateKey(this.sessionKey, observationDomainId, templateId);
-            UdpSessionManager.this.templates.get(key).wrapped.options.put(new HashSet<>(scopes), new TimeWrapper<>(values));
+            final TemplateSlot slot = this.domain(observationDomainId).table.get(templateId);
+            if (slot != null) {
+                slot.value.wrapped.options.put(new HashSet<>(scopes), new TimeWrapper<>(values));
+            }
         }
 
         @Override
         public Session.Resolver getResolver(final long observationDomainId) {
-            return new Resolver(observationDomainId);
+            return new Resolver(this.domain(observationDomainId));
         }
 
         @Override
@@ -254,27 +482,21 @@ public class UdpSessionManager {
 
         @Override
         public boolean verifySequenceNumber(final long observationDomainId, final long sequenceNumber) {
-            final DomainKey key = new DomainKey(this.sessionKey, observationDomainId);
-            final SequenceNumberTracker tracker = UdpSessionManager.this.sequenceNumbers.computeIfAbsent(key, (k) -> UdpSessionManager.this.sequenceNumberTracker.get());
-            return tracker.verify(sequenceNumber);
+            return this.domain(observationDomainId).sequenceNumbers.verify(sequenceNumber);
         }
 
         private final class Resolver implements Session.Resolver {
-            private final long observationDomainId;
+            private final Domain domain;
 
-            private Resolver(final long observationDomainId) {
-                this.observationDomainId = observationDomainId;
-            }
-
-            private TemplateKey key(final int templateId) {
-                return new TemplateKey(UdpSession.this.sessionKey, this.observationDomainId, templateId);
+            private Resolver(final Domain domain) {
+                this.domain = Objects.requireNonNull(domain);
             }
 
             @Override
             public Template lookupTemplate(final int templateId) throws MissingTemplateException {
-                final TimeWrapper<TemplateOptions> templateOptions = UdpSessionManager.this.templates.get(key(templateId));
-                if (templateOptions != null) {
-                    return templateOptions.wrapped.template;
+                final TemplateSlot slot = this.domain.table.get(templateId);
+                if (slot != null) {
+                    return slot.value.wrapped.template;
                 } else {
                     throw new MissingTemplateException(templateId);
                 }
@@ -282,24 +504,42 @@ public class UdpSessionManager {
 
             @Override
             public List<Value<?>> lookupOptions(final List<Value<?>> values) {
-                final LinkedHashMap<String, Value<?>> options = new LinkedHashMap<>();
+                LinkedHashMap<String, Value<?>> options = null;
+                FlatRecord record = null;
+                Set<String> scoped = null;
+
+                for (final TemplateSlot slot : this.domain.table.slots) {
+                    final TemplateOptions templateOptions = slot.value.wrapped;
 
-                final Set<String> scoped = values.stream().map(Value::getName).collect(Collectors.toSet());
+                    // Most templates never carry options - skip them without allocating anything
+                    if (templateOptions.options.isEmpty()) {
+                        continue;
+                    }
 
-                for (final var e : Iterables.filter(UdpSessionManager.this.templates.entrySet(),
-                        e -> Objects.equals(e.getKey().observationDomainId.sessionKey, UdpSession.this.sessionKey) &&
-                                Objects.equals(e.getKey().observationDomainId.observationDomainId, this.observationDomainId))) {
+                    final Template template = templateOptions.template;
 
-                    final Template template = e.getValue().wrapped.template;
+                    if (scoped == null) {
+                        record = FlatRecord.of(values);
+                        scoped = new HashSet<>(record.size());
+                        for (int i = 0; i < record.size(); i++) {
+                            scoped.add(record.getName(i));
+                        }
+                    }
 
                     if (scoped.containsAll(template.scopeNames)) {
                         // Found option template where scoped fields is subset of actual data fields
-                        final Set<Value<?>> scopeValues = values.stream()
-                                .filter(s -> template.scopeNames.contains(s.getName()))
-                                .collect(Collectors.toSet());
+                        final Set<Value<?>> scopeValues = new HashSet<>(template.scopeNames.size());
+                        for (int i = 0; i < record.size(); i++) {
+                            if (template.scopeNames.contains(record.getName(i))) {
+                                scopeValues.add(record.get(i));
+                            }
+                        }
 
-                        final TimeWrapper<List<Value<?>>> optionValues = e.getValue().wrapped.options.get(scopeValues);
+                        final TimeWrapper<List<Value<?>>> optionValues = templateOptions.options.get(scopeValues);
                         if (optionValues != null) {
+                            if (options == null) {
+                                options = new LinkedHashMap<>();
+                            }
                             for (final Value<?> value : optionValues.wrapped) {
                                 options.put(value.getName(), value);
                             }
@@ -307,7 +547,9 @@ public class UdpSessionManager {
                     }
                 }
 
-                return new ArrayList<>(options.values());
+                return options != null
+                        ? new ArrayList<>(options.values())
+                        : Collections.emptyList();
             }
         }
     }
@@ -23,7 +23,6 @@ package org.opennms.netmgt.telemetry.protocols.netflow.parser.transport;
 
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.first;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getInetAddress;
-import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getLongValue;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getTime;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getUInt32Value;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getUInt64Value;
@@ -36,6 +35,7 @@ import java.time.Instant;
 import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.RecordEnrichment;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlatRecord;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.Direction;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.FlowMessage;
@@ -123,28 +123,29 @@ public class IpFixMessageBuilder implements MessageBuilder {
         UInt32Value outputSnmp = null;
 
 
-        for (Value<?> value : values) {
-            switch (value.getName()) {
+        final FlatRecord record = FlatRecord.of(values);
+        for (int i = 0; i < record.size(); i++) {
+            switch (record.getName(i)) {
                 case "@exportTime":
-                    exportTime = getLongValue(value);
+                    exportTime = record.getLong(i);
                     break;
                 case "octetDeltaCount":
-                    octetDeltaCount = getLongValue(value);
+                    octetDeltaCount = record.getLong(i);
                     break;
                 case "postOctetDeltaCount":
-                    postOctetDeltaCount = getLongValue(value);
+                    postOctetDeltaCount = record.getLong(i);
                     break;
                 case "layer2OctetDeltaCount":
-                    layer2OctetDeltaCount = getLongValue(value);
+                    layer2OctetDeltaCount = record.getLong(i);
                     break;
                 case "postLayer2OctetDeltaCount":
-                    postLayer2OctetDeltaCount = getLongValue(value);
+                    postLayer2OctetDeltaCount = record.getLong(i);
                     break;
                 case "transportOctetDeltaCount":
-                    transportOctetDeltaCount = getLongValue(value);
+                    transportOctetDeltaCount = record.getLong(i);
                     break;
                 case "flowDirection":
-                    Long directionValue = getLongValue(value);
+                    Long directionValue = record.getLong(i);
                     Direction direction = Direction.UNKNOWN;
                     if (directionValue != null) {
                         switch (directionValue.intValue()) {
@@ -159,214 +160,214 @@ public class IpFixMessageBuilder implements MessageBuilder {
                     builder.setDirection(direction);
                     break;
                 case "destinationIPv6Address":
-                    destinationIPv6Address = getInetAddress(value);
+                    destinationIPv6Address = getInetAddress(record.get(i));
                     break;
                 case "destinationIPv4Address":
-                    destinationIPv4Address = getInetAddress(value);
+                    destinationIPv4Address = getInetAddress(record.get(i));
                     break;
                 case "bgpDestinationAsNumber":
-                    getUInt64Value(value).ifPresent(builder::setDstAs);
+                    getUInt64Value(record.getLong(i)).ifPresent(builder::setDstAs);
                     break;
                 case "destinationIPv6PrefixLength":
-                    destinationIPv6PrefixLength = getLongValue(value);
+                    destinationIPv6PrefixLength = record.getLong(i);
                     break;
                 case "destinationIPv4PrefixLength":
-                    destinationIPv4PrefixLength = getLongValue(value);
+                    destinationIPv4PrefixLength = record.getLong(i);
                     break;
                 case "destinationTransportPort":
-                    getUInt32Value(value).ifPresent(builder::setDstPort);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setDstPort);
                     break;
                 case "engineId":
-                    getUInt32Value(value).ifPresent(builder::setEngineId);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setEngineId);
                     break;
                 case "engineType":
-                    getUInt32Value(value).ifPresent(builder::setEngineType);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setEngineType);
                     break;
                 case "@recordCount":
-                    getUInt32Value(value).ifPresent(builder::setNumFlowRecords);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setNumFlowRecords);
                     break;
                 case "@sequenceNumber":
-                    getUInt64Value(value).ifPresent(builder::setFlowSeqNum);
+                    getUInt64Value(record.getLong(i)).ifPresent(builder::setFlowSeqNum);
                     break;
                 case "ingressInterface":
-                    inputSnmp = getUInt32Value(value).orElse(null);
+                    inputSnmp = getUInt32Value(record.getLong(i)).orElse(null);
                     break;
                 case "ipVersion":
-                    Long ipVersion = getLongValue(value);
+                    Long ipVersion = record.getLong(i);
                     if (ipVersion != null) {
                         builder.setIpProtocolVersion(setIntValue(ipVersion.intValue()));
                     }
                     break;
                 case "egressInterface":
-                    outputSnmp = getUInt32Value(value).orElse(null);
+                    outputSnmp = getUInt32Value(record.getLong(i)).orElse(null);
                     break;
                 case "protocolIdentifier":
-                    getUInt32Value(value).ifPresent(builder::setProtocol);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setProtocol);
                     break;
                 case "tcpControlBits":
-                    getUInt32Value(value).ifPresent(builder::setTcpFlags);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setTcpFlags);
                     break;
                 case "ipClassOfService":
-                    getUInt32Value(value).ifPresent(builder::setTos);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setTos);
                     break;
                 case "@observationDomainId":
-                    Long observationDomainId = getLongValue(value);
+                    Long observationDomainId = record.getLong(i);
                     if (observationDomainId != null) {
                         builder.setNodeIdentifier(String.valueOf(observationDomainId));
                     }
                     break;
 
                 case "flowStartSeconds":
-                    flowStartSeconds = getTime(value);
+                    flowStartSeconds = getTime(record.get(i));
                     break;
                 case "flowStartMilliseconds":
-                    flowStartMilliseconds = getTime(value);
+                    flowStartMilliseconds = getTime(record.get(i));
                     break;
                 case "flowStartMicroseconds":
-                    flowStartMicroseconds = getTime(value);
+                    flowStartMicroseconds = getTime(record.get(i));
                     break;
                 case "flowStartNanoseconds":
-                    flowStartNanoseconds = getTime(value);
+                    flowStartNanoseconds = getTime(record.get(i));
                     break;
                 case "flowStartDeltaMicroseconds":
-                    flowStartDeltaMicroseconds = getLongValue(value);
+                    flowStartDeltaMicroseconds = record.getLong(i);
                     break;
                 case "flowStartSysUpTime":
-                    flowStartSysUpTime = getLongValue(value);
+                    flowStartSysUpTime = record.getLong(i);
                     break;
                 case "systemInitTimeMilliseconds":
-                    systemInitTimeMilliseconds = getTime(value);
+                    systemInitTimeMilliseconds = getTime(record.get(i));
                     break;
                 case "flowEndSeconds":
-                    flowEndSeconds = getTime(value);
+                    flowEndSeconds = getTime(record.get(i));
                     break;
                 case "flowEndMilliseconds":
-                    flowEndMilliseconds = getTime(value);
+                    flowEndMilliseconds = getTime(record.get(i));
                     break;
                 case "flowEndMicroseconds":
-                    flowEndMicroseconds = getTime(value);
+                    flowEndMicroseconds = getTime(record.get(i));
                     break;
                 case "flowEndNanoseconds":
-                    flowEndNanoseconds = getTime(value);
+                    flowEndNanoseconds = getTime(record.get(i));
                 case "flowEndDeltaMicroseconds":
-                    flowEndDeltaMicroseconds = getLongValue(value);
+                    flowEndDeltaMicroseconds = record.getLong(i);
                     break;
                 case "flowEndSysUpTime":
-                    flowEndSysUpTime = getLongValue(value);
+                    flowEndSysUpTime = record.getLong(i);
                     break;
                 case "ipNextHopIPv6Address":
-                    ipNextHopIPv6Address = getInetAddress(value);
+                    ipNextHopIPv6Address = getInetAddress(record.get(i));
                     break;
                 case "ipNextHopIPv4Address":
-                    ipNextHopIPv4Address = getInetAddress(value);
+                    ipNextHopIPv4Address = getInetAddress(record.get(i));
                     break;
                 case "bgpNextHopIPv6Address":
-                    bgpNextHopIPv6Address = getInetAddress(value);
+                    bgpNextHopIPv6Address = getInetAddress(record.get(i));
                     break;
                 case "bgpNextHopIPv4Address":
-                    bgpNextHopIPv4Address = getInetAddress(value);
+                    bgpNextHopIPv4Address = getInetAddress(record.get(i));
                     break;
                 case "packetDeltaCount":
-                    packetDeltaCount = getLongValue(value);
+                    packetDeltaCount = record.getLong(i);
                     break;
                 case "postPacketDeltaCount":
-                    postPacketDeltaCount = getLongValue(value);
+                    postPacketDeltaCount = record.getLong(i);
                     break;
                 case "transportPacketDeltaCount":
-                    transportPacketDeltaCount = getLongValue(value);
+                    transportPacketDeltaCount = record.getLong(i);
                     break;
                 case "samplingAlgorithm":
-                    samplingAlgorithm = getLongValue(value);
+                    samplingAlgorithm = record.getLong(i);
                     break;
                 case "samplerMode":
-                    samplerMode = getLongValue(value);
+                    samplerMode = record.getLong(i);
                     break;
                 case "selectorAlgorithm":
-                    selectorAlgorithm = getLongValue(value);
+                    selectorAlgorithm = record.getLong(i);
                     break;
                 case "samplingInterval":
-                    samplingInterval = getLongValue(value);
+                    samplingInterval = record.getLong(i);
                     break;
                 case "samplerRandomInterval":
-                    samplerRandomInterval = getLongValue(value);
+                    samplerRandomInterval = record.getLong(i);
                     break;
                 case "samplingFlowInterval":
-                    samplingFlowInterval = getLongValue(value);
+                    samplingFlowInterval = record.getLong(i);
                     break;
                 case "samplingFlowSpacing":
-                    samplingFlowSpacing = getLongValue(value);
+                    samplingFlowSpacing = record.getLong(i);
                     break;
                 case "flowSamplingTimeInterval":
-                    flowSamplingTimeInterval = getLongValue(value);
+                    flowSamplingTimeInterval = record.getLong(i);
                     break;
                 case "flowSamplingTimeSpacing":
-                    flowSamplingTimeSpacing = getLongValue(value);
+                    flowSamplingTimeSpacing = record.getLong(i);
                     break;
                 case "samplingSize":
-                    samplingSize = getLongValue(value);
+                    samplingSize = record.getLong(i);
                     break;
                 case "samplingPopulation":
-                    samplingPopulation = getLongValue(value);
+                    samplingPopulation = record.getLong(i);
                     break;
                 case "samplingProbability":
-                    samplingProbability = getLongValue(value);
+                    samplingProbability = record.getLong(i);
                     break;
                 case "hashSelectedRangeMin":
-                    hashSelectedRangeMin = getLongValue(value);
+                    hashSelectedRangeMin = record.getLong(i);
                     break;
                 case "hashSelectedRangeMax":
-                    hashSelectedRangeMax = getLongValue(value);
+                    hashSelectedRangeMax = record.getLong(i);
                     break;
                 case "hashOutputRangeMin":
-                    hashOutputRangeMin = getLongValue(value);
+                    hashOutputRangeMin = record.getLong(i);
                     break;
                 case "hashOutputRangeMax":
-                    hashOutputRangeMax = getLongValue(value);
+                    hashOutputRangeMax = record.getLong(i);
                     break;
                 case "sourceIPv6Address":
-                    sourceIPv6Address = getInetAddress(value);
+                    sourceIPv6Address = getInetAddress(record.get(i));
                     break;
                 case "sourceIPv4Address":
-                    sourceIPv4Address = getInetAddress(value);
+                    sourceIPv4Address = getInetAddress(record.get(i));
                     break;
                 case "sourceIPv6PrefixLength":
-                    sourceIPv6PrefixLength = getLongValue(value);
+                    sourceIPv6PrefixLength = record.getLong(i);
                     break;
                 case "sourceIPv4PrefixLength":
-                    sourceIPv4PrefixLength = getLongValue(value);
+                    sourceIPv4PrefixLength = record.getLong(i);
                     break;
                 case "sourceTransportPort":
-                    getUInt32Value(value).ifPresent(builder::setSrcPort);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setSrcPort);
                     break;
                 case "vlanId":
-                    vlanId = getLongValue(value);
+                    vlanId = record.getLong(i);
                     break;
                 case "postVlanId":
-                    postVlanId = getLongValue(value);
+                    postVlanId = record.getLong(i);
                     break;
                 case "dot1qVlanId":
-                    dot1qVlanId = getLongValue(value);
+                    dot1qVlanId = record.getLong(i);
                     break;
                 case "dot1qCustomerVlanId":
-                    dot1qCustomerVlanId = getLongValue(value);
+                    dot1qCustomerVlanId = record.getLong(i);
                     break;
                 case "postDot1qVlanId":
-                    postDot1qVlanId = getLongValue(value);
+                    postDot1qVlanId = record.getLong(i);
                     break;
                 case "postDot1qCustomerVlanId":
-                    postDot1qCustomerVlanId = getLongValue(value);
+                    postDot1qCustomerVlanId = record.getLong(i);
                     break;
                 case "flowActiveTimeout":
-                    flowActiveTimeout = getLongValue(value);
+                    flowActiveTimeout = record.getLong(i);
                     break;
                 case "flowInactiveTimeout":
-                    flowInactiveTimeout = getLongValue(value);
+                    flowInactiveTimeout = record.getLong(i);
                     break;
                 case "ingressPhysicalInterface":
-                    ingressPhysicalInterface = getUInt32Value(value).orElse(null);
+                    ingressPhysicalInterface = getUInt32Value(record.getLong(i)).orElse(null);
                     break;
                 case "egressPhysicalInterface":
-                    egressPhysicalInterface = getUInt32Value(value).orElse(null);
+                    egressPhysicalInterface = getUInt32Value(record.getLong(i)).orElse(null);
                     break;
             }
         }
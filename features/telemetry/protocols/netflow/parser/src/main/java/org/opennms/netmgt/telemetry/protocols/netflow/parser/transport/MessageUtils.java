@@ -23,9 +23,7 @@ package org.opennms.netmgt.telemetry.protocols.netflow.parser.transport;
 
 import java.net.InetAddress;
 import java.time.Instant;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Stream;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.BooleanValue;
@@ -35,7 +33,6 @@ import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.IPv6Addre
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UnsignedValue;
 
 import com.google.common.base.Strings;
-import com.google.common.primitives.UnsignedLong;
 import com.google.protobuf.DoubleValue;
 import com.google.protobuf.UInt32Value;
 import com.google.protobuf.UInt64Value;
@@ -43,8 +40,7 @@ import com.google.protobuf.UInt64Value;
 public interface MessageUtils {
     static Long getLongValue(Value<?> value) {
         if (value instanceof UnsignedValue) {
-            UnsignedLong unsignedValue = ((UnsignedValue) value).getValue();
-            return unsignedValue.longValue();
+            return ((UnsignedValue) value).longValue();
         }
         return null;
     }
@@ -76,9 +72,12 @@ public interface MessageUtils {
 
     @SafeVarargs
     public static <V> Optional<V> first(final V... values) {
-        return Stream.of(values)
-                .filter(Objects::nonNull)
-                .findFirst();
+        for (final V value : values) {
+            if (value != null) {
+                return Optional.of(value);
+            }
+        }
+        return Optional.empty();
     }
 
 
@@ -99,18 +98,24 @@ public interface MessageUtils {
 
 
     static Optional<UInt32Value> getUInt32Value(Value<?> value) {
-        Long longValue = getLongValue(value);
-        if (longValue != null) {
-            return Optional.of(UInt32Value.newBuilder().setValue(longValue.intValue()).build());
+        return getUInt32Value(getLongValue(value));
+    }
+
+    static Optional<UInt32Value> getUInt32Value(Long value) {
+        if (value != null) {
+            return Optional.of(UInt32Value.newBuilder().setValue(value.intValue()).build());
         }
         return Optional.empty();
     }
 
 
     static Optional<DoubleValue> getDoubleValue(Value<?> value) {
-        Long longValue = getLongValue(value);
-        if (longValue != null) {
-            return Optional.of(DoubleValue.newBuilder().setValue(longValue.doubleValue()).build());
+        return getDoubleValue(getLongValue(value));
+    }
+
+    static Optional<DoubleValue> getDoubleValue(Long value) {
+        if (value != null) {
+            return Optional.of(DoubleValue.newBuilder().setValue(value.doubleValue()).build());
         }
         return Optional.empty();
     }
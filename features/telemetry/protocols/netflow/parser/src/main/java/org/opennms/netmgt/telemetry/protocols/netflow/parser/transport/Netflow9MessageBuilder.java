@@ -24,7 +24,6 @@ package org.opennms.netmgt.telemetry.protocols.netflow.parser.transport;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.first;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getDoubleValue;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getInetAddress;
-import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getLongValue;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getUInt32Value;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getUInt64Value;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.setDoubleValue;
@@ -34,6 +33,7 @@ import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Me
 import java.net.InetAddress;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.RecordEnrichment;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlatRecord;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.Direction;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.FlowMessage;
@@ -85,140 +85,141 @@ public class Netflow9MessageBuilder implements MessageBuilder {
 	    builder.setSamplingInterval(setDoubleValue(this.flowSamplingIntervalFallback));
 	}
 
-        for (final Value<?> value : values) {
-            switch (value.getName()) {
+        final FlatRecord record = FlatRecord.of(values);
+        for (int i = 0; i < record.size(); i++) {
+            switch (record.getName(i)) {
                 // Header
                 case "@recordCount":
-                    getUInt32Value(value).ifPresent(builder::setNumFlowRecords);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setNumFlowRecords);
                     break;
                 case "@sequenceNumber":
-                    getUInt64Value(value).ifPresent(builder::setFlowSeqNum);
+                    getUInt64Value(record.getLong(i)).ifPresent(builder::setFlowSeqNum);
                     break;
                 case "@sourceId":
-                    getUInt64Value(value).ifPresent(srcId -> builder.setNodeIdentifier(String.valueOf(srcId.getValue())));
+                    getUInt64Value(record.getLong(i)).ifPresent(srcId -> builder.setNodeIdentifier(String.valueOf(srcId.getValue())));
                     break;
                 case "@sysUpTime":
-                    sysUpTime = getLongValue(value);
+                    sysUpTime = record.getLong(i);
                     break;
                 case "@unixSecs":
-                    unixSecs = getLongValue(value);
+                    unixSecs = record.getLong(i);
                     break;
                 case "IN_BYTES":
-                    getUInt64Value(value).ifPresent(builder::setNumBytes);
+                    getUInt64Value(record.getLong(i)).ifPresent(builder::setNumBytes);
                     break;
                 case "DIRECTION":
-                builder.setDirection(getDirection(value));
+                builder.setDirection(getDirection(record.getLong(i)));
                     break;
                 case "IPV4_DST_ADDR":
-                    ipv4DstAddress = getInetAddress(value);
+                    ipv4DstAddress = getInetAddress(record.get(i));
                     break;
                 case "IPV6_DST_ADDR":
-                    ipv6DstAddress = getInetAddress(value);
+                    ipv6DstAddress = getInetAddress(record.get(i));
                     break;
                 case "DST_AS":
-                    getUInt64Value(value).ifPresent(builder::setDstAs);
+                    getUInt64Value(record.getLong(i)).ifPresent(builder::setDstAs);
                     break;
                 case "IPV6_DST_MASK":
-                    ipv6DstMask = getLongValue(value);
+                    ipv6DstMask = record.getLong(i);
                     break;
                 case "DST_MASK":
-                    dstMask = getLongValue(value);
+                    dstMask = record.getLong(i);
                     break;
                 case "L4_DST_PORT":
-                    getUInt32Value(value).ifPresent(builder::setDstPort);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setDstPort);
                     break;
                 case "ENGINE_ID":
-                    getUInt32Value(value).ifPresent(builder::setEngineId);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setEngineId);
                     break;
                 case "ENGINE_TYPE":
-                    getUInt32Value(value).ifPresent(builder::setEngineType);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setEngineType);
                     break;
                 case "FIRST_SWITCHED":
-                    firstSwitched = getLongValue(value);
+                    firstSwitched = record.getLong(i);
                     break;
                 case "LAST_SWITCHED":
-                    lastSwitched = getLongValue(value);
+                    lastSwitched = record.getLong(i);
                     break;
                 case "INPUT_SNMP":
-                    inputSnmp = getUInt32Value(value).orElse(null);
+                    inputSnmp = getUInt32Value(record.getLong(i)).orElse(null);
                     break;
                 case "IP_PROTOCOL_VERSION":
-                    getUInt32Value(value).ifPresent(builder::setIpProtocolVersion);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setIpProtocolVersion);
                     break;
                 case "OUTPUT_SNMP":
-                    outputSnmp = getUInt32Value(value).orElse(null);
+                    outputSnmp = getUInt32Value(record.getLong(i)).orElse(null);
                     break;
                 case "IPV6_NEXT_HOP":
-                    ipv6NextHop = getInetAddress(value);
+                    ipv6NextHop = getInetAddress(record.get(i));
                     break;
                 case "IPV4_NEXT_HOP":
-                    ipv4NextHop = getInetAddress(value);
+                    ipv4NextHop = getInetAddress(record.get(i));
                     break;
                 case "BPG_IPV6_NEXT_HOP":
-                    bgpIpv6NextHop = getInetAddress(value);
+                    bgpIpv6NextHop = getInetAddress(record.get(i));
                     break;
                 case "BPG_IPV4_NEXT_HOP":
-                    bgpIpv4NextHop = getInetAddress(value);
+                    bgpIpv4NextHop = getInetAddress(record.get(i));
                     break;
                 case "IN_PKTS":
-                    getUInt64Value(value).ifPresent(builder::setNumPackets);
+                    getUInt64Value(record.getLong(i)).ifPresent(builder::setNumPackets);
                     break;
                 case "PROTOCOL":
-                    getUInt32Value(value).ifPresent(builder::setProtocol);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setProtocol);
                     break;
                 case "SAMPLING_ALGORITHM":
-                builder.setSamplingAlgorithm(getSamplingAlgorithm(value));
+                builder.setSamplingAlgorithm(getSamplingAlgorithm(record.getLong(i)));
                     break;
                 case "SAMPLING_INTERVAL":
-                    getDoubleValue(value).ifPresent(builder::setSamplingInterval);
+                    getDoubleValue(record.getLong(i)).ifPresent(builder::setSamplingInterval);
                     break;
                 case "IPV6_SRC_ADDR":
-                    ipv6SrcAddress = getInetAddress(value);
+                    ipv6SrcAddress = getInetAddress(record.get(i));
                     break;
                 case "IPV4_SRC_ADDR":
-                    ipv4SrcAddress = getInetAddress(value);
+                    ipv4SrcAddress = getInetAddress(record.get(i));
                     break;
                 case "IPV6_SRC_MASK":
-                    ipv6SrcMask = getLongValue(value);
+                    ipv6SrcMask = record.getLong(i);
                     break;
                 case "SRC_MASK":
-                    srcMask = getLongValue(value);
+                    srcMask = record.getLong(i);
                     break;
                 case "SRC_AS":
-                    getUInt64Value(value).ifPresent(builder::setSrcAs);
+                    getUInt64Value(record.getLong(i)).ifPresent(builder::setSrcAs);
                     break;
                 case "L4_SRC_PORT":
-                    getUInt32Value(value).ifPresent(builder::setSrcPort);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setSrcPort);
                     break;
                 case "TCP_FLAGS":
-                    getUInt32Value(value).ifPresent(builder::setTcpFlags);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setTcpFlags);
                     break;
                 case "TOS":
-                    getUInt32Value(value).ifPresent(builder::setTos);
+                    getUInt32Value(record.getLong(i)).ifPresent(builder::setTos);
                     break;
                 case "SRC_VLAN":
-                    srcVlan = getLongValue(value);
+                    srcVlan = record.getLong(i);
                     break;
                 case "DST_VLAN":
-                    dstVlan = getLongValue(value);
+                    dstVlan = record.getLong(i);
                     break;
                 case "FLOW_ACTIVE_TIMEOUT":
-                    flowActiveTimeout = getLongValue(value);
+                    flowActiveTimeout = record.getLong(i);
                     break;
                 case "FLOW_INACTIVE_TIMEOUT":
-                    flowInActiveTimeout = getLongValue(value);
+                    flowInActiveTimeout = record.getLong(i);
                     break;
                 case "flowStartMilliseconds":
-                    flowStartMilliseconds = getLongValue(value);
+                    flowStartMilliseconds = record.getLong(i);
                     break;
                 case "flowEndMilliseconds":
-                    flowEndMilliseconds = getLongValue(value);
+                    flowEndMilliseconds = record.getLong(i);
                     break;
                 case "ingressPhysicalInterface":
-                    ingressPhysicalInterface = getUInt32Value(value).orElse(null);
+                    ingressPhysicalInterface = getUInt32Value(record.getLong(i)).orElse(null);
                     break;
                 case "egressPhysicalInterface":
-                    egressPhysicalInterface = getUInt32Value(value).orElse(null);
+                    egressPhysicalInterface = getUInt32Value(record.getLong(i)).orElse(null);
                     break;
                 default:
                     break;
@@ -293,8 +294,7 @@ public class Netflow9MessageBuilder implements MessageBuilder {
         return builder;
     }
 
-    private static Direction getDirection(final Value<?> value) {
-        Long directionValue = getLongValue(value);
+    private static Direction getDirection(final Long directionValue) {
         Direction direction = Direction.UNKNOWN;
         if (directionValue != null) {
             switch (directionValue.intValue()) {
@@ -311,8 +311,7 @@ public class Netflow9MessageBuilder implements MessageBuilder {
         return direction;
     }
 
-    private static SamplingAlgorithm getSamplingAlgorithm(final Value<?> value) {
-        Long saValue = getLongValue(value);
+    private static SamplingAlgorithm getSamplingAlgorithm(final Long saValue) {
         SamplingAlgorithm samplingAlgorithm = SamplingAlgorithm.UNASSIGNED;
         if (saValue != null) {
             switch(saValue.intValue()) {
@@ -0,0 +1,87 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.netflow.parser;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlatRecord;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.StringValue;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UnsignedValue;
+
+import com.google.common.collect.ImmutableList;
+
+public class FlatRecordTest {
+
+    @Test
+    public void testRawAndParsedFields() {
+        final UnsignedValue.Parser octets = (UnsignedValue.Parser) UnsignedValue.parserWith32Bit("octetDeltaCount", Optional.empty());
+
+        final FlatRecord record = FlatRecord.of(
+                new UnsignedValue.Parser[]{octets, null},
+                new long[]{1234L, 0L},
+                new Value<?>[]{null, new StringValue("name", Optional.empty(), "value")});
+
+        Assert.assertEquals(2, record.size());
+
+        Assert.assertEquals("octetDeltaCount", record.getName(0));
+        Assert.assertTrue(record.isUnsigned(0));
+        Assert.assertEquals(Long.valueOf(1234L), record.getLong(0));
+
+        Assert.assertEquals("name", record.getName(1));
+        Assert.assertFalse(record.isUnsigned(1));
+        Assert.assertNull(record.getLong(1));
+
+        final Value<?> value = record.get(0);
+        Assert.assertEquals("octetDeltaCount", value.getName());
+        Assert.assertEquals(1234L, ((UnsignedValue) value).getValue().longValue());
+        Assert.assertSame(value, record.get(0));
+    }
+
+    @Test
+    public void testConcat() {
+        final FlatRecord header = FlatRecord.of(ImmutableList.of(new UnsignedValue("@sequenceNumber", 42)));
+        final FlatRecord fields = FlatRecord.of(ImmutableList.of(
+                new StringValue("name", Optional.empty(), "value"),
+                new UnsignedValue("octetDeltaCount", 1234)));
+        final FlatRecord options = FlatRecord.of(Collections.emptyList());
+
+        final FlatRecord record = FlatRecord.concat(header, fields, options);
+
+        Assert.assertEquals(3, record.size());
+        Assert.assertEquals("@sequenceNumber", record.getName(0));
+        Assert.assertEquals(Long.valueOf(42L), record.getLong(0));
+        Assert.assertEquals("name", record.getName(1));
+        Assert.assertNull(record.getLong(1));
+        Assert.assertEquals("octetDeltaCount", record.get(2).getName());
+        Assert.assertEquals(Long.valueOf(1234L), record.getLong(2));
+        Assert.assertSame(record, FlatRecord.of(record));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testConcatOutOfBounds() {
+        FlatRecord.concat(FlatRecord.of(ImmutableList.of(new UnsignedValue("@sequenceNumber", 42)))).get(1);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.netflow.parser;
+
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.SequenceNumberTracker;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.TcpSession;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.IpFixMessageBuilder;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageBuilder;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Netflow9MessageBuilder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Measures decoding of recorded data packets into flow messages, using templates learned from recorded template packets.
+ *
+ * The {@code records} counter reports the decoded records per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class FlowDecodingBenchmark {
+    private final static Path FOLDER = Paths.get("src/test/resources/flows");
+
+    private final static RecordEnrichment NO_ENRICHMENT = address -> Optional.empty();
+
+    @Param({"netflow9", "ipfix"})
+    public String protocol;
+
+    private Session session;
+
+    private MessageBuilder messageBuilder;
+
+    private byte[] data;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long records;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.records = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        this.session = new TcpSession(InetAddress.getLoopbackAddress(), () -> new SequenceNumberTracker(32));
+        switch (this.protocol) {
+            case "netflow9":
+                this.messageBuilder = new Netflow9MessageBuilder();
+                parse(Files.readAllBytes(FOLDER.resolve("netflow9_test_cisco_asr9k_tpl260.dat")));
+                this.data = Files.readAllBytes(FOLDER.resolve("netflow9_test_cisco_asr9k_data260.dat"));
+                break;
+            case "ipfix":
+                this.messageBuilder = new IpFixMessageBuilder();
+                parse(Files.readAllBytes(FOLDER.resolve("ipfix_test_mikrotik_tpl.dat")));
+                this.data = Files.readAllBytes(FOLDER.resolve("ipfix_test_mikrotik_data258.dat"));
+                break;
+            default:
+                throw new IllegalArgumentException(this.protocol);
+        }
+    }
+
+    @Benchmark
+    public void decode(final Counters counters, final Blackhole blackhole) throws Exception {
+        parse(this.data).getRecords().forEach(record -> {
+            blackhole.consume(this.messageBuilder.buildMessage(record, NO_ENRICHMENT).build());
+            counters.records++;
+        });
+    }
+
+    private RecordProvider parse(final byte[] bytes) throws InvalidPacketException, IOException {
+        final ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
+        if ("netflow9".equals(this.protocol)) {
+            final org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header header =
+                    new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header(slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header.SIZE));
+            return new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Packet(this.session, header, buffer);
+        } else {
+            final org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header header =
+                    new org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header(slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header.SIZE));
+            return new org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Packet(this.session, header, slice(buffer, header.length - org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header.SIZE));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
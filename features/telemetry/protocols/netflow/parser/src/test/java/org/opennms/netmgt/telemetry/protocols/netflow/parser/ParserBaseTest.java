@@ -0,0 +1,285 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.telemetry.protocols.netflow.parser;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.ipc.sink.api.AsyncDispatcher;
+import org.opennms.distributed.core.api.Identity;
+import org.opennms.netmgt.dnsresolver.api.DnsResolver;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.telemetry.api.receiver.TelemetryMessage;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Header;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Packet;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Verifies that the batched record transmission of {@link ParserBase} dispatches the same messages as the per-record
+ * pipeline and handles lookup and dispatch failures.
+ */
+public class ParserBaseTest {
+    private final static Path FOLDER = Paths.get("src/test/resources/flows");
+
+    private final InetSocketAddress remoteAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 2055);
+
+    private RecordingDispatcher dispatcher;
+    private DnsResolver dnsResolver;
+    private MetricRegistry metricRegistry;
+    private Session session;
+    private ScheduledExecutorService executorService;
+    private Netflow5UdpParser parser;
+
+    @Before
+    public void setUp() {
+        this.dispatcher = new RecordingDispatcher();
+
+        this.dnsResolver = mock(DnsResolver.class);
+        when(this.dnsResolver.reverseLookup(any())).thenReturn(CompletableFuture.completedFuture(Optional.of("test")));
+
+        this.session = mock(Session.class);
+        when(this.session.getRemoteAddress()).thenReturn(this.remoteAddress.getAddress());
+
+        this.metricRegistry = new MetricRegistry();
+        this.parser = new Netflow5UdpParser("FLOW", this.dispatcher, mock(EventForwarder.class), mock(Identity.class), this.dnsResolver, this.metricRegistry);
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+        this.parser.start(this.executorService);
+    }
+
+    @After
+    public void tearDown() {
+        this.parser.stop();
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void canTransmitBatch() throws Exception {
+        final Packet packet = getNf5Packet();
+        final int count = packet.getRecords().collect(Collectors.toList()).size();
+
+        // Dispatch the packet record by record first
+        this.parser.setBatchRecords(false);
+        this.parser.transmit(packet, this.session, this.remoteAddress).get(5, TimeUnit.SECONDS);
+        final List<ByteBuffer> unbatched = this.dispatcher.complete();
+
+        // Dispatching the same packet as a batch must yield the same messages
+        this.parser.setBatchRecords(true);
+        this.parser.transmit(packet, this.session, this.remoteAddress).get(5, TimeUnit.SECONDS);
+        final List<ByteBuffer> batched = this.dispatcher.complete();
+
+        assertThat(unbatched.size(), equalTo(count));
+        assertThat(batched, containsInAnyOrder(unbatched.toArray()));
+
+        assertThat(this.metricRegistry.meter(MetricRegistry.name("parsers", "FLOW", "recordsCompleted")).getCount(), equalTo(2L * count));
+    }
+
+    @Test
+    public void canDeduplicateLookupsInBatch() throws Exception {
+        final Packet packet = getNf5Packet();
+
+        this.parser.setBatchRecords(true);
+        this.parser.transmit(packet, this.session, this.remoteAddress).get(5, TimeUnit.SECONDS);
+        this.dispatcher.complete();
+
+        // Every distinct address of the packet is resolved exactly once
+        final long addresses = packet.getRecords()
+                .flatMap(record -> {
+                    final List<InetAddress> result = new ArrayList<>();
+                    record.forEach(value -> {
+                        if (value.getValue() instanceof InetAddress) {
+                            result.add((InetAddress) value.getValue());
+                        }
+                    });
+                    return result.stream();
+                })
+                .distinct()
+                .peek(address -> verify(this.dnsResolver, times(1)).reverseLookup(address))
+                .count();
+        verify(this.dnsResolver, times((int) addresses)).reverseLookup(any());
+    }
+
+    @Test
+    public void batchCompletesWhenAllRecordsAreDispatched() throws Exception {
+        final Packet packet = getNf5Packet();
+        final int count = packet.getRecords().collect(Collectors.toList()).size();
+
+        this.dispatcher.setAutoComplete(false);
+        this.parser.setBatchRecords(true);
+
+        final CompletableFuture<?> future = this.parser.transmit(packet, this.session, this.remoteAddress);
+
+        // The batch is handed to the dispatcher at once but not finished before the dispatcher flushed all records
+        this.dispatcher.awaitPending(count);
+        assertThat(future.isDone(), is(false));
+
+        this.dispatcher.complete();
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void batchReportsDispatchErrors() throws Exception {
+        final Packet packet = getNf5Packet();
+        final int count = packet.getRecords().collect(Collectors.toList()).size();
+
+        this.dispatcher.setAutoComplete(false);
+        this.parser.setBatchRecords(true);
+
+        final CompletableFuture<?> future = this.parser.transmit(packet, this.session, this.remoteAddress);
+        this.dispatcher.awaitPending(count);
+
+        // Fail a single record - all others must still be dispatched
+        this.dispatcher.fail(0, new IllegalStateException("Kafka is down"));
+        this.dispatcher.complete();
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause() instanceof IllegalStateException, is(true));
+        }
+        assertThat(future.isCompletedExceptionally(), is(true));
+
+        assertThat(this.metricRegistry.counter(MetricRegistry.name("parsers", "FLOW", "recordDispatchErrors")).getCount(), equalTo(1L));
+        assertThat(this.metricRegistry.meter(MetricRegistry.name("parsers", "FLOW", "recordsCompleted")).getCount(), equalTo((long) count - 1));
+    }
+
+    @Test
+    public void batchToleratesFailedLookups() throws Exception {
+        final CompletableFuture<Optional<String>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException());
+        when(this.dnsResolver.reverseLookup(any())).thenReturn(failed);
+
+        final Packet packet = getNf5Packet();
+        final int count = packet.getRecords().collect(Collectors.toList()).size();
+
+        this.parser.setBatchRecords(true);
+        this.parser.transmit(packet, this.session, this.remoteAddress).get(5, TimeUnit.SECONDS);
+
+        // Records are dispatched without hostnames
+        assertThat(this.dispatcher.complete().size(), equalTo(count));
+    }
+
+    private static Packet getNf5Packet() throws Exception {
+        try (final FileChannel channel = FileChannel.open(FOLDER.resolve("netflow5.dat"))) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            channel.read(buffer);
+            buffer.flip();
+
+            final ByteBuf buf = Unpooled.wrappedBuffer(buffer);
+            final Header header = new Header(slice(buf, Header.SIZE));
+            return new Packet(header, buf);
+        }
+    }
+
+    private static class RecordingDispatcher implements AsyncDispatcher<TelemetryMessage> {
+        private final List<TelemetryMessage> messages = new ArrayList<>();
+        private final List<CompletableFuture<DispatchStatus>> pending = new ArrayList<>();
+
+        private boolean autoComplete = true;
+
+        public synchronized void setAutoComplete(final boolean autoComplete) {
+            this.autoComplete = autoComplete;
+        }
+
+        @Override
+        public synchronized CompletableFuture<DispatchStatus> send(final TelemetryMessage message) {
+            this.messages.add(message);
+
+            final CompletableFuture<DispatchStatus> future = new CompletableFuture<>();
+            if (this.autoComplete) {
+                future.complete(DispatchStatus.DISPATCHED);
+            }
+            this.pending.add(future);
+            this.notifyAll();
+            return future;
+        }
+
+        public synchronized void awaitPending(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (this.pending.size() < count && System.currentTimeMillis() < deadline) {
+                this.wait(100);
+            }
+            assertThat(this.pending.size(), equalTo(count));
+        }
+
+        public synchronized void fail(final int index, final Throwable t) {
+            this.pending.get(index).completeExceptionally(t);
+        }
+
+        /**
+         * Completes all pending messages and returns the payloads sent so far.
+         */
+        public List<ByteBuffer> complete() {
+            final List<CompletableFuture<DispatchStatus>> futures;
+            final List<ByteBuffer> buffers;
+            synchronized (this) {
+                futures = new ArrayList<>(this.pending);
+                buffers = this.messages.stream().map(TelemetryMessage::getBuffer).collect(Collectors.toList());
+                this.pending.clear();
+                this.messages.clear();
+            }
+            futures.forEach(future -> future.complete(DispatchStatus.DISPATCHED));
+            return Collections.unmodifiableList(buffers);
+        }
+
+        @Override
+        public int getQueueSize() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
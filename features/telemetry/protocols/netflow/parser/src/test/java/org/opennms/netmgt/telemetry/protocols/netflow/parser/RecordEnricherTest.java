@@ -25,6 +25,8 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.InetAddress;
@@ -38,6 +40,7 @@ import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.opennms.netmgt.dnsresolver.api.DnsResolver;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Header;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Packet;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Record;
@@ -69,6 +72,24 @@ public class RecordEnricherTest {
         enrichFlow(exceptionalFuture, Optional.empty(), false);
     }
 
+    @Test
+    public void canEnrichBatch() throws InvalidPacketException, ExecutionException, InterruptedException, UnknownHostException {
+        DnsResolver dnsResolver = mock(DnsResolver.class);
+        when(dnsResolver.reverseLookup(any())).thenReturn(CompletableFuture.completedFuture(Optional.of("test")));
+
+        RecordEnricher enricher = new RecordEnricher(dnsResolver, true);
+
+        final Packet packet = getSampleNf5Packet();
+        final List<Iterable<Value<?>>> records = packet.getRecords().collect(Collectors.toList());
+
+        // Enrich the same records twice in a single batch
+        final RecordEnrichment enrichment = enricher.enrichAll(Arrays.asList(records.get(0), records.get(0))).get();
+        assertThat(enrichment.getHostnameFor(InetAddress.getByName("255.255.255.255")), equalTo(Optional.of("test")));
+
+        // Each distinct address must only be resolved once per batch
+        verify(dnsResolver, times(1)).reverseLookup(InetAddress.getByName("255.255.255.255"));
+    }
+
     private void enrichFlow(CompletableFuture reverseLookupFuture, Optional<String> expectedValue, boolean dnsLookupsEnabled) throws InvalidPacketException, ExecutionException, InterruptedException, UnknownHostException {
         DnsResolver dnsResolver = mock(DnsResolver.class);
         when(dnsResolver.reverseLookup(any())).thenReturn(reverseLookupFuture);
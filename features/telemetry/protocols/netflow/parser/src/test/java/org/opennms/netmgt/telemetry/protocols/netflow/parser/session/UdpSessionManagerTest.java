@@ -34,12 +34,14 @@ import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.StringVal
 import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
-import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
@@ -186,13 +188,58 @@ public class UdpSessionManagerTest {
 
         session.addOptions(observationId1, templateId1, scopesValue, fieldsValue);
 
-        assertThat(udpSessionManager.templates.keySet(), hasItem(new UdpSessionManager.TemplateKey(sessionKey, observationId1, template.id)));
-        assertThat(udpSessionManager.templates.get(new UdpSessionManager.TemplateKey(sessionKey, observationId1, template.id)).wrapped.options.entrySet(), not(empty()));
+        assertThat(udpSessionManager.lookup(sessionKey, observationId1, template.id), notNullValue());
+        assertThat(udpSessionManager.lookup(sessionKey, observationId1, template.id).wrapped.options.entrySet(), not(empty()));
+        assertThat(udpSessionManager.count(), is(1));
 
         udpSessionManager.doHousekeeping();
 
-        assertThat(udpSessionManager.templates.keySet(), not(hasItem(new UdpSessionManager.TemplateKey(sessionKey, observationId1, template.id))));
-        assertThat(udpSessionManager.templates.get(new UdpSessionManager.TemplateKey(sessionKey, observationId1, template.id)), nullValue());
+        assertThat(udpSessionManager.lookup(sessionKey, observationId1, template.id), nullValue());
+        assertThat(udpSessionManager.count(), is(0));
+    }
+
+    @Test
+    public void templateRemovalTest() {
+        final UdpSessionManager.SessionKey sessionKey1 = new Netflow9UdpParser.SessionKey(remoteAddress1.getAddress(), localAddress1);
+        final UdpSessionManager.SessionKey sessionKey2 = new Netflow9UdpParser.SessionKey(remoteAddress3.getAddress(), localAddress1);
+
+        final UdpSessionManager udpSessionManager = new UdpSessionManager(Duration.ofMinutes(30), () -> new SequenceNumberTracker(32));
+        final Session session1 = udpSessionManager.getSession(sessionKey1);
+        final Session session2 = udpSessionManager.getSession(sessionKey2);
+
+        final Template template1 = Template.builder(256, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field1", null))).build();
+        final Template template2 = Template.builder(257, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field1", null))).build();
+        final Template options = Template.builder(258, Template.Type.OPTIONS_TEMPLATE).withScopes(Collections.singletonList(scope("scope1", null))).build();
+
+        session1.addTemplate(observationId1, template1);
+        session1.addTemplate(observationId1, template2);
+        session1.addTemplate(observationId1, options);
+        session1.addTemplate(observationId2, template1);
+        session2.addTemplate(observationId1, template1);
+
+        // Refreshing a template must not add a second entry
+        session1.addTemplate(observationId1, template1);
+        assertThat(udpSessionManager.count(), is(5));
+
+        session1.removeAllTemplate(observationId1, Template.Type.TEMPLATE);
+        assertThat(udpSessionManager.lookup(sessionKey1, observationId1, template1.id), nullValue());
+        assertThat(udpSessionManager.lookup(sessionKey1, observationId1, template2.id), nullValue());
+        assertThat(udpSessionManager.lookup(sessionKey1, observationId1, options.id), notNullValue());
+        assertThat(udpSessionManager.lookup(sessionKey1, observationId2, template1.id), notNullValue());
+        assertThat(udpSessionManager.count(), is(3));
+
+        session1.removeTemplate(observationId1, options.id);
+        assertThat(udpSessionManager.lookup(sessionKey1, observationId1, options.id), nullValue());
+        assertThat(udpSessionManager.count(), is(2));
+
+        udpSessionManager.drop(sessionKey1);
+        assertThat(udpSessionManager.lookup(sessionKey1, observationId2, template1.id), nullValue());
+        assertThat(udpSessionManager.lookup(sessionKey2, observationId1, template1.id), notNullValue());
+        assertThat(udpSessionManager.count(), is(1));
+
+        // Nothing is older than the timeout
+        udpSessionManager.doHousekeeping();
+        assertThat(udpSessionManager.count(), is(1));
     }
 
     @Test
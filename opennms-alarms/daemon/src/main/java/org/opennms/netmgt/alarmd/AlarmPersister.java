@@ -21,6 +21,9 @@
  */
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.xml.event.Event;
 
@@ -40,4 +43,21 @@ public interface AlarmPersister {
      */
     OnmsAlarm persist(Event event);
 
+    /**
+     * <p>persist</p>
+     *
+     * Persists the given events in order. Implementations may reduce the whole
+     * batch within a single transaction.
+     *
+     * @param events a list of {@link org.opennms.netmgt.xml.event.Event} objects
+     * @return the new/updated {@link OnmsAlarm} for each event, or null if the event was not reduced
+     */
+    default List<OnmsAlarm> persist(List<Event> events) {
+        final List<OnmsAlarm> alarms = new ArrayList<>(events.size());
+        for (Event event : events) {
+            alarms.add(persist(event));
+        }
+        return alarms;
+    }
+
 }
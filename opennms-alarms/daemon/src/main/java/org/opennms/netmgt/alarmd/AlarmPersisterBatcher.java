@@ -0,0 +1,174 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.alarmd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queues events and hands them to the {@link AlarmPersister} in batches.
+ *
+ * Events are partitioned by the key used to look up their alarm and every partition
+ * is drained by a single thread, so that events reducing to the same alarm are
+ * persisted in the order they were queued.
+ */
+public class AlarmPersisterBatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmPersisterBatcher.class);
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final AlarmPersister m_persister;
+    private final int m_batchSize;
+    private final List<BlockingQueue<Event>> m_queues;
+    private final List<Thread> m_threads;
+
+    /**
+     * Held for reading while queuing events and for writing while starting or stopping,
+     * so that no event is queued once the draining threads may have exited.
+     */
+    private final ReadWriteLock m_runningLock = new ReentrantReadWriteLock();
+
+    private volatile boolean m_running;
+
+    /**
+     * @param persister the persister to hand the batches to
+     * @param partitions the number of queues and draining threads
+     * @param batchSize the maximum number of events handed to the persister at once
+     * @param queueSize the capacity of each queue, producers block when it is exhausted
+     */
+    public AlarmPersisterBatcher(AlarmPersister persister, int partitions, int batchSize, int queueSize) {
+        m_persister = Objects.requireNonNull(persister);
+        if (partitions < 1 || batchSize < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Partitions, batch size and queue size must be positive.");
+        }
+        m_batchSize = batchSize;
+        m_queues = new ArrayList<>(partitions);
+        m_threads = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            final BlockingQueue<Event> queue = new LinkedBlockingQueue<>(queueSize);
+            m_queues.add(queue);
+            final Thread thread = new Thread(() -> drain(queue), "alarmd-batcher-" + i);
+            thread.setDaemon(true);
+            m_threads.add(thread);
+        }
+    }
+
+    public synchronized void start() {
+        m_runningLock.writeLock().lock();
+        try {
+            m_running = true;
+        } finally {
+            m_runningLock.writeLock().unlock();
+        }
+        m_threads.forEach(Thread::start);
+    }
+
+    /**
+     * Stops queuing events and waits for the queued ones to be persisted.
+     *
+     * Events received afterwards are persisted by the calling thread.
+     */
+    public synchronized void stop() throws InterruptedException {
+        m_runningLock.writeLock().lock();
+        try {
+            m_running = false;
+        } finally {
+            m_runningLock.writeLock().unlock();
+        }
+        for (Thread thread : m_threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Queues the event, blocking while the partition is full.
+     *
+     * If the batcher is not running, the event is persisted by the calling thread instead.
+     */
+    public void enqueue(Event event) throws InterruptedException {
+        if (event.getAlarmData() == null) {
+            // Nothing to reduce
+            return;
+        }
+        m_runningLock.readLock().lock();
+        try {
+            if (m_running) {
+                m_queues.get(Math.floorMod(getPartitionKey(event).hashCode(), m_queues.size())).put(event);
+                return;
+            }
+        } finally {
+            m_runningLock.readLock().unlock();
+        }
+        LOG.debug("Not running, persisting event {} directly.", event.getUei());
+        m_persister.persist(event);
+    }
+
+    /**
+     * Resolutions are looked up by their clear key, so they need to end up in the same
+     * partition as the problems they clear.
+     */
+    private static String getPartitionKey(Event event) {
+        final String clearKey = event.getAlarmData().getClearKey();
+        if (clearKey != null && Objects.equals(event.getAlarmData().getAlarmType(), OnmsAlarm.RESOLUTION_TYPE)) {
+            return clearKey;
+        }
+        return event.getAlarmData().getReductionKey();
+    }
+
+    private void drain(BlockingQueue<Event> queue) {
+        final List<Event> batch = new ArrayList<>(m_batchSize);
+        while (m_running || !queue.isEmpty()) {
+            try {
+                final Event event = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    continue;
+                }
+                batch.add(event);
+                queue.drainTo(batch, m_batchSize - 1);
+                m_persister.persist(batch);
+            } catch (InterruptedException e) {
+                LOG.info("Interrupted, dropping {} queued events.", queue.size());
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOG.error("Failed to persist batch of {} events.", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return m_queues.stream().mapToInt(BlockingQueue::size).sum();
+    }
+}
@@ -22,10 +22,14 @@
 package org.opennms.netmgt.alarmd;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -33,6 +37,7 @@ import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
+import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.core.sysprops.SystemProperties;
 import org.opennms.netmgt.alarmd.api.AlarmPersisterExtension;
 import org.opennms.netmgt.dao.api.AlarmDao;
@@ -50,6 +55,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
@@ -123,6 +130,94 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return alarm;
     }
 
+    /**
+     * Reduces a batch of events within a single transaction.
+     *
+     * The persisted events and all alarms referenced by the reduction and clear keys
+     * are loaded up front, events are then reduced in the given order. Repeated reductions
+     * of the same alarm are coalesced into a single update and notification. The listeners
+     * are only notified once the transaction was committed.
+     *
+     * If the batch fails, the events are retried one by one.
+     */
+    @Override
+    public List<OnmsAlarm> persist(List<Event> events) {
+        Objects.requireNonNull(events, "Cannot create alarms from null events.");
+
+        final List<OnmsAlarm> alarms = new ArrayList<>(Collections.nCopies(events.size(), null));
+        final Map<Integer, Event> eventsToProcess = new LinkedHashMap<>();
+        final Set<String> lockKeys = new LinkedHashSet<>();
+        for (int i = 0; i < events.size(); i++) {
+            final Event event = Objects.requireNonNull(events.get(i), "Cannot create alarm from null event.");
+            try {
+                if (!checkEventSanityAndDoWeProcess(event)) {
+                    continue;
+                }
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Skipping event {}: {}", event, e.getMessage());
+                continue;
+            }
+            eventsToProcess.put(i, event);
+            lockKeys.addAll(getLockKeys(event));
+        }
+        if (eventsToProcess.isEmpty()) {
+            return alarms;
+        }
+
+        LOG.debug("persist: reducing batch of {} events", eventsToProcess.size());
+
+        // Striped#bulkGet() returns the locks in a consistent order, which avoids dead-locks
+        // between concurrent batches
+        final Iterable<Lock> locks = lockStripes.bulkGet(lockKeys);
+        try {
+            locks.forEach(Lock::lock);
+            try {
+                final Map<Integer, OnmsAlarm> reduced = m_transactionOperations.execute((action) -> addOrReduceEventsAsAlarms(eventsToProcess));
+                reduced.forEach(alarms::set);
+            } catch (Exception e) {
+                LOG.warn("Exception while reducing batch of {} events to alarms, retrying them individually", eventsToProcess.size(), e);
+                // The locks are re-entrant, so the per-key ordering is retained
+                eventsToProcess.forEach((index, event) -> alarms.set(index, persist(event)));
+            }
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+
+        return alarms;
+    }
+
+    private Map<Integer, OnmsAlarm> addOrReduceEventsAsAlarms(Map<Integer, Event> events) {
+        final Map<Integer, OnmsEvent> persistedEvents = new HashMap<>();
+        final List<Integer> eventIds = events.values().stream()
+                .map(Event::getDbid)
+                .collect(Collectors.toList());
+        for (final OnmsEvent persistedEvent : m_eventDao.findMatching(new CriteriaBuilder(OnmsEvent.class).in("id", eventIds).toCriteria())) {
+            persistedEvents.put(persistedEvent.getId(), persistedEvent);
+        }
+
+        final Set<String> reductionKeys = new LinkedHashSet<>();
+        for (final Event event : events.values()) {
+            reductionKeys.add(event.getAlarmData().getReductionKey());
+            if (event.getAlarmData().getClearKey() != null) {
+                reductionKeys.add(event.getAlarmData().getClearKey());
+            }
+        }
+        final ReductionContext context = new ReductionContext(m_alarmDao.findByReductionKeys(reductionKeys));
+
+        final Map<Integer, OnmsAlarm> alarms = new HashMap<>();
+        for (final Map.Entry<Integer, Event> entry : events.entrySet()) {
+            final Event event = entry.getValue();
+            final OnmsEvent persistedEvent = persistedEvents.get(event.getDbid());
+            if (persistedEvent == null) {
+                LOG.warn("Event with id {} was deleted before we could retrieve it and create an alarm.", event.getDbid());
+                continue;
+            }
+            alarms.put(entry.getKey(), addOrReduceEventAsAlarm(event, persistedEvent, context));
+        }
+        context.complete();
+        return alarms;
+    }
+
     private OnmsAlarm addOrReduceEventAsAlarm(Event event) throws IllegalStateException {
         
         final OnmsEvent persistedEvent = m_eventDao.get(event.getDbid());
@@ -130,6 +225,14 @@ public class AlarmPersisterImpl implements AlarmPersister {
             throw new IllegalStateException("Event with id " + event.getDbid() + " was deleted before we could retrieve it and create an alarm.");
         }
 
+        final ReductionContext context = new ReductionContext(null);
+        final OnmsAlarm alarm = addOrReduceEventAsAlarm(event, persistedEvent, context);
+        context.complete();
+        return alarm;
+    }
+
+    private OnmsAlarm addOrReduceEventAsAlarm(Event event, OnmsEvent persistedEvent, ReductionContext context) {
+
         final String reductionKey = event.getAlarmData().getReductionKey();
         LOG.debug("addOrReduceEventAsAlarm: looking for existing reduction key: {}", reductionKey);
         
@@ -142,11 +245,11 @@ public class AlarmPersisterImpl implements AlarmPersister {
             didSwapReductionKeyWithClearKey = true;
         }
 
-        OnmsAlarm alarm = m_alarmDao.findByReductionKey(key);
+        OnmsAlarm alarm = context.findByReductionKey(key);
 
         if (alarm == null && didSwapReductionKeyWithClearKey) {
             // if the clearKey returns null, still need to check the reductionKey
-            alarm = m_alarmDao.findByReductionKey(reductionKey);
+            alarm = context.findByReductionKey(reductionKey);
         }
 
         if (alarm == null || (m_createNewAlarmIfClearedAlarmExists && OnmsSeverity.CLEARED.equals(alarm.getSeverity()))) {
@@ -157,11 +260,13 @@ public class AlarmPersisterImpl implements AlarmPersister {
             if (alarm != null) {
                 LOG.debug("addOrReduceEventAsAlarm: \"archiving\" cleared Alarm for problem: {}; " +
                         "A new alarm will be instantiated to manage the problem.", reductionKey);
+                context.willArchive(alarm);
                 alarm.archive();
                 m_alarmDao.save(alarm);
                 m_alarmDao.flush();
 
-                m_alarmEntityNotifier.didArchiveAlarm(alarm, reductionKey);
+                final OnmsAlarm alarmArchived = alarm;
+                context.notifyListeners(() -> m_alarmEntityNotifier.didArchiveAlarm(alarmArchived, reductionKey));
             }
 
             alarm = createNewAlarm(persistedEvent, event);
@@ -176,10 +281,13 @@ public class AlarmPersisterImpl implements AlarmPersister {
 
             m_alarmDao.save(alarm);
             m_eventDao.saveOrUpdate(persistedEvent);
+            context.didCreate(alarm);
 
-            m_alarmEntityNotifier.didCreateAlarm(alarm);
+            final OnmsAlarm alarmCreated = alarm;
+            context.notifyListeners(() -> m_alarmEntityNotifier.didCreateAlarm(alarmCreated));
         } else {
             LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} found, reducing event to existing alarm: {}", reductionKey, alarm.getId());
+            context.willReduce(alarm, event.getAlarmData().isAutoClean());
             reduceEvent(persistedEvent, alarm, event);
 
             // Trigger extensions, allowing them to mangle the alarm
@@ -190,16 +298,129 @@ public class AlarmPersisterImpl implements AlarmPersister {
                 LOG.error("An error occurred while invoking the extension callbacks.", ex);
             }
 
-            m_alarmDao.update(alarm);
             m_eventDao.update(persistedEvent);
+            context.didReduce(alarm, persistedEvent, event.getAlarmData().isAutoClean());
+        }
+        return alarm;
+    }
+
+    private void updateReducedAlarm(OnmsAlarm alarm, OnmsEvent lastEvent, boolean autoClean) {
+        m_alarmDao.update(alarm);
 
-            if (event.getAlarmData().isAutoClean()) {
-                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), persistedEvent);
+        if (autoClean) {
+            m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), lastEvent);
+        }
+    }
+
+    /**
+     * Tracks the alarms touched while reducing one or more events within a single transaction.
+     *
+     * When reducing a batch, the alarms are looked up from the preloaded alarms and the updates
+     * of reduced alarms are deferred until {@link #complete()}, so that repeated reductions of the
+     * same alarm result in a single update. The notifications are deferred until the transaction
+     * was committed, so that the listeners don't see alarms of a batch which is rolled back and
+     * retried event by event.
+     */
+    private class ReductionContext {
+        private final Map<String, OnmsAlarm> m_alarmsByReductionKey;
+        private final Map<OnmsAlarm, PendingReduction> m_pendingReductions = new LinkedHashMap<>();
+        private final List<Runnable> m_pendingNotifications = new ArrayList<>();
+
+        /**
+         * @param alarmsByReductionKey preloaded alarms, or null to look up alarms one by one and apply reductions immediately
+         */
+        private ReductionContext(Map<String, OnmsAlarm> alarmsByReductionKey) {
+            m_alarmsByReductionKey = alarmsByReductionKey != null ? new HashMap<>(alarmsByReductionKey) : null;
+        }
+
+        private boolean isBatch() {
+            return m_alarmsByReductionKey != null;
+        }
+
+        private OnmsAlarm findByReductionKey(String reductionKey) {
+            return isBatch() ? m_alarmsByReductionKey.get(reductionKey) : m_alarmDao.findByReductionKey(reductionKey);
+        }
+
+        private void willArchive(OnmsAlarm alarm) {
+            if (!isBatch()) {
+                return;
+            }
+            // Apply what was reduced so far before the alarm goes away
+            final PendingReduction pending = m_pendingReductions.remove(alarm);
+            if (pending != null) {
+                update(alarm, pending.m_lastEvent, pending.m_autoClean);
+            }
+            m_alarmsByReductionKey.remove(alarm.getReductionKey());
+        }
+
+        private void willReduce(OnmsAlarm alarm, boolean autoClean) {
+            if (!isBatch() || autoClean) {
+                return;
+            }
+            // An earlier event in this batch wants to clean up all events but itself: apply it before
+            // this event gets associated with the alarm
+            final PendingReduction pending = m_pendingReductions.get(alarm);
+            if (pending != null && pending.m_autoClean) {
+                m_pendingReductions.remove(alarm);
+                update(alarm, pending.m_lastEvent, true);
             }
+        }
 
-            m_alarmEntityNotifier.didUpdateAlarmWithReducedEvent(alarm);
+        private void didCreate(OnmsAlarm alarm) {
+            if (isBatch()) {
+                m_alarmsByReductionKey.put(alarm.getReductionKey(), alarm);
+            }
         }
-        return alarm;
+
+        private void didReduce(OnmsAlarm alarm, OnmsEvent persistedEvent, boolean autoClean) {
+            if (!isBatch()) {
+                update(alarm, persistedEvent, autoClean);
+                return;
+            }
+            final PendingReduction pending = m_pendingReductions.computeIfAbsent(alarm, a -> new PendingReduction());
+            pending.m_lastEvent = persistedEvent;
+            pending.m_autoClean = autoClean;
+        }
+
+        private void update(OnmsAlarm alarm, OnmsEvent lastEvent, boolean autoClean) {
+            updateReducedAlarm(alarm, lastEvent, autoClean);
+            notifyListeners(() -> m_alarmEntityNotifier.didUpdateAlarmWithReducedEvent(alarm));
+        }
+
+        private void notifyListeners(Runnable notification) {
+            if (isBatch()) {
+                m_pendingNotifications.add(notification);
+            } else {
+                notification.run();
+            }
+        }
+
+        private void complete() {
+            m_pendingReductions.forEach((alarm, pending) -> update(alarm, pending.m_lastEvent, pending.m_autoClean));
+            m_pendingReductions.clear();
+
+            if (m_pendingNotifications.isEmpty()) {
+                return;
+            }
+            final List<Runnable> notifications = new ArrayList<>(m_pendingNotifications);
+            m_pendingNotifications.clear();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // Dropped if the transaction is rolled back
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        notifications.forEach(Runnable::run);
+                    }
+                });
+            } else {
+                notifications.forEach(Runnable::run);
+            }
+        }
+    }
+
+    private static class PendingReduction {
+        private OnmsEvent m_lastEvent;
+        private boolean m_autoClean;
     }
 
     private void reduceEvent(OnmsEvent persistedEvent, OnmsAlarm alarm, Event event) {
@@ -49,8 +49,17 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
 
     protected static final Integer THREADS = SystemProperties.getInteger("org.opennms.alarmd.threads", 4);
 
+    /**
+     * Number of events reduced within a single transaction, batching is disabled if less than 2.
+     */
+    protected static final Integer BATCH_SIZE = SystemProperties.getInteger("org.opennms.alarmd.batch.size", 0);
+
+    protected static final Integer BATCH_QUEUE_SIZE = SystemProperties.getInteger("org.opennms.alarmd.batch.queue.size", 10000);
+
     private AlarmPersister m_persister;
 
+    private volatile AlarmPersisterBatcher m_batcher;
+
     @Autowired
     private AlarmLifecycleListenerManager m_alm;
 
@@ -77,6 +86,16 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
            handleReloadEvent(e);
            return;
     	}
+    	final AlarmPersisterBatcher batcher = m_batcher;
+    	if (batcher != null) {
+    	    try {
+    	        batcher.enqueue(Event.copyFrom(e));
+    	    } catch (InterruptedException ex) {
+    	        LOG.warn("Interrupted while queuing event {}.", e.getUei());
+    	        Thread.currentThread().interrupt();
+    	    }
+    	    return;
+    	}
     	m_persister.persist(Event.copyFrom(e));
     }
 
@@ -109,7 +128,11 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
 
     @Override
     protected synchronized void onInit() {
-        // pass
+        if (BATCH_SIZE > 1) {
+            LOG.info("Reducing events in batches of up to {} events.", BATCH_SIZE);
+            m_batcher = new AlarmPersisterBatcher(m_persister, THREADS, BATCH_SIZE, BATCH_QUEUE_SIZE);
+            m_batcher.start();
+        }
     }
 
     @Override
@@ -120,6 +143,16 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
 
     @Override
     public synchronized void onStop() {
+        // Persist the queued events
+        if (m_batcher != null) {
+            try {
+                m_batcher.stop();
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while waiting for queued events to be persisted.");
+                Thread.currentThread().interrupt();
+            }
+            m_batcher = null;
+        }
         // Stop the northbound interfaces
         m_northbounderManager.stop();
         // Stop the Drools context
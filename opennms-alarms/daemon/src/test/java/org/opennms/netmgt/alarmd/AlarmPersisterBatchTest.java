@@ -0,0 +1,242 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.alarmd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.AlarmEntityNotifier;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.eventd.EventUtil;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+/**
+ * Verifies the batched reduction of events to alarms using mocked DAOs.
+ */
+public class AlarmPersisterBatchTest {
+
+    private static final String UEI = "uei.opennms.org/test/trap";
+
+    private AlarmPersisterImpl m_persister;
+    private AlarmDao m_alarmDao;
+    private EventDao m_eventDao;
+    private AlarmEntityNotifier m_notifier;
+
+    private final Map<Integer, OnmsEvent> m_persistedEvents = new HashMap<>();
+    private int m_transactions;
+    private int m_nextEventId = 1;
+
+    @Before
+    public void setUp() {
+        m_alarmDao = mock(AlarmDao.class);
+        m_eventDao = mock(EventDao.class);
+        m_notifier = mock(AlarmEntityNotifier.class);
+        when(m_eventDao.findMatching(any(Criteria.class))).thenAnswer(invocation -> new ArrayList<>(m_persistedEvents.values()));
+        when(m_eventDao.get(any())).thenAnswer(invocation -> m_persistedEvents.get(invocation.<Integer>getArgument(0)));
+
+        m_persister = new AlarmPersisterImpl();
+        m_persister.setAlarmDao(m_alarmDao);
+        m_persister.setEventDao(m_eventDao);
+        m_persister.setEventUtil(mock(EventUtil.class));
+        m_persister.setAlarmChangeListener(m_notifier);
+        m_persister.setTransactionOperations(new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+                m_transactions++;
+                TransactionSynchronizationManager.initSynchronization();
+                try {
+                    final T result = action.doInTransaction(null);
+                    TransactionSynchronizationUtils.triggerAfterCommit();
+                    return result;
+                } finally {
+                    TransactionSynchronizationManager.clearSynchronization();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void canCoalesceReductionsOfExistingAlarm() {
+        final OnmsAlarm alarm = new OnmsAlarm();
+        alarm.setId(1);
+        alarm.setReductionKey("trap:1");
+        alarm.setAlarmType(OnmsAlarm.PROBLEM_TYPE);
+        alarm.setCounter(1);
+        alarm.setSeverity(OnmsSeverity.MAJOR);
+        when(m_alarmDao.findByReductionKeys(anyCollection())).thenReturn(Collections.singletonMap("trap:1", alarm));
+
+        final List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            events.add(event("trap:1", null, OnmsAlarm.PROBLEM_TYPE));
+        }
+        final List<OnmsAlarm> alarms = m_persister.persist(events);
+
+        assertThat(alarms, hasSize(5));
+        alarms.forEach(a -> assertThat(a, sameInstance(alarm)));
+        assertThat(alarm.getCounter(), equalTo(6));
+        assertThat(alarm.getLastEvent(), sameInstance(m_persistedEvents.get(events.get(4).getDbid())));
+        assertThat(m_transactions, equalTo(1));
+
+        // One query for all alarms, a single update and notification
+        verify(m_alarmDao, times(1)).findByReductionKeys(anyCollection());
+        verify(m_alarmDao, never()).findByReductionKey(anyString());
+        verify(m_alarmDao, times(1)).update(alarm);
+        verify(m_notifier, times(1)).didUpdateAlarmWithReducedEvent(alarm);
+    }
+
+    @Test
+    public void canCreateAndReduceAlarmWithinBatch() {
+        when(m_alarmDao.findByReductionKeys(anyCollection())).thenReturn(Collections.emptyMap());
+
+        final List<OnmsAlarm> alarms = m_persister.persist(Arrays.asList(
+                event("trap:1", null, OnmsAlarm.PROBLEM_TYPE),
+                event("trap:2", null, OnmsAlarm.PROBLEM_TYPE),
+                event("trap:1", null, OnmsAlarm.PROBLEM_TYPE)));
+
+        assertThat(alarms.get(0), sameInstance(alarms.get(2)));
+        assertThat(alarms.get(0).getCounter(), equalTo(2));
+        assertThat(alarms.get(1).getCounter(), equalTo(1));
+
+        verify(m_alarmDao, times(2)).save(any(OnmsAlarm.class));
+        verify(m_notifier, times(1)).didCreateAlarm(alarms.get(0));
+        verify(m_notifier, times(1)).didCreateAlarm(alarms.get(1));
+        verify(m_notifier, times(1)).didUpdateAlarmWithReducedEvent(alarms.get(0));
+    }
+
+    @Test
+    public void canClearAlarmWithinBatch() {
+        when(m_alarmDao.findByReductionKeys(anyCollection())).thenReturn(Collections.emptyMap());
+
+        final List<OnmsAlarm> alarms = m_persister.persist(Arrays.asList(
+                event("down:1", null, OnmsAlarm.PROBLEM_TYPE),
+                event("up:1", "down:1", OnmsAlarm.RESOLUTION_TYPE)));
+
+        assertThat(alarms.get(1), sameInstance(alarms.get(0)));
+        assertThat(alarms.get(0).getSeverity(), equalTo(OnmsSeverity.CLEARED));
+    }
+
+    @Test
+    public void canRetryIndividuallyWhenBatchFails() {
+        when(m_alarmDao.findByReductionKeys(anyCollection())).thenThrow(new IllegalStateException("boom"));
+
+        final List<OnmsAlarm> alarms = m_persister.persist(Arrays.asList(
+                event("trap:1", null, OnmsAlarm.PROBLEM_TYPE),
+                event("trap:2", null, OnmsAlarm.PROBLEM_TYPE)));
+
+        assertThat(alarms, hasSize(2));
+        assertThat(alarms.get(0).getReductionKey(), equalTo("trap:1"));
+        assertThat(alarms.get(1).getReductionKey(), equalTo("trap:2"));
+        verify(m_alarmDao, times(2)).findByReductionKey(anyString());
+    }
+
+    @Test
+    public void shouldNotNotifyAboutAlarmsOfFailedBatch() {
+        when(m_alarmDao.findByReductionKeys(anyCollection())).thenReturn(Collections.emptyMap());
+        // Fail the batch after the first alarm was created
+        when(m_alarmDao.save(any(OnmsAlarm.class))).thenReturn(1).thenThrow(new IllegalStateException("boom")).thenReturn(1);
+
+        final List<OnmsAlarm> alarms = m_persister.persist(Arrays.asList(
+                event("trap:1", null, OnmsAlarm.PROBLEM_TYPE),
+                event("trap:2", null, OnmsAlarm.PROBLEM_TYPE)));
+
+        // Only the alarms created by the individual retries are announced
+        verify(m_notifier, times(2)).didCreateAlarm(any(OnmsAlarm.class));
+        verify(m_notifier, times(1)).didCreateAlarm(alarms.get(0));
+        verify(m_notifier, times(1)).didCreateAlarm(alarms.get(1));
+    }
+
+    @Test
+    public void shouldPersistDirectlyWhenBatcherIsNotRunning() throws InterruptedException {
+        final AlarmPersister persister = mock(AlarmPersister.class);
+        final AlarmPersisterBatcher batcher = new AlarmPersisterBatcher(persister, 1, 10, 10);
+
+        final Event event = event("trap:1", null, OnmsAlarm.PROBLEM_TYPE);
+        batcher.enqueue(event);
+
+        verify(persister, times(1)).persist(event);
+        assertThat(batcher.getQueueSize(), equalTo(0));
+    }
+
+    @Test
+    public void shouldSkipEventsWithoutAlarmData() {
+        final Event event = new EventBuilder(UEI, "test").getEvent();
+        event.setDbid(m_nextEventId++);
+
+        assertThat(m_persister.persist(Collections.singletonList(event)), contains(nullValue()));
+        assertThat(m_transactions, equalTo(0));
+    }
+
+    private Event event(String reductionKey, String clearKey, int alarmType) {
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setReductionKey(reductionKey);
+        alarmData.setClearKey(clearKey);
+        alarmData.setAlarmType(alarmType);
+
+        final Event event = new EventBuilder(UEI, "test")
+                .setAlarmData(alarmData)
+                .getEvent();
+        event.setDbid(m_nextEventId++);
+
+        final OnmsEvent persistedEvent = new OnmsEvent();
+        persistedEvent.setId(event.getDbid());
+        persistedEvent.setEventUei(UEI);
+        persistedEvent.setEventTime(new Date());
+        persistedEvent.setEventSeverity(OnmsSeverity.MAJOR.getId());
+        persistedEvent.setEventLogMsg("log message");
+        m_persistedEvents.put(persistedEvent.getId(), persistedEvent);
+        return event;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.alarmd;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.AlarmEntityNotifier;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.eventd.EventUtil;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to measure the alarm reduction throughput
+ * of the {@link AlarmPersisterImpl} during a trap storm.
+ * <p>
+ * The storm consists of events reducing onto a small set of reduction keys. Every DAO call
+ * and transaction commit is charged with a simulated database round trip, so the results
+ * reflect the number of round trips rather than the speed of an actual database.
+ * A batch size of 1 persists the events one by one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AlarmStormBenchmark {
+
+    // the number of events persisted in a single benchmark method call
+    private static final int STORM_SIZE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @Param({"1", "10", "100"})
+    public int batchSize;
+
+    @Param({"10"})
+    public int reductionKeys;
+
+    @Param({"100"})
+    public long roundTripMicros;
+
+    private AlarmPersisterImpl persister;
+    private final List<Event> events = new ArrayList<>(STORM_SIZE);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Map<Integer, OnmsEvent> persistedEvents = new HashMap<>();
+        final Map<String, OnmsAlarm> alarms = new HashMap<>();
+        for (int i = 1; i <= STORM_SIZE; i++) {
+            final String reductionKey = "trap:" + (i % reductionKeys);
+            final AlarmData alarmData = new AlarmData();
+            alarmData.setReductionKey(reductionKey);
+            alarmData.setAlarmType(OnmsAlarm.PROBLEM_TYPE);
+            final Event event = new EventBuilder("uei.opennms.org/test/trap", "benchmark")
+                    .setAlarmData(alarmData)
+                    .getEvent();
+            event.setDbid(i);
+            events.add(event);
+
+            final OnmsEvent persistedEvent = new OnmsEvent();
+            persistedEvent.setId(i);
+            persistedEvent.setEventTime(new Date());
+            persistedEvent.setEventSeverity(OnmsSeverity.MAJOR.getId());
+            persistedEvents.put(i, persistedEvent);
+
+            alarms.computeIfAbsent(reductionKey, key -> {
+                final OnmsAlarm alarm = new OnmsAlarm();
+                alarm.setId(alarms.size() + 1);
+                alarm.setReductionKey(key);
+                alarm.setAlarmType(OnmsAlarm.PROBLEM_TYPE);
+                alarm.setSeverity(OnmsSeverity.MAJOR);
+                alarm.setCounter(1);
+                return alarm;
+            });
+        }
+
+        final AlarmDao alarmDao = mock(AlarmDao.class);
+        when(alarmDao.findByReductionKey(anyString())).then(roundTrip(invocation -> alarms.get(invocation.<String>getArgument(0))));
+        when(alarmDao.findByReductionKeys(anyCollection())).then(roundTrip(invocation -> {
+            final Map<String, OnmsAlarm> found = new HashMap<>();
+            for (String key : invocation.<Collection<String>>getArgument(0)) {
+                found.put(key, alarms.get(key));
+            }
+            return found;
+        }));
+        final EventDao eventDao = mock(EventDao.class);
+        when(eventDao.get(any())).then(roundTrip(invocation -> persistedEvents.get(invocation.<Integer>getArgument(0))));
+        when(eventDao.findMatching(any(Criteria.class))).then(roundTrip(invocation -> new ArrayList<>(persistedEvents.values())));
+        // Updates are flushed on commit, which is accounted for by the transaction
+        final TransactionOperations transactionOperations = new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+                final T result = action.doInTransaction(null);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+                return result;
+            }
+        };
+
+        persister = new AlarmPersisterImpl();
+        persister.setAlarmDao(alarmDao);
+        persister.setEventDao(eventDao);
+        persister.setEventUtil(mock(EventUtil.class));
+        persister.setAlarmChangeListener(mock(AlarmEntityNotifier.class));
+        persister.setTransactionOperations(transactionOperations);
+    }
+
+    private <T> Answer<T> roundTrip(Answer<T> answer) {
+        return invocation -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+            return answer.answer(invocation);
+        };
+    }
+
+    @Benchmark
+    @Fork(value = 1)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    @OperationsPerInvocation(STORM_SIZE)
+    public void storm() {
+        if (batchSize <= 1) {
+            for (Event event : events) {
+                persister.persist(event);
+            }
+        } else {
+            for (int i = 0; i < events.size(); i += batchSize) {
+                persister.persist(events.subList(i, Math.min(i + batchSize, events.size())));
+            }
+        }
+    }
+}
@@ -40,6 +40,7 @@ public interface CollectdConfigFactory {
 	void saveCurrent() throws IOException;
 	CollectdConfiguration getLocalCollectdConfig();
 	public Integer getThreads();
+	public String getScheduler();
 	boolean packageExists(String name);
 	Package getPackage(final String name);
 	public List<Package> getPackages();
@@ -47,6 +47,9 @@ import org.opennms.core.xml.ValidateUsing;
 public class CollectdConfiguration implements Serializable {
     private static final long serialVersionUID = -5767101206283939127L;
 
+    public static final String SCHEDULER_LEGACY = "legacy";
+    public static final String SCHEDULER_TIMING_WHEEL = "timing-wheel";
+
     /**
      * The maximum number of threads used for data
      *  collection.
@@ -54,6 +57,12 @@ public class CollectdConfiguration implements Serializable {
     @XmlAttribute(name="threads")
     private Integer m_threads;
 
+    /**
+     * The scheduler implementation used to trigger the collections.
+     */
+    @XmlAttribute(name="scheduler")
+    private String m_scheduler;
+
     /**
      * Package encapsulating addresses eligible to have SNMP data collected
      * from them.
@@ -82,6 +91,17 @@ public class CollectdConfiguration implements Serializable {
         m_threads = threads;
     }
 
+    /**
+     * The scheduler implementation used to trigger the collections.
+     */
+    public String getScheduler() {
+        return m_scheduler == null? SCHEDULER_LEGACY : m_scheduler;
+    }
+
+    public void setScheduler(final String scheduler) {
+        m_scheduler = scheduler;
+    }
+
     public List<Package> getPackages() {
         if (m_packages == null) {
             return Collections.emptyList();
@@ -163,6 +183,7 @@ public class CollectdConfiguration implements Serializable {
         result = prime * result + ((m_collectors == null) ? 0 : m_collectors.hashCode());
         result = prime * result + ((m_packages == null) ? 0 : m_packages.hashCode());
         result = prime * result + ((m_threads == null) ? 0 : m_threads.hashCode());
+        result = prime * result + ((m_scheduler == null) ? 0 : m_scheduler.hashCode());
         return result;
     }
 
@@ -199,12 +220,19 @@ public class CollectdConfiguration implements Serializable {
         } else if (!m_threads.equals(other.m_threads)) {
             return false;
         }
+        if (m_scheduler == null) {
+            if (other.m_scheduler != null) {
+                return false;
+            }
+        } else if (!m_scheduler.equals(other.m_scheduler)) {
+            return false;
+        }
         return true;
     }
 
     @Override
     public String toString() {
-        return "CollectdConfiguration [threads=" + m_threads + ", packages=" + m_packages + ", collectors=" + m_collectors + "]";
+        return "CollectdConfiguration [threads=" + m_threads + ", scheduler=" + m_scheduler + ", packages=" + m_packages + ", collectors=" + m_collectors + "]";
     }
 
 }
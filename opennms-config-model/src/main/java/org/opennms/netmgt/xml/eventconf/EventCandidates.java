@@ -0,0 +1,222 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.xml.eventconf;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An ordered list of event definitions compiled for matching.
+ *
+ * Definitions are indexed by the literal values their mask requires for a
+ * handful of discriminating fields (UEI, enterprise id, generic, specific and
+ * trap OID). A lookup narrows the list down to the definitions that can
+ * possibly match the given field values, only those need to run their full
+ * matcher (wildcards, regular expressions and varbinds).
+ *
+ * Narrowing never reorders the definitions, so the first match is the same
+ * as when running every matcher in turn.
+ */
+final class EventCandidates {
+
+    static final String[] FIELDS = {
+            Maskelement.TAG_UEI,
+            Maskelement.TAG_SNMP_EID,
+            Maskelement.TAG_SNMP_GENERIC,
+            Maskelement.TAG_SNMP_SPECIFIC,
+            Maskelement.TAG_SNMP_TRAPOID
+    };
+
+    static final EventCandidates EMPTY = new EventCandidates(new ArrayList<>());
+
+    private static final Field[] FIELD_ACCESSORS = new Field[FIELDS.length];
+    static {
+        for (int i = 0; i < FIELDS.length; i++) {
+            FIELD_ACCESSORS[i] = EventMatchers.field(FIELDS[i]);
+        }
+    }
+
+    private final Event[] m_events;
+
+    /**
+     * For each field, the positions of the definitions that do not constrain it,
+     * or null if none of the definitions constrain it.
+     */
+    private final BitSet[] m_unconstrained = new BitSet[FIELDS.length];
+
+    /**
+     * For each field, the positions of the definitions that accept a given literal value.
+     */
+    private final List<Map<String, int[]>> m_literals = new ArrayList<>(FIELDS.length);
+
+    /**
+     * @param events the event definitions, in match order
+     */
+    EventCandidates(final Collection<Event> events) {
+        final List<Event> candidates = new ArrayList<>(events.size());
+        final List<Set<String>[]> constraints = new ArrayList<>(events.size());
+        for (final Event event : events) {
+            final Set<String>[] eventConstraints = getConstraints(event);
+            if (eventConstraints != null) {
+                candidates.add(event);
+                constraints.add(eventConstraints);
+            }
+        }
+        m_events = candidates.toArray(new Event[0]);
+
+        for (int field = 0; field < FIELDS.length; field++) {
+            final BitSet unconstrained = new BitSet(m_events.length);
+            final Map<String, List<Integer>> literals = new HashMap<>();
+            for (int i = 0; i < m_events.length; i++) {
+                final Set<String> values = constraints.get(i)[field];
+                if (values == null) {
+                    unconstrained.set(i);
+                } else {
+                    for (final String value : values) {
+                        literals.computeIfAbsent(value, v -> new ArrayList<>()).add(i);
+                    }
+                }
+            }
+            m_unconstrained[field] = unconstrained.cardinality() == m_events.length ? null : unconstrained;
+            final Map<String, int[]> positions = new HashMap<>();
+            literals.forEach((value, list) -> positions.put(value, list.stream().mapToInt(Integer::intValue).toArray()));
+            m_literals.add(positions);
+        }
+    }
+
+    /**
+     * Extracts the values of the indexed fields from the given event.
+     */
+    static String[] getFieldValues(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final String[] values = new String[FIELDS.length];
+        for (int i = 0; i < FIELDS.length; i++) {
+            values[i] = FIELD_ACCESSORS[i].get(matchingEvent);
+        }
+        return values;
+    }
+
+    boolean isEmpty() {
+        return m_events.length == 0;
+    }
+
+    /**
+     * Collects the definitions that can possibly match an event with the given
+     * field values, in match order.
+     */
+    List<Event> getCandidates(final String[] fieldValues) {
+        BitSet result = null;
+        for (int field = 0; field < FIELDS.length; field++) {
+            if (m_unconstrained[field] == null) {
+                continue;
+            }
+            final BitSet accepted = (BitSet) m_unconstrained[field].clone();
+            final int[] positions = fieldValues[field] == null ? null : m_literals.get(field).get(fieldValues[field]);
+            if (positions != null) {
+                for (final int position : positions) {
+                    accepted.set(position);
+                }
+            }
+            if (result == null) {
+                result = accepted;
+            } else {
+                result.and(accepted);
+            }
+        }
+
+        final List<Event> candidates = new ArrayList<>();
+        if (result == null) {
+            for (final Event event : m_events) {
+                candidates.add(event);
+            }
+        } else {
+            for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                candidates.add(m_events[i]);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Determines which literal values the matcher of the given event definition
+     * requires for each of the indexed fields, mirroring {@link Event#matches}.
+     *
+     * @return the accepted values for each field, null for unconstrained fields,
+     *   or null altogether if the definition can never match
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<String>[] getConstraints(final Event event) {
+        final Set<String>[] constraints = new Set[FIELDS.length];
+        final Mask mask = event.getMask();
+        if (mask == null || mask.getMaskelements().size() <= 0) {
+            if (event.getUei() == null) {
+                return null;
+            }
+            constraints[0] = new HashSet<>();
+            constraints[0].add(event.getUei());
+            return constraints;
+        }
+
+        for (final Maskelement maskElement : mask.getMaskelements()) {
+            for (int field = 0; field < FIELDS.length; field++) {
+                if (!FIELDS[field].equals(maskElement.getMename())) {
+                    continue;
+                }
+                final Set<String> values = getLiteralValues(maskElement.getMevalues());
+                if (values == null) {
+                    continue;
+                }
+                if (constraints[field] == null) {
+                    constraints[field] = values;
+                } else {
+                    constraints[field].retainAll(values);
+                }
+                if (constraints[field].isEmpty()) {
+                    return null;
+                }
+            }
+        }
+        return constraints;
+    }
+
+    /**
+     * @return the values if they are all compared for equality, or null if any of them is a wildcard or a regex
+     */
+    private static Set<String> getLiteralValues(final List<String> mevalues) {
+        final Set<String> values = new HashSet<>();
+        for (final String value : mevalues) {
+            if (value == null) {
+                continue;
+            }
+            if (value.startsWith("~") || value.endsWith("%")) {
+                return null;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+}
@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -43,6 +44,7 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -113,6 +115,21 @@ public class Events implements Serializable {
     @XmlTransient
     private EventOrdering m_ordering;
 
+    @XmlTransient
+    private transient EventCandidates m_nullPartitionCandidates = EventCandidates.EMPTY;
+
+    @XmlTransient
+    private transient Map<String, EventCandidates> m_partitionCandidates = Collections.emptyMap();
+
+    /**
+     * Memoizes the candidates to consider for events with the same UEI,
+     * partition key and indexed field values, see {@link #getMatchPlan}.
+     */
+    @XmlTransient
+    private transient volatile Map<List<String>, MatchPlan> m_matchPlans = new ConcurrentHashMap<>();
+
+    private static final int MAX_MATCH_PLANS = Integer.getInteger("org.opennms.eventconf.matchPlanCacheSize", 10000);
+
     public Global getGlobal() {
         return m_global;
     }
@@ -277,6 +294,33 @@ public class Events implements Serializable {
             }
         }
 
+        // If the UEI match failed, fallback to the matchers of the event definitions that may match
+        final MatchPlan plan = getMatchPlan(matchingEvent);
+        for (final Event event : plan.candidates) {
+            if (event.matches(matchingEvent).matched()) {
+                return event;
+            }
+        }
+        return plan.fallback;
+    }
+
+    /**
+     * Finds the first matching event definition by running the matchers of every event definition
+     * in the partition, without the help of the compiled candidates.
+     *
+     * This is the reference for {@link #findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}, which
+     * must always return the same event definition.
+     */
+    public Event findFirstMatchingEventLinear(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        // Atempt to match the event definition by UEI
+        final String ueiToMatch = matchingEvent.getUei();
+        if (ueiToMatch != null) {
+            final Event matchedEvent = m_eventsByUei.get(ueiToMatch);
+            if (matchedEvent != null) {
+                return matchedEvent;
+            }
+        }
+
         // If the UEI match failed, fallback to searching with the matchers through the partitions
         final String key = m_partition.group(matchingEvent);
         Collection<Event> potentialMatches = m_nullPartitionedEvents;
@@ -295,7 +339,7 @@ public class Events implements Serializable {
         }
 
         for (Events subEvents : m_loadedEventFiles.values()) {
-            final Event event = subEvents.findFirstMatchingEvent(matchingEvent);
+            final Event event = subEvents.findFirstMatchingEventLinear(matchingEvent);
             if (event != null) {
                 return event;
             }
@@ -304,6 +348,100 @@ public class Events implements Serializable {
         return null;
     }
 
+    /**
+     * The event definitions whose matchers have to be run, in order, for events that
+     * miss the UEI index, along with the definition to fall back to if none of them match.
+     */
+    private static class MatchPlan {
+        private final Event[] candidates;
+        private final Event fallback;
+
+        private MatchPlan(final List<Event> candidates, final Event fallback) {
+            this.candidates = candidates.toArray(new Event[0]);
+            this.fallback = fallback;
+        }
+    }
+
+    private MatchPlan getMatchPlan(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final String ueiToMatch = matchingEvent.getUei();
+        final String key = m_partition.group(matchingEvent);
+        final String[] fieldValues = EventCandidates.getFieldValues(matchingEvent);
+
+        final List<String> planKey = new ArrayList<>(fieldValues.length + 1);
+        planKey.add(key);
+        Collections.addAll(planKey, fieldValues);
+
+        final Map<List<String>, MatchPlan> matchPlans = m_matchPlans;
+        MatchPlan plan = matchPlans.get(planKey);
+        if (plan == null) {
+            if (matchPlans.size() >= MAX_MATCH_PLANS) {
+                matchPlans.clear();
+            }
+            plan = buildMatchPlan(ueiToMatch, key, fieldValues);
+            matchPlans.put(planKey, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Lays out the same search as {@link #findFirstMatchingEventLinear}, less the root UEI
+     * index, keeping only the candidates that can match the given field values.
+     */
+    private MatchPlan buildMatchPlan(final String ueiToMatch, final String key, final String[] fieldValues) {
+        final List<Event> candidates = new ArrayList<>();
+        addCandidates(key, fieldValues, candidates);
+
+        for (final Events subEvents : m_loadedEventFiles.values()) {
+            if (ueiToMatch != null) {
+                final Event matchedEvent = subEvents.m_eventsByUei.get(ueiToMatch);
+                if (matchedEvent != null) {
+                    return new MatchPlan(candidates, matchedEvent);
+                }
+            }
+            subEvents.addCandidates(key, fieldValues, candidates);
+        }
+        return new MatchPlan(candidates, null);
+    }
+
+    private void addCandidates(final String key, final String[] fieldValues, final List<Event> candidates) {
+        final List<Event> nullPartitioned = m_nullPartitionCandidates.getCandidates(fieldValues);
+        final EventCandidates partition = key == null ? null : m_partitionCandidates.get(key);
+        if (partition == null) {
+            candidates.addAll(nullPartitioned);
+            return;
+        }
+
+        // Merge both lists, which are in priority order, skipping the prioritized
+        // event definitions that appear in both
+        final List<Event> partitioned = partition.getCandidates(fieldValues);
+        int i = 0, j = 0;
+        while (i < nullPartitioned.size() || j < partitioned.size()) {
+            if (j >= partitioned.size()) {
+                candidates.add(nullPartitioned.get(i++));
+            } else if (i >= nullPartitioned.size()) {
+                candidates.add(partitioned.get(j++));
+            } else {
+                final int order = nullPartitioned.get(i).compareTo(partitioned.get(j));
+                if (order < 0) {
+                    candidates.add(nullPartitioned.get(i++));
+                } else if (order > 0) {
+                    candidates.add(partitioned.get(j++));
+                } else {
+                    candidates.add(nullPartitioned.get(i++));
+                    j++;
+                }
+            }
+        }
+    }
+
+    private void compileCandidates() {
+        m_nullPartitionCandidates = new EventCandidates(m_nullPartitionedEvents);
+        final Map<String, EventCandidates> partitionCandidates = new HashMap<>();
+        m_partitionedEvents.forEach((key, events) -> partitionCandidates.put(key, new EventCandidates(events)));
+        m_partitionCandidates = partitionCandidates;
+        m_matchPlans = new ConcurrentHashMap<>();
+    }
+
     public Set<Event> findMatchingEvents(final EventCriteria criteria) {
         final Set<Event> results = new HashSet<>();
         for (final Event event : m_events) {
@@ -382,6 +520,8 @@ public class Events implements Serializable {
         m_nullPartitionedEvents.sort(Comparator.naturalOrder());
 
         indexEventsByUei();
+
+        compileCandidates();
     }
 
     // Recurse through the configuration and return Event Definitions with priority > 0
@@ -175,6 +175,11 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
         return this.localCollectdConfig.getThreads();
     }
 
+    @Override
+    public String getScheduler() {
+        return this.localCollectdConfig.getScheduler();
+    }
+
     /**
      * Returns true if collection package exists
      *
@@ -0,0 +1,173 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.opennms.netmgt.xml.eventconf.Varbind;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Verifies that the compiled candidates used by {@link Events#findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}
+ * find the same event definitions as running every matcher in turn, using probe events derived from
+ * the masks of the shipped event configuration.
+ */
+public class EventConfCompiledMatcherTest {
+
+    private DefaultEventConfDao eventConfDao;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false);
+
+        eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        eventConfDao.afterPropertiesSet();
+    }
+
+    @Test
+    public void canMatchLikeLinearSearchOnShippedEventConf() {
+        final Events events = eventConfDao.getRootEvents();
+        final List<org.opennms.netmgt.xml.event.Event> probes = new ArrayList<>();
+        for (final Event eventConf : eventConfDao.getAllEvents()) {
+            probes.add(probe(eventConf, 0, true, true));
+            probes.add(probe(eventConf, 0, false, true));
+            probes.add(probe(eventConf, 1, false, true));
+            probes.add(probe(eventConf, 0, false, false));
+        }
+
+        int matched = 0;
+        for (final org.opennms.netmgt.xml.event.Event probe : probes) {
+            final Event expected = events.findFirstMatchingEventLinear(probe);
+            assertSame("Mismatch for " + probe, expected, events.findFirstMatchingEvent(probe));
+            // Once more to go through the memoized candidates
+            assertSame("Mismatch for " + probe, expected, events.findFirstMatchingEvent(probe));
+            if (expected != null) {
+                matched++;
+            }
+        }
+        assertThat(matched, greaterThan(probes.size() / 2));
+    }
+
+    /**
+     * Builds an event that satisfies the literal and wildcard values of the mask of the given
+     * event definition, regular expressions are left unsatisfied.
+     *
+     * @param specificOffset added to the specific, to miss definitions that only differ by it
+     * @param withUei whether to set the UEI of the definition on the event
+     * @param withVarbinds whether to add the varbinds required by the mask
+     */
+    private static org.opennms.netmgt.xml.event.Event probe(final Event eventConf, final int specificOffset, final boolean withUei, final boolean withVarbinds) {
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        if (withUei) {
+            event.setUei(eventConf.getUei());
+        }
+        final Mask mask = eventConf.getMask();
+        if (mask == null) {
+            return event;
+        }
+
+        final Snmp snmp = new Snmp();
+        for (final Maskelement maskElement : mask.getMaskelements()) {
+            final String value = sample(maskElement.getMevalues());
+            if (value == null) {
+                continue;
+            }
+            try {
+                switch (maskElement.getMename()) {
+                    case Maskelement.TAG_UEI:
+                        event.setUei(value);
+                        break;
+                    case Maskelement.TAG_SOURCE:
+                        event.setSource(value);
+                        break;
+                    case Maskelement.TAG_HOST:
+                        event.setHost(value);
+                        break;
+                    case Maskelement.TAG_SNMP_EID:
+                        snmp.setId(value);
+                        break;
+                    case Maskelement.TAG_SNMP_GENERIC:
+                        snmp.setGeneric(Integer.parseInt(value));
+                        break;
+                    case Maskelement.TAG_SNMP_SPECIFIC:
+                        snmp.setSpecific(Integer.parseInt(value) + specificOffset);
+                        break;
+                    case Maskelement.TAG_SNMP_TRAPOID:
+                        snmp.setTrapOID(value);
+                        break;
+                    case Maskelement.TAG_SNMP_COMMUNITY:
+                        snmp.setCommunity(value);
+                        break;
+                    default:
+                        break;
+                }
+            } catch (final NumberFormatException e) {
+                // Leave the field unset
+            }
+        }
+        event.setSnmp(snmp);
+
+        if (withVarbinds) {
+            final List<Parm> parms = new ArrayList<>();
+            for (final Varbind varbind : mask.getVarbinds()) {
+                if (varbind.getVbnumber() == null) {
+                    continue;
+                }
+                while (parms.size() < varbind.getVbnumber()) {
+                    parms.add(new Parm(".1.3.6.1.4.1.5813.1." + parms.size(), ""));
+                }
+                final String value = sample(varbind.getVbvalues());
+                if (value != null) {
+                    parms.set(varbind.getVbnumber() - 1, new Parm(".1.3.6.1.4.1.5813.1." + varbind.getVbnumber(), value));
+                }
+            }
+            event.setParmCollection(parms);
+        }
+        return event;
+    }
+
+    private static String sample(final List<String> values) {
+        for (final String value : values) {
+            if (value == null || value.startsWith("~")) {
+                continue;
+            }
+            return value.endsWith("%") ? value.substring(0, value.length() - 1) + "1" : value;
+        }
+        return null;
+    }
+}
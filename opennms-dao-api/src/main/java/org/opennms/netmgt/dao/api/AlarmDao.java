@@ -21,6 +21,7 @@
  */
 package org.opennms.netmgt.dao.api;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +34,14 @@ public interface AlarmDao extends LegacyOnmsDao<OnmsAlarm, Integer> {
 
     OnmsAlarm findByReductionKey(String reductionKey);
 
+    /**
+     * Retrieves the alarms for all of the given reduction keys using a single query.
+     *
+     * @param reductionKeys the reduction keys to look for
+     * @return the matching alarms indexed by reduction key, keys without an alarm are absent
+     */
+    Map<String, OnmsAlarm> findByReductionKeys(Collection<String> reductionKeys);
+
     /**
      * <p>Get the list of current - not yet acknowledged - alarms per node with severity greater than normal,
      * reflecting the max severity, the minimum last event time and alarm count;
@@ -51,6 +51,14 @@ public interface InterfaceToNodeCache {
 
 	void removeInterfacesForNode(int nodeId);
 
+	/**
+	 * Replaces the cached interfaces of the given node with the ones currently in the database.
+	 * Implementations that cannot update a single node synchronize the whole cache.
+	 */
+	default void syncNode(int nodeId) {
+		dataSourceSync();
+	}
+
 	class Entry {
 		public final int nodeId;
 		public final int interfaceId;
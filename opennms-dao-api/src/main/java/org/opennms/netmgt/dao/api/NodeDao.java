@@ -97,6 +97,16 @@ public interface NodeDao extends LegacyOnmsDao<OnmsNode, Integer> {
      * @return a {@link org.opennms.netmgt.model.OnmsNode} object.
      */
     OnmsNode getHierarchy(Integer id);
+
+    /**
+     * Loads the hierarchies of several nodes at once, as {@link #getHierarchy(Integer)}
+     * does for a single node, using a fixed number of queries regardless of the
+     * number of nodes.
+     *
+     * @param ids the IDs of the nodes to load
+     * @return the nodes that exist, in no particular order
+     */
+    List<OnmsNode> getHierarchies(Collection<Integer> ids);
     
     /**
      * <p>getForeignIdToNodeIdMap</p>
@@ -21,6 +21,8 @@
  */
 package org.opennms.netmgt.dao.mock;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -91,6 +93,17 @@ public class MockAlarmDao extends AbstractMockDao<OnmsAlarm, Integer> implements
         return null;
     }
 
+    @Override
+    public Map<String, OnmsAlarm> findByReductionKeys(final Collection<String> reductionKeys) {
+        final Map<String, OnmsAlarm> alarms = new HashMap<>();
+        for (OnmsAlarm alarm : findAll()) {
+            if (reductionKeys.contains(alarm.getReductionKey())) {
+                alarms.put(alarm.getReductionKey(), alarm);
+            }
+        }
+        return alarms;
+    }
+
     @Override
     public List<AlarmSummary> getNodeAlarmSummaries() {
         throw new UnsupportedOperationException("Not yet implemented!");
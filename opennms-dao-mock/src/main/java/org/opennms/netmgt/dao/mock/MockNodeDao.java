@@ -192,6 +192,18 @@ public class MockNodeDao extends AbstractMockDao<OnmsNode, Integer> implements N
         return get(id);
     }
 
+    @Override
+    public List<OnmsNode> getHierarchies(final Collection<Integer> ids) {
+        final List<OnmsNode> nodes = new ArrayList<>();
+        for (final Integer id : ids) {
+            final OnmsNode node = get(id);
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
     @Override
     public Map<String, Integer> getForeignIdToNodeIdMap(final String foreignSource) {
         final Map<String, Integer> nodes = new HashMap<String, Integer>();
@@ -24,21 +24,17 @@ package org.opennms.netmgt.dao.hibernate;
 import static org.opennms.core.utils.InetAddressUtils.str;
 
 import java.net.InetAddress;
-import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -51,7 +47,6 @@ import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsNode;
-import org.opennms.netmgt.model.PrimaryType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -59,10 +54,6 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.SortedSetMultimap;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
@@ -84,114 +75,6 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
     private final ExecutorService executorService = Executors.newSingleThreadExecutor(threadFactory);
     private final CountDownLatch initialNodeSyncDone = new CountDownLatch(1);
 
-    private static class Key {
-        private final String location;
-        private final InetAddress ipAddress;
-
-        public Key(String location, InetAddress ipAddress) {
-            // Use the default location when location is null
-            this.location = LocationUtils.getEffectiveLocationName(location);
-            this.ipAddress = Objects.requireNonNull(ipAddress);
-        }
-
-        public InetAddress getIpAddress() {
-            return ipAddress;
-        }
-
-        public String getLocation() {
-            return location;
-        }
-
-        @Override
-        public boolean equals(final Object obj) {
-            if (obj == null) {
-                return false;
-            }
-            if (obj == this) {
-                return true;
-            }
-            if (obj.getClass() != getClass()) {
-                return false;
-            }
-            final Key that = (Key) obj;
-            return Objects.equals(this.ipAddress, that.ipAddress)
-                    && Objects.equals(this.location, that.location);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(this.ipAddress, this.location);
-        }
-
-        @Override
-        public String toString() {
-            return String.format("Key[location='%s', ipAddress='%s']", this.location, this.ipAddress);
-        }
-    }
-
-    private static class Value implements Comparable<Value> {
-        private final int nodeId;
-        private final int interfaceId;
-        private final PrimaryType type;
-
-
-        private Value(final int nodeId,
-                      final int interfaceId,
-                      final PrimaryType type) {
-            this.nodeId = nodeId;
-            this.interfaceId = interfaceId;
-            this.type = type;
-        }
-
-        public int getNodeId() {
-            return this.nodeId;
-        }
-
-        public int getInterfaceId() {
-            return this.interfaceId;
-        }
-
-        public PrimaryType getType() {
-            return this.type;
-        }
-
-        @Override
-        public boolean equals(final Object obj) {
-            if (obj == null) {
-                return false;
-            }
-            if (obj == this) {
-                return true;
-            }
-            if (obj.getClass() != getClass()) {
-                return false;
-            }
-            final Value that = (Value) obj;
-            return Objects.equals(this.nodeId, that.nodeId)
-                    && Objects.equals(this.interfaceId, that.interfaceId)
-                    && Objects.equals(this.type, that.type);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(this.nodeId, this.type.getCharCode());
-        }
-
-        @Override
-        public String toString() {
-            return String.format("Value[nodeId='%s', interfaceId='%s', type='%s']", this.nodeId, this.interfaceId, this.type);
-        }
-
-        @Override
-        public int compareTo(final Value that) {
-            return ComparisonChain.start()
-                    .compare(this.type, that.type)
-                    .compare(this.nodeId, that.nodeId)
-                    .compare(this.interfaceId, that.interfaceId)
-                    .result();
-        }
-    }
-
     @Autowired
     private NodeDao m_nodeDao;
 
@@ -201,8 +84,16 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
     @Autowired
     private TransactionOperations transactionOperations;
 
-    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
-    private SortedSetMultimap<Key, Value> m_managedAddresses = Multimaps.newSortedSetMultimap(Maps.newHashMap(), TreeSet::new);
+    /**
+     * Lookups read the current table without locking. Updates are serialized on the write lock
+     * and either modify the current table in place or replace it.
+     */
+    private final Object m_writeLock = new Object();
+    private volatile InterfaceToNodeTable m_table = new InterfaceToNodeTable();
+
+    // Locations are interned so that they can be part of the primitive table keys
+    private final Map<String, Integer> m_locationIds = new ConcurrentHashMap<>();
+    private final AtomicInteger m_nextLocationId = new AtomicInteger();
 
     private final Timer refreshTimer = new Timer(getClass().getSimpleName());
 
@@ -289,36 +180,80 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
 
     private void dataSourceSyncWithinTransaction() {
         /*
-         * Make a new list with which we'll replace the existing one, that way
+         * Build a new table with which we'll replace the existing one, that way
          * if something goes wrong with the DB we won't lose whatever was already
          * in there
          */
-        final SortedSetMultimap<Key, Value> newAlreadyDiscovered = Multimaps.newSortedSetMultimap(Maps.newHashMap(), TreeSet::new);
+        InterfaceToNodeTable newTable = new InterfaceToNodeTable();
 
         // Fetch all non-deleted nodes
         final CriteriaBuilder builder = new CriteriaBuilder(OnmsNode.class);
         builder.ne("type", String.valueOf(OnmsNode.NodeType.DELETED.value()));
 
         for (OnmsNode node : m_nodeDao.findMatching(builder.toCriteria())) {
-            for (final OnmsIpInterface iface : node.getIpInterfaces()) {
-                // Skip deleted interfaces
-                // TODO: Refactor the 'D' value with an enumeration
-                if ("D".equals(iface.getIsManaged())) {
-                    continue;
-                }
-                LOG.debug("Adding entry: {}:{} -> {}", node.getLocation().getLocationName(), iface.getIpAddress(), node.getId());
-                newAlreadyDiscovered.put(new Key(node.getLocation().getLocationName(), iface.getIpAddress()), new Value(node.getId(), iface.getId(), iface.getIsSnmpPrimary()));
+            newTable = addInterfaces(newTable, node);
+        }
+
+        synchronized (m_writeLock) {
+            m_table = newTable;
+        }
+
+        LOG.info("dataSourceSync: initialized list of managed IP addresses with {} members", newTable.size());
+    }
+
+    /**
+     * Replaces the cached interfaces of the given node with the ones currently in the database,
+     * without reloading the whole cache.
+     */
+    @Override
+    @Transactional
+    public void syncNode(final int nodeId) {
+        final OnmsNode node = m_nodeDao.get(nodeId);
+
+        synchronized (m_writeLock) {
+            m_table.removeNode(nodeId);
+            if (node != null && node.getType() != OnmsNode.NodeType.DELETED) {
+                m_table = addInterfaces(m_table, node);
             }
         }
+        LOG.debug("syncNode: synchronized IP addresses of node {}", nodeId);
+    }
 
-        try {
-            m_lock.writeLock().lock();
-            m_managedAddresses = newAlreadyDiscovered;
-        } finally {
-            m_lock.writeLock().unlock();
+    /**
+     * Adds the non-deleted interfaces of the given node to the given table.
+     *
+     * @return the table, or a larger copy of it if it ran out of capacity
+     */
+    private InterfaceToNodeTable addInterfaces(InterfaceToNodeTable table, final OnmsNode node) {
+        final int locationId = getLocationId(node.getLocation().getLocationName());
+        for (final OnmsIpInterface iface : node.getIpInterfaces()) {
+            // Skip deleted interfaces
+            // TODO: Refactor the 'D' value with an enumeration
+            if ("D".equals(iface.getIsManaged())) {
+                continue;
+            }
+            LOG.debug("Adding entry: {}:{} -> {}", node.getLocation().getLocationName(), iface.getIpAddress(), node.getId());
+            if (!table.hasCapacity()) {
+                table = table.copy();
+            }
+            table.add(InterfaceToNodeTable.key(locationId, iface.getIpAddress()), iface.getIpAddress(),
+                    new InterfaceToNodeTable.Value(node.getId(), iface.getId(), iface.getIsSnmpPrimary()));
         }
+        return table;
+    }
+
+    private int getLocationId(final String location) {
+        return m_locationIds.computeIfAbsent(LocationUtils.getEffectiveLocationName(location), l -> m_nextLocationId.getAndIncrement());
+    }
 
-        LOG.info("dataSourceSync: initialized list of managed IP addresses with {} members", m_managedAddresses.size());
+    /**
+     * Makes sure that the current table has room for another key. Must be called while holding the write lock.
+     */
+    private InterfaceToNodeTable getTableForUpdate() {
+        if (!m_table.hasCapacity()) {
+            m_table = m_table.copy();
+        }
+        return m_table;
     }
 
     @Override
@@ -327,13 +262,12 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
             return Optional.empty();
         }
         waitForInitialNodeSync();
-        m_lock.readLock().lock();
-        try {
-            var values = m_managedAddresses.get(new Key(location, ipAddr));
-            return values.isEmpty() ? Optional.empty() : Optional.of(new Entry(values.first().nodeId, values.first().interfaceId));
-        } finally {
-            m_lock.readLock().unlock();
+        final Integer locationId = m_locationIds.get(LocationUtils.getEffectiveLocationName(location));
+        if (locationId == null) {
+            return Optional.empty();
         }
+        final InterfaceToNodeTable.Values values = m_table.get(InterfaceToNodeTable.key(locationId, ipAddr), ipAddr);
+        return values != null ? values.getFirst() : Optional.empty();
     }
 
     private void waitForInitialNodeSync() {
@@ -365,11 +299,9 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
 
         LOG.debug("setNodeId: adding IP address to cache: {}:{} -> {}", location, str(addr), nodeid);
 
-        m_lock.writeLock().lock();
-        try {
-            return m_managedAddresses.put(new Key(location, addr), new Value(nodeid, iface.getId(), iface.getIsSnmpPrimary()));
-        } finally {
-            m_lock.writeLock().unlock();
+        synchronized (m_writeLock) {
+            return getTableForUpdate().add(InterfaceToNodeTable.key(getLocationId(location), addr), addr,
+                    new InterfaceToNodeTable.Value(nodeid, iface.getId(), iface.getIsSnmpPrimary()));
         }
     }
 
@@ -388,51 +320,33 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
 
         LOG.debug("removeNodeId: removing IP address from cache: {}:{}", location, str(address));
 
-        m_lock.writeLock().lock();
-        try {
-            final Key key = new Key(location, address);
-            return m_managedAddresses.get(key).removeIf(e -> e.nodeId == nodeId);
-        } finally {
-            m_lock.writeLock().unlock();
+        final Integer locationId = m_locationIds.get(LocationUtils.getEffectiveLocationName(location));
+        if (locationId == null) {
+            return false;
+        }
+        synchronized (m_writeLock) {
+            return m_table.removeNode(InterfaceToNodeTable.key(locationId, address), address, nodeId);
         }
     }
 
     @Override
     public int size() {
         waitForInitialNodeSync();
-        m_lock.readLock().lock();
-        try {
-            return m_managedAddresses.size();
-        } finally {
-            m_lock.readLock().unlock();
-        }
+        return m_table.size();
     }
 
     @Override
     public void clear() {
-        m_lock.writeLock().lock();
-        try {
-            m_managedAddresses.clear();
-        } finally {
-            m_lock.writeLock().unlock();
+        synchronized (m_writeLock) {
+            m_table = new InterfaceToNodeTable();
         }
     }
 
     @Override
     public void removeInterfacesForNode(int nodeId) {
-        m_lock.writeLock().lock();
-        try {
-            List<Map.Entry<Key, Value>> keyValues = m_managedAddresses.entries().stream()
-                    .filter(keyValueEntry -> keyValueEntry.getValue().getNodeId() == nodeId)
-                    .collect(Collectors.toList());
-            keyValues.forEach(keyValue -> {
-                boolean succeeded = m_managedAddresses.remove(keyValue.getKey(), keyValue.getValue());
-                if (succeeded) {
-                    LOG.debug("removeInterfacesForNode: removed IP address from cache: {}", str(keyValue.getKey().getIpAddress()));
-                }
-            });
-        } finally {
-            m_lock.writeLock().unlock();
+        synchronized (m_writeLock) {
+            final int removed = m_table.removeNode(nodeId);
+            LOG.debug("removeInterfacesForNode: removed {} IP addresses of node {} from cache", removed, nodeId);
         }
     }
 }
@@ -0,0 +1,337 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.dao.hibernate;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache.Entry;
+import org.opennms.netmgt.model.PrimaryType;
+
+import com.google.common.collect.ComparisonChain;
+
+/**
+ * Open addressing hash table used by the {@link InterfaceToNodeCacheDaoImpl} to map IP addresses
+ * at a location to the interfaces with that address.
+ * <p>
+ * Keys are stored as primitives: the upper half holds the interned location and the lower half
+ * the IPv4 address. IPv6 addresses do not fit, so their hash code is used instead and the address
+ * is kept alongside the key to tell colliding addresses apart.
+ * <p>
+ * Lookups are lock-free and do not allocate. Updates must be serialized by the caller. Removed
+ * entries keep their key, since clearing it would break the probe sequence of the keys behind it,
+ * and are only dropped when the table is copied.
+ */
+final class InterfaceToNodeTable {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * The interfaces with the same address at the same location, ordered by preference.
+     * Instances are immutable.
+     */
+    static final class Values {
+        private final Value[] m_values;
+        private final Optional<Entry> m_first;
+
+        private Values(Value[] values) {
+            m_values = values;
+            m_first = Optional.of(new Entry(values[0].nodeId, values[0].interfaceId));
+        }
+
+        Optional<Entry> getFirst() {
+            return m_first;
+        }
+
+        int size() {
+            return m_values.length;
+        }
+
+        private static Values of(Value value) {
+            return new Values(new Value[] { value });
+        }
+
+        /**
+         * @return the values with the given value added, or this instance if it was already present
+         */
+        private Values with(Value value) {
+            int index = Arrays.binarySearch(m_values, value);
+            if (index >= 0) {
+                return this;
+            }
+            index = -index - 1;
+            final Value[] values = new Value[m_values.length + 1];
+            System.arraycopy(m_values, 0, values, 0, index);
+            values[index] = value;
+            System.arraycopy(m_values, index, values, index + 1, m_values.length - index);
+            return new Values(values);
+        }
+
+        /**
+         * @return the values without the ones of the given node, null if none are left, or this
+         * instance if there were none to begin with
+         */
+        private Values withoutNode(int nodeId) {
+            final Value[] values = Arrays.stream(m_values).filter(v -> v.nodeId != nodeId).toArray(Value[]::new);
+            if (values.length == m_values.length) {
+                return this;
+            }
+            return values.length > 0 ? new Values(values) : null;
+        }
+    }
+
+    static final class Value implements Comparable<Value> {
+        private final int nodeId;
+        private final int interfaceId;
+        private final PrimaryType type;
+
+        Value(final int nodeId,
+              final int interfaceId,
+              final PrimaryType type) {
+            this.nodeId = nodeId;
+            this.interfaceId = interfaceId;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (obj == this) {
+                return true;
+            }
+            if (obj.getClass() != getClass()) {
+                return false;
+            }
+            final Value that = (Value) obj;
+            return Objects.equals(this.nodeId, that.nodeId)
+                    && Objects.equals(this.interfaceId, that.interfaceId)
+                    && Objects.equals(this.type, that.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.nodeId, this.type.getCharCode());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Value[nodeId='%s', interfaceId='%s', type='%s']", this.nodeId, this.interfaceId, this.type);
+        }
+
+        @Override
+        public int compareTo(final Value that) {
+            return ComparisonChain.start()
+                    .compare(this.type, that.type)
+                    .compare(this.nodeId, that.nodeId)
+                    .compare(this.interfaceId, that.interfaceId)
+                    .result();
+        }
+    }
+
+    // 0 marks an empty slot, the location is stored off by one so that no key is 0
+    private final AtomicLongArray m_keys;
+    private final InetAddress[] m_ipv6Addresses;
+    private final AtomicReferenceArray<Values> m_values;
+    private final int m_mask;
+    private final int m_shift;
+
+    // slots with a key, including the ones whose entry was removed
+    private int m_usedSlots = 0;
+    private volatile int m_size = 0;
+
+    InterfaceToNodeTable() {
+        this(MIN_CAPACITY);
+    }
+
+    private InterfaceToNodeTable(int capacity) {
+        m_keys = new AtomicLongArray(capacity);
+        m_ipv6Addresses = new InetAddress[capacity];
+        m_values = new AtomicReferenceArray<>(capacity);
+        m_mask = capacity - 1;
+        m_shift = Long.numberOfLeadingZeros(capacity - 1);
+    }
+
+    static long key(int locationId, InetAddress address) {
+        // The hash code of an IPv4 address is the address itself
+        return ((long) (locationId + 1) << 32) | (address.hashCode() & 0xffffffffL);
+    }
+
+    /**
+     * @return the number of values in the table
+     */
+    int size() {
+        return m_size;
+    }
+
+    /**
+     * @return the values for the given key, or null if there are none
+     */
+    Values get(long key, InetAddress address) {
+        for (int slot = slot(key); ; slot = (slot + 1) & m_mask) {
+            final long slotKey = m_keys.getAcquire(slot);
+            if (slotKey == 0) {
+                return null;
+            }
+            if (slotKey == key && matches(slot, address)) {
+                return m_values.getAcquire(slot);
+            }
+        }
+    }
+
+    /**
+     * Adds the given value.
+     *
+     * @return true if the value was added, false if it was already present
+     */
+    boolean add(long key, InetAddress address, Value value) {
+        return update(key, address, values -> values == null ? Values.of(value) : values.with(value));
+    }
+
+    /**
+     * Removes the values of the given node for the given key.
+     *
+     * @return true if any values were removed
+     */
+    boolean removeNode(long key, InetAddress address, int nodeId) {
+        return update(key, address, values -> values == null ? null : values.withoutNode(nodeId));
+    }
+
+    /**
+     * Removes the values of the given node for all keys.
+     *
+     * @return the number of keys whose values changed
+     */
+    int removeNode(int nodeId) {
+        int updated = 0;
+        for (int slot = 0; slot <= m_mask; slot++) {
+            final Values values = m_values.get(slot);
+            if (values == null) {
+                continue;
+            }
+            final Values newValues = values.withoutNode(nodeId);
+            if (newValues != values) {
+                setValues(slot, values, newValues);
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * @return true if there is room for another key without exceeding the maximum load factor of 0.5
+     */
+    boolean hasCapacity() {
+        return (m_usedSlots + 1) * 2 <= m_mask + 1;
+    }
+
+    /**
+     * Copies the entries into a new table with enough room to grow, leaving out the removed ones.
+     */
+    InterfaceToNodeTable copy() {
+        int liveSlots = 0;
+        for (int slot = 0; slot <= m_mask; slot++) {
+            if (m_values.get(slot) != null) {
+                liveSlots++;
+            }
+        }
+        final InterfaceToNodeTable table = new InterfaceToNodeTable(capacityFor(liveSlots));
+        for (int slot = 0; slot <= m_mask; slot++) {
+            final Values values = m_values.get(slot);
+            if (values != null) {
+                table.insert(m_keys.get(slot), m_ipv6Addresses[slot], values);
+            }
+        }
+        return table;
+    }
+
+    private boolean update(long key, InetAddress address, UnaryOperator<Values> function) {
+        int slot = slot(key);
+        for (; ; slot = (slot + 1) & m_mask) {
+            final long slotKey = m_keys.get(slot);
+            if (slotKey == 0 || (slotKey == key && matches(slot, address))) {
+                break;
+            }
+        }
+        final Values values = m_values.get(slot);
+        final Values newValues = function.apply(values);
+        if (newValues == values) {
+            return false;
+        }
+        if (m_keys.get(slot) == 0) {
+            insert(slot, key, address, newValues);
+        } else {
+            setValues(slot, values, newValues);
+        }
+        return true;
+    }
+
+    private void insert(long key, InetAddress ipv6Address, Values values) {
+        int slot = slot(key);
+        while (m_keys.get(slot) != 0) {
+            slot = (slot + 1) & m_mask;
+        }
+        insert(slot, key, ipv6Address, values);
+    }
+
+    private void insert(int slot, long key, InetAddress address, Values values) {
+        if (!hasCapacity()) {
+            throw new IllegalStateException("The table is full.");
+        }
+        m_ipv6Addresses[slot] = address instanceof Inet4Address ? null : address;
+        m_values.set(slot, values);
+        // Publish the key last, so that lookups finding the key also see the address and values
+        m_keys.setRelease(slot, key);
+        m_usedSlots++;
+        m_size += values.size();
+    }
+
+    private void setValues(int slot, Values values, Values newValues) {
+        m_values.setRelease(slot, newValues);
+        m_size += (newValues != null ? newValues.size() : 0) - (values != null ? values.size() : 0);
+    }
+
+    private boolean matches(int slot, InetAddress address) {
+        final InetAddress ipv6Address = m_ipv6Addresses[slot];
+        return address instanceof Inet4Address ? ipv6Address == null : address.equals(ipv6Address);
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing spreads the addresses of a subnet across the table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> m_shift);
+    }
+
+    private static int capacityFor(int slots) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < slots * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -175,6 +175,44 @@ public class NodeDaoHibernate extends AbstractDaoHibernate<OnmsNode, Integer> im
 
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public List<OnmsNode> getHierarchies(final Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return getHibernateTemplate().executeWithNativeSession(session -> {
+            @SuppressWarnings("unchecked")
+            final List<OnmsNode> nodes = session.createQuery("select distinct n from OnmsNode as n "
+                            + "left join fetch n.assetRecord "
+                            + "left join fetch n.ipInterfaces "
+                            + "where n.id in (:ids)")
+                    .setParameterList("ids", ids)
+                    .list();
+
+            // The following queries return entities which are already in the session,
+            // initializing their collections along the way
+            session.createQuery("select distinct i from OnmsIpInterface as i "
+                            + "left join fetch i.monitoredServices "
+                            + "where i.node.id in (:ids)")
+                    .setParameterList("ids", ids)
+                    .list();
+            session.createQuery("select distinct n from OnmsNode as n "
+                            + "left join fetch n.snmpInterfaces "
+                            + "where n.id in (:ids)")
+                    .setParameterList("ids", ids)
+                    .list();
+            session.createQuery("select distinct s from OnmsSnmpInterface as s "
+                            + "left join fetch s.ipInterfaces "
+                            + "where s.node.id in (:ids)")
+                    .setParameterList("ids", ids)
+                    .list();
+
+            return nodes;
+        });
+    }
+
     /** {@inheritDoc} */
     @Override
     public List<OnmsNode> findByLabel(String label) {
@@ -127,6 +127,19 @@ public class InterfaceToNodeCacheEventProcessor implements InitializingBean {
         m_cache.setNodeId(newNode.getLocation().getLocationName(), event.getInterfaceAddress(), newNode.getId());
     }
 
+    @EventHandler(uei = EventConstants.NODE_LOCATION_CHANGED_EVENT_UEI)
+    @Transactional
+    public void handleNodeLocationChanged(IEvent event) {
+        Long nodeId = event.getNodeid();
+        LOG.debug("Received event: {} with nodeId = {}", event.getUei(), nodeId);
+        if (nodeId == null) {
+            LOG.error("{} : Event with no node ID: {}", EventConstants.NODE_LOCATION_CHANGED_EVENT_UEI, event.toString());
+            return;
+        }
+        // the interfaces of the node are now keyed by the new location
+        m_cache.syncNode(nodeId.intValue());
+    }
+
     @EventHandler(uei = EventConstants.NODE_DELETED_EVENT_UEI)
     @Transactional
     public void handleNodeDeleted(IEvent event) {
@@ -0,0 +1,125 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.dao.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache.Entry;
+import org.opennms.netmgt.model.PrimaryType;
+
+public class InterfaceToNodeTableTest {
+
+    private static final int DEFAULT_LOCATION = 0;
+    private static final int OTHER_LOCATION = 1;
+
+    @Test
+    public void canAddAndRemoveValues() {
+        final InterfaceToNodeTable table = new InterfaceToNodeTable();
+        final InetAddress ipv4 = addr("192.168.1.1");
+        final InetAddress ipv6 = addr("fe80::1");
+
+        assertTrue(add(table, DEFAULT_LOCATION, ipv4, 1, 11, PrimaryType.SECONDARY));
+        assertFalse(add(table, DEFAULT_LOCATION, ipv4, 1, 11, PrimaryType.SECONDARY));
+        assertTrue(add(table, DEFAULT_LOCATION, ipv4, 2, 21, PrimaryType.NOT_ELIGIBLE));
+        assertTrue(add(table, OTHER_LOCATION, ipv4, 3, 31, PrimaryType.PRIMARY));
+        assertTrue(add(table, DEFAULT_LOCATION, ipv6, 4, 41, PrimaryType.NOT_ELIGIBLE));
+        assertEquals(4, table.size());
+
+        // Values are ordered by type first, and locations are kept apart
+        assertEquals(new Entry(2, 21), get(table, DEFAULT_LOCATION, ipv4));
+        assertEquals(new Entry(3, 31), get(table, OTHER_LOCATION, ipv4));
+        assertEquals(new Entry(4, 41), get(table, DEFAULT_LOCATION, ipv6));
+        assertNull(get(table, OTHER_LOCATION, ipv6));
+        assertNull(get(table, DEFAULT_LOCATION, addr("192.168.1.2")));
+
+        assertTrue(table.removeNode(InterfaceToNodeTable.key(DEFAULT_LOCATION, ipv4), ipv4, 2));
+        assertFalse(table.removeNode(InterfaceToNodeTable.key(DEFAULT_LOCATION, ipv4), ipv4, 2));
+        assertEquals(new Entry(1, 11), get(table, DEFAULT_LOCATION, ipv4));
+
+        assertEquals(1, table.removeNode(4));
+        assertNull(get(table, DEFAULT_LOCATION, ipv6));
+        assertEquals(2, table.size());
+
+        // Removed keys can be added again
+        assertTrue(add(table, DEFAULT_LOCATION, ipv6, 5, 51, PrimaryType.PRIMARY));
+        assertEquals(new Entry(5, 51), get(table, DEFAULT_LOCATION, ipv6));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void canTellCollidingIpv6AddressesApart() {
+        final InterfaceToNodeTable table = new InterfaceToNodeTable();
+        // Both addresses fold into the same hash code
+        final InetAddress a = addr("2001:db8:0:1::");
+        final InetAddress b = addr("2001:db8::1");
+        assertEquals(a.hashCode(), b.hashCode());
+
+        assertTrue(add(table, DEFAULT_LOCATION, a, 1, 11, PrimaryType.PRIMARY));
+        assertNull(get(table, DEFAULT_LOCATION, b));
+        assertTrue(add(table, DEFAULT_LOCATION, b, 2, 21, PrimaryType.PRIMARY));
+        assertEquals(new Entry(1, 11), get(table, DEFAULT_LOCATION, a));
+        assertEquals(new Entry(2, 21), get(table, DEFAULT_LOCATION, b));
+    }
+
+    @Test
+    public void canGrow() {
+        InterfaceToNodeTable table = new InterfaceToNodeTable();
+        final int numAddresses = 10000;
+        for (int i = 0; i < numAddresses; i++) {
+            if (!table.hasCapacity()) {
+                final InterfaceToNodeTable copy = table.copy();
+                assertNotSame(table, copy);
+                table = copy;
+            }
+            add(table, DEFAULT_LOCATION, address(i), i, i, PrimaryType.PRIMARY);
+            if (i % 2 == 0) {
+                // Leave some removed entries behind
+                table.removeNode(InterfaceToNodeTable.key(DEFAULT_LOCATION, address(i)), address(i), i);
+            }
+        }
+        assertEquals(numAddresses / 2, table.size());
+        for (int i = 0; i < numAddresses; i++) {
+            assertEquals(i % 2 == 0 ? null : new Entry(i, i), get(table, DEFAULT_LOCATION, address(i)));
+        }
+    }
+
+    private static InetAddress address(int i) {
+        return addr("10.0." + (i >> 8) + "." + (i & 0xff));
+    }
+
+    private static boolean add(InterfaceToNodeTable table, int locationId, InetAddress address, int nodeId, int interfaceId, PrimaryType type) {
+        return table.add(InterfaceToNodeTable.key(locationId, address), address, new InterfaceToNodeTable.Value(nodeId, interfaceId, type));
+    }
+
+    private static Entry get(InterfaceToNodeTable table, int locationId, InetAddress address) {
+        final InterfaceToNodeTable.Values values = table.get(InterfaceToNodeTable.key(locationId, address), address);
+        return values != null ? values.getFirst().get() : null;
+    }
+}
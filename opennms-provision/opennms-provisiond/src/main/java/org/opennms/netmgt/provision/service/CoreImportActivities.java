@@ -22,10 +22,13 @@
 package org.opennms.netmgt.provision.service;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+import org.opennms.core.sysprops.SystemProperties;
 import org.opennms.core.tasks.BatchTask;
+import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,10 +59,32 @@ import static org.opennms.netmgt.provision.service.ImportJob.MONITOR;
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
     
+    /**
+     * Whether the nodes of a requisition are persisted in batches during the delete, update and insert
+     * phases, instead of by one nodeImport lifecycle per node during the scan phase. New nodes are then
+     * not scanned during the import, but scheduled for a node scan once they were all inserted.
+     */
+    public static final String BULK_IMPORT = "org.opennms.provisiond.bulkImport";
+
+    /**
+     * Maximum number of nodes persisted in a single transaction by a bulk import.
+     */
+    public static final String BULK_IMPORT_BATCH_SIZE = "org.opennms.provisiond.bulkImport.batchSize";
+
     private final ProvisionService m_provisionService;
     
+    private final boolean m_bulkImport;
+
+    private final int m_batchSize;
+
     public CoreImportActivities(final ProvisionService provisionService) {
+        this(provisionService, Boolean.getBoolean(BULK_IMPORT), SystemProperties.getInteger(BULK_IMPORT_BATCH_SIZE, 500));
+    }
+
+    public CoreImportActivities(final ProvisionService provisionService, final boolean bulkImport, final int batchSize) {
         m_provisionService = provisionService;
+        m_bulkImport = bulkImport;
+        m_batchSize = batchSize;
     }
 
     @Activity( lifecycle = "import", phase = "validate", schedulingHint="import")
@@ -107,11 +132,15 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "import", phase = "scan", schedulingHint="import" )
-    public static void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
+    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase import.");
             return;
         }
+        if (m_bulkImport) {
+            info("Bulk import is enabled, nodes will be persisted in batches and scanned afterwards.");
+            return;
+        }
         Objects.requireNonNull(monitor);
 
         info("Scheduling nodes for phase {}", currentPhase);
@@ -169,6 +198,55 @@ public class CoreImportActivities {
         info("Finished Running persist phase of {}", operation);
     }
     
+    @Activity( lifecycle = "import", phase = "delete", schedulingHint = "import" )
+    public void deleteNodes(final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        if (!m_bulkImport) {
+            return;
+        }
+        if (ri.isAborted()) {
+            info("The import has been aborted, skipping delete phase.");
+            return;
+        }
+        Objects.requireNonNull(monitor);
+
+        info("Deleting {} nodes in batches of {}", opsMgr.getDeleteCount(), m_batchSize);
+        opsMgr.persistDeletes(m_batchSize, monitor);
+        info("Finished deleting nodes.");
+    }
+
+    @Activity( lifecycle = "import", phase = "update", schedulingHint = "import" )
+    public void updateNodes(final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        if (!m_bulkImport) {
+            return;
+        }
+        if (ri.isAborted()) {
+            info("The import has been aborted, skipping update phase.");
+            return;
+        }
+        Objects.requireNonNull(monitor);
+
+        info("Updating {} nodes in batches of {}", opsMgr.getUpdateCount(), m_batchSize);
+        opsMgr.persistUpdates(m_batchSize, monitor);
+        info("Finished updating nodes.");
+    }
+
+    @Activity( lifecycle = "import", phase = "insert", schedulingHint = "import" )
+    public void insertNodes(final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        if (!m_bulkImport) {
+            return;
+        }
+        if (ri.isAborted()) {
+            info("The import has been aborted, skipping insert phase.");
+            return;
+        }
+        Objects.requireNonNull(monitor);
+
+        info("Inserting {} nodes in batches of {}", opsMgr.getInsertCount(), m_batchSize);
+        opsMgr.persistInserts(m_batchSize, monitor);
+        ri.setInsertedNodes(opsMgr.getInsertedNodes());
+        info("Finished inserting nodes.");
+    }
+
     @Activity( lifecycle = "import", phase = "relate" , schedulingHint = "import" )
     public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
@@ -194,6 +272,25 @@ public class CoreImportActivities {
 
     }
     
+    @Activity( lifecycle = "import", phase = "schedule", schedulingHint = "import" )
+    public void scheduleNodes(final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        if (!m_bulkImport) {
+            return;
+        }
+        if (ri.isAborted()) {
+            info("The import has been aborted, skipping schedule phase.");
+            return;
+        }
+        Objects.requireNonNull(monitor);
+
+        final List<OnmsNode> nodes = ri.getInsertedNodes();
+        info("Scheduling node scans for {} inserted nodes", nodes.size());
+        monitor.beginScheduling();
+        ri.setNodeScanSchedules(m_provisionService.getScheduleForNodes(nodes, false, monitor.getName()));
+        monitor.finishScheduling();
+        debug("Finished scheduling node scans.");
+    }
+
     private static Runnable parentSetter(final ProvisionService provisionService, final OnmsNodeRequisition nodeReq, final String foreignSource) {
         return new Runnable() {
             @Override
@@ -37,6 +37,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
@@ -100,6 +101,7 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
@@ -183,6 +185,12 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     @Autowired
     private PlatformTransactionManager m_transactionManager;
 
+    /**
+     * Used to write nodes in batches, when available.
+     */
+    @Autowired(required=false)
+    private JdbcTemplate m_jdbcTemplate;
+
     private HostnameResolver m_hostnameResolver;
 
     @Autowired
@@ -227,6 +235,20 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         }
     }
 
+    /**
+     * Same as {@link #updateLocation(OnmsNode)}, but only looks up each location once for a batch of nodes.
+     */
+    private void updateLocation(final OnmsNode node, final Map<String, OnmsMonitoringLocation> locations) {
+        final String locationName = node.getLocation() == null ? null : node.getLocation().getLocationName();
+        OnmsMonitoringLocation location = locations.get(locationName);
+        if (location == null) {
+            updateLocation(node);
+            locations.put(locationName, node.getLocation());
+        } else {
+            node.setLocation(location);
+        }
+    }
+
     /** {@inheritDoc} */
     @Transactional
     @Override
@@ -239,31 +261,100 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         node.visit(visitor);
     }
 
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void insertNodes(final List<OnmsNode> nodes, final String monitorKey) {
+        final Map<String, OnmsMonitoringLocation> locations = new HashMap<>();
+        final List<OnmsNode> batch = new ArrayList<>(nodes.size());
+        for (final OnmsNode node : nodes) {
+            updateLocation(node, locations);
+            if (m_jdbcTemplate != null && JdbcNodeWriter.canInsert(node)) {
+                batch.add(node);
+            } else {
+                m_nodeDao.save(node);
+            }
+        }
+        m_nodeDao.flush();
+
+        if (!batch.isEmpty()) {
+            new JdbcNodeWriter(m_jdbcTemplate).insertNodes(batch);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendNodeAddedEvents(final List<OnmsNode> nodes, final String monitorKey) {
+        final EntityVisitor visitor = new AddEventVisitor(m_eventForwarder, monitorKey);
+        for (final OnmsNode node : nodes) {
+            node.visit(visitor);
+        }
+    }
+
     /** {@inheritDoc} */
     @Transactional
     @Override
     public void updateNode(final OnmsNode node, String rescanExisting, String monitorKey) {
         updateLocation(node);
         final OnmsNode dbNode = m_nodeDao.getHierarchy(node.getId());
+
+        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        mergeNode(node, dbNode, accumulator);
+        m_nodeDao.flush();
+
+        accumulator.flush();
+        final EntityVisitor eventAccumlator = new UpdateEventVisitor(m_eventForwarder, rescanExisting, monitorKey);
+        dbNode.visit(eventAccumlator);
+    }
+
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void updateNodes(final List<OnmsNode> nodes, final String rescanExisting, final String monitorKey) {
+        final Map<Integer, OnmsNode> dbNodes = m_nodeDao.getHierarchies(nodes.stream().map(OnmsNode::getId).collect(Collectors.toList())).stream()
+                .collect(Collectors.toMap(OnmsNode::getId, Function.identity()));
+
+        final Map<String, OnmsMonitoringLocation> locations = new HashMap<>();
+        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        final List<OnmsNode> updated = new ArrayList<>(nodes.size());
+        for (final OnmsNode node : nodes) {
+            final OnmsNode dbNode = dbNodes.get(node.getId());
+            if (dbNode == null) {
+                LOG.warn("Node {} no longer exists, skipping update.", node.getId());
+                continue;
+            }
+            updateLocation(node, locations);
+            mergeNode(node, dbNode, accumulator);
+            updated.add(dbNode);
+        }
+        m_nodeDao.flush();
+
+        accumulator.flush();
+        final EntityVisitor eventAccumlator = new UpdateEventVisitor(m_eventForwarder, rescanExisting, monitorKey);
+        for (final OnmsNode dbNode : updated) {
+            dbNode.visit(eventAccumlator);
+        }
+    }
+
+    /**
+     * Merges the node built from the requisition into the node loaded from the database,
+     * accumulating the events for whatever was changed.
+     */
+    private void mergeNode(final OnmsNode node, final OnmsNode dbNode, final EventAccumulator accumulator) {
         String prevLocation = dbNode.getLocation().getLocationName();
         String currentLocation = node.getLocation().getLocationName();
 
         // on an update, leave categories alone, let the NodeScan handle applying requisitioned categories
         node.setCategories(dbNode.getCategories());
 
-        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
         dbNode.mergeNode(node, accumulator, false);
 
         updateNodeHostname(dbNode);
         m_nodeDao.update(dbNode);
-        m_nodeDao.flush();
 
         if(!prevLocation.equals(currentLocation)) {
             accumulator.sendNow(EventUtils.createNodeLocationChangedEvent(PROVISIOND, dbNode.getId(), dbNode.getLabel(), prevLocation, currentLocation));
         }
-        accumulator.flush();
-        final EntityVisitor eventAccumlator = new UpdateEventVisitor(m_eventForwarder, rescanExisting, monitorKey);
-        dbNode.visit(eventAccumlator);
     }
 
     private void updateNodeHostname(final OnmsNode node) {
@@ -329,6 +420,32 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         }
     }
 
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void deleteNodes(final List<Integer> nodeIds) {
+        LOG.debug("deleteNodes: nodeIds={}", nodeIds);
+
+        final List<OnmsNode> nodes = m_nodeDao.getHierarchies(nodeIds);
+        final DeleteEventVisitor visitor = new DeleteEventVisitor(m_eventForwarder);
+        if (m_jdbcTemplate != null) {
+            // Build the events while the nodes can still be loaded, they are only sent once the transaction commits
+            for (final OnmsNode node : nodes) {
+                node.visit(visitor);
+            }
+            m_nodeDao.clear();
+            new JdbcNodeWriter(m_jdbcTemplate).deleteNodes(nodes.stream().map(OnmsNode::getId).collect(Collectors.toList()));
+        } else {
+            for (final OnmsNode node : nodes) {
+                m_nodeDao.delete(node);
+            }
+            m_nodeDao.flush();
+            for (final OnmsNode node : nodes) {
+                node.visit(visitor);
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     @Transactional
     @Override
@@ -895,6 +1012,19 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         return scheduledNodes;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public List<NodeScanSchedule> getScheduleForNodes(final Collection<OnmsNode> nodes, final boolean force, final String monitorKey) {
+        final List<NodeScanSchedule> scheduledNodes = new ArrayList<>(nodes.size());
+        for (final OnmsNode node : nodes) {
+            final NodeScanSchedule nodeScanSchedule = createScheduleForNode(node, force, monitorKey);
+            if (nodeScanSchedule != null) {
+                scheduledNodes.add(nodeScanSchedule);
+            }
+        }
+        return scheduledNodes;
+    }
+
     private NodeScanSchedule createScheduleForNode(final OnmsNode node, final boolean force, final String monitorKey) {
         Assert.notNull(node, "Node may not be null");
         final String actualForeignSource = node.getForeignSource();
@@ -1508,6 +1638,10 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         this.m_categoryDao = categoryDao;
     }
 
+    public void setJdbcTemplate(final JdbcTemplate jdbcTemplate) {
+        m_jdbcTemplate = jdbcTemplate;
+    }
+
     public void setTransactionManager(PlatformTransactionManager transactionManager) {
         this.m_transactionManager = transactionManager;
     }
@@ -0,0 +1,396 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.provision.service;
+
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.opennms.netmgt.model.OnmsAssetRecord;
+import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsGeolocation;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsMetaData;
+import org.opennms.netmgt.model.OnmsMonitoredService;
+import org.opennms.netmgt.model.OnmsNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Writes nodes built from a requisition, along with their assets, IP interfaces,
+ * services, categories and meta-data, using a single JDBC batch statement per
+ * table instead of saving them one entity at a time through the ORM.
+ *
+ * The IDs for all of the entities are allocated with a single query per sequence.
+ * They are only set on the entities once all of the statements have been executed,
+ * so that the nodes of a failed batch can still be saved again one at a time.
+ *
+ * Deleted nodes rely on the foreign keys of the tables referencing the node table
+ * to cascade the delete.
+ *
+ * The statements are executed in the caller's transaction.
+ */
+public class JdbcNodeWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcNodeWriter.class);
+
+    private static final String ALLOCATE_NODE_IDS = "SELECT nextval('nodeNxtId') FROM generate_series(1, ?)";
+
+    private static final String ALLOCATE_IDS = "SELECT nextval('opennmsNxtId') FROM generate_series(1, ?)";
+
+    private static final String INSERT_NODE = "INSERT INTO node (" +
+            "nodeId, nodeCreateTime, nodeParentID, nodeType, nodeSysOID, nodeSysName, nodeSysDescription, " +
+            "nodeSysLocation, nodeSysContact, nodeLabel, nodeLabelSource, nodeNetBIOSName, nodeDomainName, " +
+            "operatingSystem, lastCapsdPoll, foreignSource, foreignId, location" +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int[] INSERT_NODE_TYPES = new int[] {
+            Types.INTEGER, Types.TIMESTAMP, Types.INTEGER, Types.CHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.CHAR, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR
+    };
+
+    private static final String INSERT_IP_INTERFACE = "INSERT INTO ipInterface (" +
+            "id, nodeId, ipAddr, ipHostName, isManaged, ipLastCapsdPoll, isSnmpPrimary, netmask" +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int[] INSERT_IP_INTERFACE_TYPES = new int[] {
+            Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.CHAR, Types.TIMESTAMP, Types.CHAR, Types.VARCHAR
+    };
+
+    private static final String INSERT_SERVICE = "INSERT INTO ifServices (" +
+            "id, ipInterfaceId, serviceId, lastGood, lastFail, qualifier, status, source, notify" +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int[] INSERT_SERVICE_TYPES = new int[] {
+            Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.TIMESTAMP, Types.TIMESTAMP, Types.VARCHAR, Types.CHAR, Types.CHAR, Types.CHAR
+    };
+
+    private static final String INSERT_CATEGORY = "INSERT INTO category_node (nodeId, categoryId) VALUES (?, ?)";
+
+    private static final int[] INSERT_CATEGORY_TYPES = new int[] { Types.INTEGER, Types.INTEGER };
+
+    private static final String INSERT_NODE_META_DATA = "INSERT INTO node_metadata (id, context, key, value) VALUES (?, ?, ?, ?)";
+
+    private static final String INSERT_IP_INTERFACE_META_DATA = "INSERT INTO ipInterface_metadata (id, context, key, value) VALUES (?, ?, ?, ?)";
+
+    private static final String INSERT_SERVICE_META_DATA = "INSERT INTO ifServices_metadata (id, context, key, value) VALUES (?, ?, ?, ?)";
+
+    private static final int[] INSERT_META_DATA_TYPES = new int[] { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR };
+
+    private static final String DELETE_NODE = "DELETE FROM node WHERE nodeId = ?";
+
+    /**
+     * A column of the assets table, along with its SQL type and how to get its value from an asset record.
+     */
+    private static class AssetColumn {
+        private final String m_name;
+        private final int m_type;
+        private final Function<OnmsAssetRecord, Object> m_getter;
+
+        private AssetColumn(final String name, final int type, final Function<OnmsAssetRecord, Object> getter) {
+            m_name = name;
+            m_type = type;
+            m_getter = getter;
+        }
+
+        private static AssetColumn string(final String name, final Function<OnmsAssetRecord, Object> getter) {
+            return new AssetColumn(name, Types.VARCHAR, getter);
+        }
+
+        private static AssetColumn geolocation(final String name, final int type, final Function<OnmsGeolocation, Object> getter) {
+            return new AssetColumn(name, type, asset -> asset.getGeolocation() == null ? null : getter.apply(asset.getGeolocation()));
+        }
+    }
+
+    private static final List<AssetColumn> ASSET_COLUMNS = Arrays.asList(
+            AssetColumn.string("category", OnmsAssetRecord::getCategory),
+            AssetColumn.string("manufacturer", OnmsAssetRecord::getManufacturer),
+            AssetColumn.string("vendor", OnmsAssetRecord::getVendor),
+            AssetColumn.string("modelNumber", OnmsAssetRecord::getModelNumber),
+            AssetColumn.string("serialNumber", OnmsAssetRecord::getSerialNumber),
+            AssetColumn.string("description", OnmsAssetRecord::getDescription),
+            AssetColumn.string("circuitId", OnmsAssetRecord::getCircuitId),
+            AssetColumn.string("assetNumber", OnmsAssetRecord::getAssetNumber),
+            AssetColumn.string("operatingSystem", OnmsAssetRecord::getOperatingSystem),
+            AssetColumn.string("rack", OnmsAssetRecord::getRack),
+            AssetColumn.string("slot", OnmsAssetRecord::getSlot),
+            AssetColumn.string("port", OnmsAssetRecord::getPort),
+            AssetColumn.string("region", OnmsAssetRecord::getRegion),
+            AssetColumn.string("division", OnmsAssetRecord::getDivision),
+            AssetColumn.string("department", OnmsAssetRecord::getDepartment),
+            AssetColumn.string("building", OnmsAssetRecord::getBuilding),
+            AssetColumn.string("floor", OnmsAssetRecord::getFloor),
+            AssetColumn.string("room", OnmsAssetRecord::getRoom),
+            AssetColumn.string("vendorPhone", OnmsAssetRecord::getVendorPhone),
+            AssetColumn.string("vendorFax", OnmsAssetRecord::getVendorFax),
+            AssetColumn.string("vendorAssetNumber", OnmsAssetRecord::getVendorAssetNumber),
+            AssetColumn.string("userLastModified", OnmsAssetRecord::getLastModifiedBy),
+            new AssetColumn("lastModifiedDate", Types.TIMESTAMP, OnmsAssetRecord::getLastModifiedDate),
+            AssetColumn.string("dateInstalled", OnmsAssetRecord::getDateInstalled),
+            AssetColumn.string("lease", OnmsAssetRecord::getLease),
+            AssetColumn.string("leaseExpires", OnmsAssetRecord::getLeaseExpires),
+            AssetColumn.string("supportPhone", OnmsAssetRecord::getSupportPhone),
+            AssetColumn.string("maintcontract", OnmsAssetRecord::getMaintcontract),
+            AssetColumn.string("maintContractExpires", OnmsAssetRecord::getMaintContractExpiration),
+            AssetColumn.string("displayCategory", OnmsAssetRecord::getDisplayCategory),
+            AssetColumn.string("notifyCategory", OnmsAssetRecord::getNotifyCategory),
+            AssetColumn.string("pollerCategory", OnmsAssetRecord::getPollerCategory),
+            AssetColumn.string("thresholdCategory", OnmsAssetRecord::getThresholdCategory),
+            AssetColumn.string("comment", OnmsAssetRecord::getComment),
+            AssetColumn.string("managedObjectType", OnmsAssetRecord::getManagedObjectType),
+            AssetColumn.string("managedObjectInstance", OnmsAssetRecord::getManagedObjectInstance),
+            AssetColumn.string("username", OnmsAssetRecord::getUsername),
+            AssetColumn.string("password", OnmsAssetRecord::getPassword),
+            AssetColumn.string("enable", OnmsAssetRecord::getEnable),
+            AssetColumn.string("connection", OnmsAssetRecord::getConnection),
+            AssetColumn.string("autoenable", OnmsAssetRecord::getAutoenable),
+            AssetColumn.string("cpu", OnmsAssetRecord::getCpu),
+            AssetColumn.string("ram", OnmsAssetRecord::getRam),
+            AssetColumn.string("snmpcommunity", OnmsAssetRecord::getSnmpcommunity),
+            AssetColumn.string("rackunitheight", OnmsAssetRecord::getRackunitheight),
+            AssetColumn.string("admin", OnmsAssetRecord::getAdmin),
+            AssetColumn.string("additionalhardware", OnmsAssetRecord::getAdditionalhardware),
+            AssetColumn.string("inputpower", OnmsAssetRecord::getInputpower),
+            AssetColumn.string("numpowersupplies", OnmsAssetRecord::getNumpowersupplies),
+            AssetColumn.string("hdd6", OnmsAssetRecord::getHdd6),
+            AssetColumn.string("hdd5", OnmsAssetRecord::getHdd5),
+            AssetColumn.string("hdd4", OnmsAssetRecord::getHdd4),
+            AssetColumn.string("hdd3", OnmsAssetRecord::getHdd3),
+            AssetColumn.string("hdd2", OnmsAssetRecord::getHdd2),
+            AssetColumn.string("hdd1", OnmsAssetRecord::getHdd1),
+            AssetColumn.string("storagectrl", OnmsAssetRecord::getStoragectrl),
+            AssetColumn.geolocation("address1", Types.VARCHAR, OnmsGeolocation::getAddress1),
+            AssetColumn.geolocation("address2", Types.VARCHAR, OnmsGeolocation::getAddress2),
+            AssetColumn.geolocation("city", Types.VARCHAR, OnmsGeolocation::getCity),
+            AssetColumn.geolocation("state", Types.VARCHAR, OnmsGeolocation::getState),
+            AssetColumn.geolocation("zip", Types.VARCHAR, OnmsGeolocation::getZip),
+            AssetColumn.geolocation("country", Types.VARCHAR, OnmsGeolocation::getCountry),
+            AssetColumn.geolocation("longitude", Types.DOUBLE, OnmsGeolocation::getLongitude),
+            AssetColumn.geolocation("latitude", Types.DOUBLE, OnmsGeolocation::getLatitude)
+    );
+
+    private static final String INSERT_ASSET = "INSERT INTO assets (id, nodeId, " +
+            ASSET_COLUMNS.stream().map(c -> c.m_name).collect(Collectors.joining(", ")) +
+            ") VALUES (?, ?" + String.join("", Collections.nCopies(ASSET_COLUMNS.size(), ", ?")) + ")";
+
+    private static final int[] INSERT_ASSET_TYPES;
+    static {
+        INSERT_ASSET_TYPES = new int[ASSET_COLUMNS.size() + 2];
+        INSERT_ASSET_TYPES[0] = Types.INTEGER;
+        INSERT_ASSET_TYPES[1] = Types.INTEGER;
+        for (int i = 0; i < ASSET_COLUMNS.size(); i++) {
+            INSERT_ASSET_TYPES[i + 2] = ASSET_COLUMNS.get(i).m_type;
+        }
+    }
+
+    private final JdbcTemplate m_jdbcTemplate;
+
+    public JdbcNodeWriter(final JdbcTemplate jdbcTemplate) {
+        m_jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Returns whether the given node only holds what is written by {@link #insertNodes(List)}.
+     * Nodes that have already been scanned, and so have SNMP interfaces, need to be
+     * saved through the ORM instead.
+     */
+    public static boolean canInsert(final OnmsNode node) {
+        return node.getId() == null
+                && node.getLocation() != null
+                && node.getPathElement() == null
+                && node.getSnmpInterfaces().isEmpty();
+    }
+
+    /**
+     * Inserts the given nodes and everything they hold with one batch statement per table,
+     * and sets the IDs allocated for them once all of the statements succeeded.
+     *
+     * The locations, service types and categories referenced by the nodes must
+     * already exist.
+     */
+    public void insertNodes(final List<OnmsNode> nodes) {
+        if (nodes.isEmpty()) {
+            return;
+        }
+
+        final List<OnmsIpInterface> ifaces = new ArrayList<>();
+        final List<OnmsMonitoredService> services = new ArrayList<>();
+        for (final OnmsNode node : nodes) {
+            for (final OnmsIpInterface iface : node.getIpInterfaces()) {
+                ifaces.add(iface);
+                services.addAll(iface.getMonitoredServices());
+            }
+        }
+
+        // Allocate all of the IDs up-front, but keep them to the side until the batch was written
+        final Map<Object, Integer> ids = new IdentityHashMap<>();
+        allocateIds(ALLOCATE_NODE_IDS, nodes, ids);
+        final List<Object> others = new ArrayList<>(nodes.size() + ifaces.size() + services.size());
+        nodes.forEach(node -> others.add(node.getAssetRecord()));
+        others.addAll(ifaces);
+        others.addAll(services);
+        allocateIds(ALLOCATE_IDS, others, ids);
+
+        final List<Object[]> nodeRows = new ArrayList<>(nodes.size());
+        final List<Object[]> assetRows = new ArrayList<>(nodes.size());
+        final List<Object[]> categoryRows = new ArrayList<>();
+        final List<Object[]> nodeMetaDataRows = new ArrayList<>();
+        for (final OnmsNode node : nodes) {
+            final Integer nodeId = ids.get(node);
+            nodeRows.add(new Object[] {
+                    nodeId,
+                    node.getCreateTime(),
+                    node.getParent() == null ? null : node.getParent().getId(),
+                    node.getType() == null ? null : String.valueOf(node.getType().value()),
+                    node.getSysObjectId(),
+                    node.getSysName(),
+                    node.getSysDescription(),
+                    node.getSysLocation(),
+                    node.getSysContact(),
+                    node.getLabel(),
+                    node.getLabelSource() == null ? null : String.valueOf(node.getLabelSource().value()),
+                    node.getNetBiosName(),
+                    node.getNetBiosDomain(),
+                    node.getOperatingSystem(),
+                    node.getLastCapsdPoll(),
+                    node.getForeignSource(),
+                    node.getForeignId(),
+                    node.getLocation().getLocationName()
+            });
+
+            final OnmsAssetRecord asset = node.getAssetRecord();
+            final Object[] assetRow = new Object[ASSET_COLUMNS.size() + 2];
+            assetRow[0] = ids.get(asset);
+            assetRow[1] = nodeId;
+            for (int i = 0; i < ASSET_COLUMNS.size(); i++) {
+                assetRow[i + 2] = ASSET_COLUMNS.get(i).m_getter.apply(asset);
+            }
+            assetRows.add(assetRow);
+
+            for (final OnmsCategory category : node.getCategories()) {
+                categoryRows.add(new Object[] { nodeId, category.getId() });
+            }
+            addMetaDataRows(nodeMetaDataRows, nodeId, node.getMetaData());
+        }
+
+        final List<Object[]> ifaceRows = new ArrayList<>(ifaces.size());
+        final List<Object[]> ifaceMetaDataRows = new ArrayList<>();
+        for (final OnmsIpInterface iface : ifaces) {
+            final Integer ifaceId = ids.get(iface);
+            ifaceRows.add(new Object[] {
+                    ifaceId,
+                    ids.get(iface.getNode()),
+                    str(iface.getIpAddress()),
+                    iface.getIpHostName(),
+                    iface.getIsManaged(),
+                    iface.getIpLastCapsdPoll(),
+                    iface.getSnmpPrimary(),
+                    iface.getNetMask() == null ? null : str(iface.getNetMask())
+            });
+            addMetaDataRows(ifaceMetaDataRows, ifaceId, iface.getMetaData());
+        }
+
+        final List<Object[]> serviceRows = new ArrayList<>(services.size());
+        final List<Object[]> serviceMetaDataRows = new ArrayList<>();
+        for (final OnmsMonitoredService service : services) {
+            final Integer serviceId = ids.get(service);
+            serviceRows.add(new Object[] {
+                    serviceId,
+                    ids.get(service.getIpInterface()),
+                    service.getServiceType().getId(),
+                    service.getLastGood(),
+                    service.getLastFail(),
+                    service.getQualifier(),
+                    service.getStatus(),
+                    service.getSource(),
+                    service.getNotify()
+            });
+            addMetaDataRows(serviceMetaDataRows, serviceId, service.getMetaData());
+        }
+
+        batchUpdate(INSERT_NODE, nodeRows, INSERT_NODE_TYPES);
+        batchUpdate(INSERT_ASSET, assetRows, INSERT_ASSET_TYPES);
+        batchUpdate(INSERT_IP_INTERFACE, ifaceRows, INSERT_IP_INTERFACE_TYPES);
+        batchUpdate(INSERT_SERVICE, serviceRows, INSERT_SERVICE_TYPES);
+        batchUpdate(INSERT_CATEGORY, categoryRows, INSERT_CATEGORY_TYPES);
+        batchUpdate(INSERT_NODE_META_DATA, nodeMetaDataRows, INSERT_META_DATA_TYPES);
+        batchUpdate(INSERT_IP_INTERFACE_META_DATA, ifaceMetaDataRows, INSERT_META_DATA_TYPES);
+        batchUpdate(INSERT_SERVICE_META_DATA, serviceMetaDataRows, INSERT_META_DATA_TYPES);
+
+        for (final OnmsNode node : nodes) {
+            node.setId(ids.get(node));
+            node.getAssetRecord().setId(ids.get(node.getAssetRecord()));
+        }
+        ifaces.forEach(iface -> iface.setId(ids.get(iface)));
+        services.forEach(service -> service.setId(ids.get(service)));
+
+        LOG.debug("Inserted {} nodes with {} interfaces and {} services", nodes.size(), ifaces.size(), services.size());
+    }
+
+    /**
+     * Deletes the nodes with the given IDs with a single batch statement.
+     */
+    public void deleteNodes(final Collection<Integer> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            return;
+        }
+        batchUpdate(DELETE_NODE, nodeIds.stream().map(id -> new Object[] { id }).collect(Collectors.toList()), new int[] { Types.INTEGER });
+        LOG.debug("Deleted {} nodes", nodeIds.size());
+    }
+
+    private void allocateIds(final String sql, final List<?> entities, final Map<Object, Integer> ids) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        final List<Integer> allocated = m_jdbcTemplate.queryForList(sql, Integer.class, entities.size());
+        if (allocated.size() != entities.size()) {
+            throw new IllegalStateException("Expected " + entities.size() + " IDs, but got " + allocated.size());
+        }
+        final Iterator<Integer> it = allocated.iterator();
+        for (final Object entity : entities) {
+            ids.put(entity, it.next());
+        }
+    }
+
+    private static void addMetaDataRows(final List<Object[]> rows, final Integer id, final List<OnmsMetaData> metaData) {
+        for (final OnmsMetaData entry : metaData) {
+            rows.add(new Object[] { id, entry.getContext(), entry.getKey(), entry.getValue() });
+        }
+    }
+
+    private void batchUpdate(final String sql, final List<Object[]> rows, final int[] types) {
+        if (!rows.isEmpty()) {
+            m_jdbcTemplate.batchUpdate(sql, rows, types);
+        }
+    }
+}
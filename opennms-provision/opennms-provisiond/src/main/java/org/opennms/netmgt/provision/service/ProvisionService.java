@@ -22,6 +22,7 @@
 package org.opennms.netmgt.provision.service;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -165,6 +166,41 @@ public interface ProvisionService {
     @Transactional
     void insertNode(OnmsNode node, String monitorKey);
 
+    /**
+     * Insert the provided nodes into the database in a single transaction,
+     * writing each of the tables involved with a single batch statement when
+     * possible. The nodes are expected to be built from a requisition, so
+     * anything found by scanning them, such as SNMP interfaces, is not written
+     * in batches.
+     *
+     * Unlike {@link #insertNode(OnmsNode, String)}, no events are sent for the
+     * inserted nodes, so that they are not scanned before the import has
+     * scheduled them. Use {@link #sendNodeAddedEvents(List, String)} once it has.
+     */
+    @Transactional
+    void insertNodes(List<OnmsNode> nodes, String monitorKey);
+
+    /**
+     * Send the nodeAdded, nodeGainedInterface and nodeGainedService events for
+     * the provided nodes, which were inserted with {@link #insertNodes(List, String)}.
+     */
+    void sendNodeAddedEvents(List<OnmsNode> nodes, String monitorKey);
+
+    /**
+     * Update the provided nodes in a single transaction, loading their
+     * hierarchies from the database with a fixed number of queries.
+     *
+     * @see #updateNode(OnmsNode, String, String)
+     */
+    @Transactional
+    void updateNodes(List<OnmsNode> nodes, String rescanExisting, String monitorKey);
+
+    /**
+     * Delete the indicated nodes from the database in a single transaction.
+     */
+    @Transactional
+    void deleteNodes(List<Integer> nodeIds);
+
     /**
      * Look up the OnmsServiceType with the given name, creating one if it
      * doesn't exist.
@@ -226,6 +262,12 @@ public interface ProvisionService {
     List<NodeScanSchedule> getScheduleForNodes(String monitorKey);
 
     NodeScanSchedule getScheduleForNode(int nodeId, boolean force, String monitorKey);
+
+    /**
+     * Returns the schedules for the given nodes, without loading them again
+     * from the database. Nodes whose scans are disabled are left out.
+     */
+    List<NodeScanSchedule> getScheduleForNodes(Collection<OnmsNode> nodes, boolean force, String monitorKey);
     
     void setForeignSourceRepository(ForeignSourceRepository foriengSourceRepository);
 
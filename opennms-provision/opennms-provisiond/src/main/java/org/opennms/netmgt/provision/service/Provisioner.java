@@ -475,6 +475,14 @@ public class Provisioner implements SpringServiceDaemon {
         }
 
         final RequisitionImport ri = doImport.findAttributeByType(RequisitionImport.class);
+        // Nodes which were inserted in bulk are only scanned once they have all been persisted
+        for (final NodeScanSchedule schedule : ri.getNodeScanSchedules()) {
+            if (!m_scheduledNodes.containsKey(schedule.getNodeId())) {
+                addToScheduleQueue(schedule);
+            }
+        }
+        // and their events are only sent now, so that handling them does not schedule scans of its own
+        m_provisionService.sendNodeAddedEvents(ri.getInsertedNodes(), monitor == null ? null : monitor.getName());
         if (ri.isAborted()) {
             throw new ModelImportException("Import failed for resource " + resource.toString(), ri.getError());
         }
@@ -590,6 +598,11 @@ public class Provisioner implements SpringServiceDaemon {
     public void handleNodeAddedEvent(IEvent e) {
         NodeScanSchedule scheduleForNode = null;
         LOG.warn("node added event ({})", System.currentTimeMillis());
+        if (m_scheduledNodes.containsKey(e.getNodeid().intValue())) {
+            // the node was already scheduled by the bulk import which added it
+            LOG.debug("Node {} is already scheduled to be scanned", e.getNodeid());
+            return;
+        }
         try {
             /* we don't force a scan on node added so new suspect doesn't cause 2 simultaneous node scans
              * New nodes that are created another way shouldn't have a 'lastCapsPoll' timestamp set 
@@ -50,6 +50,15 @@ public class DeleteOperation extends ImportOperation {
     	return "DELETE: Node "+m_nodeId;
     }
 
+    /**
+     * <p>getNodeId</p>
+     *
+     * @return the ID of the node to delete
+     */
+    Integer getNodeId() {
+        return m_nodeId;
+    }
+
 	/**
 	 * <p>scan</p>
 	 */
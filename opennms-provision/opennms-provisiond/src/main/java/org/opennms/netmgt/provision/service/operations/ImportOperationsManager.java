@@ -34,14 +34,21 @@ import java.util.Map.Entry;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsSnmpInterface;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
 import org.opennms.netmgt.provision.service.ProvisionService;
 import org.opennms.netmgt.provision.service.RequisitionAccountant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 /**
  * This class tracks nodes that need to be deleted, inserted, or updated during
  * provisioning import operations.
@@ -237,6 +244,116 @@ public class ImportOperationsManager {
     	
     }
     
+    /**
+     * Persists the node deletes in batches of the given size.
+     *
+     * @see #persistInBatches(List, int, ProvisionMonitor, Consumer, Consumer)
+     */
+    public void persistDeletes(final int batchSize, final ProvisionMonitor monitor) {
+        final List<DeleteOperation> deletes = new ArrayList<>(m_foreignIdToNodeMap.size());
+        for (final Entry<String, Integer> entry : m_foreignIdToNodeMap.entrySet()) {
+            deletes.add(new DeleteOperation(entry.getValue(), getForeignSource(), entry.getKey(), m_provisionService));
+        }
+        persistInBatches(deletes, batchSize, monitor, batch -> m_provisionService.deleteNodes(
+                batch.stream().map(DeleteOperation::getNodeId).collect(Collectors.toList())),
+                op -> {});
+    }
+
+    /**
+     * Persists the node updates in batches of the given size. Updates which would not
+     * persist anything, because existing nodes are not to be rescanned, are skipped.
+     *
+     * @see #persistInBatches(List, int, ProvisionMonitor, Consumer, Consumer)
+     */
+    public void persistUpdates(final int batchSize, final ProvisionMonitor monitor) {
+        final List<UpdateOperation> updates = m_updates.stream()
+                .filter(op -> !(op instanceof NullUpdateOperation))
+                .map(op -> (UpdateOperation)op)
+                .collect(Collectors.toList());
+        persistInBatches(updates, batchSize, monitor, batch -> m_provisionService.updateNodes(
+                batch.stream().map(UpdateOperation::getNode).collect(Collectors.toList()),
+                batch.get(0).getRescanExisting(), batch.get(0).getMonitorKey()),
+                op -> resetIds(op.getNode(), false));
+    }
+
+    /**
+     * Persists the node inserts in batches of the given size.
+     *
+     * @see #persistInBatches(List, int, ProvisionMonitor, Consumer, Consumer)
+     */
+    public void persistInserts(final int batchSize, final ProvisionMonitor monitor) {
+        final List<InsertOperation> inserts = m_inserts.stream()
+                .map(op -> (InsertOperation)op)
+                .collect(Collectors.toList());
+        persistInBatches(inserts, batchSize, monitor, batch -> m_provisionService.insertNodes(
+                batch.stream().map(InsertOperation::getNode).collect(Collectors.toList()),
+                batch.get(0).getMonitorKey()),
+                op -> resetIds(op.getNode(), true));
+    }
+
+    /**
+     * Persists the given operations with one call to the given persister per batch.
+     * If persisting a batch fails, its operations are persisted again one at a time,
+     * so that a single bad node does not keep the others from being imported.
+     * Since the failed transaction was rolled back, the given rollback is applied to
+     * each operation first, to undo what was assigned to it while persisting.
+     */
+    private <T extends ImportOperation> void persistInBatches(final List<T> operations, final int batchSize, final ProvisionMonitor monitor, final Consumer<List<T>> persister, final Consumer<T> rollback) {
+        for (final List<T> batch : Lists.partition(operations, batchSize)) {
+            batch.forEach(monitor::beginPersisting);
+            try {
+                persister.accept(batch);
+            } catch (final Exception e) {
+                LOG.warn("Failed to persist a batch of {} operations, persisting them one at a time.", batch.size(), e);
+                batch.forEach(rollback);
+                for (final T operation : batch) {
+                    try {
+                        persister.accept(Collections.singletonList(operation));
+                    } catch (final Exception ex) {
+                        LOG.error("Failed to persist {}", operation, ex);
+                        rollback.accept(operation);
+                    }
+                }
+            }
+            batch.forEach(monitor::finishPersisting);
+            // clear the cache to we don't use up all the memory
+            m_provisionService.clearCache();
+        }
+    }
+
+    /**
+     * Clears the IDs which were assigned to the given node and its children while
+     * persisting it in a transaction that was rolled back. The ID of the node itself
+     * is only cleared for inserts, since updated nodes carry the ID of the existing node.
+     */
+    static void resetIds(final OnmsNode node, final boolean resetNodeId) {
+        if (resetNodeId) {
+            node.setId(null);
+        }
+        if (node.getAssetRecord() != null) {
+            node.getAssetRecord().setId(null);
+        }
+        for (final OnmsIpInterface iface : node.getIpInterfaces()) {
+            iface.setId(null);
+            for (final OnmsMonitoredService service : iface.getMonitoredServices()) {
+                service.setId(null);
+            }
+        }
+        for (final OnmsSnmpInterface snmpIface : node.getSnmpInterfaces()) {
+            snmpIface.setId(null);
+        }
+    }
+
+    /**
+     * Returns the nodes which were inserted, with their IDs set.
+     */
+    public List<OnmsNode> getInsertedNodes() {
+        return m_inserts.stream()
+                .map(op -> ((InsertOperation)op).getNode())
+                .filter(node -> node.getId() != null)
+                .collect(Collectors.toList());
+    }
+
     /**
      * <p>shutdownAndWaitForCompletion</p>
      *
@@ -21,16 +21,23 @@
  */
 package org.opennms.netmgt.provision.service.operations;
 
+import java.util.Collections;
+import java.util.List;
+
 import javax.xml.bind.ValidationException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.service.NodeScanSchedule;
 
 public class RequisitionImport {
     private static final Logger LOG = LoggerFactory.getLogger(RequisitionImport.class);
     private Requisition m_requisition;
     private Throwable m_throwable;
+    private List<NodeScanSchedule> m_nodeScanSchedules = Collections.emptyList();
+    private List<OnmsNode> m_insertedNodes = Collections.emptyList();
 
     public Requisition getRequisition() {
         return m_requisition;
@@ -49,6 +56,30 @@ public class RequisitionImport {
         }
     }
 
+    /**
+     * The node scans to schedule once the import has finished, when the nodes
+     * were not scanned during the import itself.
+     */
+    public List<NodeScanSchedule> getNodeScanSchedules() {
+        return m_nodeScanSchedules;
+    }
+
+    public void setNodeScanSchedules(final List<NodeScanSchedule> nodeScanSchedules) {
+        m_nodeScanSchedules = nodeScanSchedules;
+    }
+
+    /**
+     * The nodes which were inserted in bulk, whose events are sent once the
+     * import has finished and their scans have been scheduled.
+     */
+    public List<OnmsNode> getInsertedNodes() {
+        return m_insertedNodes;
+    }
+
+    public void setInsertedNodes(final List<OnmsNode> insertedNodes) {
+        m_insertedNodes = insertedNodes;
+    }
+
     public Throwable getError() {
         return m_throwable;
     }
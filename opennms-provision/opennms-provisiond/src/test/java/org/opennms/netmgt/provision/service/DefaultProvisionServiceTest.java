@@ -22,14 +22,21 @@
 package org.opennms.netmgt.provision.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -53,11 +60,13 @@ import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsServiceType;
 import org.opennms.netmgt.model.RequisitionedCategoryAssociation;
+import org.opennms.netmgt.model.monitoringLocations.OnmsMonitoringLocation;
 import org.opennms.netmgt.provision.persist.ForeignSourceRepository;
 import org.opennms.netmgt.provision.persist.OnmsNodeRequisition;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionCategory;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import com.google.common.collect.Sets;
@@ -261,6 +270,50 @@ public class DefaultProvisionServiceTest {
                 ));
     }
 
+    @Test
+    public void testUpdateNodesLoadsHierarchiesOnce() {
+        final OnmsMonitoringLocation location = new OnmsMonitoringLocation("Default", "Default");
+        when(m_monitoringLocationDao.getDefaultLocation()).thenReturn(location);
+
+        final List<OnmsNode> dbNodes = new ArrayList<>();
+        final List<OnmsNode> nodes = new ArrayList<>();
+        for (int id = 1; id <= 2; id++) {
+            final OnmsNode dbNode = new OnmsNode(location, "old" + id);
+            dbNode.setId(id);
+            dbNodes.add(dbNode);
+
+            final OnmsNode node = new OnmsNode(null, "new" + id);
+            node.setId(id);
+            nodes.add(node);
+        }
+        when(m_nodeDao.getHierarchies(Arrays.asList(1, 2))).thenReturn(dbNodes);
+
+        m_provisionService.updateNodes(nodes, "true", "monitorKey");
+
+        assertEquals("new1", dbNodes.get(0).getLabel());
+        assertEquals("new2", dbNodes.get(1).getLabel());
+        verify(m_nodeDao, times(1)).getHierarchies(Arrays.asList(1, 2));
+        verify(m_nodeDao, never()).getHierarchy(anyInt());
+        verify(m_nodeDao, times(2)).update(any(OnmsNode.class));
+        verify(m_nodeDao, times(1)).flush();
+    }
+
+    @Test
+    public void testDeleteNodesWithJdbc() {
+        final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        m_provisionService.setJdbcTemplate(jdbcTemplate);
+
+        final OnmsNode node = new OnmsNode(new OnmsMonitoringLocation("Default", "Default"), "node1");
+        node.setId(1);
+        when(m_nodeDao.getHierarchies(Arrays.asList(1, 2))).thenReturn(Arrays.asList(node));
+
+        m_provisionService.deleteNodes(Arrays.asList(1, 2));
+
+        // Only the node that still exists is deleted, by a single statement cascading to its children
+        verify(jdbcTemplate, times(1)).batchUpdate(eq("DELETE FROM node WHERE nodeId = ?"), argThat((List<Object[]> rows) -> rows.size() == 1 && rows.get(0)[0].equals(1)), any(int[].class));
+        verify(m_nodeDao, never()).delete(any(OnmsNode.class));
+    }
+
     private OnmsCategory createOnmsCategory(Integer id, String name) {
         final OnmsCategory category = new OnmsCategory();
         category.setId(id);
@@ -0,0 +1,203 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.api.CategoryDao;
+import org.opennms.netmgt.dao.api.MonitoringLocationDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.api.ServiceTypeDao;
+import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsMetaData;
+import org.opennms.netmgt.model.OnmsMonitoredService;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsNode.NodeType;
+import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes nodes with the {@link JdbcNodeWriter} against the real schema, and checks
+ * that they are read back by the DAOs and removed along with everything they hold.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-mockConfigManager.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class JdbcNodeWriterIT implements InitializingBean {
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private MonitoringLocationDao m_monitoringLocationDao;
+
+    @Autowired
+    private ServiceTypeDao m_serviceTypeDao;
+
+    @Autowired
+    private CategoryDao m_categoryDao;
+
+    private JdbcNodeWriter m_writer;
+
+    private OnmsServiceType m_icmp;
+
+    private OnmsCategory m_routers;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() {
+        m_writer = new JdbcNodeWriter(m_jdbcTemplate);
+    }
+
+    private void createServiceTypeAndCategory() {
+        m_icmp = m_serviceTypeDao.findByName("ICMP");
+        if (m_icmp == null) {
+            m_icmp = new OnmsServiceType("ICMP");
+            m_serviceTypeDao.save(m_icmp);
+        }
+        m_routers = m_categoryDao.findByName("Routers");
+        if (m_routers == null) {
+            m_routers = new OnmsCategory("Routers");
+            m_categoryDao.save(m_routers);
+        }
+        m_serviceTypeDao.flush();
+        m_categoryDao.flush();
+    }
+
+    private OnmsNode createNode(final String foreignId, final String... addresses) {
+        final OnmsNode node = new OnmsNode(m_monitoringLocationDao.getDefaultLocation(), foreignId);
+        node.setForeignSource("fs");
+        node.setForeignId(foreignId);
+        node.setType(NodeType.ACTIVE);
+        node.getAssetRecord().setBuilding("HQ");
+        for (final String address : addresses) {
+            final OnmsIpInterface iface = new OnmsIpInterface(InetAddressUtils.addr(address), node);
+            iface.setIsManaged("M");
+            node.addIpInterface(iface);
+            final OnmsMonitoredService service = new OnmsMonitoredService(iface, m_icmp);
+            service.setStatus("A");
+            iface.getMonitoredServices().add(service);
+        }
+        return node;
+    }
+
+    private int countRows(final String table, final String column, final List<Integer> ids) {
+        return m_jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE " + column + " IN ("
+                + ids.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")", Integer.class);
+    }
+
+    private void assertRows(final int nodes, final int ifaces, final int services, final List<Integer> nodeIds, final List<Integer> ifaceIds, final List<Integer> serviceIds) {
+        assertEquals(nodes, countRows("node", "nodeId", nodeIds));
+        assertEquals(nodes, countRows("assets", "nodeId", nodeIds));
+        assertEquals(ifaces, countRows("ipInterface", "nodeId", nodeIds));
+        assertEquals(services, countRows("ifServices", "nodeId", nodeIds));
+        assertEquals(nodes == 0 ? 0 : 1, countRows("category_node", "nodeId", nodeIds));
+        assertEquals(nodes == 0 ? 0 : 1, countRows("node_metadata", "id", nodeIds));
+        assertEquals(ifaces == 0 ? 0 : 1, countRows("ipInterface_metadata", "id", ifaceIds));
+        assertEquals(services == 0 ? 0 : 1, countRows("ifServices_metadata", "id", serviceIds));
+    }
+
+    @Test
+    @Transactional
+    public void testInsertAndDeleteNodes() {
+        createServiceTypeAndCategory();
+
+        final OnmsNode node1 = createNode("n1", "10.0.0.1", "10.0.0.2");
+        node1.getCategories().add(m_routers);
+        node1.addMetaData("requisition", "node", "value1");
+        node1.getIpInterfaceByIpAddress("10.0.0.1").addMetaData("requisition", "iface", "value2");
+        node1.getIpInterfaceByIpAddress("10.0.0.2").getMonitoredServices().iterator().next().addMetaData("requisition", "svc", "value3");
+        final OnmsNode node2 = createNode("n2", "10.0.1.1");
+
+        m_writer.insertNodes(Arrays.asList(node1, node2));
+        assertNotNull(node1.getId());
+        assertNotNull(node2.getId());
+        final List<Integer> nodeIds = Arrays.asList(node1.getId(), node2.getId());
+        final List<Integer> ifaceIds = Stream.of(node1, node2)
+                .flatMap(node -> node.getIpInterfaces().stream())
+                .map(OnmsIpInterface::getId)
+                .collect(Collectors.toList());
+        final List<Integer> serviceIds = Stream.of(node1, node2)
+                .flatMap(node -> node.getIpInterfaces().stream())
+                .flatMap(iface -> iface.getMonitoredServices().stream())
+                .map(OnmsMonitoredService::getId)
+                .collect(Collectors.toList());
+        assertRows(2, 3, 3, nodeIds, ifaceIds, serviceIds);
+
+        // What was written is read back through the ORM
+        m_nodeDao.clear();
+        final OnmsNode dbNode = m_nodeDao.getHierarchy(node1.getId());
+        assertEquals("n1", dbNode.getForeignId());
+        assertEquals("fs", dbNode.getForeignSource());
+        assertEquals(m_monitoringLocationDao.getDefaultLocation().getLocationName(), dbNode.getLocation().getLocationName());
+        assertEquals("HQ", dbNode.getAssetRecord().getBuilding());
+        assertEquals(node1.getAssetRecord().getId(), dbNode.getAssetRecord().getId());
+        assertEquals(2, dbNode.getIpInterfaces().size());
+        assertEquals(node1.getIpInterfaceByIpAddress("10.0.0.1").getId(), dbNode.getIpInterfaceByIpAddress("10.0.0.1").getId());
+        assertEquals("ICMP", dbNode.getIpInterfaceByIpAddress("10.0.0.1").getMonitoredServices().iterator().next().getServiceName());
+        assertEquals(Arrays.asList("Routers"), dbNode.getCategories().stream().map(OnmsCategory::getName).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("value1"), dbNode.getMetaData().stream().map(OnmsMetaData::getValue).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("value2"), dbNode.getIpInterfaceByIpAddress("10.0.0.1").getMetaData().stream().map(OnmsMetaData::getValue).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("value3"), dbNode.getIpInterfaceByIpAddress("10.0.0.2").getMonitoredServices().iterator().next().getMetaData().stream().map(OnmsMetaData::getValue).collect(Collectors.toList()));
+        m_nodeDao.clear();
+
+        // Deleting the nodes cascades to everything they hold, but not to what they reference
+        m_writer.deleteNodes(nodeIds);
+        assertRows(0, 0, 0, nodeIds, ifaceIds, serviceIds);
+        assertNotNull(m_serviceTypeDao.findByName("ICMP"));
+        assertNotNull(m_categoryDao.findByName("Routers"));
+    }
+}
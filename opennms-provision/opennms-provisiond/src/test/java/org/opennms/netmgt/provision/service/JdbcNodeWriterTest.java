@@ -0,0 +1,201 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsMonitoredService;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsNode.NodeType;
+import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.model.OnmsSnmpInterface;
+import org.opennms.netmgt.model.monitoringLocations.OnmsMonitoringLocation;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class JdbcNodeWriterTest {
+
+    /**
+     * Records the statements instead of executing them, allocating IDs from a counter.
+     */
+    private static class RecordingJdbcTemplate extends JdbcTemplate {
+        private final Map<String, Integer> m_allocations = new LinkedHashMap<>();
+        private final Map<String, List<Object[]>> m_batches = new LinkedHashMap<>();
+        private String m_failingTable;
+        private int m_nextId = 100;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(final String sql, final Class<T> elementType, final Object... args) {
+            final int count = (Integer)args[0];
+            m_allocations.put(sql, count);
+            final List<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                ids.add(m_nextId++);
+            }
+            return (List<T>)ids;
+        }
+
+        @Override
+        public int[] batchUpdate(final String sql, final List<Object[]> batchArgs, final int[] argTypes) {
+            for (final Object[] row : batchArgs) {
+                assertEquals(sql, argTypes.length, row.length);
+            }
+            if (m_failingTable != null && sql.startsWith("INSERT INTO " + m_failingTable + " ")) {
+                throw new DataIntegrityViolationException("duplicate key value");
+            }
+            assertNull("only one batch per statement", m_batches.put(sql, batchArgs));
+            return new int[batchArgs.size()];
+        }
+
+        private List<Object[]> getBatch(final String table) {
+            return m_batches.entrySet().stream()
+                    .filter(e -> e.getKey().startsWith("INSERT INTO " + table + " ") || e.getKey().startsWith("DELETE FROM " + table + " "))
+                    .map(Map.Entry::getValue)
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+
+    private final RecordingJdbcTemplate m_jdbcTemplate = new RecordingJdbcTemplate();
+
+    private final JdbcNodeWriter m_writer = new JdbcNodeWriter(m_jdbcTemplate);
+
+    private static OnmsNode createNode(final String foreignId, final String... addresses) {
+        final OnmsNode node = new OnmsNode(new OnmsMonitoringLocation("Default", "Default"), foreignId);
+        node.setForeignSource("fs");
+        node.setForeignId(foreignId);
+        node.setType(NodeType.ACTIVE);
+        node.getAssetRecord().setBuilding("HQ");
+        final OnmsServiceType icmp = new OnmsServiceType("ICMP");
+        icmp.setId(1);
+        for (final String address : addresses) {
+            final OnmsIpInterface iface = new OnmsIpInterface(InetAddressUtils.addr(address), node);
+            iface.setIsManaged("M");
+            node.addIpInterface(iface);
+            final OnmsMonitoredService service = new OnmsMonitoredService(iface, icmp);
+            service.setStatus("A");
+            iface.getMonitoredServices().add(service);
+        }
+        return node;
+    }
+
+    @Test
+    public void testInsertNodes() {
+        final OnmsNode node1 = createNode("n1", "10.0.0.1", "10.0.0.2");
+        final OnmsCategory category = new OnmsCategory("Routers");
+        category.setId(7);
+        node1.getCategories().add(category);
+        node1.addMetaData("requisition", "key", "value");
+        node1.getIpInterfaceByIpAddress("10.0.0.2").getMonitoredServices().iterator().next().addMetaData("requisition", "svc", "value");
+        final OnmsNode node2 = createNode("n2", "10.0.1.1");
+
+        m_writer.insertNodes(List.of(node1, node2));
+
+        // A single allocation per sequence: 2 nodes, and 2 assets + 3 interfaces + 3 services
+        assertEquals(2, m_jdbcTemplate.m_allocations.size());
+        assertTrue(m_jdbcTemplate.m_allocations.containsValue(2));
+        assertTrue(m_jdbcTemplate.m_allocations.containsValue(8));
+
+        // A single batch per table
+        assertEquals(2, m_jdbcTemplate.getBatch("node").size());
+        assertEquals(2, m_jdbcTemplate.getBatch("assets").size());
+        assertEquals(3, m_jdbcTemplate.getBatch("ipInterface").size());
+        assertEquals(3, m_jdbcTemplate.getBatch("ifServices").size());
+        assertEquals(1, m_jdbcTemplate.getBatch("category_node").size());
+        assertEquals(1, m_jdbcTemplate.getBatch("node_metadata").size());
+        assertEquals(1, m_jdbcTemplate.getBatch("ifServices_metadata").size());
+        assertNull(m_jdbcTemplate.getBatch("ipInterface_metadata"));
+
+        // The allocated IDs are set on the entities and used for the references between them
+        assertEquals(Integer.valueOf(100), node1.getId());
+        assertEquals(Integer.valueOf(101), node2.getId());
+        final Object[] nodeRow = m_jdbcTemplate.getBatch("node").get(0);
+        assertEquals(node1.getId(), nodeRow[0]);
+        assertEquals("A", nodeRow[3]);
+        assertEquals("n1", nodeRow[9]);
+        assertEquals("Default", nodeRow[17]);
+        final Object[] assetRow = m_jdbcTemplate.getBatch("assets").get(0);
+        assertEquals(node1.getAssetRecord().getId(), assetRow[0]);
+        assertEquals(node1.getId(), assetRow[1]);
+        assertTrue(Arrays.asList(assetRow).contains("HQ"));
+        for (final Object[] ifaceRow : m_jdbcTemplate.getBatch("ipInterface")) {
+            final OnmsNode node = "10.0.1.1".equals(ifaceRow[2]) ? node2 : node1;
+            assertEquals(node.getId(), ifaceRow[1]);
+            assertEquals(node.getIpInterfaceByIpAddress((String)ifaceRow[2]).getId(), ifaceRow[0]);
+        }
+        for (final Object[] serviceRow : m_jdbcTemplate.getBatch("ifServices")) {
+            assertTrue(m_jdbcTemplate.getBatch("ipInterface").stream().anyMatch(ifaceRow -> ifaceRow[0].equals(serviceRow[1])));
+            assertEquals(1, serviceRow[2]);
+        }
+        assertEquals(node1.getId(), m_jdbcTemplate.getBatch("category_node").get(0)[0]);
+        assertEquals(7, m_jdbcTemplate.getBatch("category_node").get(0)[1]);
+    }
+
+    @Test
+    public void testFailedInsertLeavesIdsUnset() {
+        final OnmsNode node = createNode("n1", "10.0.0.1");
+        m_jdbcTemplate.m_failingTable = "ifServices";
+
+        try {
+            m_writer.insertNodes(List.of(node));
+            fail("the insert should have failed");
+        } catch (final DataIntegrityViolationException e) {
+            // expected
+        }
+
+        // The nodes can still be saved one at a time
+        assertNull(node.getId());
+        assertNull(node.getAssetRecord().getId());
+        assertNull(node.getIpInterfaces().iterator().next().getId());
+    }
+
+    @Test
+    public void testCanInsert() {
+        final OnmsNode node = createNode("n1", "10.0.0.1");
+        assertTrue(JdbcNodeWriter.canInsert(node));
+
+        node.addSnmpInterface(new OnmsSnmpInterface(node, 1));
+        assertEquals(false, JdbcNodeWriter.canInsert(node));
+    }
+
+    @Test
+    public void testDeleteNodes() {
+        m_writer.deleteNodes(List.of(1, 2, 3));
+
+        assertEquals(3, m_jdbcTemplate.getBatch("node").size());
+        assertEquals(2, m_jdbcTemplate.getBatch("node").get(1)[0]);
+    }
+}
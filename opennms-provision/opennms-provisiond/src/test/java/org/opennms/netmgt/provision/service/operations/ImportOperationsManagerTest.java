@@ -0,0 +1,158 @@
+/*
+ * Licensed to The OpenNMS Group, Inc (TOG) under one or more
+ * contributor license agreements.  See the LICENSE.md file
+ * distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * TOG licenses this file to You under the GNU Affero General
+ * Public License Version 3 (the "License") or (at your option)
+ * any later version.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at:
+ *
+ *      https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package org.opennms.netmgt.provision.service.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.provision.service.ProvisionService;
+
+public class ImportOperationsManagerTest {
+    private final ProvisionService m_provisionService = mock(ProvisionService.class);
+
+    private final ProvisionMonitor m_monitor = mock(ProvisionMonitor.class);
+
+    private ImportOperationsManager createOperationsManager(final Map<String, Integer> existingNodes, final String rescanExisting, final String... foreignIds) {
+        final ImportOperationsManager opsMgr = new ImportOperationsManager(existingNodes, m_provisionService, rescanExisting);
+        opsMgr.setForeignSource("fs");
+        for (final String foreignId : foreignIds) {
+            opsMgr.foundNode(foreignId, foreignId, null, null, null, "monitorKey");
+        }
+        return opsMgr;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPersistInsertsInBatches() {
+        final ImportOperationsManager opsMgr = createOperationsManager(new HashMap<>(), "true", "n1", "n2", "n3", "n4", "n5");
+
+        opsMgr.persistInserts(2, m_monitor);
+
+        final ArgumentCaptor<List<OnmsNode>> batches = ArgumentCaptor.forClass(List.class);
+        verify(m_provisionService, times(3)).insertNodes(batches.capture(), eq("monitorKey"));
+        assertEquals(Arrays.asList(2, 2, 1), batches.getAllValues().stream().map(List::size).collect(Collectors.toList()));
+        assertEquals("n5", batches.getAllValues().get(2).get(0).getForeignId());
+        verify(m_provisionService, never()).insertNode(any(), anyString());
+        verify(m_monitor, times(5)).beginPersisting(any());
+        verify(m_monitor, times(5)).finishPersisting(any());
+        verify(m_provisionService, times(3)).clearCache();
+    }
+
+    @Test
+    public void testFailedBatchIsPersistedOneAtATime() {
+        final ImportOperationsManager opsMgr = createOperationsManager(new HashMap<>(), "true", "n1", "n2", "n3");
+        doThrow(new IllegalStateException("batch failed")).when(m_provisionService).insertNodes(anyList(), anyString());
+
+        opsMgr.persistInserts(10, m_monitor);
+
+        // the batch, then each of its nodes on its own
+        verify(m_provisionService, times(4)).insertNodes(anyList(), eq("monitorKey"));
+        verify(m_provisionService, never()).insertNode(any(), anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedBatchResetsAssignedIds() {
+        final ImportOperationsManager opsMgr = createOperationsManager(new HashMap<>(), "true", "n1", "n2");
+        final List<Integer> idsOnRetry = new ArrayList<>();
+        doAnswer(invocation -> {
+            final List<OnmsNode> nodes = invocation.getArgument(0);
+            if (nodes.size() > 1) {
+                // assign IDs the way a save would, then fail the transaction
+                for (int i = 0; i < nodes.size(); i++) {
+                    nodes.get(i).setId(i + 1);
+                    nodes.get(i).getIpInterfaces().forEach(iface -> iface.setId(100));
+                }
+                throw new IllegalStateException("batch failed");
+            }
+            final OnmsNode node = nodes.get(0);
+            idsOnRetry.add(node.getId());
+            node.getIpInterfaces().forEach(iface -> idsOnRetry.add(iface.getId()));
+            if ("n2".equals(node.getForeignId())) {
+                node.setId(2);
+                throw new IllegalStateException("node failed");
+            }
+            node.setId(1);
+            return null;
+        }).when(m_provisionService).insertNodes(anyList(), anyString());
+        opsMgr.getOperations().forEach(op -> ((SaveOrUpdateOperation)op).getNode().addIpInterface(new OnmsIpInterface("192.168.0.1", null)));
+
+        opsMgr.persistInserts(10, m_monitor);
+
+        assertTrue(idsOnRetry.stream().allMatch(Objects::isNull));
+        assertEquals(Collections.singletonList("n1"), opsMgr.getInsertedNodes().stream().map(OnmsNode::getForeignId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testPersistUpdates() {
+        final Map<String, Integer> existingNodes = new HashMap<>();
+        existingNodes.put("n1", 1);
+        existingNodes.put("n2", 2);
+
+        createOperationsManager(existingNodes, "false", "n1", "n2").persistUpdates(10, m_monitor);
+        verify(m_provisionService, never()).updateNodes(anyList(), anyString(), anyString());
+
+        createOperationsManager(existingNodes, "dbonly", "n1", "n2").persistUpdates(10, m_monitor);
+        verify(m_provisionService, times(1)).updateNodes(anyList(), eq("dbonly"), eq("monitorKey"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPersistDeletes() {
+        final Map<String, Integer> existingNodes = new HashMap<>();
+        existingNodes.put("n1", 1);
+        existingNodes.put("n2", 2);
+        existingNodes.put("n3", 3);
+
+        final ImportOperationsManager opsMgr = createOperationsManager(existingNodes, "true", "n2", "n4");
+        opsMgr.persistDeletes(10, m_monitor);
+
+        final ArgumentCaptor<List<Integer>> nodeIds = ArgumentCaptor.forClass(List.class);
+        verify(m_provisionService, times(1)).deleteNodes(nodeIds.capture());
+        assertEquals(new HashSet<>(Arrays.asList(1, 3)), new HashSet<>(nodeIds.getValue()));
+        verify(m_provisionService, never()).deleteNode(any());
+    }
+}
@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -63,6 +64,7 @@ import org.opennms.netmgt.config.CollectdConfigFactory;
 import org.opennms.netmgt.config.DataCollectionConfigFactory;
 import org.opennms.netmgt.config.SnmpEventInfo;
 import org.opennms.netmgt.config.SnmpPeerFactory;
+import org.opennms.netmgt.config.collectd.CollectdConfiguration;
 import org.opennms.netmgt.config.collectd.Collector;
 import org.opennms.netmgt.config.collectd.Package;
 import org.opennms.netmgt.config.dao.outages.api.ReadablePollOutagesDao;
@@ -85,6 +87,7 @@ import org.opennms.netmgt.model.events.EventUtils;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.opennms.netmgt.snmp.InetAddrUtils;
 import org.opennms.netmgt.threshd.api.ThresholdingService;
 import org.slf4j.Logger;
@@ -144,6 +147,13 @@ public class Collectd extends AbstractServiceDaemon implements
      */
     private final List<CollectableService> m_collectableServices;
 
+    /**
+     * The maximum delay of the initial collection of a service when using the
+     * timing wheel scheduler. This spreads the collections of all services
+     * scheduled on startup instead of starting them at once.
+     */
+    private static final long TIMING_WHEEL_START_JITTER = TimeUnit.SECONDS.toMillis(30);
+
     /**
      * Reference to the collection scheduler
      */
@@ -317,7 +327,14 @@ public class Collectd extends AbstractServiceDaemon implements
             // Create a scheduler
             try {
                 LOG.debug("init: Creating collectd scheduler");
-                setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getThreads()));
+                if (CollectdConfiguration.SCHEDULER_TIMING_WHEEL.equals(m_collectdConfigFactory.getScheduler())) {
+                    LOG.info("init: Using timing wheel scheduler");
+                    setScheduler(new TimingWheelScheduler("Collectd", m_collectdConfigFactory.getThreads(),
+                                                          TimingWheelScheduler.DEFAULT_TICK_DURATION,
+                                                          TIMING_WHEEL_START_JITTER));
+                } else {
+                    setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getThreads()));
+                }
             } catch (final RuntimeException e) {
                 LOG.error("init: Failed to create collectd scheduler", e);
                 throw e;
@@ -481,7 +498,7 @@ public class Collectd extends AbstractServiceDaemon implements
                 m_collectableServices.add(cSvc);
 
                 // Schedule the collectable service for immediate collection
-                getScheduler().schedule(0, cSvc.getReadyRunnable());
+                scheduleInitialCollection(cSvc.getReadyRunnable());
 
                 LOG.debug("scheduleInterface: {}/{} collection, scheduled", iface, svcName);
             } catch (CollectionInitializationException e) {
@@ -1370,6 +1387,20 @@ public class Collectd extends AbstractServiceDaemon implements
         return m_scheduler;
     }
 
+    /**
+     * Schedules the initial collection of a service. When using the timing
+     * wheel scheduler the initial collections are spread by a random start
+     * jitter, all following collections keep the interval of the service.
+     */
+    private void scheduleInitialCollection(final ReadyRunnable runnable) {
+        final Scheduler scheduler = getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            ((TimingWheelScheduler) scheduler).scheduleWithJitter(runnable);
+        } else {
+            scheduler.schedule(0, runnable);
+        }
+    }
+
     /**
      * <p>setCollectorConfigDao</p>
      *
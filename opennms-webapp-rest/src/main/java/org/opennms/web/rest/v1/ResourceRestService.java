@@ -46,15 +46,20 @@ import org.apache.commons.lang3.StringUtils;
 import org.opennms.features.distributed.kvstore.api.JsonStore;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.ResourceDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventProxy;
+import org.opennms.netmgt.events.api.EventProxyException;
 import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsResource;
 import org.opennms.netmgt.model.ResourceId;
+import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.resource.ResourceDTO;
 import org.opennms.netmgt.model.resource.ResourceDTOCollection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -85,6 +90,10 @@ public class ResourceRestService extends OnmsRestService {
     @Autowired
     private JsonStore m_jsonStore;
 
+    @Autowired
+    @Qualifier("eventProxy")
+    private EventProxy m_eventProxy;
+
     private final Gson m_gson = new Gson();
 
     @GET
@@ -121,6 +130,15 @@ public class ResourceRestService extends OnmsRestService {
         if (!found) {
             throw getException(Status.NOT_FOUND, "No resource with id '{}' found.", resourceId);
         }
+
+        final EventBuilder bldr = new EventBuilder(EventConstants.RESOURCE_DELETED_EVENT_UEI, "ReST");
+        bldr.addParam(EventConstants.PARM_RESOURCE_ID, resourceId);
+        try {
+            m_eventProxy.send(bldr.getEvent());
+        } catch (final EventProxyException e) {
+            // The resource is already gone, so don't report the delete as failed
+            LOG.warn("Cannot send event {} for deleted resource {}: {}", EventConstants.RESOURCE_DELETED_EVENT_UEI, resourceId, e.getMessage(), e);
+        }
     }
 
 